@@ -21,6 +21,7 @@ package com.mucommander;
 import java.awt.GraphicsEnvironment;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,12 +41,14 @@ import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.extension.ExtensionManager;
+import com.mucommander.job.JobJournal;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionManager;
 import com.mucommander.ui.dialog.InformationDialog;
 import com.mucommander.ui.dialog.startup.CheckVersionDialog;
 import com.mucommander.ui.dialog.startup.InitialSetupDialog;
+import com.mucommander.ui.dialog.startup.ResumeJobsDialog;
 import com.mucommander.ui.main.SplashScreen;
 import com.mucommander.ui.main.WindowManager;
 import com.mucommander.ui.main.commandbar.CommandBarIO;
@@ -71,6 +74,8 @@ public class Launcher {
     private static boolean       useSplash;
     /** Whether or not to display verbose error messages. */
     private static boolean       verbose;
+    /** Whether or not to print the duration of each startup stage once muCommander has started. */
+    private static boolean       startupProfile;
     /** true while the application is launching, false after it has finished launching */
     public static boolean isLaunching = true;
     /** Launch lock. */
@@ -161,6 +166,9 @@ public class Launcher {
         // muCommander will print verbose boot error messages.
         System.out.println(" -V, --verbose                     Print verbose error messages (default)");
 
+        // Startup profiling.
+        System.out.println(" --startup-profile                 Print the duration of each startup stage");
+
         // Pedantic mode.
         System.out.println(" -w, --fail-on-warnings            Quits when a warning is encountered during");
         System.out.println("                                   the boot process.");
@@ -405,6 +413,10 @@ public class Launcher {
                 else if(args[i].equals("-V") || args[i].equals("--verbose"))
                     verbose = true;
 
+                // Startup profiling.
+                else if(args[i].equals("--startup-profile"))
+                    startupProfile = true;
+
                 // Illegal argument.
                 else
                     break;
@@ -412,10 +424,15 @@ public class Launcher {
 
             // - Configuration init ---------------------------------------
             // ------------------------------------------------------------
+            final boolean failOnWarnings = fatalWarnings;
 
             // Ensure that a graphics environment is available, exit otherwise.
             checkHeadless();
 
+            // Startup stages are executed and timed by the pipeline: the ones which the first window depends on are
+            // executed concurrently, the others are left to finish in the background.
+            StartupPipeline pipeline = new StartupPipeline();
+
             // Attempts to guess whether this is the first time muCommander is booted or not.
             boolean isFirstBoot;
             try {isFirstBoot = !MuConfigurations.isPreferencesFileExists();}
@@ -423,13 +440,23 @@ public class Launcher {
 
             // Load snapshot data before loading configuration as until version 0.9 the snapshot properties
             // were stored as preferences so when loading such preferences they could overload snapshot properties
-            try {MuConfigurations.loadSnapshot();}
-            catch(Exception e) {printFileError("Could not load snapshot", e, fatalWarnings);}
+            pipeline.execute(new StartupTask("snapshot") {
+                @Override
+                protected void execute() {
+                    try {MuConfigurations.loadSnapshot();}
+                    catch(Exception e) {printFileError("Could not load snapshot", e, failOnWarnings);}
+                }
+            });
             
             // Configuration needs to be loaded before any sort of GUI creation is performed : under Mac OS X, if we're
             // to use the metal look, we need to know about it right about now.
-            try {MuConfigurations.loadPreferences();}
-            catch(Exception e) {printFileError("Could not load configuration", e, fatalWarnings);}
+            pipeline.execute(new StartupTask("preferences") {
+                @Override
+                protected void execute() {
+                    try {MuConfigurations.loadPreferences();}
+                    catch(Exception e) {printFileError("Could not load configuration", e, failOnWarnings);}
+                }
+            });
 
 
             // - Logging configuration ------------------------------------
@@ -485,100 +512,178 @@ public class Launcher {
             configureFilesystems();
             
             // Initializes the desktop.
-            try {com.mucommander.desktop.DesktopManager.init(isFirstBoot);}
-            catch(Exception e) {printError("Could not initialize desktop", e, true);}
+            final boolean firstBoot = isFirstBoot;
+            pipeline.execute(new StartupTask("desktop") {
+                @Override
+                protected void execute() {
+                    try {com.mucommander.desktop.DesktopManager.init(firstBoot);}
+                    catch(Exception e) {printError("Could not initialize desktop", e, true);}
+                }
+            });
 
             // Loads dictionary
-            printStartupMessage("Loading dictionary...");
-            try {com.mucommander.text.Translator.loadDictionaryFile();}
-            catch(Exception e) {printError("Could not load dictionary", e, true);}
-
-            // Loads custom commands
-            printStartupMessage("Loading file associations...");
-            try {com.mucommander.command.CommandManager.loadCommands();}
-            catch(Exception e) {
-                printFileError("Could not load custom commands", e, fatalWarnings);
-            }
-
-            // Migrates the custom editor and custom viewer if necessary.
-            migrateCommand("viewer.use_custom", "viewer.custom_command", CommandManager.VIEWER_ALIAS);
-            migrateCommand("editor.use_custom", "editor.custom_command", CommandManager.EDITOR_ALIAS);
-            try {CommandManager.writeCommands();}
-            catch(Exception e) {
-                System.out.println("###############################");
-                LOGGER.debug("Caught exception", e);
-                // There's really nothing we can do about this...
-            }
-
-            try {com.mucommander.command.CommandManager.loadAssociations();}
-            catch(Exception e) {
-                printFileError("Could not load custom associations", e, fatalWarnings);
-            }
+            StartupTask dictionaryTask = pipeline.submit(new StartupTask("dictionary") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading dictionary...");
+                    try {com.mucommander.text.Translator.loadDictionaryFile();}
+                    catch(Exception e) {printError("Could not load dictionary", e, true);}
+                }
+            });
+
+            // Loads custom commands and associations
+            StartupTask commandsTask = pipeline.submit(new StartupTask("commands") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading file associations...");
+                    try {com.mucommander.command.CommandManager.loadCommands();}
+                    catch(Exception e) {
+                        printFileError("Could not load custom commands", e, failOnWarnings);
+                    }
+
+                    try {com.mucommander.command.CommandManager.loadAssociations();}
+                    catch(Exception e) {
+                        printFileError("Could not load custom associations", e, failOnWarnings);
+                    }
+                }
+            });
+
+            // Loads bookmarks, which must be available before the first window is created as its initial folders
+            // may be bookmark locations
+            StartupTask bookmarksTask = pipeline.submit(new StartupTask("bookmarks") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading bookmarks...");
+                    try {com.mucommander.bookmark.BookmarkManager.loadBookmarks();}
+                    catch(Exception e) {printFileError("Could not load bookmarks", e, failOnWarnings);}
+                }
+            });
+
+            // Loads credentials, which must be available before the first window is created as its initial folders
+            // may be remote locations
+            StartupTask credentialsTask = pipeline.submit(new StartupTask("credentials") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading credentials...");
+                    try {com.mucommander.auth.CredentialsManager.loadCredentials();}
+                    catch(Exception e) {printFileError("Could not load credentials", e, failOnWarnings);}
+                }
+            });
+
+            // Loads shell history, which is not needed by the first window: it is left to finish in the background
+            pipeline.submit(new StartupTask("shell history") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading shell history...");
+                    try {ShellHistoryManager.loadHistory();}
+                    catch(Exception e) {printFileError("Could not load shell history", e, failOnWarnings);}
+                }
+            });
+
+            // Register actions, once the commands they are created for are loaded
+            StartupTask actionsTask = pipeline.submit(new StartupTask("actions", commandsTask) {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Registering actions...");
+                    ActionManager.registerActions();
+                }
+            });
 
-            // Loads bookmarks
-            printStartupMessage("Loading bookmarks...");
-            try {com.mucommander.bookmark.BookmarkManager.loadBookmarks();}
-            catch(Exception e) {printFileError("Could not load bookmarks", e, fatalWarnings);}
+            // Loads the ActionKeymap file
+            StartupTask keymapTask = pipeline.submit(new StartupTask("keymap", actionsTask) {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading actions shortcuts...");
+                    try {com.mucommander.ui.action.ActionKeymapIO.loadActionKeymap();}
+                    catch(Exception e) {printFileError("Could not load actions shortcuts", e, failOnWarnings);}
+                }
+            });
 
-            // Loads credentials
-            printStartupMessage("Loading credentials...");
-            try {com.mucommander.auth.CredentialsManager.loadCredentials();}
-            catch(Exception e) {printFileError("Could not load credentials", e, fatalWarnings);}
+            // Loads the ToolBar's description file
+            StartupTask toolBarTask = pipeline.submit(new StartupTask("toolbar", actionsTask) {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading toolbar description...");
+                    try {ToolBarIO.loadDescriptionFile();}
+                    catch(Exception e) {printFileError("Could not load toolbar description", e, failOnWarnings);}
+                }
+            });
 
-            // Loads shell history
-            printStartupMessage("Loading shell history...");
-            try {ShellHistoryManager.loadHistory();}
-            catch(Exception e) {printFileError("Could not load shell history", e, fatalWarnings);}
+            // Loads the CommandBar's description file
+            StartupTask commandBarTask = pipeline.submit(new StartupTask("command bar", actionsTask) {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading command bar description...");
+                    try {CommandBarIO.loadCommandBar();}
+                    catch(Exception e) {printFileError("Could not load commandbar description", e, failOnWarnings);}
+                }
+            });
+
+            // Loads the themes, once the dictionary is loaded as the theme's name may be localized. This also keeps the
+            // two stages, which both set preferences, from running concurrently.
+            StartupTask themeTask = pipeline.submit(new StartupTask("theme", dictionaryTask) {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading theme...");
+                    com.mucommander.ui.theme.ThemeManager.loadCurrentTheme();
+                }
+            });
 
             // Inits CustomDateFormat to make sure that its ConfigurationListener is added
             // before FileTable, so CustomDateFormat gets notified of date format changes first
             com.mucommander.text.CustomDateFormat.init();
 
             // Initialize file icons
-            printStartupMessage("Loading icons...");
-            // Initialize the SwingFileIconProvider from the main thread, see method Javadoc for an explanation on why we do this now
-            SwingFileIconProvider.forceInit();
-            // The math.max(1.0f, ...) part is to workaround a bug which cause(d) this value to be set to 0.0 in the configuration file.
-            com.mucommander.ui.icon.FileIcons.setScaleFactor(Math.max(1.0f, MuConfigurations.getPreferences().getVariable(MuPreference.TABLE_ICON_SCALE,
-                                                                                              MuPreferences.DEFAULT_TABLE_ICON_SCALE)));
-            com.mucommander.ui.icon.FileIcons.setSystemIconsPolicy(MuConfigurations.getPreferences().getVariable(MuPreference.USE_SYSTEM_FILE_ICONS, MuPreferences.DEFAULT_USE_SYSTEM_FILE_ICONS));
-
-            // Register actions
-            printStartupMessage("Registering actions...");
-            ActionManager.registerActions();
-
-            // Loads the ActionKeymap file
-            printStartupMessage("Loading actions shortcuts...");
-            try {com.mucommander.ui.action.ActionKeymapIO.loadActionKeymap();}
-            catch(Exception e) {printFileError("Could not load actions shortcuts", e, fatalWarnings);}
-
-            // Loads the ToolBar's description file
-            printStartupMessage("Loading toolbar description...");
-            try {ToolBarIO.loadDescriptionFile();}
-            catch(Exception e) {printFileError("Could not load toolbar description", e, fatalWarnings);}
-
-            // Loads the CommandBar's description file
-            printStartupMessage("Loading command bar description...");
-            try {CommandBarIO.loadCommandBar();}
-            catch(Exception e) {printFileError("Could not load commandbar description", e, fatalWarnings);}
-
-            // Loads the themes.
-            printStartupMessage("Loading theme...");
-            com.mucommander.ui.theme.ThemeManager.loadCurrentTheme();
+            pipeline.execute(new StartupTask("icons") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Loading icons...");
+                    // Initialize the SwingFileIconProvider from the main thread, see method Javadoc for an explanation on why we do this now
+                    SwingFileIconProvider.forceInit();
+                    // The math.max(1.0f, ...) part is to workaround a bug which cause(d) this value to be set to 0.0 in the configuration file.
+                    com.mucommander.ui.icon.FileIcons.setScaleFactor(Math.max(1.0f, MuConfigurations.getPreferences().getVariable(MuPreference.TABLE_ICON_SCALE,
+                                                                                                      MuPreferences.DEFAULT_TABLE_ICON_SCALE)));
+                    com.mucommander.ui.icon.FileIcons.setSystemIconsPolicy(MuConfigurations.getPreferences().getVariable(MuPreference.USE_SYSTEM_FILE_ICONS, MuPreferences.DEFAULT_USE_SYSTEM_FILE_ICONS));
+                }
+            });
+
+            // Wait for the stages the first window depends on
+            pipeline.waitFor(dictionaryTask, commandsTask, bookmarksTask, credentialsTask, keymapTask, toolBarTask, commandBarTask, themeTask);
+
+            // Migrates the custom editor and custom viewer if necessary. This removes preferences, which the dictionary
+            // and theme stages may set: it is done once they are over so that preferences are never written concurrently.
+            pipeline.execute(new StartupTask("commands migration") {
+                @Override
+                protected void execute() {
+                    migrateCommand("viewer.use_custom", "viewer.custom_command", CommandManager.VIEWER_ALIAS);
+                    migrateCommand("editor.use_custom", "editor.custom_command", CommandManager.EDITOR_ALIAS);
+                    try {CommandManager.writeCommands();}
+                    catch(Exception e) {
+                        System.out.println("###############################");
+                        LOGGER.debug("Caught exception", e);
+                        // There's really nothing we can do about this...
+                    }
+                }
+            });
 
             // Starts Bonjour services discovery (only if enabled in prefs)
             printStartupMessage("Starting Bonjour services discovery...");
             com.mucommander.bonjour.BonjourDirectory.setActive(MuConfigurations.getPreferences().getVariable(MuPreference.ENABLE_BONJOUR_DISCOVERY, MuPreferences.DEFAULT_ENABLE_BONJOUR_DISCOVERY));
 
             // Creates the initial main frame using any initial path specified by the command line.
-            printStartupMessage("Initializing window...");
-            String[] folders = new String[args.length - i];
+            final String[] folders = new String[args.length - i];
             System.arraycopy(args, i, folders, 0, folders.length);
-            WindowManager.createNewMainFrame(new CommandLineMainFrameBuilder(folders));
-
-            // If no initial path was specified, start a default main window.
-            if(WindowManager.getCurrentMainFrame() == null)
-                WindowManager.createNewMainFrame(new DefaultMainFramesBuilder());
+            pipeline.execute(new StartupTask("window") {
+                @Override
+                protected void execute() {
+                    printStartupMessage("Initializing window...");
+                    WindowManager.createNewMainFrame(new CommandLineMainFrameBuilder(folders));
+
+                    // If no initial path was specified, start a default main window.
+                    if(WindowManager.getCurrentMainFrame() == null)
+                        WindowManager.createNewMainFrame(new DefaultMainFramesBuilder());
+                }
+            });
 
             // Done launching, wake up threads waiting for the application being launched.
             // Important: this must be done before disposing the splash screen, as this would otherwise create a deadlock
@@ -607,6 +712,20 @@ public class Launcher {
             // If no theme is configured in the preferences, ask for an initial theme.
             if(showSetup)
                 new InitialSetupDialog(WindowManager.getCurrentMainFrame()).showDialog();
+
+            // Offer to resume the file jobs that were interrupted by the end of the previous session
+            List<JobJournal> pendingJobs = JobJournal.getPendingJournals();
+            if(!pendingJobs.isEmpty())
+                new ResumeJobsDialog(WindowManager.getCurrentMainFrame(), pendingJobs).resumeJobs();
+
+            // Print the startup profile once the stages left to finish in the background are done
+            if(startupProfile) {
+                pipeline.waitForAll();
+                pipeline.printProfile(System.out);
+            }
+            else {
+                pipeline.shutdown();
+            }
         }
         catch(Throwable t) {
             // Startup failed, dispose the splash screen
@@ -40,6 +40,8 @@ public class RuntimeConstants {
     // -----------------------------------------------------------------------------------------------------------------
     /** Path to the muCommander dictionary. */
     public static final String DICTIONARY_FILE = "/dictionary.txt";
+    /** Path to the folder containing the compiled dictionaries, one per language. */
+    public static final String COMPILED_DICTIONARY_PATH = "/dictionary";
     /** Path to the themes directory. */
     public static final String THEMES_PATH     = "/themes";
     /** Path to the muCommander license file. */
@@ -25,11 +25,13 @@ import com.mucommander.auth.CredentialsManager;
 import com.mucommander.bookmark.BookmarkManager;
 import com.mucommander.command.CommandManager;
 import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.PersistenceManager;
+import com.mucommander.conf.PersistentStore;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.ui.action.ActionKeymapIO;
 import com.mucommander.ui.main.commandbar.CommandBarIO;
 import com.mucommander.ui.main.toolbar.ToolBarIO;
-import com.mucommander.ui.main.tree.TreeIOThreadManager;
+import com.mucommander.ui.main.tree.TreeIOScheduler;
 import com.mucommander.ui.theme.ThemeManager;
 
 /**
@@ -86,52 +88,56 @@ public class ShutdownHook extends Thread {
         if(shutdownTasksPerformed)
             return;
         
-        TreeIOThreadManager.getInstance().interrupt();
-
-        // Save snapshot
-        try{MuConfigurations.saveSnapshot();}
-        catch(Exception e) {LOGGER.warn("Failed to save snapshot", e);}
-        
-        // Save preferences
-        try {MuConfigurations.savePreferences();}
-        catch(Exception e) {LOGGER.warn("Failed to save configuration", e);}
-
-        // Save shell history
-        try {ShellHistoryManager.writeHistory();}
-        catch(Exception e) {LOGGER.warn("Failed to save shell history", e);}
-
-        // Write credentials file to disk, only if changes were made
-        try {CredentialsManager.writeCredentials(false);}
-        catch(Exception e) {LOGGER.warn("Failed to save credentials", e);}
-
-        // Write bookmarks file to disk, only if changes were made
-        try {BookmarkManager.writeBookmarks(false);}
-        catch(Exception e) {LOGGER.warn("Failed to save bookmarks", e);}
-
-        // Saves the current theme.
-        try {ThemeManager.saveCurrentTheme();}
-        catch(Exception e) {LOGGER.warn("Failed to save user theme", e);}
-
-        // Saves the file associations.
-        try {CommandManager.writeCommands();}
-        catch(Exception e) {LOGGER.warn("Failed to save commands", e);}
-        try {CommandManager.writeAssociations();}
-        catch(Exception e) {LOGGER.warn("Failed to save associations", e);}
-        
-        // Saves the action keymap.
-        try { ActionKeymapIO.saveActionKeymap(); }
-        catch(Exception e) {LOGGER.warn("Failed to save action keymap", e);}
-        
-        // Saves the command bar.
-        try { CommandBarIO.saveCommandBar(); }
-        catch(Exception e) {LOGGER.warn("Failed to save command bar", e); }
-        
-        // Saves the tool bar.
-        try { ToolBarIO.saveToolBar(); }
-        catch(Exception e) {LOGGER.warn("Failed to save toolbar", e); }
-        
+        TreeIOScheduler.getInstance().shutdown();
+
+        // Writes the configuration files concurrently, along with the ones waiting to be saved in the background
+        PersistenceManager.shutdown(
+            new Store("snapshot") {
+                public void write() throws Exception {MuConfigurations.saveSnapshot();}
+            },
+            new Store("configuration") {
+                public void write() throws Exception {MuConfigurations.savePreferences();}
+            },
+            // Shell history, credentials and bookmarks are written only if changes were made
+            ShellHistoryManager.getPersistentStore(),
+            CredentialsManager.getPersistentStore(),
+            BookmarkManager.getPersistentStore(),
+            new Store("user theme") {
+                public void write() throws Exception {ThemeManager.saveCurrentTheme();}
+            },
+            new Store("commands") {
+                public void write() throws Exception {CommandManager.writeCommands();}
+            },
+            new Store("associations") {
+                public void write() throws Exception {CommandManager.writeAssociations();}
+            },
+            new Store("action keymap") {
+                public void write() throws Exception {ActionKeymapIO.saveActionKeymap();}
+            },
+            new Store("command bar") {
+                public void write() throws Exception {CommandBarIO.saveCommandBar();}
+            },
+            new Store("toolbar") {
+                public void write() throws Exception {ToolBarIO.saveToolBar();}
+            });
 
         // Shutdown tasks should only be performed once
         shutdownTasksPerformed = true;
     }
+
+
+    /**
+     * A configuration file written on shutdown.
+     */
+    private static abstract class Store implements PersistentStore {
+        private String name;
+
+        Store(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander;
+
+import java.io.PrintStream;
+
+import javax.swing.SwingUtilities;
+
+import com.mucommander.ui.action.ActionManager;
+import com.mucommander.ui.main.WindowManager;
+import com.mucommander.ui.main.frame.ClonedMainFrameBuilder;
+
+/**
+ * Used to start muCommander in startup benchmark mode: muCommander is launched normally, then a number of additional
+ * windows are opened, and the time spent launching the application and opening each window is printed on the
+ * standard output, along with the share of that time attributed to actions.
+ *
+ * <p>The benchmark quits the application when done, which saves the configuration: it should be run against a
+ * scratch preferences folder, using the <code>--preferences</code> command line argument. All the command line
+ * arguments are passed to {@link Launcher}.</p>
+ */
+public class StartupBenchmark {
+
+    /** Number of windows opened after the application has been launched */
+    private final static int NB_WINDOWS = 5;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private StartupBenchmark() {}
+
+    /**
+     * Method used to start the startup benchmark.
+     * @param args command line arguments, passed to {@link Launcher}.
+     * @throws Exception if an unrecoverable error occurred during startup
+     */
+    public static void main(String args[]) throws Exception {
+        PrintStream out = System.out;
+
+        long startTime = System.nanoTime();
+        Launcher.main(args);
+        long launchTime = System.nanoTime() - startTime;
+
+        out.println("Launch: "+toMillis(launchTime)+"ms");
+        out.println("  actions registration: "+toMillis(ActionManager.getRegistrationTime())+"ms");
+        printActionInstances(out, ActionManager.getActionInstanceCount(), ActionManager.getActionInstantiationTime());
+
+        for(int i=0; i<NB_WINDOWS; i++) {
+            int nbInstances = ActionManager.getActionInstanceCount();
+            long instantiationTime = ActionManager.getActionInstantiationTime();
+
+            startTime = System.nanoTime();
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    WindowManager.createNewMainFrame(new ClonedMainFrameBuilder());
+                }
+            });
+            long windowTime = System.nanoTime() - startTime;
+
+            out.println("New window #"+(i+1)+": "+toMillis(windowTime)+"ms");
+            printActionInstances(out, ActionManager.getActionInstanceCount()-nbInstances,
+                    ActionManager.getActionInstantiationTime()-instantiationTime);
+        }
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                WindowManager.quit();
+            }
+        });
+    }
+
+    private static void printActionInstances(PrintStream out, int nbInstances, long instantiationTime) {
+        out.println("  actions instantiated: "+nbInstances+" in "+toMillis(instantiationTime)+"ms");
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos/1000000;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executes the {@link StartupTask startup tasks} of muCommander, either in the calling thread or concurrently on a
+ * small pool of daemon threads, and keeps track of every task so that a profile of the startup sequence can be
+ * printed.
+ *
+ * <p>Tasks that are submitted to the pool must be submitted after the tasks they depend on: the pool executes tasks
+ * in submission order, which guarantees that the dependencies of a task waiting in a pool thread are either done or
+ * being executed by another thread.</p>
+ */
+class StartupPipeline {
+
+    /** Pool the concurrent tasks are executed by */
+    private ExecutorService executor;
+    /** All the tasks executed or submitted so far, in order */
+    private List<StartupTask> tasks = new Vector<StartupTask>();
+    /** Time at which the pipeline was created */
+    private long startTime = System.nanoTime();
+
+    /**
+     * Creates a new pipeline whose pool has as many threads as there are processors, with a minimum of 2 and a maximum
+     * of 4.
+     */
+    StartupPipeline() {
+        int nbThreads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            private int threadNumber;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Startup-"+(++threadNumber));
+                // Do not prevent the VM from exiting if startup is aborted
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Executes the given task in the calling thread, after the tasks it depends on are done.
+     *
+     * @param task the task to execute
+     * @return the task, once executed
+     */
+    StartupTask execute(StartupTask task) {
+        tasks.add(task);
+        task.run();
+
+        return task;
+    }
+
+    /**
+     * Submits the given task for concurrent execution, once the tasks it depends on are done.
+     *
+     * @param task the task to submit
+     * @return the submitted task
+     */
+    StartupTask submit(StartupTask task) {
+        tasks.add(task);
+        executor.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Blocks the calling thread until all the given tasks are done.
+     *
+     * @param tasks the tasks to wait for
+     */
+    void waitFor(StartupTask... tasks) {
+        for(StartupTask task : tasks)
+            task.waitUntilDone();
+    }
+
+    /**
+     * Blocks the calling thread until all the tasks are done, and releases the pool's threads.
+     */
+    void waitForAll() {
+        for(StartupTask task : tasks.toArray(new StartupTask[tasks.size()]))
+            task.waitUntilDone();
+
+        executor.shutdown();
+    }
+
+    /**
+     * Releases the pool's threads once the submitted tasks are done, without waiting for them.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Prints the name, thread, wait time and duration of every task executed so far, followed by the total time
+     * elapsed since the pipeline was created.
+     *
+     * @param out the stream to print the profile to
+     */
+    void printProfile(PrintStream out) {
+        out.println("Startup profile:");
+        for(StartupTask task : tasks.toArray(new StartupTask[tasks.size()])) {
+            if(!task.isDone()) {
+                out.println("  "+task.getName()+": not done");
+                continue;
+            }
+
+            out.println("  "+task.getName()+": "+toMillis(task.getDuration())+"ms"
+                    +(task.getWaitTime()>=1000000?" (waited "+toMillis(task.getWaitTime())+"ms)":"")
+                    +" ["+task.getThreadName()+"]");
+        }
+        out.println("  total: "+toMillis(System.nanoTime()-startTime)+"ms");
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos/1000000;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stage of the startup sequence, executed by a {@link StartupPipeline}. A task does not start before the tasks it
+ * depends on are done, and records the time it spent waiting for them and executing.
+ *
+ * <p>Tasks that fail with an unchecked exception are considered done: the failure is logged and does not prevent the
+ * tasks that depend on it from being executed. Recoverable errors should be handled by {@link #execute()} itself.</p>
+ */
+abstract class StartupTask implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(StartupTask.class);
+
+    /** Name of the task, used in the startup profile */
+    private String name;
+    /** Tasks that must be done before this one is started */
+    private StartupTask dependencies[];
+
+    /** Time spent waiting for the dependencies to be done, in nanoseconds */
+    private long waitTime;
+    /** Time spent executing the task, in nanoseconds */
+    private long duration;
+    /** Name of the thread that executed the task */
+    private String threadName;
+    /** Becomes true when the task has been executed */
+    private boolean done;
+
+    /**
+     * Creates a new task with the given name, which can only be started once the given tasks are done.
+     *
+     * @param name name of the task, used in the startup profile
+     * @param dependencies tasks that must be done before this one is started
+     */
+    StartupTask(String name, StartupTask... dependencies) {
+        this.name = name;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Performs the work of this task.
+     */
+    protected abstract void execute();
+
+    /**
+     * Waits for the dependencies to be done, then executes this task.
+     */
+    public final void run() {
+        long startTime = System.nanoTime();
+        for(StartupTask dependency : dependencies)
+            dependency.waitUntilDone();
+
+        long executionStartTime = System.nanoTime();
+        try {
+            execute();
+        }
+        catch(RuntimeException e) {
+            LOGGER.error("Startup task '"+name+"' failed", e);
+        }
+        finally {
+            synchronized(this) {
+                waitTime = executionStartTime - startTime;
+                duration = System.nanoTime() - executionStartTime;
+                threadName = Thread.currentThread().getName();
+                done = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Blocks the calling thread until this task has been executed.
+     */
+    synchronized void waitUntilDone() {
+        while(!done) {
+            try {
+                wait();
+            }
+            catch(InterruptedException e) {
+                // will loop
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this task has been executed.
+     *
+     * @return <code>true</code> if this task has been executed
+     */
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns the name of this task.
+     *
+     * @return the name of this task
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the time this task spent waiting for its dependencies to be done, in nanoseconds.
+     *
+     * @return the time this task spent waiting for its dependencies, in nanoseconds
+     */
+    synchronized long getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * Returns the time spent executing this task, in nanoseconds.
+     *
+     * @return the time spent executing this task, in nanoseconds
+     */
+    synchronized long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the name of the thread this task was executed by, <code>null</code> if it hasn't been executed yet.
+     *
+     * @return the name of the thread this task was executed by
+     */
+    synchronized String getThreadName() {
+        return threadName;
+    }
+}
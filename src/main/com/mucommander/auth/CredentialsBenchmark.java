@@ -0,0 +1,170 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.auth;
+
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import com.mucommander.commons.file.Credentials;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * Compares the time it takes to find the credentials matching a location with a {@link CredentialsIndex}, with the
+ * time it takes to compare the location against every known mapping. Results are printed on the standard output.
+ *
+ * <p>The number of mappings can be passed as the first command line argument, the number of hosts they are spread
+ * over as the second one.</p>
+ */
+public class CredentialsBenchmark {
+
+    /** Default number of mappings */
+    private final static int DEFAULT_NB_MAPPINGS = 50000;
+    /** Default number of hosts the mappings are spread over */
+    private final static int DEFAULT_NB_HOSTS = 2000;
+    /** Number of lookups that are measured */
+    private final static int NB_LOOKUPS = 20000;
+    /** Number of lookups performed before the measured ones */
+    private final static int NB_WARMUP_LOOKUPS = 5000;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private CredentialsBenchmark() {}
+
+    public static void main(String args[]) throws MalformedURLException {
+        PrintStream out = System.out;
+
+        int nbMappings = args.length>0?Integer.parseInt(args[0]):DEFAULT_NB_MAPPINGS;
+        int nbHosts = args.length>1?Integer.parseInt(args[1]):DEFAULT_NB_HOSTS;
+
+        Random random = new Random(0);
+        CredentialsMapping mappings[] = new CredentialsMapping[nbMappings];
+        for(int i=0; i<nbMappings; i++)
+            mappings[i] = new CredentialsMapping(new Credentials("user"+i, "password"), getLocation(random, nbHosts), true);
+
+        FileURL locations[] = new FileURL[NB_LOOKUPS];
+        for(int i=0; i<NB_LOOKUPS; i++)
+            locations[i] = getLocation(random, nbHosts);
+
+        out.println(nbMappings+" mappings over "+nbHosts+" hosts, "+NB_LOOKUPS+" lookups");
+
+        long startTime = System.nanoTime();
+        final CredentialsIndex index = new CredentialsIndex(new CredentialsMapping[0], mappings);
+        out.println("Index built in "+(System.nanoTime()-startTime)/1000000+"ms");
+
+        final List<CredentialsMapping> mappingsV = new Vector<CredentialsMapping>();
+        for(CredentialsMapping mapping : mappings)
+            mappingsV.add(mapping);
+
+        out.println("Linear scan:");
+        benchmark(out, locations, new Lookup() {
+            public CredentialsMapping getBestMatch(FileURL location) {
+                return getBestMatchLinear(location, mappingsV);
+            }
+        });
+
+        out.println("Index:");
+        benchmark(out, locations, new Lookup() {
+            public CredentialsMapping getBestMatch(FileURL location) {
+                List<CredentialsMapping> matches = index.getMatches(location);
+                return matches.isEmpty()?null:matches.get(0);
+            }
+        });
+    }
+
+    private static void benchmark(PrintStream out, FileURL locations[], Lookup lookup) {
+        for(int i=0; i<NB_WARMUP_LOOKUPS; i++)
+            lookup.getBestMatch(locations[i%locations.length]);
+
+        int nbMatches = 0;
+        long startTime = System.nanoTime();
+        for(FileURL location : locations) {
+            if(lookup.getBestMatch(location)!=null)
+                nbMatches++;
+        }
+        long time = System.nanoTime() - startTime;
+
+        out.println("  "+(time/locations.length)+"ns per lookup, "+nbMatches+" found");
+    }
+
+    /**
+     * Returns a location on one of the given number of hosts, with a random path.
+     */
+    private static FileURL getLocation(Random random, int nbHosts) throws MalformedURLException {
+        StringBuffer path = new StringBuffer();
+        int depth = random.nextInt(5);
+        for(int i=0; i<depth; i++)
+            path.append("/folder").append(random.nextInt(4));
+
+        return FileURL.getFileURL("ftp://host"+random.nextInt(nbHosts)+".example.com"+path+"/");
+    }
+
+    /**
+     * Finds the best match the way {@link CredentialsManager} did before credentials were indexed: by comparing the
+     * location against every mapping, then the path of every matching mapping against the location's.
+     */
+    private static CredentialsMapping getBestMatchLinear(FileURL location, List<CredentialsMapping> mappings) {
+        List<CredentialsMapping> matches = new Vector<CredentialsMapping>();
+        for(CredentialsMapping mapping : mappings) {
+            FileURL realm = mapping.getRealm();
+            if(location.schemeEquals(realm) && location.portEquals(realm) && location.hostEquals(realm))
+                matches.add(mapping);
+        }
+
+        if(matches.isEmpty())
+            return null;
+
+        String path = location.getPath();
+        List<String> pathTokens = new Vector<String>();
+        StringTokenizer st = new StringTokenizer(path, "/\\");
+        while(st.hasMoreTokens())
+            pathTokens.add(st.nextToken());
+
+        int maxTokens = 0;
+        CredentialsMapping bestMatch = matches.get(0);
+        for(CredentialsMapping match : matches) {
+            String matchPath = match.getRealm().getPath();
+            if(matchPath.equalsIgnoreCase(path))
+                return match;
+
+            st = new StringTokenizer(matchPath, "/\\");
+            int nbMatchingTokens = 0;
+            while(nbMatchingTokens<pathTokens.size() && st.hasMoreTokens() && st.nextToken().equalsIgnoreCase(pathTokens.get(nbMatchingTokens)))
+                nbMatchingTokens++;
+
+            if(nbMatchingTokens>maxTokens) {
+                maxTokens = nbMatchingTokens;
+                bestMatch = match;
+            }
+        }
+
+        return bestMatch;
+    }
+
+    /**
+     * Looks up the best match for a location.
+     */
+    private static interface Lookup {
+        CredentialsMapping getBestMatch(FileURL location);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.auth;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * An immutable index of {@link CredentialsMapping} instances, which finds the credentials matching a location without
+ * comparing it against every known mapping.
+ *
+ * <p>Mappings are grouped in buckets by scheme and host. Within a bucket, mappings whose realms are equal in scheme,
+ * host and port share a realm group, which stores the paths of their realms in a trie of folder names: the best match
+ * for a location is found by walking the location's path down the trie, in as many steps as the path has folders.</p>
+ *
+ * <p>Matches are returned in the order of the lists the index was created from, and the best match is the one that
+ * <code>CredentialsManager</code> used to find by comparing the location's path against each mapping in turn: the first
+ * mapping whose path is equal to the location's, or else the first of those with the most leading folders in common
+ * with the location.</p>
+ *
+ * <p>Instances never change once created: they can be read concurrently without any locking, and are replaced
+ * when the credentials change.</p>
+ */
+class CredentialsIndex {
+
+    /** Realm groups of each bucket, keyed by lower-case scheme and host */
+    private final Map<String, RealmGroup[]> buckets = new HashMap<String, RealmGroup[]>();
+    /** Total number of indexed mappings */
+    private final int size;
+
+    /**
+     * Creates an index of the given mappings. Mappings of the first list come before those of the following ones.
+     *
+     * @param mappings the mappings to index, in order
+     */
+    CredentialsIndex(CredentialsMapping[]... mappings) {
+        Map<String, List<RealmGroup>> groups = new HashMap<String, List<RealmGroup>>();
+        int size = 0;
+
+        for(CredentialsMapping[] list : mappings) {
+            for(CredentialsMapping mapping : list) {
+                getGroup(groups, mapping.getRealm()).add(mapping);
+                size++;
+            }
+        }
+
+        for(Map.Entry<String, List<RealmGroup>> bucket : groups.entrySet()) {
+            for(RealmGroup group : bucket.getValue())
+                group.trim();
+            buckets.put(bucket.getKey(), bucket.getValue().toArray(new RealmGroup[bucket.getValue().size()]));
+        }
+        this.size = size;
+    }
+
+    /**
+     * Returns the realm group the given realm belongs to, creating it if necessary.
+     */
+    private static RealmGroup getGroup(Map<String, List<RealmGroup>> groups, FileURL realm) {
+        String key = getBucketKey(realm);
+        List<RealmGroup> bucket = groups.get(key);
+        if(bucket==null) {
+            bucket = new Vector<RealmGroup>();
+            groups.put(key, bucket);
+        }
+
+        for(RealmGroup group : bucket) {
+            if(group.matches(realm))
+                return group;
+        }
+
+        RealmGroup group = new RealmGroup(realm);
+        bucket.add(group);
+
+        return group;
+    }
+
+    /**
+     * Returns the key of the bucket the given location belongs to.
+     */
+    private static String getBucketKey(FileURL location) {
+        String scheme = location.getScheme();
+        String host = location.getHost();
+
+        return (scheme==null?"":scheme.toLowerCase())+"://"+(host==null?"":host.toLowerCase());
+    }
+
+    /**
+     * Returns the mappings matching the given location's scheme, host and port, best match first.
+     *
+     * @param location the location to find credentials for
+     * @return the matching mappings, best match first, empty if there is none
+     */
+    List<CredentialsMapping> getMatches(FileURL location) {
+        List<CredentialsMapping> matches = new Vector<CredentialsMapping>();
+
+        RealmGroup[] bucket = buckets.get(getBucketKey(location));
+        if(bucket==null)
+            return matches;
+
+        for(RealmGroup group : bucket) {
+            if(group.matches(location)) {
+                int bestMatch = group.getBestMatchIndex(location.getPath());
+                matches.add(group.mappings[bestMatch]);
+                for(int i=0; i<group.mappings.length; i++) {
+                    if(i!=bestMatch)
+                        matches.add(group.mappings[i]);
+                }
+                break;
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the number of indexed mappings.
+     *
+     * @return the number of indexed mappings
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Splits the given path into folder names, case-folded so that they can be compared with
+     * <code>String.equals</code> the way <code>String.equalsIgnoreCase</code> compares them.
+     */
+    private static String[] getFolders(String path) {
+        StringTokenizer st = new StringTokenizer(path, "/\\");
+        String folders[] = new String[st.countTokens()];
+        for(int i=0; i<folders.length; i++)
+            folders[i] = fold(st.nextToken());
+
+        return folders;
+    }
+
+    private static String fold(String s) {
+        char chars[] = s.toCharArray();
+        for(int i=0; i<chars.length; i++)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+
+        return new String(chars);
+    }
+
+
+    /**
+     * Mappings whose realms have the same scheme, host and port, in order, with the paths of their realms.
+     */
+    private static class RealmGroup {
+
+        /** Realm of the first mapping of the group, which locations are compared against */
+        private final FileURL realm;
+        /** Mappings of the group, in order */
+        private CredentialsMapping mappings[] = new CredentialsMapping[1];
+        /** Number of mappings of the group */
+        private int nbMappings;
+        /** Index of the first mapping with each case-folded path */
+        private final Map<String, Integer> paths = new HashMap<String, Integer>();
+        /** Root of the trie of realm paths */
+        private final PathNode root = new PathNode();
+
+        private RealmGroup(FileURL realm) {
+            this.realm = realm;
+        }
+
+        /**
+         * Returns <code>true</code> if the given location has the same scheme, host and port as this group's realms.
+         */
+        private boolean matches(FileURL location) {
+            return location.schemeEquals(realm) && location.portEquals(realm) && location.hostEquals(realm);
+        }
+
+        /**
+         * Adds the given mapping to the group, after the ones already added. Only called while the index is being
+         * created.
+         */
+        private void add(CredentialsMapping mapping) {
+            int index = nbMappings++;
+            if(index==mappings.length) {
+                CredentialsMapping grown[] = new CredentialsMapping[index*2];
+                System.arraycopy(mappings, 0, grown, 0, index);
+                mappings = grown;
+            }
+            mappings[index] = mapping;
+
+            String path = mapping.getRealm().getPath();
+            String foldedPath = fold(path);
+            if(!paths.containsKey(foldedPath))
+                paths.put(foldedPath, index);
+
+            // Nodes keep the index of the first mapping of their subtree: indexes only grow
+            PathNode node = root;
+            for(String folder : getFolders(path)) {
+                PathNode child = node.children.get(folder);
+                if(child==null) {
+                    child = new PathNode();
+                    child.firstIndex = index;
+                    node.children.put(folder, child);
+                }
+                node = child;
+            }
+        }
+
+        /**
+         * Trims the mappings array to the number of mappings, once all of them have been added.
+         */
+        private void trim() {
+            if(mappings.length!=nbMappings) {
+                CredentialsMapping trimmed[] = new CredentialsMapping[nbMappings];
+                System.arraycopy(mappings, 0, trimmed, 0, nbMappings);
+                mappings = trimmed;
+            }
+        }
+
+        /**
+         * Returns the index of the mapping whose path best matches the given one.
+         */
+        private int getBestMatchIndex(String path) {
+            Integer perfectMatch = paths.get(fold(path));
+            if(perfectMatch!=null)
+                return perfectMatch;
+
+            // The deepest node reached holds the first mapping with the most folders in common with the path
+            PathNode node = root;
+            for(String folder : getFolders(path)) {
+                PathNode child = node.children.get(folder);
+                if(child==null)
+                    break;
+                node = child;
+            }
+
+            return node.firstIndex;
+        }
+    }
+
+    /**
+     * A node of the trie of realm paths, one per folder.
+     */
+    private static class PathNode {
+        /** Index of the first mapping whose path goes through this node */
+        private int firstIndex;
+        /** Child nodes, keyed by case-folded folder name */
+        private final Map<String, PathNode> children = new HashMap<String, PathNode>(4);
+    }
+}
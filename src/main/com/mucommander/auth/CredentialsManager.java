@@ -18,13 +18,12 @@
 
 package com.mucommander.auth;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.StringTokenizer;
-import java.util.Vector;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +38,8 @@ import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.util.Chmod;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.PersistenceManager;
+import com.mucommander.conf.PersistentStore;
 import com.mucommander.io.backup.BackupOutputStream;
 
 
@@ -62,7 +63,7 @@ public class CredentialsManager {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CredentialsManager.class);
 	
     /** Contains volatile CredentialsMapping instances, lost when the application terminates */
-    private static List<CredentialsMapping> volatileCredentialMappings = new Vector<CredentialsMapping>();
+    private static AlteredVector<CredentialsMapping> volatileCredentialMappings = new AlteredVector<CredentialsMapping>();
 
     /** Contains persistent CredentialsMapping instances, stored to an XML file when the application
      * terminates, and loaded the next time the application is started */
@@ -81,9 +82,35 @@ public class CredentialsManager {
      * We keep a reference to the listener so it doesn't get garbage collected. */
     private static final VectorChangeListener PERSISTENT_CREDENTIALS_VECTOR_CHANGE_LISTENER;    // Don't remove me!
 
+    /** Tracks changes made to the volatile credentials vector, for the same reason as above */
+    private static final VectorChangeListener VOLATILE_CREDENTIALS_VECTOR_CHANGE_LISTENER;     // Don't remove me!
+
     /** True when changes were made after the credentials file was last saved */
     private static boolean saveNeeded;
 
+    /** True while the credentials file is being loaded */
+    private static boolean isLoading;
+
+    /** Held while the credentials file is being written, so that writes do not overlap */
+    private final static Object WRITE_LOCK = new Object();
+
+    /** Saves the credentials file when changes are made to persistent entries */
+    private final static PersistentStore STORE = new PersistentStore() {
+        public String getName() {
+            return "credentials";
+        }
+
+        public void write() throws Exception {
+            writeCredentials(false);
+        }
+    };
+
+    /** Index of the volatile and persistent credentials, <code>null</code> when it must be rebuilt */
+    private static volatile CredentialsIndex index;
+
+    /** Incremented each time the volatile or persistent credentials change */
+    private static volatile int nbChanges;
+
     /** Create a singleton instance, needs to be referenced so that it's not garbage collected (AlteredVector
       * stores VectorChangeListener as weak references) */
     private static CredentialsManager singleton = new CredentialsManager();
@@ -93,19 +120,73 @@ public class CredentialsManager {
         // Note: we must keep a reference to the listener, as it would otherwise be garbage collected.
         persistentCredentialMappings.addVectorChangeListener(PERSISTENT_CREDENTIALS_VECTOR_CHANGE_LISTENER = new VectorChangeListener() {
             public void elementsAdded(int startIndex, int nbAdded) {
-                saveNeeded = true;
+                setSaveNeeded();
+                invalidateIndex();
             }
 
             public void elementsRemoved(int startIndex, int nbRemoved) {
-                saveNeeded = true;
+                setSaveNeeded();
+                invalidateIndex();
             }
 
             public void elementChanged(int index) {
-                saveNeeded = true;
+                setSaveNeeded();
+                invalidateIndex();
+            }
+        });
+
+        volatileCredentialMappings.addVectorChangeListener(VOLATILE_CREDENTIALS_VECTOR_CHANGE_LISTENER = new VectorChangeListener() {
+            public void elementsAdded(int startIndex, int nbAdded) {
+                invalidateIndex();
+            }
+
+            public void elementsRemoved(int startIndex, int nbRemoved) {
+                invalidateIndex();
+            }
+
+            public void elementChanged(int index) {
+                invalidateIndex();
             }
         });
     }
 
+    /**
+     * Discards the credentials index, which will be rebuilt the next time credentials are looked up.
+     */
+    private static void invalidateIndex() {
+        nbChanges++;
+        index = null;
+    }
+
+    /**
+     * Returns the index of the volatile and persistent credentials, rebuilding it if the credentials changed since
+     * it was last built. Lookups don't lock anything unless the index must be rebuilt.
+     *
+     * @return the index of the volatile and persistent credentials
+     */
+    private static CredentialsIndex getIndex() {
+        CredentialsIndex currentIndex = index;
+        if(currentIndex!=null)
+            return currentIndex;
+
+        synchronized(CredentialsIndex.class) {
+            if((currentIndex = index)==null) {
+                int changes = nbChanges;
+                currentIndex = new CredentialsIndex(
+                        volatileCredentialMappings.toArray(new CredentialsMapping[0]),
+                        persistentCredentialMappings.toArray(new CredentialsMapping[0]));
+
+                // Do not keep an index that missed a change made while it was being built
+                if(changes==nbChanges)
+                    index = currentIndex;
+
+                LOGGER.trace("indexed "+currentIndex.size()+" credentials");
+            }
+        }
+
+        return currentIndex;
+    }
+
 
     /**
      * Returns the path to the credentials file.
@@ -166,7 +247,9 @@ public class CredentialsManager {
         if(credentialsFile.exists()) {
         	LOGGER.debug("Found credentials file: "+credentialsFile.getAbsolutePath());
             // Parse the credentials file
-            new CredentialsParser().parse(credentialsFile);
+            isLoading = true;
+            try {new CredentialsParser().parse(credentialsFile);}
+            finally {isLoading = false;}
             LOGGER.debug("Credentials file loaded.");
         }
         else
@@ -182,20 +265,37 @@ public class CredentialsManager {
      * @throws IOException if an I/O error occurs.
      */
     public static void writeCredentials(boolean forceWrite) throws IOException {
-        // Write credentials file only if changes were made to persistent entries since last write, or if write is forced
-        if(!(forceWrite || saveNeeded))
-            return;
+        synchronized(WRITE_LOCK) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            // Serializes the credentials in memory, so that they are not locked while the file is being written.
+            synchronized(persistentCredentialMappings) {
+                // Write credentials file only if changes were made to persistent entries since last write, or if write is forced
+                if(!(forceWrite || saveNeeded))
+                    return;
+                CredentialsWriter.write(buffer);
+                saveNeeded = false;
+            }
 
-        BackupOutputStream out = null;
-        try {
-            credentialsFile = getCredentialsFile();
-            CredentialsWriter.write(out = new BackupOutputStream(credentialsFile));
-            saveNeeded = false;
-        }
-        finally {
-            if(out != null) {
-                try {out.close();}
-                catch(Exception e) {}
+            BackupOutputStream out = null;
+            boolean written = false;
+            try {
+                credentialsFile = getCredentialsFile();
+                buffer.writeTo(out = new BackupOutputStream(credentialsFile));
+                written = true;
+            }
+            finally {
+                if(out != null) {
+                    try {out.close();}
+                    catch(Exception e) {}
+                }
+
+                // The credentials will be written again on the next change or on shutdown
+                if(!written) {
+                    synchronized(persistentCredentialMappings) {
+                        saveNeeded = true;
+                    }
+                }
             }
         }
 
@@ -209,6 +309,26 @@ public class CredentialsManager {
         	LOGGER.warn("Credentials file could not be chmod!");
     }
 
+    /**
+     * Returns the {@link PersistentStore} the credentials are saved through. Writing it writes the credentials file
+     * only if changes were made to persistent entries since last write.
+     *
+     * @return the {@link PersistentStore} the credentials are saved through
+     */
+    public static PersistentStore getPersistentStore() {
+        return STORE;
+    }
+
+    /**
+     * Marks the persistent credentials as needing to be saved, and schedules their saving unless the credentials file
+     * is being loaded.
+     */
+    private static void setSaveNeeded() {
+        saveNeeded = true;
+        if(!isLoading)
+            PersistenceManager.markDirty(STORE);
+    }
+
 
     /**
      * Returns an array of {@link CredentialsMapping} that match the location designated by the given {@link FileURL}
@@ -255,16 +375,9 @@ public class CredentialsManager {
      * @return a Vector of CredentialsMapping matching the given URL's scheme and host, best match at the first position
      */
     private static List<CredentialsMapping> getMatchingCredentialsV(FileURL location) {
-        List<CredentialsMapping> matchesV = new Vector<CredentialsMapping>();
-
-        findMatches(location, volatileCredentialMappings, matchesV);
-        findMatches(location, persistentCredentialMappings, matchesV);
+        List<CredentialsMapping> matchesV = getIndex().getMatches(location);
 
-        // Find the best match and move it at the first position in the vector
-        int bestMatchIndex = getBestMatchIndex(location, matchesV);
-        if(bestMatchIndex!=-1) {
-            matchesV.add(0, matchesV.remove(bestMatchIndex));
-        }
+        LOGGER.trace("returning matches="+matchesV);
 
         return matchesV;
     }
@@ -361,101 +474,6 @@ public class CredentialsManager {
     }
 
 
-    /**
-     * Looks for credentials matching the specified location in the given credentials Vector and adds them to the given
-     * matches Vector.
-     *
-     * @param location the location to find matching credentials for
-     * @param credentials the Vector containing the CredentialsMapping instances to compare to the given location
-     * @param matches the Vector where matching CredentialsMapping instances will be added
-     */
-    private static void findMatches(FileURL location, List<CredentialsMapping> credentials, List<CredentialsMapping> matches) {
-        FileURL tempRealm;
-
-        int nbEntries = credentials.size();
-        for(CredentialsMapping tempCredentialsMapping: credentials) {
-            tempRealm = tempCredentialsMapping.getRealm();
-            if(location.schemeEquals(tempRealm)
-               && location.portEquals(tempRealm)
-               && location.hostEquals(tempRealm))
-                matches.add(tempCredentialsMapping);
-        }
-
-        LOGGER.trace("returning matches="+matches);
-    }
-
-    /**
-     * Finds are returns the index of the CredentialsMapping instance that best matches the given location
-     * amongst the provided matching CredentialsMapping Vector, or -1 if the matches Vector is empty.
-     *
-     * <p>
-     * The path of each matching CredentialsMapping' location is compared to the provided location's path: the more
-     * folder parts match, the better. If both paths are equal, then the CredentialsMapping index is returned (perfect match).
-     * </p>
-     *
-     * @param location the location to be compared against CredentialsMapping matches
-     * @param matches CredentialsMapping instances matching the given location
-     * @return the CredentialsMapping instance that best matches the given location, -1 if the given matches Vector is empty.
-     */
-    private static int getBestMatchIndex(FileURL location, List<CredentialsMapping> matches) {
-        if(matches.size()==0)
-            return -1;
-
-        // Splits the provided location's path into an array of folder tokens (e.g. "/home/maxence" -> ["home","maxence"])
-        String path = location.getPath();
-        List<String> pathTokensV = new Vector<String>();
-        StringTokenizer st = new StringTokenizer(path, "/\\");
-        while(st.hasMoreTokens()) {
-            pathTokensV.add(st.nextToken());
-        }
-        int nbTokens = pathTokensV.size();
-        String pathTokens[] = new String[nbTokens];
-        pathTokensV.toArray(pathTokens);
-
-        CredentialsMapping tempCredentialsMapping;
-        FileURL tempURL;
-        String tempPath;
-        int nbMatchingToken;
-        int maxTokens = 0;
-        int bestMatchIndex = 0;
-
-        // Compares the location's path against all the one of all CredentialsMapping instances
-        int nbMatches = matches.size();
-        for(int i=0; i<nbMatches; i++) {
-            tempCredentialsMapping = matches.get(i);
-            tempURL = tempCredentialsMapping.getRealm();
-            tempPath = tempURL.getPath();
-
-            // We found a perfect match (same path), it can't get any better than this, return the CredentialsMapping' index
-            if(tempPath.equalsIgnoreCase(path))
-                return i;
-
-            // Split the current CredentialsMapping' location into folder tokens and count the ones that match
-            // the target location's tokens.
-            // A few examples to illustrate:
-            // /home and /home/maxence -> nbMatchingToken = 1
-            // /var/log and /usr -> nbMatchingToken = 0
-            st = new StringTokenizer(tempPath, "/\\");
-            nbMatchingToken = 0;
-            for(int j=0; j<nbTokens && st.hasMoreTokens(); j++) {
-                if(st.nextToken().equalsIgnoreCase(pathTokens[nbMatchingToken]))
-                    nbMatchingToken++;
-                else
-                    break;
-            }
-
-            if (nbMatchingToken>maxTokens) {
-                // We just found a better match
-                maxTokens = nbMatchingToken;
-                bestMatchIndex = i;
-            }
-        }
-
-        LOGGER.trace("returning bestMatchIndex="+bestMatchIndex);
-
-        return bestMatchIndex;
-    }
-
     /**
      * Replaces any object that's equal to the given one in the <code>Vector</code>, preserving its position. If the
      * vector contains no such object, it is added to the end of the vector.
@@ -18,16 +18,20 @@
 
 package com.mucommander.bonjour;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.net.Inet6Address;
 import java.net.MalformedURLException;
 import java.util.List;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceEvent;
 import javax.jmdns.ServiceInfo;
 import javax.jmdns.ServiceListener;
+import javax.swing.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +45,10 @@ import com.mucommander.commons.file.FileURL;
  *
  * <p>Use {@link #getServices()} to get a list of currently available Bonjour services.
  *
+ * <p>Discovered services are resolved by a {@link BonjourResolver}, which limits the number of concurrent resolutions
+ * and caches resolved services. Changes to the list of services are reported to registered
+ * {@link BonjourDirectoryListener listeners} in batches.
+ *
  * @author Maxence Bernard
  * @see BonjourMenu
  */
@@ -53,6 +61,10 @@ public class BonjourDirectory implements ServiceListener {
     private static JmDNS jmDNS;
     /** List of discovered and currently active Bonjour services */
     private static List<BonjourService> services = new Vector<BonjourService>();
+    /** Resolves discovered services, <code>null</code> when Bonjour is not active */
+    private static volatile BonjourResolver resolver;
+    /** Listeners notified of changes to the list of services */
+    private static WeakHashMap<BonjourDirectoryListener, ?> listeners = new WeakHashMap<BonjourDirectoryListener, Object>();
 
     /** Known Bonjour/Zeroconf service types and their corresponding protocol */
     private final static String KNOWN_SERVICE_TYPES[][] = {
@@ -62,8 +74,19 @@ public class BonjourDirectory implements ServiceListener {
         {"_smb._tcp.local.", FileProtocols.SMB}
     };
 
-    /** Number of milliseconds to wait for service info resolution before giving up */
-    private final static int SERVICE_RESOLUTION_TIMEOUT = 10000;
+    /** Number of milliseconds during which changes to the list of services are batched before listeners are notified */
+    private final static int LISTENERS_NOTIFICATION_DELAY = 500;
+
+    /** Notifies listeners of the changes made since it was started */
+    private final static Timer LISTENERS_NOTIFICATION_TIMER = new Timer(LISTENERS_NOTIFICATION_DELAY, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            fireServicesChanged();
+        }
+    });
+
+    static {
+        LISTENERS_NOTIFICATION_TIMER.setRepeats(false);
+    }
 
 
     /**
@@ -85,6 +108,7 @@ public class BonjourDirectory implements ServiceListener {
             // Start JmDNS
             try {
                 jmDNS = JmDNS.create();
+                resolver = new BonjourResolver(new JmDNSSource(jmDNS), instance.new ResolverCallback());
 
                 // Listens to service events for known service types
                 int nbServices = KNOWN_SERVICE_TYPES.length;
@@ -97,9 +121,12 @@ public class BonjourDirectory implements ServiceListener {
         }
         else if(!enabled && jmDNS!=null) {
             // Shutdown JmDNS
+            resolver.shutdown();
+            resolver = null;
             jmDNS.close();
             services.clear();
             jmDNS = null;
+            servicesChanged();
         }
     }
 
@@ -124,6 +151,70 @@ public class BonjourDirectory implements ServiceListener {
     }
 
 
+    /**
+     * Adds the given listener to the list of listeners notified of changes to the list of services.
+     * <p>
+     * Listeners are stored as weak references, a reference to the listener must be kept by the caller.
+     * </p>
+     *
+     * @param listener the listener to add
+     */
+    public static void addBonjourDirectoryListener(BonjourDirectoryListener listener) {
+        synchronized(listeners) {
+            listeners.put(listener, null);
+        }
+    }
+
+    /**
+     * Removes the given listener from the list of listeners notified of changes to the list of services.
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeBonjourDirectoryListener(BonjourDirectoryListener listener) {
+        synchronized(listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Schedules the notification of listeners, unless it is already scheduled: changes made until then are reported
+     * by the same notification.
+     */
+    private static void servicesChanged() {
+        if(!LISTENERS_NOTIFICATION_TIMER.isRunning())
+            LISTENERS_NOTIFICATION_TIMER.start();
+    }
+
+    /**
+     * Notifies listeners that the list of services changed. Called in the event dispatch thread.
+     */
+    private static void fireServicesChanged() {
+        BonjourDirectoryListener listenersArray[];
+        synchronized(listeners) {
+            listenersArray = listeners.keySet().toArray(new BonjourDirectoryListener[0]);
+        }
+
+        for(BonjourDirectoryListener listener : listenersArray)
+            listener.servicesChanged();
+    }
+
+
+    /**
+     * Adds the given service to the list of current Bonjour services, unless it is already in it.
+     *
+     * @param bs the service to add
+     */
+    private static void addService(BonjourService bs) {
+        // Synchronized to properly handle duplicate calls
+        synchronized(instance) {
+            if(bs!=null && !services.contains(bs)) {
+            	LOGGER.debug("BonjourService "+bs+" added");
+                services.add(bs);
+                servicesChanged();
+            }
+        }
+    }
+
     /**
      * Wraps a Bonjour service into a {@link BonjourService} object and returns it. Returns <code>null</code> if
      * the service type doesn't correspond to any of the supported protocols, or if the service URL is malformed.
@@ -161,14 +252,11 @@ public class BonjourDirectory implements ServiceListener {
         if(!isActive())
             return;
 
-        // Resolve service info in a separate thread, serviceResolved() will be called once service info has been resolved.
-        // Not spawning a thread often leads to service info loss (serviceResolved() not called).
-        new Thread() {
-            @Override
-            public void run() {
-                jmDNS.requestServiceInfo(serviceEvent.getType(), serviceEvent.getName(), SERVICE_RESOLUTION_TIMEOUT);
-            }
-        }.start();
+        // Resolve service info in one of the resolver's threads.
+        // Not resolving in a separate thread often leads to service info loss (serviceResolved() not called).
+        BonjourResolver currentResolver = resolver;
+        if(currentResolver!=null)
+            currentResolver.resolve(serviceEvent.getType(), serviceEvent.getName());
     }
 
     public void serviceResolved(ServiceEvent serviceEvent) {
@@ -187,14 +275,7 @@ public class BonjourDirectory implements ServiceListener {
                 return;
             }
 
-            BonjourService bs = createBonjourService(serviceInfo);
-            // Synchronized to properly handle duplicate calls
-            synchronized(instance) {
-                if(bs!=null && !services.contains(bs)) {
-                	LOGGER.debug("BonjourService "+bs+" added");
-                    services.add(bs);
-                }
-            }
+            addService(createBonjourService(serviceInfo));
         }
     }
 
@@ -205,6 +286,11 @@ public class BonjourDirectory implements ServiceListener {
         if(!isActive())
             return;
 
+        // The service may come back with different records
+        BonjourResolver currentResolver = resolver;
+        if(currentResolver!=null)
+            currentResolver.invalidate(serviceEvent.getType(), serviceEvent.getName());
+
         // Looks for an existing BonjourService instance corresponding to the service being removed and removes it from
         // the list of current Bonjour services.
         // ServiceInfo should be available in JmDNS's cache.
@@ -223,8 +309,46 @@ public class BonjourDirectory implements ServiceListener {
                 if(bs!=null && services.contains(bs)) {
                 	LOGGER.debug("BonjourService "+bs+" removed");
                     services.remove(bs);
+                    servicesChanged();
                 }
             }
         }
     }
+
+
+    /**
+     * Adds the services resolved by the {@link BonjourResolver} to the list of current Bonjour services.
+     */
+    private class ResolverCallback implements BonjourResolver.Callback {
+        public void serviceResolved(String type, String name, BonjourService service) {
+            // Ignore if Bonjour has been disabled
+            if(isActive())
+                addService(service);
+        }
+    }
+
+    /**
+     * Resolves services with JmDNS.
+     */
+    private static class JmDNSSource implements BonjourResolver.Source {
+        private final JmDNS jmDNS;
+
+        private JmDNSSource(JmDNS jmDNS) {
+            this.jmDNS = jmDNS;
+        }
+
+        public BonjourService resolve(String type, String name, int timeout) {
+            ServiceInfo serviceInfo = jmDNS.getServiceInfo(type, name, timeout);
+            if(serviceInfo==null)
+                return null;
+
+            if(serviceInfo.getInetAddress() instanceof Inet6Address) {
+                // IPv6 addresses not supported at this time + they seem not to be correctly handled by ServiceInfo
+                LOGGER.debug("ignoring IPv6 service");
+                return null;
+            }
+
+            return createBonjourService(serviceInfo);
+        }
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.bonjour;
+
+/**
+ * Interface to be implemented by classes that wish to be notified of changes to the list of services available in
+ * {@link BonjourDirectory}.
+ *
+ * <p>Changes are batched: listeners are notified at most once in a short period of time, however many services
+ * appeared or disappeared in that period, and always in the event dispatch thread.</p>
+ *
+ * @see BonjourDirectory#addBonjourDirectoryListener(BonjourDirectoryListener)
+ */
+public interface BonjourDirectoryListener {
+
+    /**
+     * Called when services have been added to or removed from the list of available services.
+     */
+    public void servicesChanged();
+}
@@ -32,12 +32,13 @@ import javax.swing.event.MenuListener;
  * (as returned {@link BonjourDirectory#getServices()} displaying the Bonjour service's name. When an item is clicked,
  * the action returned by {@link #getMenuItemAction(BonjourService)} is returned.
  *
- * <p>Note: the items list is refreshed each time the menu is selected. In other words, a new instance of BonjourMenu
- * does not have to be created in order to see new Bonjour services.</p>
+ * <p>Note: the items list is refreshed each time the menu is selected, and while it is showing, as services are
+ * discovered. In other words, a new instance of BonjourMenu does not have to be created in order to see new Bonjour
+ * services.</p>
  *
  * @author Maxence Bernard
  */
-public abstract class BonjourMenu extends JMenu implements MenuListener {
+public abstract class BonjourMenu extends JMenu implements MenuListener, BonjourDirectoryListener {
 
     /**
      * Creates a new instance of <code>BonjourMenu</code>.
@@ -49,6 +50,8 @@ public abstract class BonjourMenu extends JMenu implements MenuListener {
 
         // Menu items will be added when menu gets selected
         addMenuListener(this);
+        // and updated while it is showing
+        BonjourDirectory.addBonjourDirectoryListener(this);
     }
 
 
@@ -67,6 +70,13 @@ public abstract class BonjourMenu extends JMenu implements MenuListener {
     /////////////////////////////////
 
     public void menuSelected(MenuEvent menuEvent) {
+        createItems();
+    }
+
+    /**
+     * Replaces the menu items with an item for each Bonjour service currently available.
+     */
+    private void createItems() {
         // Remove previous menu items (if any)
         removeAll();
 
@@ -103,4 +113,17 @@ public abstract class BonjourMenu extends JMenu implements MenuListener {
 
     public void menuCanceled(MenuEvent menuEvent) {
     }
+
+
+    /////////////////////////////////////////////
+    // BonjourDirectoryListener implementation //
+    /////////////////////////////////////////////
+
+    public void servicesChanged() {
+        // Items are created when the menu gets selected, only update them if it is showing
+        if(isPopupMenuVisible()) {
+            createItems();
+            getPopupMenu().pack();
+        }
+    }
 }
@@ -0,0 +1,354 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.bonjour;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the services discovered by {@link BonjourDirectory} on a small pool of threads, instead of a thread per
+ * service.
+ *
+ * <p>Resolutions are started at a limited rate, so that a network advertising hundreds of services doesn't trigger
+ * hundreds of simultaneous queries. Resolved services are cached for as long as their records live: a service that is
+ * announced again before its records expire is not resolved again. Duplicate requests for a service whose resolution
+ * is pending are ignored.</p>
+ *
+ * <p>The resolution itself is delegated to a {@link Source}, which queries the network through JmDNS in
+ * <code>BonjourDirectory</code>, and can be replaced by an in-process stand-in.</p>
+ *
+ * @see BonjourDirectory
+ */
+class BonjourResolver {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BonjourResolver.class);
+
+    /** Number of threads resolving services */
+    final static int DEFAULT_NB_THREADS = 2;
+    /** Minimum number of milliseconds between the start of two resolutions */
+    final static long DEFAULT_RESOLUTION_INTERVAL = 50;
+    /** Number of milliseconds resolved services are cached: the TTL of SRV and address records, as recommended by RFC 6762 */
+    final static long DEFAULT_TIME_TO_LIVE = 120000;
+    /** Number of milliseconds to wait for service info resolution before giving up */
+    final static int DEFAULT_RESOLUTION_TIMEOUT = 10000;
+
+    /** Resolves services */
+    private final Source source;
+    /** Notified of resolved services */
+    private final Callback callback;
+    /** Pool of threads resolving services */
+    private final ExecutorService executor;
+    /** Minimum number of nanoseconds between the start of two resolutions */
+    private final long resolutionInterval;
+    /** Number of milliseconds resolved services are cached */
+    private final long timeToLive;
+    /** Number of milliseconds to wait for a resolution before giving up */
+    private final int resolutionTimeout;
+
+    /** Resolved services and their expiration date, keyed by qualified name */
+    private final Map<String, CachedService> cache = new HashMap<String, CachedService>();
+    /** Qualified names of the services being resolved or waiting to be */
+    private final Set<String> pending = new HashSet<String>();
+    /** Time at which the next resolution can be started, in nanoseconds */
+    private long nextResolutionTime;
+
+    /** Number of services resolved successfully */
+    private int nbResolved;
+    /** Number of resolutions that failed or timed out */
+    private int nbFailed;
+    /** Number of requests answered from the cache */
+    private int nbCacheHits;
+    /** Total time spent resolving services, in nanoseconds */
+    private long totalLatency;
+    /** Longest time spent resolving a service, in nanoseconds */
+    private long maxLatency;
+
+    /**
+     * Creates a new resolver with the default number of threads, rate, TTL and timeout.
+     *
+     * @param source resolves services
+     * @param callback notified of resolved services
+     */
+    BonjourResolver(Source source, Callback callback) {
+        this(source, callback, DEFAULT_NB_THREADS, DEFAULT_RESOLUTION_INTERVAL, DEFAULT_TIME_TO_LIVE, DEFAULT_RESOLUTION_TIMEOUT);
+    }
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param source resolves services
+     * @param callback notified of resolved services
+     * @param nbThreads maximum number of services resolved concurrently
+     * @param resolutionInterval minimum number of milliseconds between the start of two resolutions
+     * @param timeToLive number of milliseconds resolved services are cached
+     * @param resolutionTimeout number of milliseconds to wait for a resolution before giving up
+     */
+    BonjourResolver(Source source, Callback callback, int nbThreads, long resolutionInterval, long timeToLive, int resolutionTimeout) {
+        this.source = source;
+        this.callback = callback;
+        this.resolutionInterval = resolutionInterval*1000000;
+        this.timeToLive = timeToLive;
+        this.resolutionTimeout = resolutionTimeout;
+
+        executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            private int threadNumber;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Bonjour resolver-"+(++threadNumber));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the key services are cached under.
+     */
+    private static String getKey(String type, String name) {
+        return name+"."+type;
+    }
+
+    /**
+     * Requests the resolution of the given service. The callback is notified in the calling thread if the service is
+     * cached, in one of the pool's threads once it has been resolved otherwise. Requests for a service whose
+     * resolution is pending are ignored.
+     *
+     * @param type the service's type, e.g. <code>_ftp._tcp.local.</code>
+     * @param name the service's unqualified name
+     */
+    void resolve(final String type, final String name) {
+        final String key = getKey(type, name);
+        BonjourService cachedService = null;
+
+        synchronized(this) {
+            CachedService cached = cache.get(key);
+            if(cached!=null && cached.expirationDate>System.currentTimeMillis()) {
+                nbCacheHits++;
+                cachedService = cached.service;
+            }
+            else {
+                cache.remove(key);
+                if(!pending.add(key))
+                    return;
+            }
+        }
+
+        if(cachedService!=null) {
+            callback.serviceResolved(type, name, cachedService);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    resolveNow(type, name, key);
+                }
+            });
+        }
+        catch(RuntimeException e) {
+            // The resolver has been shut down
+            synchronized(this) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Resolves the given service in the calling pool thread, once the rate limit allows it.
+     */
+    private void resolveNow(String type, String name, String key) {
+        BonjourService service = null;
+        long latency = 0;
+        try {
+            waitForResolutionSlot();
+
+            long startTime = System.nanoTime();
+            service = source.resolve(type, name, resolutionTimeout);
+            latency = System.nanoTime() - startTime;
+        }
+        catch(InterruptedException e) {
+            // The resolver has been shut down
+        }
+        catch(RuntimeException e) {
+            LOGGER.debug("Could not resolve "+key, e);
+        }
+
+        synchronized(this) {
+            pending.remove(key);
+            if(executor.isShutdown())
+                return;
+
+            if(service==null) {
+                nbFailed++;
+            }
+            else {
+                nbResolved++;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                cache.put(key, new CachedService(service, System.currentTimeMillis()+timeToLive));
+            }
+        }
+
+        if(service==null) {
+            LOGGER.debug("Could not resolve "+key);
+            return;
+        }
+
+        LOGGER.debug("Resolved "+key+" in "+latency/1000000+"ms (average "+getAverageLatency()+"ms)");
+        callback.serviceResolved(type, name, service);
+    }
+
+    /**
+     * Blocks the calling thread until the rate limit allows another resolution to start.
+     */
+    private void waitForResolutionSlot() throws InterruptedException {
+        long delay;
+        synchronized(this) {
+            long now = System.nanoTime();
+            long startTime = Math.max(now, nextResolutionTime);
+            nextResolutionTime = startTime + resolutionInterval;
+            delay = startTime - now;
+        }
+
+        if(delay>0)
+            Thread.sleep(delay/1000000, (int)(delay%1000000));
+    }
+
+    /**
+     * Removes the given service from the cache, so that it is resolved again the next time it is requested. Must be
+     * called when a service is removed: it is announced again with new records if it comes back.
+     *
+     * @param type the service's type
+     * @param name the service's unqualified name
+     */
+    synchronized void invalidate(String type, String name) {
+        cache.remove(getKey(type, name));
+    }
+
+    /**
+     * Stops resolving services: pending resolutions are abandoned and the callback is not notified anymore.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+
+        synchronized(this) {
+            cache.clear();
+            pending.clear();
+        }
+
+        LOGGER.debug("Shut down: "+nbResolved+" resolved, "+nbFailed+" failed, "+nbCacheHits+" cache hits, average latency "+getAverageLatency()+"ms, max "+getMaxLatency()+"ms");
+    }
+
+    /**
+     * Returns the number of services resolved so far, not counting those answered from the cache.
+     *
+     * @return the number of services resolved so far
+     */
+    synchronized int getResolvedCount() {
+        return nbResolved;
+    }
+
+    /**
+     * Returns the number of resolutions that failed or timed out so far.
+     *
+     * @return the number of resolutions that failed so far
+     */
+    synchronized int getFailedCount() {
+        return nbFailed;
+    }
+
+    /**
+     * Returns the number of requests answered from the cache so far.
+     *
+     * @return the number of requests answered from the cache so far
+     */
+    synchronized int getCacheHitCount() {
+        return nbCacheHits;
+    }
+
+    /**
+     * Returns the average time it took to resolve a service, in milliseconds.
+     *
+     * @return the average time it took to resolve a service, in milliseconds
+     */
+    synchronized long getAverageLatency() {
+        return nbResolved==0?0:totalLatency/nbResolved/1000000;
+    }
+
+    /**
+     * Returns the longest time it took to resolve a service, in milliseconds.
+     *
+     * @return the longest time it took to resolve a service, in milliseconds
+     */
+    synchronized long getMaxLatency() {
+        return maxLatency/1000000;
+    }
+
+
+    /**
+     * Resolves services for a {@link BonjourResolver}.
+     */
+    static interface Source {
+
+        /**
+         * Resolves the given service, blocking the calling thread until it is resolved or the timeout elapses.
+         *
+         * @param type the service's type
+         * @param name the service's unqualified name
+         * @param timeout number of milliseconds to wait for the resolution before giving up
+         * @return the resolved service, <code>null</code> if it couldn't be resolved or isn't supported
+         */
+        BonjourService resolve(String type, String name, int timeout);
+    }
+
+    /**
+     * Notified by a {@link BonjourResolver} of resolved services.
+     */
+    static interface Callback {
+
+        /**
+         * Called when a service has been resolved, or found in the cache.
+         *
+         * @param type the service's type
+         * @param name the service's unqualified name
+         * @param service the resolved service
+         */
+        void serviceResolved(String type, String name, BonjourService service);
+    }
+
+    /**
+     * A resolved service and the date its records expire.
+     */
+    private static class CachedService {
+        private final BonjourService service;
+        private final long expirationDate;
+
+        private CachedService(BonjourService service, long expirationDate) {
+            this.service = service;
+            this.expirationDate = expirationDate;
+        }
+    }
+}
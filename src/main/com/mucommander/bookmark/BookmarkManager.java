@@ -23,6 +23,8 @@ import com.mucommander.commons.collections.AlteredVector;
 import com.mucommander.commons.collections.VectorChangeListener;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.conf.PersistenceManager;
+import com.mucommander.conf.PersistentStore;
 import com.mucommander.io.backup.BackupInputStream;
 import com.mucommander.io.backup.BackupOutputStream;
 
@@ -59,6 +61,20 @@ public class BookmarkManager implements VectorChangeListener {
     /** True when changes were made after the bookmarks file was last saved */
     private static boolean saveNeeded;
 
+    /** Held while the bookmarks file is being written, so that writes do not overlap */
+    private final static Object WRITE_LOCK = new Object();
+
+    /** Saves the bookmarks file when changes are made to the bookmarks */
+    private final static PersistentStore STORE = new PersistentStore() {
+        public String getName() {
+            return "bookmarks";
+        }
+
+        public void write() throws Exception {
+            writeBookmarks(false);
+        }
+    };
+
     /** Last bookmark change timestamp */
     private static long lastBookmarkChangeTime;
 
@@ -220,25 +236,58 @@ public class BookmarkManager implements VectorChangeListener {
      * @throws IOException if an I/O error occurs.
      * @throws BookmarkException if an error occurs.
      */
-    public static synchronized void writeBookmarks(boolean forceWrite) throws IOException, BookmarkException {
-        OutputStream out;
+    public static void writeBookmarks(boolean forceWrite) throws IOException, BookmarkException {
+        synchronized(WRITE_LOCK) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            // Serializes the bookmarks in memory, so that they are not locked while the file is being written.
+            synchronized(BookmarkManager.class) {
+                // Write bookmarks file only if changes were made to the bookmarks since last write, or if write is forced.
+                if(!(forceWrite || saveNeeded))
+                    return;
+                buildBookmarks(getBookmarkWriter(buffer));
+                saveNeeded = false;
+            }
 
-        // Write bookmarks file only if changes were made to the bookmarks since last write, or if write is forced.
-        if(!(forceWrite || saveNeeded))
-            return;
-        out = null;
-        try {
-            buildBookmarks(getBookmarkWriter(out = new BackupOutputStream(getBookmarksFile())));
-            saveNeeded = false;
-        }
-        finally {
-            if(out != null) {
-                try {out.close();}
-                catch(Exception e) {}
+            OutputStream out = null;
+            boolean written = false;
+            try {
+                buffer.writeTo(out = new BackupOutputStream(getBookmarksFile()));
+                written = true;
+            }
+            finally {
+                if(out != null) {
+                    try {out.close();}
+                    catch(Exception e) {}
+                }
+
+                // The bookmarks will be written again on the next change or on shutdown
+                if(!written) {
+                    synchronized(BookmarkManager.class) {
+                        saveNeeded = true;
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Returns the {@link PersistentStore} the bookmarks are saved through. Writing it writes the bookmarks file
+     * only if changes were made to the bookmarks since last write.
+     * @return the {@link PersistentStore} the bookmarks are saved through.
+     */
+    public static PersistentStore getPersistentStore() {
+        return STORE;
+    }
+
+    /**
+     * Marks the bookmarks as needing to be saved, and schedules their saving.
+     */
+    private static synchronized void setSaveNeeded() {
+        saveNeeded = true;
+        PersistenceManager.markDirty(STORE);
+    }
+
 
 
     // - Bookmarks access ------------------------------------------------------
@@ -321,7 +370,7 @@ public class BookmarkManager implements VectorChangeListener {
     public static void fireBookmarksChanged() {
         // Bookmarks file will need to be saved
         if(!isLoading)
-            saveNeeded = true;
+            setSaveNeeded();
 
         lastBookmarkChangeTime = System.currentTimeMillis();
 
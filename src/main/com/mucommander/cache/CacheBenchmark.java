@@ -0,0 +1,122 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.cache;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the throughput of {@link FastLRUCache} and {@link ConcurrentLRUCache} when accessed by an increasing number
+ * of threads. Results are printed on the standard output.
+ *
+ * <p>Each thread performs a mix of 90% lookups and 10% insertions of keys following a skewed distribution, a few keys
+ * being accessed much more often than the others, in a cache that can hold a tenth of the keys.</p>
+ */
+public class CacheBenchmark {
+
+    /** Number of distinct keys */
+    private final static int NB_KEYS = 100000;
+    /** Capacity of the benchmarked caches */
+    private final static int CAPACITY = NB_KEYS/10;
+    /** Number of operations performed by each thread in a run */
+    private final static int NB_OPERATIONS = 1000000;
+    /** Number of runs performed for each thread count before being measured */
+    private final static int NB_WARMUP_RUNS = 2;
+    /** Thread counts the caches are benchmarked with */
+    private final static int NB_THREADS[] = {1, 2, 4, 8, 16};
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private CacheBenchmark() {}
+
+    public static void main(String args[]) throws InterruptedException {
+        PrintStream out = System.out;
+
+        // Keys are generated up front so that their generation doesn't weigh on the results
+        Integer keys[] = new Integer[NB_OPERATIONS];
+        Random random = new Random(0);
+        for(int i=0; i<NB_OPERATIONS; i++) {
+            // Squaring a uniform distribution favors small keys
+            double d = random.nextDouble();
+            keys[i] = (int)(d*d*NB_KEYS);
+        }
+
+        out.println("Processors: "+Runtime.getRuntime().availableProcessors());
+        for(int nbThreads : NB_THREADS) {
+            out.println(nbThreads+" thread(s):");
+            benchmark(out, "FastLRUCache", new FastLRUCache<Integer, Integer>(CAPACITY), keys, nbThreads);
+
+            ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>(CAPACITY);
+            benchmark(out, "ConcurrentLRUCache", cache, keys, nbThreads);
+            out.println("    "+cache.getHitCount()+" hits, "+cache.getMissCount()+" misses, "+cache.getEvictionCount()+" evictions");
+        }
+    }
+
+    private static void benchmark(PrintStream out, String name, LRUCache<Integer, Integer> cache, Integer keys[], int nbThreads) throws InterruptedException {
+        for(int i=0; i<NB_WARMUP_RUNS; i++)
+            run(cache, keys, nbThreads);
+
+        long time = run(cache, keys, nbThreads);
+        long nbOperations = (long)NB_OPERATIONS*nbThreads;
+
+        out.println("  "+name+": "+(nbOperations*1000000000L/time)/1000+"K operations/s");
+    }
+
+    /**
+     * Accesses the given cache from the given number of threads at once and returns the time it took, in nanoseconds.
+     */
+    private static long run(final LRUCache<Integer, Integer> cache, final Integer keys[], int nbThreads) throws InterruptedException {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final CountDownLatch doneSignal = new CountDownLatch(nbThreads);
+
+        for(int i=0; i<nbThreads; i++) {
+            final int offset = i*(NB_OPERATIONS/nbThreads);
+            new Thread("CacheBenchmark-"+i) {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                        for(int j=0; j<NB_OPERATIONS; j++) {
+                            Integer key = keys[(offset+j)%NB_OPERATIONS];
+                            if(j%10==0)
+                                cache.add(key, key);
+                            else
+                                cache.get(key);
+                        }
+                    }
+                    catch(InterruptedException e) {
+                        // Thread is done
+                    }
+                    finally {
+                        doneSignal.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        long startTime = System.nanoTime();
+        startSignal.countDown();
+        doneSignal.await();
+
+        return System.nanoTime() - startTime;
+    }
+}
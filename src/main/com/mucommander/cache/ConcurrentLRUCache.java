@@ -0,0 +1,688 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache implementation meant to be accessed by many threads at once.
+ *
+ * <p>Items are spread over a number of segments according to the hash code of their key, each segment being an
+ * access-ordered <code>LinkedHashMap</code> with its own lock: threads that access items of different segments do not
+ * contend with each other. The capacity is a bound on the whole cache: each segment is given an even share of it,
+ * and when the cache is full the least recently used items of the segments that exceed their share are evicted
+ * first, then those of the other segments in turn. The eviction order is thus an approximation of the cache-wide LRU
+ * order, and a single item can weigh up to the capacity of the whole cache.</p>
+ *
+ * <p>The capacity can optionally be expressed as a total weight rather than a number of items, the weight of each
+ * item being given by a {@link Weigher} (e.g. its size in bytes).</p>
+ *
+ * <p>Expired items are removed by a background thread shared by all instances, which sweeps the segments
+ * containing expired items every second: {@link #get(Object) get()} and {@link #add(Object, Object, long) add()}
+ * only compare the expiration date of the item they access with the current time, and never scan the cache.</p>
+ *
+ * <p>Unlike {@link FastLRUCache}, this cache always keeps track of hits, misses, evictions, expirations and of the
+ * time spent loading the values that were not found in the cache with {@link #get(Object, Loader, long)}.</p>
+ */
+public class ConcurrentLRUCache<K, V> extends LRUCache<K, V> {
+
+    /** Default number of segments */
+    private final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+    /** Minimum capacity of a segment: the number of segments is reduced for small capacities */
+    private final static int MIN_SEGMENT_CAPACITY = 16;
+    /** Number of milliseconds between two sweeps of expired items */
+    private final static int SWEEP_PERIOD = 1000;
+
+    /** Caches that contain items with an expiration date, swept by the sweeper thread */
+    private static List<WeakReference<ConcurrentLRUCache<?, ?>>> sweptCaches = new Vector<WeakReference<ConcurrentLRUCache<?, ?>>>();
+    /** Thread expired items are removed by, created when first needed */
+    private static ScheduledExecutorService sweeper;
+
+    /** Segments items are spread over */
+    private Segment<K, V> segments[];
+    /** Gives the weight of items, <code>null</code> if every item weighs 1 */
+    private Weigher<K, V> weigher;
+    /** Maximum total weight of the items */
+    private long maxWeight;
+    /** Total weight of the items of all segments */
+    private AtomicLong weight = new AtomicLong();
+    /** True once this cache has been registered with the sweeper */
+    private volatile boolean swept;
+
+    /**
+     * Creates an initially empty cache that can contain up to the specified number of items.
+     *
+     * @param capacity maximum number of items the cache can contain
+     */
+    public ConcurrentLRUCache(int capacity) {
+        this(capacity, null, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates an initially empty cache whose items can weigh up to the specified total weight.
+     *
+     * @param maxWeight maximum total weight of the items
+     * @param weigher gives the weight of items, <code>null</code> for every item to weigh 1
+     */
+    public ConcurrentLRUCache(long maxWeight, Weigher<K, V> weigher) {
+        this(maxWeight, weigher, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates an initially empty cache whose items can weigh up to the specified total weight.
+     *
+     * @param maxWeight maximum total weight of the items
+     * @param weigher gives the weight of items, <code>null</code> for every item to weigh 1
+     * @param concurrencyLevel estimated number of threads accessing the cache at once, rounded up to a power of 2 to
+     * give the number of segments
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLRUCache(long maxWeight, Weigher<K, V> weigher, int concurrencyLevel) {
+        super((int)Math.min(Integer.MAX_VALUE, maxWeight));
+
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+
+        int nbSegments = 1;
+        while(nbSegments<concurrencyLevel && maxWeight/(nbSegments*2)>=MIN_SEGMENT_CAPACITY)
+            nbSegments *= 2;
+
+        segments = new Segment[nbSegments];
+        for(int i=0; i<nbSegments; i++)
+            segments[i] = new Segment<K, V>(maxWeight/nbSegments + (i<maxWeight%nbSegments?1:0), weight);
+    }
+
+    /**
+     * Returns the segment the item with the given key belongs to.
+     */
+    private Segment<K, V> getSegment(Object key) {
+        int h = key==null?0:key.hashCode();
+        // Spreads the bits of poor hash codes, which would otherwise end up in the same segments
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+
+        return segments[h & (segments.length-1)];
+    }
+
+    /**
+     * Returns the value cached for the given key if there is one, otherwise loads it with the given loader and adds
+     * it to the cache. Threads that miss the same key at the same time may each load the value.
+     *
+     * @param key the cached item's key
+     * @param loader loads the value if it is not in the cache
+     * @param timeToLive the time-to-live of a loaded value in milliseconds, or -1 for no time-to-live
+     * @return the cached or loaded value, <code>null</code> if the loader returned <code>null</code> (which is not cached)
+     * @throws Exception any exception thrown by the loader
+     */
+    public V get(K key, Loader<K, V> loader, long timeToLive) throws Exception {
+        V value = get(key);
+        if(value!=null)
+            return value;
+
+        long startTime = System.nanoTime();
+        try {
+            value = loader.load(key);
+        }
+        finally {
+            getSegment(key).recordLoad(System.nanoTime()-startTime);
+        }
+
+        if(value!=null)
+            add(key, value, timeToLive);
+
+        return value;
+    }
+
+    /**
+     * Removes the item cached for the given key, if there is one.
+     *
+     * @param key the key of the item to remove
+     */
+    public void remove(K key) {
+        Segment<K, V> segment = getSegment(key);
+        synchronized(segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the values this cache contains, without affecting their eviction order. Expired items
+     * that have not been removed yet are included.
+     *
+     * @return a snapshot of the values this cache contains
+     */
+    public List<V> getValues() {
+        List<V> values = new Vector<V>();
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                for(Item<V> item : segment.map.values())
+                    values.add(item.value);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns the total weight of the items this cache contains. Expired items that have not been removed yet are
+     * accounted for.
+     *
+     * @return the total weight of the items this cache contains
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Returns the maximum total weight of the items this cache can contain, i.e. its capacity if it has no
+     * {@link Weigher}.
+     *
+     * @return the maximum total weight of the items this cache can contain
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the number of items removed to make room for new ones since this cache was created.
+     *
+     * @return the number of items evicted since this cache was created
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                count += segment.nbEvictions;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of items removed because they expired since this cache was created.
+     *
+     * @return the number of expired items since this cache was created
+     */
+    public long getExpirationCount() {
+        long count = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                count += segment.nbExpirations;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of values loaded by {@link #get(Object, Loader, long)} since this cache was created.
+     *
+     * @return the number of values loaded since this cache was created
+     */
+    public long getLoadCount() {
+        long count = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                count += segment.nbLoads;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the total time spent loading values in {@link #get(Object, Loader, long)} since this cache was created,
+     * in nanoseconds.
+     *
+     * @return the total time spent loading values, in nanoseconds
+     */
+    public long getTotalLoadTime() {
+        long time = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                time += segment.loadTime;
+            }
+        }
+
+        return time;
+    }
+
+    /**
+     * Removes the expired items of all segments.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                if(segment.eldestExpirationDate<=now)
+                    segment.removeExpiredItems(now);
+            }
+        }
+    }
+
+    /**
+     * Evicts items until the total weight of the items no longer exceeds the capacity of the cache: the least
+     * recently used items of the segments that exceed their share of the capacity are evicted first, then those of
+     * every segment in turn, the most recently used item of each segment being evicted last.
+     */
+    private void evict() {
+        for(Segment<K, V> segment : segments) {
+            if(weight.get()<=maxWeight)
+                return;
+
+            synchronized(segment) {
+                segment.evict(maxWeight);
+            }
+        }
+
+        for(int minSize=1; minSize>=0; minSize--) {
+            boolean evicted = true;
+            while(evicted) {
+                evicted = false;
+                for(Segment<K, V> segment : segments) {
+                    if(weight.get()<=maxWeight)
+                        return;
+
+                    synchronized(segment) {
+                        evicted |= segment.evictEldest(minSize);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure this cache is periodically swept by the sweeper thread.
+     */
+    private void startSweeping() {
+        synchronized(sweptCaches) {
+            if(swept)
+                return;
+
+            sweptCaches.add(new WeakReference<ConcurrentLRUCache<?, ?>>(this));
+            swept = true;
+
+            if(sweeper==null) {
+                sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ConcurrentLRUCache sweeper");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+                sweeper.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        sweepAll();
+                    }
+                }, SWEEP_PERIOD, SWEEP_PERIOD, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sweeps all the caches that are still referenced, forgetting about the others.
+     */
+    @SuppressWarnings("unchecked")
+    private static void sweepAll() {
+        WeakReference<ConcurrentLRUCache<?, ?>> references[];
+        synchronized(sweptCaches) {
+            references = sweptCaches.toArray(new WeakReference[sweptCaches.size()]);
+        }
+
+        for(WeakReference<ConcurrentLRUCache<?, ?>> reference : references) {
+            ConcurrentLRUCache<?, ?> cache = reference.get();
+            if(cache==null)
+                sweptCaches.remove(reference);
+            else
+                cache.sweep();
+        }
+    }
+
+    /**
+     * Returns a String representation of this cache.
+     */
+    @Override
+    public String toString() {
+        return super.toString()+" segments="+segments.length+" size="+size()+" weight="+getWeight()+" maxWeight="+maxWeight
+                +" hits="+getHitCount()+" misses="+getMissCount()+" evictions="+getEvictionCount()
+                +" expirations="+getExpirationCount();
+    }
+
+
+    /////////////////////////////////////
+    // LRUCache methods implementation //
+    /////////////////////////////////////
+
+    @Override
+    public V get(K key) {
+        Segment<K, V> segment = getSegment(key);
+        synchronized(segment) {
+            return segment.get(key);
+        }
+    }
+
+    @Override
+    public void add(K key, V value) {
+        add(key, value, -1);
+    }
+
+    @Override
+    public void add(K key, V value, long timeToLive) {
+        int weight = weigher==null?1:weigher.weigh(key, value);
+        long expirationDate = timeToLive==-1?Long.MAX_VALUE:System.currentTimeMillis()+timeToLive;
+
+        // Items heavier than the whole cache are not cached, and replace the previous value
+        Segment<K, V> segment = getSegment(key);
+        synchronized(segment) {
+            if(weight>maxWeight)
+                segment.remove(key);
+            else
+                segment.add(key, value, weight, expirationDate, maxWeight);
+        }
+
+        if(this.weight.get()>maxWeight)
+            evict();
+
+        if(timeToLive!=-1 && !swept)
+            startSweeping();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                size += segment.map.size();
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public void clearAll() {
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        long count = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                count += segment.nbHits;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public long getMissCount() {
+        long count = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                count += segment.nbMisses;
+            }
+        }
+
+        return count;
+    }
+
+
+    //////////////////
+    // Test methods //
+    //////////////////
+
+    /**
+     * Tests this LRUCache for corruption and throws a RuntimeException if something is wrong.
+     */
+    @Override
+    protected void testCorruption() throws RuntimeException {
+        long totalWeight = 0;
+        for(Segment<K, V> segment : segments) {
+            synchronized(segment) {
+                long weight = 0;
+                for(Map.Entry<K, Item<V>> entry : segment.map.entrySet()) {
+                    Item<V> item = entry.getValue();
+                    if(item.expirationDate<segment.eldestExpirationDate)
+                        throw new RuntimeException("cache corrupted: expiration date for key="+entry.getKey()+" older than eldestExpirationDate");
+                    if(getSegment(entry.getKey())!=segment)
+                        throw new RuntimeException("cache corrupted: key="+entry.getKey()+" is in the wrong segment");
+                    weight += item.weight;
+                }
+
+                if(weight!=segment.weight)
+                    throw new RuntimeException("cache corrupted: segment weight="+segment.weight+", actual weight="+weight);
+                totalWeight += weight;
+            }
+        }
+
+        if(totalWeight!=weight.get())
+            throw new RuntimeException("cache corrupted: weight="+weight.get()+", actual weight="+totalWeight);
+        if(totalWeight>maxWeight)
+            throw new RuntimeException("cache corrupted: weight="+totalWeight+" exceeds "+maxWeight);
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Gives the weight of the items of a {@link ConcurrentLRUCache}.
+     */
+    public static interface Weigher<K, V> {
+
+        /**
+         * Returns the weight of the given item, which must remain the same as long as the item is in the cache.
+         *
+         * @param key the item's key
+         * @param value the item's value
+         * @return the weight of the item, a positive number
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Loads the values that are not found in a {@link ConcurrentLRUCache}.
+     */
+    public static interface Loader<K, V> {
+
+        /**
+         * Loads the value corresponding to the given key.
+         *
+         * @param key the key of the value to load
+         * @return the value, <code>null</code> if there is none
+         * @throws Exception if the value could not be loaded
+         */
+        V load(K key) throws Exception;
+    }
+
+    /**
+     * A cached value, along with its weight and expiration date.
+     */
+    private static class Item<V> {
+        private V value;
+        private int weight;
+        /** Expiration date, <code>Long.MAX_VALUE</code> if the item doesn't expire */
+        private long expirationDate;
+
+        private Item(V value, int weight, long expirationDate) {
+            this.value = value;
+            this.weight = weight;
+            this.expirationDate = expirationDate;
+        }
+    }
+
+    /**
+     * A part of the cache, which holds the items whose keys hash to it. Methods must be called while holding the
+     * segment's lock.
+     */
+    private static class Segment<K, V> {
+        /** Items of the segment, in access order */
+        private LinkedHashMap<K, Item<V>> map = new LinkedHashMap<K, Item<V>>(16, 0.75f, true);
+        /** Share of the capacity of the cache, beyond which the segment's items are evicted first */
+        private long share;
+        /** Total weight of the items */
+        private long weight;
+        /** Total weight of the items of all the segments of the cache */
+        private AtomicLong cacheWeight;
+        /** Expiration date of the item that expires first, possibly already removed */
+        private long eldestExpirationDate = Long.MAX_VALUE;
+
+        private long nbHits;
+        private long nbMisses;
+        private long nbEvictions;
+        private long nbExpirations;
+        private long nbLoads;
+        private long loadTime;
+
+        private Segment(long share, AtomicLong cacheWeight) {
+            this.share = share;
+            this.cacheWeight = cacheWeight;
+        }
+
+        private V get(K key) {
+            Item<V> item = map.get(key);
+            if(item==null) {
+                nbMisses++;
+                return null;
+            }
+
+            // The item may have expired since the last sweep
+            if(item.expirationDate!=Long.MAX_VALUE && item.expirationDate<=System.currentTimeMillis()) {
+                remove(key);
+                nbExpirations++;
+                nbMisses++;
+                return null;
+            }
+
+            nbHits++;
+            return item.value;
+        }
+
+        private void add(K key, V value, int weight, long expirationDate, long cacheMaxWeight) {
+            remove(key);
+
+            map.put(key, new Item<V>(value, weight, expirationDate));
+            addWeight(weight);
+            if(expirationDate<eldestExpirationDate)
+                eldestExpirationDate = expirationDate;
+
+            evict(cacheMaxWeight);
+        }
+
+        /**
+         * Evicts the least recently used items of this segment as long as the cache is full and this segment exceeds
+         * its share of the capacity. The most recently used item is never evicted.
+         */
+        private void evict(long cacheMaxWeight) {
+            if(cacheWeight.get()<=cacheMaxWeight || weight<=share)
+                return;
+
+            // Expired items are removed before any item is evicted
+            long now = System.currentTimeMillis();
+            if(eldestExpirationDate<=now)
+                removeExpiredItems(now);
+
+            Iterator<Item<V>> iterator = map.values().iterator();
+            while(cacheWeight.get()>cacheMaxWeight && weight>share && map.size()>1) {
+                Item<V> eldest = iterator.next();
+                iterator.remove();
+                addWeight(-eldest.weight);
+                nbEvictions++;
+            }
+        }
+
+        /**
+         * Evicts the least recently used item of this segment, returns <code>false</code> if the segment doesn't have
+         * more than <code>minSize</code> items.
+         */
+        private boolean evictEldest(int minSize) {
+            if(map.size()<=minSize)
+                return false;
+
+            Iterator<Item<V>> iterator = map.values().iterator();
+
+            Item<V> eldest = iterator.next();
+            iterator.remove();
+            addWeight(-eldest.weight);
+            nbEvictions++;
+
+            return true;
+        }
+
+        private void remove(K key) {
+            Item<V> item = map.remove(key);
+            if(item!=null)
+                addWeight(-item.weight);
+        }
+
+        private void clear() {
+            map.clear();
+            addWeight(-weight);
+            eldestExpirationDate = Long.MAX_VALUE;
+        }
+
+        private void addWeight(long delta) {
+            weight += delta;
+            cacheWeight.addAndGet(delta);
+        }
+
+        private void removeExpiredItems(long now) {
+            long eldestExpirationDate = Long.MAX_VALUE;
+            Iterator<Item<V>> iterator = map.values().iterator();
+            while(iterator.hasNext()) {
+                Item<V> item = iterator.next();
+                if(item.expirationDate<=now) {
+                    iterator.remove();
+                    addWeight(-item.weight);
+                    nbExpirations++;
+                }
+                else if(item.expirationDate<eldestExpirationDate) {
+                    eldestExpirationDate = item.expirationDate;
+                }
+            }
+
+            this.eldestExpirationDate = eldestExpirationDate;
+        }
+
+        private synchronized void recordLoad(long time) {
+            nbLoads++;
+            loadTime += time;
+        }
+    }
+}
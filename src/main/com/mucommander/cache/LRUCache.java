@@ -56,9 +56,9 @@ public abstract class LRUCache<K, V> {
     /** Specifies whether cache hit/miss counters should be updated (should be enabled for Debug purposes only) */ 
     protected final static boolean UPDATE_CACHE_COUNTERS = false;	
     /** Number of cache hits since this LRUCache was created */
-    protected int nbHits;
+    protected long nbHits;
     /** Number of cache misses since this LRUCache was created */
-    protected int nbMisses;	
+    protected long nbMisses;	
 
 
     /**
@@ -82,7 +82,7 @@ public abstract class LRUCache<K, V> {
      *
      * @return the number of cache hits since this LRUCache was created
      */
-    public int getHitCount() {
+    public long getHitCount() {
         return nbHits;
     }
 
@@ -92,7 +92,7 @@ public abstract class LRUCache<K, V> {
      *
      * @return the number of cache misses since this LRUCache was created
      */
-    public int getMissCount() {
+    public long getMissCount() {
         return nbMisses;
     }
 
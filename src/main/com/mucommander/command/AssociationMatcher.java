@@ -0,0 +1,471 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.command;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.AndFileFilter;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.filter.RegexpFilenameFilter;
+
+/**
+ * Finds the first of a list of {@link CommandAssociation associations} that accepts a file, without evaluating every
+ * association's filters in turn.
+ *
+ * <p>Associations are compiled once, when the matcher is created:</p>
+ * <ul>
+ *  <li>associations whose filename mask is a plain extension mask, such as <code>.*\.pdf</code> or
+ *  <code>.*\.(jpg|jpeg)</code>, are indexed by extension. The associations a name's extension can match are resolved
+ *  with a hash lookup, and cached per extension.</li>
+ *  <li>the other filename masks are combined into a single alternation, which is evaluated once per file to reject
+ *  the names that none of them match, and to find the first one that matches.</li>
+ *  <li>attribute and permission filters, which may require I/O, are only evaluated last, on the associations whose
+ *  filename mask matched, and in association order.</li>
+ * </ul>
+ *
+ * <p>A matcher is immutable once created, except for its cache: it must be replaced when the associations change.
+ * The result of {@link #getCommand(AbstractFile)} is always the command of the first association, in list order, whose
+ * filter matches the file.</p>
+ */
+class AssociationMatcher {
+
+    // - Constants -------------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** Matches filename masks that only accept a set of extensions. */
+    private static final Pattern EXTENSION_MASK = Pattern.compile("\\.\\*\\\\\\.(?:([A-Za-z0-9_]+)|\\((?:\\?:)?([A-Za-z0-9_]+(?:\\|[A-Za-z0-9_]+)*)\\))");
+    /** Maximum number of extensions whose candidate associations are cached. */
+    private static final int    MAX_CACHED_EXTENSIONS = 256;
+    /** Candidates of names that don't have an extension. */
+    private static final String NO_EXTENSION = "";
+
+
+
+    // - Instance fields -------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** Compiled associations, in order. */
+    private final Entry[]             entries;
+    /** Associations that have a filename mask that isn't indexed by extension, in order. */
+    private final Entry[]             maskEntries;
+    /** Indexes of the associations that accept an extension regardless of case, keyed by lower-case extension. */
+    private final Map<String, int[]>  caseInsensitiveExtensions = new HashMap<String, int[]>();
+    /** Indexes of the associations that accept an extension, case-sensitive. */
+    private final Map<String, int[]>  caseSensitiveExtensions   = new HashMap<String, int[]>();
+    /** Indexes of the associations that don't have a filename mask. */
+    private final int[]               unconditioned;
+    /** Alternation of the combinable filename masks, <code>null</code> if there is none. */
+    private final Pattern             combinedMasks;
+    /** Candidate associations of the extensions looked up recently, in order. */
+    private final Map<String, int[]>  candidatesCache;
+
+
+
+    // - Initialisation --------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Compiles the specified associations, in order of precedence.
+     * @param associations associations to compile.
+     */
+    public AssociationMatcher(List<CommandAssociation> associations) {
+        List<Entry>                masks;       // Associations with a non-extension filename mask.
+        Map<String, List<Integer>> insensitive; // Case-insensitive extension index being built.
+        Map<String, List<Integer>> sensitive;   // Case-sensitive extension index being built.
+        List<Integer>              noMask;      // Associations without a filename mask.
+
+        masks       = new Vector<Entry>();
+        insensitive = new HashMap<String, List<Integer>>();
+        sensitive   = new HashMap<String, List<Integer>>();
+        noMask      = new Vector<Integer>();
+
+        entries = new Entry[associations.size()];
+        for(int i = 0; i < entries.length; i++) {
+            Entry entry = entries[i] = new Entry(i, associations.get(i));
+
+            if(entry.mask == null)
+                noMask.add(i);
+            else if(entry.extensions != null) {
+                for(String extension : entry.extensions)
+                    addIndex(entry.mask.isCaseSensitive() ? sensitive : insensitive, extension, i);
+            }
+            else
+                masks.add(entry);
+        }
+
+        maskEntries   = masks.toArray(new Entry[masks.size()]);
+        unconditioned = toArray(noMask);
+        for(Map.Entry<String, List<Integer>> extension : insensitive.entrySet())
+            caseInsensitiveExtensions.put(extension.getKey(), toArray(extension.getValue()));
+        for(Map.Entry<String, List<Integer>> extension : sensitive.entrySet())
+            caseSensitiveExtensions.put(extension.getKey(), toArray(extension.getValue()));
+        combinedMasks = combine(maskEntries);
+
+        candidatesCache = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > MAX_CACHED_EXTENSIONS;
+            }
+        };
+    }
+
+    private static void addIndex(Map<String, List<Integer>> index, String extension, int i) {
+        List<Integer> indexes;
+
+        if((indexes = index.get(extension)) == null)
+            index.put(extension, indexes = new Vector<Integer>());
+        if(!indexes.contains(i))
+            indexes.add(i);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array;
+
+        array = new int[list.size()];
+        for(int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    /**
+     * Combines the filename masks of the specified entries into a single alternation, one capturing group per entry.
+     * <p>
+     * Masks that can't safely be embedded in a larger expression (back-references, unterminated quotes) are left out
+     * and evaluated on their own.
+     * </p>
+     * @return the combined masks, <code>null</code> if no mask could be combined.
+     */
+    private static Pattern combine(Entry[] entries) {
+        StringBuilder regexp;
+        int           group;
+
+        regexp = new StringBuilder();
+        group  = 1;
+        for(Entry entry : entries) {
+            if(!entry.isCombinable())
+                continue;
+
+            if(regexp.length() != 0)
+                regexp.append('|');
+            regexp.append(entry.mask.isCaseSensitive() ? "((?:" : "((?i:").append(entry.mask.getRegularExpression()).append("))");
+
+            entry.group = group;
+            group      += 1 + entry.pattern.matcher("").groupCount();
+        }
+
+        if(regexp.length() == 0)
+            return null;
+
+        try {
+            Pattern pattern = Pattern.compile(regexp.toString());
+            if(pattern.matcher("").groupCount() == group - 1)
+                return pattern;
+        }
+        catch(PatternSyntaxException e) {
+            // Falls through and evaluates each mask on its own.
+        }
+
+        for(Entry entry : entries)
+            entry.group = 0;
+        return null;
+    }
+
+
+
+    // - Matching --------------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the command of the first association that accepts the specified file.
+     * @param  file file to match.
+     * @return      the command of the first association that accepts the specified file, <code>null</code> if none does.
+     */
+    public Command getCommand(AbstractFile file) {
+        String  name;          // Name of the file, which filename masks are matched against.
+        int[]   candidates;    // Associations whose filename mask, if any, is known to match.
+        int     firstMask;     // Index of the first combined mask that matches, -1 if none.
+        int     i;             // Position in candidates.
+        int     j;             // Position in maskEntries.
+
+        name       = file.getName();
+        candidates = getCandidates(name);
+        firstMask  = getFirstCombinedMatch(name);
+
+        // Goes through the candidates and the associations with a filename mask, in association order.
+        i = 0;
+        j = 0;
+        while(i < candidates.length || j < maskEntries.length) {
+            Entry entry;
+
+            if(j == maskEntries.length || (i < candidates.length && candidates[i] < maskEntries[j].index))
+                entry = entries[candidates[i++]];
+            else {
+                entry = maskEntries[j++];
+                if(!entry.matchesMask(name, firstMask))
+                    continue;
+            }
+
+            if(entry.acceptAttributes(file))
+                return entry.command;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of the first association whose combined filename mask matches the specified name.
+     */
+    private int getFirstCombinedMatch(String name) {
+        Matcher matcher;
+
+        if(combinedMasks == null || !(matcher = combinedMasks.matcher(name)).matches())
+            return -1;
+
+        for(Entry entry : maskEntries)
+            if(entry.group != 0 && matcher.start(entry.group) != -1)
+                return entry.index;
+
+        // Can't happen: one of the alternatives matched.
+        return -1;
+    }
+
+    /**
+     * Returns the sorted indexes of the associations that either don't have a filename mask, or whose extension mask
+     * matches the specified name.
+     */
+    private int[] getCandidates(String name) {
+        String extension;
+        int[]  candidates;
+
+        extension = getExtension(name);
+        synchronized(candidatesCache) {
+            if((candidates = candidatesCache.get(extension)) != null)
+                return candidates;
+        }
+
+        if(extension == NO_EXTENSION)
+            candidates = unconditioned;
+        else
+            candidates = merge(unconditioned, merge(caseInsensitiveExtensions.get(toLowerCase(extension)), caseSensitiveExtensions.get(extension)));
+
+        synchronized(candidatesCache) {
+            candidatesCache.put(extension, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the part of the specified name that follows its last dot, which is what extension masks are matched
+     * against, or {@link #NO_EXTENSION} if extension masks can't match the name.
+     */
+    private static String getExtension(String name) {
+        int dot;
+
+        if((dot = name.lastIndexOf('.')) == -1 || dot == name.length() - 1)
+            return NO_EXTENSION;
+
+        // '.' doesn't match line terminators: names that contain one can't be matched by '.*'.
+        for(int i = 0; i < dot; i++) {
+            char c = name.charAt(i);
+            if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+                return NO_EXTENSION;
+        }
+
+        return name.substring(dot + 1);
+    }
+
+    /**
+     * Lower-cases the ASCII letters of the specified string, the way case-insensitive regular expressions compare them.
+     */
+    private static String toLowerCase(String s) {
+        char[] chars;
+
+        chars = s.toCharArray();
+        for(int i = 0; i < chars.length; i++)
+            if(chars[i] >= 'A' && chars[i] <= 'Z')
+                chars[i] += 'a' - 'A';
+        return new String(chars);
+    }
+
+    /**
+     * Merges two sorted arrays of indexes, either of which may be <code>null</code>.
+     */
+    private static int[] merge(int[] a, int[] b) {
+        int[] result;
+        int   i, j, k;
+
+        if(a == null || a.length == 0)
+            return b == null ? new int[0] : b;
+        if(b == null || b.length == 0)
+            return a;
+
+        result = new int[a.length + b.length];
+        i = j = k = 0;
+        while(i < a.length || j < b.length) {
+            if(j == b.length || (i < a.length && a[i] < b[j]))
+                result[k++] = a[i++];
+            else if(i == a.length || b[j] < a[i])
+                result[k++] = b[j++];
+            else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+        return k == result.length ? result : trim(result, k);
+    }
+
+    private static int[] trim(int[] array, int length) {
+        int[] trimmed;
+
+        trimmed = new int[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+
+
+    // - Compiled association --------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * An association, split into its filename mask and its other filters.
+     */
+    private static class Entry {
+        /** Position of the association in the list. */
+        final int                  index;
+        /** Command of the association. */
+        final Command              command;
+        /** Filename mask evaluated before the other filters, <code>null</code> if there is none. */
+        final RegexpFilenameFilter mask;
+        /** Compiled filename mask, <code>null</code> if there is none. */
+        final Pattern              pattern;
+        /** Extensions accepted by the mask if it is an extension mask, <code>null</code> otherwise. */
+        final String[]             extensions;
+        /** Filters that must be evaluated once the mask has matched. */
+        final FileFilter[]         filters;
+        /** Capturing group of the mask in the combined masks, <code>0</code> if it isn't part of them. */
+        int                        group;
+
+        Entry(int index, CommandAssociation association) {
+            List<FileFilter>     filters;
+            RegexpFilenameFilter mask;
+            FileFilter           filter;
+            Pattern              pattern;
+
+            this.index   = index;
+            this.command = association.getCommand();
+
+            filters = new Vector<FileFilter>();
+            mask    = null;
+            pattern = null;
+            filter  = association.getFilter();
+
+            // Only non-inverted 'and' filters can be split: other filters are evaluated as a whole.
+            if(filter instanceof AndFileFilter && !filter.isInverted()) {
+                Iterator<FileFilter> iterator = ((AndFileFilter)filter).getFileFilterIterator();
+                while(iterator.hasNext()) {
+                    FileFilter current = iterator.next();
+                    if(mask == null && (pattern = compile(current)) != null)
+                        mask = (RegexpFilenameFilter)current;
+                    else
+                        filters.add(current);
+                }
+            }
+            else if((pattern = compile(filter)) != null)
+                mask = (RegexpFilenameFilter)filter;
+            else
+                filters.add(filter);
+
+            this.mask       = mask;
+            this.pattern    = pattern;
+            this.filters    = filters.toArray(new FileFilter[filters.size()]);
+            this.extensions = mask == null ? null : getExtensions(mask);
+        }
+
+        /**
+         * Compiles the specified filter if it is a filename mask that can be evaluated on its own.
+         */
+        private static Pattern compile(FileFilter filter) {
+            RegexpFilenameFilter mask;
+
+            if(!(filter instanceof RegexpFilenameFilter) || filter.isInverted())
+                return null;
+
+            mask = (RegexpFilenameFilter)filter;
+            try {return Pattern.compile(mask.getRegularExpression(), mask.isCaseSensitive() ? 0 : Pattern.CASE_INSENSITIVE);}
+            catch(PatternSyntaxException e) {return null;}
+        }
+
+        /**
+         * Returns the extensions accepted by the specified mask, or <code>null</code> if it isn't an extension mask.
+         */
+        private static String[] getExtensions(RegexpFilenameFilter mask) {
+            Matcher  matcher;
+            String[] extensions;
+
+            if(!(matcher = EXTENSION_MASK.matcher(mask.getRegularExpression())).matches())
+                return null;
+
+            extensions = matcher.group(1) != null ? new String[] {matcher.group(1)} : matcher.group(2).split("\\|");
+            if(!mask.isCaseSensitive())
+                for(int i = 0; i < extensions.length; i++)
+                    extensions[i] = toLowerCase(extensions[i]);
+            return extensions;
+        }
+
+        /**
+         * Returns <code>true</code> if the mask can be embedded in the combined masks.
+         */
+        boolean isCombinable() {
+            String regexp = mask.getRegularExpression();
+
+            return !regexp.contains("\\Q") && !Pattern.compile("\\\\[0-9k]").matcher(regexp).find();
+        }
+
+        /**
+         * Returns <code>true</code> if the mask matches the specified name.
+         * @param firstMask index of the first association whose combined mask matches the name, <code>-1</code> if none.
+         */
+        boolean matchesMask(String name, int firstMask) {
+            // Combined masks that precede the first match are known not to match.
+            if(group != 0 && (firstMask == -1 || index <= firstMask))
+                return index == firstMask;
+            return pattern.matcher(name).matches();
+        }
+
+        /**
+         * Returns <code>true</code> if the file matches the filters that follow the mask.
+         */
+        boolean acceptAttributes(AbstractFile file) {
+            for(FileFilter filter : filters)
+                if(!filter.match(file))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return command.getAlias() + (mask == null ? "" : " " + mask.getRegularExpression()) + (extensions == null ? "" : " " + Arrays.asList(extensions));
+        }
+    }
+}
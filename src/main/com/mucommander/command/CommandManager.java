@@ -90,6 +90,8 @@ public class CommandManager implements CommandBuilder {
     private static       boolean                  wereAssociationsModified;
     /** Default name of the association XML file. */
     public  static final String                   DEFAULT_ASSOCIATION_FILE_NAME = "associations.xml";
+    /** Compiled form of all known associations, <code>null</code> if it must be rebuilt. */
+    private static volatile AssociationMatcher    associationMatcher;
 
 
 
@@ -165,13 +167,21 @@ public class CommandManager implements CommandBuilder {
      */
     public static Command getCommandForFile(AbstractFile file) {return getCommandForFile(file, true);}
 
-    private static Command getCommandForFile(AbstractFile file, Iterator<CommandAssociation> iterator) {
-        CommandAssociation association;
+    /**
+     * Returns the compiled form of all known associations, custom associations first, compiling it if necessary.
+     * @return the compiled form of all known associations.
+     */
+    private static AssociationMatcher getAssociationMatcher() {
+        AssociationMatcher matcher;
 
-        while(iterator.hasNext())
-            if((association = iterator.next()).accept(file))
-                return association.getCommand();
-        return null;
+        if((matcher = associationMatcher) == null) {
+            List<CommandAssociation> all;
+
+            all = new Vector<CommandAssociation>(associations);
+            all.addAll(systemAssociations);
+            associationMatcher = matcher = new AssociationMatcher(all);
+        }
+        return matcher;
     }
 
     /**
@@ -183,12 +193,8 @@ public class CommandManager implements CommandBuilder {
     public static Command getCommandForFile(AbstractFile file, boolean allowDefault) {
         Command command;
 
-        // Goes through all known associations and checks whether file matches any.
-        if((command = getCommandForFile(file, associations.iterator())) != null)
-            return command;
-
-        // Goes through all system associations and checks whether file matches any.
-        if((command = getCommandForFile(file, systemAssociations.iterator())) != null)
+        // Looks for the first custom or system association that matches file.
+        if((command = getAssociationMatcher().getCommand(file)) != null)
             return command;
 
         // We haven't found a command explicitely associated with 'file',
@@ -272,6 +278,7 @@ public class CommandManager implements CommandBuilder {
      */
     public static void registerAssociation(String command, FileFilter filter) throws CommandException {
         associations.add(createAssociation(command, filter));
+        associationMatcher = null;
     }
     
     private static CommandAssociation createAssociation(String cmd, FileFilter filter) throws CommandException {
@@ -287,6 +294,7 @@ public class CommandManager implements CommandBuilder {
 
     public static void registerDefaultAssociation(String command, FileFilter filter) throws CommandException {
         systemAssociations.add(createAssociation(command, filter));
+        associationMatcher = null;
     }
 
 
@@ -508,6 +516,7 @@ public class CommandManager implements CommandBuilder {
         try {AssociationReader.read(in = new BackupInputStream(file), new AssociationFactory());}
         finally {
             wereAssociationsModified = false;
+            associationMatcher       = null;
             // Makes sure the input stream is closed.
             if(in != null) {
                 try {in.close();}
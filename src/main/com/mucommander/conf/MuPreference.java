@@ -35,6 +35,7 @@ public enum MuPreference {
 	CUSTOM_LOOK_AND_FEELS(MuPreferences.CUSTOM_LOOK_AND_FEELS),
 	ENABLE_SYSTEM_NOTIFICATIONS(MuPreferences.ENABLE_SYSTEM_NOTIFICATIONS),
 	PREFERRED_ENCODINGS(MuPreferences.PREFERRED_ENCODINGS),
+	SAVE_DELAY(MuPreferences.SAVE_DELAY),
 	LOG_LEVEL(MuPreferences.LOG_LEVEL),
 	LOG_BUFFER_SIZE(MuPreferences.LOG_BUFFER_SIZE),
 	CUSTOM_SHELL(MuPreferences.CUSTOM_SHELL),
@@ -42,6 +43,7 @@ public enum MuPreference {
 	SHELL_HISTORY_SIZE(MuPreferences.SHELL_HISTORY_SIZE),
 	SHELL_ENCODING(MuPreferences.SHELL_ENCODING),
 	AUTODETECT_SHELL_ENCODING(MuPreferences.AUTODETECT_SHELL_ENCODING),
+	SAVE_SHELL_OUTPUT(MuPreferences.SAVE_SHELL_OUTPUT),
 	SMTP_SERVER(MuPreferences.SMTP_SERVER),
 	SMTP_PORT(MuPreferences.SMTP_PORT),
 	MAIL_SENDER_NAME(MuPreferences.MAIL_SENDER_NAME),
@@ -60,6 +62,7 @@ public enum MuPreference {
 	USE_SYSTEM_FILE_ICONS(MuPreferences.USE_SYSTEM_FILE_ICONS),
 	SHOW_FOLDERS_FIRST(MuPreferences.SHOW_FOLDERS_FIRST),
 	CD_FOLLOWS_SYMLINKS(MuPreferences.CD_FOLLOWS_SYMLINKS),
+	PREFETCH_FOLDERS(MuPreferences.PREFETCH_FOLDERS),
 	USE_BRUSHED_METAL(MuPreferences.USE_BRUSHED_METAL),
 	USE_SCREEN_MENU_BAR(MuPreferences.USE_SCREEN_MENU_BAR),
 	STARTUP_FOLDERS(MuPreferences.STARTUP_FOLDERS),
@@ -67,8 +70,11 @@ public enum MuPreference {
 	RIGHT_CUSTOM_FOLDER(MuPreferences.RIGHT_CUSTOM_FOLDER),
 	REFRESH_CHECK_PERIOD(MuPreferences.REFRESH_CHECK_PERIOD),
 	WAIT_AFTER_REFRESH(MuPreferences.WAIT_AFTER_REFRESH),
+	CONTENT_CACHE_SIZE(MuPreferences.CONTENT_CACHE_SIZE),
 	PROGRESS_DIALOG_EXPANDED(MuPreferences.PROGRESS_DIALOG_EXPANDED),
 	PROGRESS_DIALOG_CLOSE_WHEN_FINISHED(MuPreferences.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED),
+	MAX_JOBS_PER_DEVICE(MuPreferences.MAX_JOBS_PER_DEVICE),
+	JOBS_BANDWIDTH_LIMIT(MuPreferences.JOBS_BANDWIDTH_LIMIT),
 	THEME_TYPE(MuPreferences.THEME_TYPE),
 	THEME_NAME(MuPreferences.THEME_NAME),
 	ENABLE_BONJOUR_DISCOVERY(MuPreferences.ENABLE_BONJOUR_DISCOVERY),
@@ -87,6 +87,10 @@ public class MuPreferences implements MuPreferencesAPI {
 			(OsFamily.WINDOWS.isCurrent() && JavaVersion.JAVA_1_6.isCurrentOrHigher());
 	/** List of encodings that are displayed in encoding selection components. */
 	public static final String  PREFERRED_ENCODINGS               = "preferred_encodings";
+	/** Delay in milliseconds between a change to bookmarks, credentials or shell history and its saving. */
+	public static final String  SAVE_DELAY                        = "save_delay";
+	/** Default save delay. */
+	public static final int     DEFAULT_SAVE_DELAY                = 2000;
 
 
 	// - Log variables -------------------------------------------------------
@@ -124,6 +128,10 @@ public class MuPreferences implements MuPreferencesAPI {
 	public static final String  AUTODETECT_SHELL_ENCODING         = SHELL_SECTION + '.' + "autodect_encoding";
 	/** Default shell encoding auto-detection behaviour. */
 	public static final boolean DEFAULT_AUTODETECT_SHELL_ENCODING = true;
+	/** Whether or not the full shell output should be saved to a temporary file. */
+	public static final String  SAVE_SHELL_OUTPUT                 = SHELL_SECTION + '.' + "save_output";
+	/** Default full shell output saving behaviour. */
+	public static final boolean DEFAULT_SAVE_SHELL_OUTPUT         = false;
 
 
 
@@ -232,6 +240,10 @@ public class MuPreferences implements MuPreferencesAPI {
 	public static final String  CD_FOLLOWS_SYMLINKS                = FILE_TABLE_SECTION + '.' + "cd_follows_symlinks";
 	/** Default value for 'Follow symlinks when changing directory' option. */
 	public static final boolean DEFAULT_CD_FOLLOWS_SYMLINKS        = false;
+	/** Controls whether the folder under the selection is listed in the background before it is opened. */
+	public static final String  PREFETCH_FOLDERS                   = FILE_TABLE_SECTION + '.' + "prefetch_folders";
+	/** Default value for 'Prefetch folders' option. */
+	public static final boolean DEFAULT_PREFETCH_FOLDERS           = false;
 	/** Whether to always show the header of a single tab or not */
 	public static final String SHOW_SINGLE_TAB_HEADER			   = FILE_TABLE_SECTION + '.' + "show_single_tab_header";
 	/** Default value for 'Always show single tab header" */
@@ -296,6 +308,17 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - Content cache variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the cache of remote and archived file contents. */
+	public static final String CONTENT_CACHE_SECTION              = "content_cache";
+	/** Maximum size of the cached contents in megabytes, 0 to disable the cache. */
+	public static final String CONTENT_CACHE_SIZE                 = CONTENT_CACHE_SECTION + '.' + "max_size";
+	/** Default maximum size of the cached contents. */
+	public static final int    DEFAULT_CONTENT_CACHE_SIZE         = 256;
+
+
+
 	// - Progress dialog variables -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section describing the behavior of the progress dialog. */
@@ -311,6 +334,21 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - Job scheduling variables --------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing how file transfer jobs are scheduled. */
+	public static final String JOBS_SECTION                       = "jobs";
+	/** Maximum number of transfer jobs that can use the same volume or host at the same time. */
+	public static final String MAX_JOBS_PER_DEVICE                = JOBS_SECTION + '.' + "max_per_device";
+	/** Default maximum number of transfer jobs per volume or host. */
+	public static final int    DEFAULT_MAX_JOBS_PER_DEVICE        = 1;
+	/** Throughput in bytes per second shared by all running transfer jobs, -1 for no limit. */
+	public static final String JOBS_BANDWIDTH_LIMIT               = JOBS_SECTION + '.' + "bandwidth_limit";
+	/** Default throughput shared by all running transfer jobs. */
+	public static final long   DEFAULT_JOBS_BANDWIDTH_LIMIT       = -1;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to muCommander. */
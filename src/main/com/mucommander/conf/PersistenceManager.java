@@ -0,0 +1,192 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.conf;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves {@link PersistentStore stores} in the background, as they change.
+ *
+ * <p>A store that has changed is {@link #markDirty(PersistentStore) marked dirty}; dirty stores are written by a
+ * single background thread once the {@link MuPreference#SAVE_DELAY save delay} has elapsed. Changes made in the
+ * meantime do not postpone the write, but are saved along with it: a series of changes made in a short time results
+ * in a single write of each store that was affected.</p>
+ *
+ * <p>When the application quits, {@link #shutdown(PersistentStore...)} writes the dirty stores and the other stores
+ * that need saving at the same time, on a small pool of threads.</p>
+ */
+public class PersistenceManager {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PersistenceManager.class);
+
+    /** Maximum number of threads stores are written by on shutdown */
+    private final static int MAX_SHUTDOWN_THREADS = 4;
+    /** Maximum time to wait for the stores to be written on shutdown, in seconds */
+    private final static int SHUTDOWN_TIMEOUT = 30;
+
+    /** Stores that have changed since they were last written, in the order they were marked */
+    private static Set<PersistentStore> dirtyStores = new LinkedHashSet<PersistentStore>();
+    /** Thread dirty stores are written by, created when first needed */
+    private static ScheduledExecutorService writer;
+    /** Pending write of the dirty stores, <code>null</code> if there is none */
+    private static ScheduledFuture<?> pendingWrite;
+    /** Becomes true once the manager has been shut down */
+    private static boolean shutdown;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private PersistenceManager() {}
+
+    /**
+     * Marks the given store as dirty, to be written once the save delay has elapsed. Nothing is done if the given
+     * store is already waiting to be written.
+     *
+     * @param store the store that has changed
+     */
+    public static synchronized void markDirty(PersistentStore store) {
+        // Stores are written by shutdown() from now on
+        if(shutdown)
+            return;
+
+        dirtyStores.add(store);
+        if(pendingWrite==null) {
+            if(writer==null)
+                writer = Executors.newSingleThreadScheduledExecutor(new WriterThreadFactory("Persistence writer"));
+
+            pendingWrite = writer.schedule(new Runnable() {
+                public void run() {
+                    writeDirtyStores();
+                }
+            }, getSaveDelay(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the dirty stores along with the given ones, concurrently, and returns once they have all been written.
+     * Stores marked as dirty after this method has been called are not written anymore.
+     *
+     * @param stores stores to write in addition to the dirty ones
+     */
+    public static void shutdown(PersistentStore... stores) {
+        Set<PersistentStore> toWrite;
+        synchronized(PersistenceManager.class) {
+            shutdown = true;
+            if(pendingWrite!=null) {
+                pendingWrite.cancel(false);
+                pendingWrite = null;
+            }
+            if(writer!=null)
+                writer.shutdown();
+
+            toWrite = dirtyStores;
+            dirtyStores = new LinkedHashSet<PersistentStore>();
+        }
+
+        for(PersistentStore store : stores)
+            toWrite.add(store);
+
+        if(toWrite.isEmpty())
+            return;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(MAX_SHUTDOWN_THREADS, toWrite.size()),
+                new WriterThreadFactory("Persistence shutdown writer"));
+        for(final PersistentStore store : toWrite) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    write(store);
+                }
+            });
+        }
+        pool.shutdown();
+
+        try {
+            if(!pool.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS))
+                LOGGER.warn("Timed out while saving on shutdown");
+        }
+        catch(InterruptedException e) {
+            LOGGER.debug("Interrupted while saving on shutdown", e);
+        }
+    }
+
+    /**
+     * Writes the stores that are dirty at the time this method is called.
+     */
+    private static void writeDirtyStores() {
+        PersistentStore stores[];
+        synchronized(PersistenceManager.class) {
+            stores = dirtyStores.toArray(new PersistentStore[dirtyStores.size()]);
+            dirtyStores.clear();
+            pendingWrite = null;
+        }
+
+        for(PersistentStore store : stores)
+            write(store);
+    }
+
+    /**
+     * Writes the given store, unless another thread is writing it in which case the write takes place once the other
+     * one is done. Failures are logged.
+     */
+    private static void write(PersistentStore store) {
+        synchronized(store) {
+            try {
+                store.write();
+            }
+            catch(Exception e) {
+                LOGGER.warn("Failed to save "+store.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the save delay, in milliseconds.
+     */
+    private static int getSaveDelay() {
+        return Math.max(0, MuConfigurations.getPreferences().getVariable(MuPreference.SAVE_DELAY, MuPreferences.DEFAULT_SAVE_DELAY));
+    }
+
+    /**
+     * Creates the daemon threads stores are written by.
+     */
+    private static class WriterThreadFactory implements ThreadFactory {
+        private String name;
+        private int threadNumber;
+
+        private WriterThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name+"-"+(++threadNumber));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
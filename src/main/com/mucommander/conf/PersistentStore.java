@@ -0,0 +1,46 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.conf;
+
+/**
+ * A piece of state that is saved to disk by the {@link PersistenceManager}.
+ *
+ * <p>Stores are written one at a time: the manager never invokes {@link #write()} on a store while another write
+ * of the same store is in progress.</p>
+ *
+ * @see PersistenceManager
+ */
+public interface PersistentStore {
+
+    /**
+     * Returns the name of this store, used when reporting write failures.
+     *
+     * @return the name of this store
+     */
+    String getName();
+
+    /**
+     * Writes the state held by this store to disk. Stores that haven't changed since they were last written may
+     * return without writing anything.
+     *
+     * @throws Exception if the state could not be written
+     */
+    void write() throws Exception;
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * Lists all the files contained by a folder and its subfolders, for the branch view of a
+ * {@link com.mucommander.ui.main.FolderPanel}. Folders are listed concurrently by a small pool of threads, and the
+ * files found so far can be handed out to a {@link Listener} while the walk goes on, so that they can be displayed
+ * before the whole branch is listed.
+ *
+ * <p>Only files are returned, not the folders that contain them. They are returned as they were listed: the walker
+ * keeps no more than a reference to each file found, in one array per listed folder. Symbolic links to folders are
+ * not followed, to avoid walking cycles. The number of files is bounded by {@link #MAX_FILES}: the walk stops once
+ * this number is reached.</p>
+ *
+ * <p>A walk can be cancelled with {@link #cancel()}, in which case it returns the files found so far.</p>
+ */
+public class BranchWalker {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BranchWalker.class);
+
+	/** Maximum number of files a branch listing contains, each of which the file table holds a row for */
+	public final static int MAX_FILES = 250000;
+
+	/** Number of threads folders are listed by */
+	private final static int NB_THREADS = 4;
+	/** Number of files found before the listener is first notified */
+	private final static int FIRST_NOTIFICATION = 1000;
+	/** Factor by which the number of files grows between two notifications of the listener */
+	private final static int NOTIFICATION_GROWTH = 4;
+
+	/** Filters the files and folders that are listed */
+	private FileFilter filter;
+	/** Notified of the files found so far, may be null */
+	private Listener listener;
+
+	/** Files found so far, one array per listed folder */
+	private List<AbstractFile[]> files = new ArrayList<AbstractFile[]>();
+	/** Number of files found so far */
+	private int nbFiles;
+	/** Number of folders submitted to the pool and not listed yet */
+	private int nbPendingFolders;
+	/** Number of files after which the listener is notified next */
+	private int nextNotification;
+	/** True if the walk stopped after MAX_FILES files were found */
+	private boolean truncated;
+	/** True if the walk was cancelled */
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new walker listing the files and folders that match the given filter.
+	 *
+	 * @param filter filters the files and folders that are listed, <code>null</code> to list them all
+	 * @param listener notified of the files found while the walk goes on, <code>null</code> for none
+	 */
+	public BranchWalker(FileFilter filter, Listener listener) {
+		this.filter = filter;
+		this.listener = listener;
+		this.nextNotification = listener==null?Integer.MAX_VALUE:FIRST_NOTIFICATION;
+	}
+
+	/**
+	 * Lists all the files contained by the given folder and its subfolders. The listener, if any, is notified by the
+	 * calling thread. Folders that can't be listed are skipped.
+	 *
+	 * @param folder the folder to walk
+	 * @return the files found, at most {@link #MAX_FILES}, or those found so far if the walk was cancelled
+	 * @throws InterruptedException if the calling thread was interrupted during the walk
+	 */
+	public AbstractFile[] walk(AbstractFile folder) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS, new ThreadFactory() {
+			private int threadNumber;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Branch walker-"+(++threadNumber));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			submit(executor, folder);
+
+			while(true) {
+				AbstractFile snapshot[];
+				synchronized(this) {
+					while(nbPendingFolders>0 && !truncated && !cancelled && nbFiles<nextNotification)
+						wait();
+
+					if(nbPendingFolders==0 || truncated || cancelled)
+						break;
+
+					snapshot = getFiles();
+					nextNotification = nbFiles*NOTIFICATION_GROWTH;
+				}
+
+				// The listener may take a while, workers go on in the meantime
+				listener.filesFound(snapshot);
+			}
+
+			synchronized(this) {
+				if(truncated)
+					LOGGER.info("Branch of "+folder.getAbsolutePath()+" contains more than "+MAX_FILES+" files, listing truncated");
+				else if(cancelled)
+					LOGGER.debug("Walk of "+folder.getAbsolutePath()+" cancelled after "+nbFiles+" files");
+
+				return getFiles();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the last walk stopped after {@link #MAX_FILES} files were found.
+	 *
+	 * @return <code>true</code> if the last walk was truncated
+	 */
+	public synchronized boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Stops the walk: folders are no longer listed and {@link #walk(AbstractFile)} returns the files found so far.
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Returns <code>true</code> if the walk was cancelled.
+	 *
+	 * @return <code>true</code> if the walk was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the files found so far in a single array.
+	 */
+	private synchronized AbstractFile[] getFiles() {
+		AbstractFile allFiles[] = new AbstractFile[nbFiles];
+		int offset = 0;
+		for(AbstractFile folderFiles[] : files) {
+			System.arraycopy(folderFiles, 0, allFiles, offset, folderFiles.length);
+			offset += folderFiles.length;
+		}
+
+		return allFiles;
+	}
+
+	/**
+	 * Submits the given folder to be listed by the pool.
+	 */
+	private void submit(final ExecutorService executor, final AbstractFile folder) {
+		synchronized(this) {
+			nbPendingFolders++;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						list(executor, folder);
+					}
+					finally {
+						folderDone();
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			// The walk is over
+			folderDone();
+		}
+	}
+
+	private synchronized void folderDone() {
+		nbPendingFolders--;
+		notifyAll();
+	}
+
+	/**
+	 * Lists the given folder, submits its subfolders and adds its files to the files found.
+	 */
+	private void list(ExecutorService executor, AbstractFile folder) {
+		if(cancelled)
+			return;
+
+		AbstractFile children[];
+		try {
+			children = filter==null?folder.ls():folder.ls(filter);
+		}
+		catch(IOException e) {
+			LOGGER.debug("Couldn't list "+folder.getAbsolutePath()+", skipping it", e);
+			return;
+		}
+
+		List<AbstractFile> folderFiles = new ArrayList<AbstractFile>(children.length);
+		for(AbstractFile child : children) {
+			if(Thread.currentThread().isInterrupted() || cancelled || isTruncated())
+				return;
+
+			if(child.isDirectory()) {
+				if(!child.isSymlink())
+					submit(executor, child);
+			}
+			else {
+				folderFiles.add(child);
+			}
+		}
+
+		addFiles(folderFiles);
+	}
+
+	/**
+	 * Adds the given files to the files found, up to MAX_FILES files.
+	 */
+	private synchronized void addFiles(List<AbstractFile> folderFiles) {
+		int nbAdded = Math.min(folderFiles.size(), MAX_FILES-nbFiles);
+		if(nbAdded>0) {
+			files.add((nbAdded==folderFiles.size()?folderFiles:folderFiles.subList(0, nbAdded)).toArray(new AbstractFile[nbAdded]));
+			nbFiles += nbAdded;
+		}
+
+		if(nbFiles>=MAX_FILES)
+			truncated = true;
+
+		notifyAll();
+	}
+
+	/**
+	 * Notified of the files found while a branch is being walked.
+	 */
+	public static interface Listener {
+
+		/**
+		 * Called with all the files found so far, a number of times that grows logarithmically with the number of
+		 * files of the branch.
+		 *
+		 * @param files the files found so far, which the listener may keep and modify
+		 */
+		void filesFound(AbstractFile files[]);
+	}
+}
@@ -269,6 +269,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         // what we want (the folder will be changed to a 'workable' folder).
         if(date!=currentFolderDate) {
             LOGGER.debug(this+" ("+currentFolder.getName()+") Detected changes in current folder, refreshing table!");
+
+            // The retained listing is out of date, even if the refresh doesn't happen
+            LocationListingCache.invalidate(currentFolder.getURL());
 			
             // Try and refresh current folder in a separate thread as to not lock monitor thread
             folderPanel.tryRefreshCurrentFolder();
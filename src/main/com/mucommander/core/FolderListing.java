@@ -0,0 +1,82 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.core;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * The children of a folder, as they were listed and displayed by a {@link com.mucommander.ui.main.FolderPanel}.
+ * Listings are retained by {@link LocationListingCache}.
+ */
+public class FolderListing {
+
+	/** The folder that was listed */
+	private AbstractFile folder;
+	/** The folder's children, as CachedFile instances whose attributes have been fetched */
+	private AbstractFile children[];
+	/** Date of the folder when its children were listed */
+	private long date;
+
+	FolderListing(AbstractFile folder, AbstractFile children[], long date) {
+		this.folder = folder;
+		this.children = children;
+		this.date = date;
+	}
+
+	/**
+	 * Returns the folder that was listed.
+	 *
+	 * @return the folder that was listed
+	 */
+	public AbstractFile getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Returns a copy of the folder's children, which the caller may modify.
+	 *
+	 * @return a copy of the folder's children
+	 */
+	public AbstractFile[] getChildren() {
+		AbstractFile childrenCopy[] = new AbstractFile[children.length];
+		System.arraycopy(children, 0, childrenCopy, 0, children.length);
+
+		return childrenCopy;
+	}
+
+	/**
+	 * Returns the number of children the folder had.
+	 *
+	 * @return the number of children the folder had
+	 */
+	public int getNbChildren() {
+		return children.length;
+	}
+
+	/**
+	 * Returns the date of the folder when its children were listed. The listing is out of date if the folder's
+	 * date has changed since.
+	 *
+	 * @return the date of the folder when its children were listed
+	 */
+	public long getDate() {
+		return date;
+	}
+}
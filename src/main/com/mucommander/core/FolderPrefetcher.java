@@ -0,0 +1,330 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.core;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.swing.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.job.progress.JobProgressMonitor;
+import com.mucommander.ui.event.LocationEvent;
+import com.mucommander.ui.event.LocationListener;
+import com.mucommander.ui.event.TableSelectionListener;
+import com.mucommander.ui.main.ConfigurableFolderFilter;
+import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.table.FileTable;
+import com.mucommander.ui.main.tree.TreeIOScheduler;
+import com.mucommander.ui.main.tree.TreeIOTask;
+
+/**
+ * Lists the folders a {@link FolderPanel} is likely to display next before the user opens them, and retains their
+ * listings in {@link LocationListingCache} so that they are displayed immediately once opened. Prefetching is enabled
+ * by the {@link MuPreferences#PREFETCH_FOLDERS} preference.
+ *
+ * <p>A folder is prefetched when the selection has rested on it for {@link #SELECTION_DELAY} ms. When the current
+ * folder has changed, its parent folder and the adjacent folders in history are prefetched as well, if their listing
+ * isn't retained already.</p>
+ *
+ * <p>Folders are listed by the {@link TreeIOScheduler} with the lowest priority, behind the i/o of the folders tree.
+ * The prefetch of the selected folder is cancelled when the selection moves, and all pending prefetches are cancelled
+ * when the current folder is being changed, so that they don't compete with the listing the user is waiting for. Nothing is prefetched while a file job is running, and the
+ * number of prefetches is limited for each protocol: see {@link #setMinimumInterval(String, long)}.</p>
+ */
+public class FolderPrefetcher implements TableSelectionListener, LocationListener, ActionListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FolderPrefetcher.class);
+
+	/** Time the selection must rest on a folder before the folder is prefetched, in milliseconds */
+	private final static int SELECTION_DELAY = 300;
+
+	/** Minimum time between two prefetches of local folders, in milliseconds */
+	private final static long LOCAL_MIN_INTERVAL = 100;
+	/** Minimum time between two prefetches of folders whose protocol has no specific interval, in milliseconds */
+	private final static long DEFAULT_MIN_INTERVAL = 2000;
+
+	/** Minimum time between two prefetches by protocol */
+	private final static Map<String, Long> minIntervals = new Hashtable<String, Long>();
+	/** Time of the last prefetch by protocol */
+	private final static Map<String, Long> lastPrefetchTimes = new Hashtable<String, Long>();
+
+	static {
+		minIntervals.put(FileProtocols.FILE, LOCAL_MIN_INTERVAL);
+	}
+
+	/** The FolderPanel whose next folders are prefetched */
+	private FolderPanel folderPanel;
+
+	/** Filters out the files that the FolderPanel doesn't display */
+	private ConfigurableFolderFilter configurableFolderFilter = new ConfigurableFolderFilter();
+
+	/** Fires when the selection has rested on a file for SELECTION_DELAY ms */
+	private Timer selectionTimer;
+
+	/** Keys of the prefetches scheduled by this prefetcher that may not have been executed yet */
+	private List<Object> pendingKeys = new Vector<Object>();
+
+	/** Key of the prefetch of the selected folder, <code>null</code> if there is none */
+	private Object selectionKey;
+
+	/**
+	 * Creates a new FolderPrefetcher for the given FolderPanel, which must be retained for as long as the FolderPanel is
+	 * used: the FolderPanel only holds weak references to its listeners.
+	 *
+	 * @param folderPanel the FolderPanel whose next folders are prefetched
+	 */
+	public FolderPrefetcher(FolderPanel folderPanel) {
+		this.folderPanel = folderPanel;
+
+		selectionTimer = new Timer(SELECTION_DELAY, this);
+		selectionTimer.setRepeats(false);
+
+		folderPanel.getFileTable().addTableSelectionListener(this);
+		folderPanel.getLocationManager().addLocationListener(this);
+	}
+
+	/**
+	 * Sets the minimum time between two prefetches of folders of the given protocol.
+	 *
+	 * @param protocol a file protocol, e.g. {@link FileProtocols#SFTP}
+	 * @param minInterval the minimum time between two prefetches, in milliseconds
+	 */
+	public static void setMinimumInterval(String protocol, long minInterval) {
+		minIntervals.put(protocol, minInterval);
+	}
+
+	/**
+	 * Returns the minimum time between two prefetches of folders of the given protocol, in milliseconds.
+	 *
+	 * @param protocol a file protocol
+	 * @return the minimum time between two prefetches, in milliseconds
+	 */
+	public static long getMinimumInterval(String protocol) {
+		Long minInterval = minIntervals.get(protocol);
+
+		return minInterval==null?DEFAULT_MIN_INTERVAL:minInterval;
+	}
+
+	/**
+	 * Returns <code>true</code> if a folder of the given protocol can be prefetched now, and records the prefetch.
+	 */
+	private static synchronized boolean acquirePrefetch(String protocol) {
+		long now = System.currentTimeMillis();
+		Long lastPrefetchTime = lastPrefetchTimes.get(protocol);
+		if(lastPrefetchTime!=null && now-lastPrefetchTime<getMinimumInterval(protocol))
+			return false;
+
+		lastPrefetchTimes.put(protocol, now);
+		return true;
+	}
+
+	private static boolean isEnabled() {
+		return MuConfigurations.getPreferences().getVariable(MuPreference.PREFETCH_FOLDERS, MuPreferences.DEFAULT_PREFETCH_FOLDERS);
+	}
+
+	/**
+	 * Cancels the prefetches scheduled by this prefetcher that haven't been executed yet. Those that are being executed
+	 * discard their listing.
+	 */
+	public void cancel() {
+		selectionTimer.stop();
+
+		selectionKey = null;
+
+		Object keys[] = pendingKeys.toArray();
+		pendingKeys.clear();
+		for(Object key : keys)
+			TreeIOScheduler.getInstance().cancel(key);
+	}
+
+	/**
+	 * Schedules the listing of the given folder, unless its listing is retained already or can't be retained, a file
+	 * job is running, or the folder's protocol has been prefetched too recently.
+	 *
+	 * @param folder the folder to prefetch, may be a CachedFile
+	 * @return the key of the scheduled prefetch, <code>null</code> if the folder isn't prefetched
+	 */
+	private Object prefetch(AbstractFile folder) {
+		if(folder instanceof CachedFile)
+			folder = ((CachedFile)folder).getProxiedFile();
+
+		FileURL url = folder.getURL();
+		String protocol = url.getScheme();
+		if(LocationListingCache.getTimeToLive(protocol)<=0 || LocationListingCache.get(url)!=null)
+			return null;
+
+		if(JobProgressMonitor.getInstance().hasRunningJobs() || !acquirePrefetch(protocol))
+			return null;
+
+		TreeIOTask task = TreeIOScheduler.getInstance().schedule(new PrefetchTask(folder));
+		pendingKeys.add(task.getKey());
+
+		return task.getKey();
+	}
+
+	/**
+	 * Same as {@link #prefetch(AbstractFile)} with a URL that is first resolved into a file. This method may be I/O-bound.
+	 *
+	 * @param url the URL of the folder to prefetch
+	 */
+	private void prefetch(FileURL url) {
+		if(LocationListingCache.get(url)!=null)
+			return;
+
+		AbstractFile folder = FileFactory.getFile(url);
+		if(folder!=null)
+			prefetch(folder);
+	}
+
+
+	////////////////////////////////////
+	// ActionListener implementation //
+	////////////////////////////////////
+
+	/**
+	 * Prefetches the selected folder, once the selection has rested on it.
+	 */
+	public void actionPerformed(ActionEvent e) {
+		FileTable fileTable = folderPanel.getFileTable();
+		AbstractFile selectedFile = fileTable.getSelectedFile(true, true);
+
+		// Attributes of the CachedFile are already known, this doesn't cause any i/o
+		if(selectedFile!=null && selectedFile.isDirectory())
+			selectionKey = prefetch(selectedFile);
+	}
+
+
+	////////////////////////////////////////////
+	// TableSelectionListener implementation //
+	////////////////////////////////////////////
+
+	public void selectedFileChanged(FileTable source) {
+		// The previously selected folder is no longer likely to be opened
+		selectionTimer.stop();
+		if(selectionKey!=null) {
+			TreeIOScheduler.getInstance().cancel(selectionKey);
+			selectionKey = null;
+		}
+
+		if(isEnabled())
+			selectionTimer.restart();
+	}
+
+	public void markedFilesChanged(FileTable source) {
+	}
+
+
+	//////////////////////////////////////
+	// LocationListener implementation //
+	//////////////////////////////////////
+
+	public void locationChanging(LocationEvent locationEvent) {
+		cancel();
+	}
+
+	public void locationChanged(LocationEvent locationEvent) {
+		if(!isEnabled())
+			return;
+
+		// This is called by the thread that changed the folder, not by the event thread
+		AbstractFile currentFolder = folderPanel.getCurrentFolder();
+		AbstractFile parent = currentFolder==null?null:currentFolder.getParent();
+		if(parent!=null)
+			prefetch(parent);
+
+		LocalLocationHistory history = folderPanel.getFolderHistory();
+		FileURL backFolders[] = history.getBackFolders();
+		if(backFolders.length>0)
+			prefetch(backFolders[0]);
+
+		FileURL forwardFolders[] = history.getForwardFolders();
+		if(forwardFolders.length>0)
+			prefetch(forwardFolders[0]);
+	}
+
+	public void locationCancelled(LocationEvent locationEvent) {
+	}
+
+	public void locationFailed(LocationEvent locationEvent) {
+	}
+
+
+	/**
+	 * Lists a folder and retains its listing, unless it has been cancelled or a file job has started in the meantime.
+	 */
+	private class PrefetchTask extends TreeIOTask {
+
+		private AbstractFile folder;
+
+		PrefetchTask(AbstractFile folder) {
+			super("prefetch:"+folder.getURL().toString(false), folder, TreeIOScheduler.PRIORITY_PREFETCH);
+			this.folder = folder;
+		}
+
+		@Override
+		protected void execute() {
+			try {
+				if(JobProgressMonitor.getInstance().hasRunningJobs() || LocationListingCache.get(folder.getURL())!=null)
+					return;
+
+				// The date is retrieved first so that a change made during the listing is detected when the listing
+				// is displayed
+				long date = folder.getDate();
+				AbstractFile children[] = folder.ls(configurableFolderFilter);
+				for(int i=0; i<children.length; i++) {
+					children[i] = new CachedFile(children[i], true);
+					// Retrieve the attributes the table displays while still in the background
+					children[i].isDirectory();
+					children[i].getDate();
+					children[i].getSize();
+				}
+
+				if(!isCancelled())
+					LocationListingCache.put(folder, children, date);
+			}
+			catch(IOException e) {
+				LOGGER.debug("Couldn't prefetch "+folder.getAbsolutePath()+", error: "+e.getMessage());
+			}
+			finally {
+				pendingKeys.remove(getKey());
+			}
+		}
+
+		@Override
+		protected void cancelled() {
+			pendingKeys.remove(getKey());
+		}
+	}
+}
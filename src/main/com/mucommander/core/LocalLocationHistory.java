@@ -117,7 +117,7 @@ public class LocalLocationHistory {
 		if (historyIndex==0)
 			return;
 
-		folderPanel.tryChangeCurrentFolder(history.get(--historyIndex));
+		folderPanel.tryChangeCurrentFolderCached(history.get(--historyIndex));
 	}
 
 	/**
@@ -128,7 +128,7 @@ public class LocalLocationHistory {
 		if (historyIndex==history.size()-1)
 			return;
 
-		folderPanel.tryChangeCurrentFolder(history.get(++historyIndex));
+		folderPanel.tryChangeCurrentFolderCached(history.get(++historyIndex));
 	}
 
 
@@ -100,6 +100,35 @@ public class LocationChanger {
 	 * @param callback the {@link Callback#call()} method will be called when folder has changed
 	 */
 	public void tryChangeCurrentFolderInternal(final FileURL folderURL, final Callback callback) {
+		changeCurrentFolderInternal(new Runnable() {
+			public void run() {
+				AbstractFile folder = getWorkableLocation(folderURL);
+				locationManager.setCurrentFolder(folder, null, true);
+			}
+		}, callback);
+	}
+
+	/**
+	 * This method is triggered internally (i.e not by user request) to change the current
+	 * folder to the given folder, using children that were listed before instead of listing it again
+	 *
+	 * @param folder the folder to switch to
+	 * @param children the children of the folder, as they were listed before
+	 * @param fileToSelect the file to select after the folder has changed, <code>null</code> for the default selection
+	 * @param callback the {@link Callback#call()} method will be called when folder has changed
+	 */
+	public void tryChangeCurrentFolderInternal(final AbstractFile folder, final AbstractFile children[], final AbstractFile fileToSelect, final Callback callback) {
+		changeCurrentFolderInternal(new Runnable() {
+			public void run() {
+				locationManager.setCurrentFolder(folder, children, fileToSelect, true);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Performs the given folder change outside of the event dispatch thread, with events disabled in the main frame.
+	 */
+	private void changeCurrentFolderInternal(final Runnable folderChange, final Callback callback) {
 		mainFrame.setNoEventsMode(true);
 		// Set cursor to hourglass/wait
 		mainFrame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
@@ -107,9 +136,8 @@ public class LocationChanger {
     	Thread setLocationThread = new Thread() {
     		@Override
     		public void run() {
-    			AbstractFile folder = getWorkableLocation(folderURL);
     			try {
-    				locationManager.setCurrentFolder(folder, null, true);
+    				folderChange.run();
     			} finally {
     				mainFrame.setNoEventsMode(false);
     				// Restore default cursor
@@ -160,7 +188,6 @@ public class LocationChanger {
 	 * @return the thread that performs the actual folder change, null if another folder change is already underway
 	 */
 	public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder, boolean changeLockedTab) {
-		/* TODO branch setBranchView(false); */
 		return tryChangeCurrentFolder(folder, null, false, changeLockedTab);
 	}
 
@@ -186,6 +213,26 @@ public class LocationChanger {
 	 * @return the thread that performs the actual folder change, null if another folder change is already underway  
 	 */
 	public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder, boolean changeLockedTab) {
+		return tryChangeCurrentFolder(folder, selectThisFileAfter, findWorkableFolder, changeLockedTab, false);
+	}
+
+	/**
+	 * Tries to change the current folder to the new specified one, displaying the folder's listing retained by
+	 * {@link LocationListingCache} if there is one, and notifies the user in case of a problem. The listing may have
+	 * been retained when the folder was last visited, or prefetched by {@link FolderPrefetcher} while the folder was
+	 * selected.
+	 *
+	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
+	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 *
+	 * @param folder the folder to be made current folder
+	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 */
+	public ChangeFolderThread tryChangeCurrentFolderCached(AbstractFile folder) {
+		return tryChangeCurrentFolder(folder, null, false, false, true);
+	}
+
+	private ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder, boolean changeLockedTab, boolean useCachedListing) {
 		LOGGER.debug("folder="+folder+" selectThisFileAfter="+selectThisFileAfter);
 
 		synchronized(FOLDER_CHANGE_LOCK) {
@@ -203,6 +250,7 @@ public class LocationChanger {
 			// returned (I've seen this happening). Relying solely on the changeFolderThread field could thus cause
 			// a null value to be returned, which is particularly problematic during startup (would cause an NPE).
 			ChangeFolderThread thread = new ChangeFolderThread(folder, findWorkableFolder, changeLockedTab);
+			thread.useCachedListing = useCachedListing;
 
 			if(selectThisFileAfter!=null)
 				thread.selectThisFileAfter(selectThisFileAfter);
@@ -277,6 +325,46 @@ public class LocationChanger {
 	 * @return the thread that performs the actual folder change, null if another folder change is already underway
 	 */
 	public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL, CredentialsMapping credentialsMapping, boolean changeLockedTab) {
+		return tryChangeCurrentFolder(folderURL, credentialsMapping, changeLockedTab, false);
+	}
+
+	/**
+	 * Tries to change current folder to the new specified URL, displaying the folder's listing retained by
+	 * {@link LocationListingCache} if there is one, and notifies the user in case of a problem. A retained listing is
+	 * displayed without resolving or listing the folder, whose date is then checked in the background: the folder is
+	 * refreshed if it has changed since it was listed.
+	 *
+	 * <p>This is meant for locations that were visited before, such as history, bookmarks or volumes.</p>
+	 *
+	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
+	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 *
+	 * @param folderURL location to the new current folder. If this URL does not resolve into a file, an error message will be displayed.
+	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 */
+	public ChangeFolderThread tryChangeCurrentFolderCached(FileURL folderURL) {
+		return tryChangeCurrentFolder(folderURL, null, false, true);
+	}
+
+	/**
+	 * Same as {@link #tryChangeCurrentFolderCached(FileURL)} with a path that is first resolved into a URL.
+	 *
+	 * @param folderPath path to the new current folder. If this path does not resolve into a file, an error message will be displayed.
+	 * @return the thread that performs the actual folder change, null if another folder change is already underway or if the given path could not be resolved
+	 */
+	public ChangeFolderThread tryChangeCurrentFolderCached(String folderPath) {
+		try {
+			return tryChangeCurrentFolderCached(FileURL.getFileURL(folderPath));
+		}
+		catch(MalformedURLException e) {
+			// FileURL could not be resolved, notify the user that the folder doesn't exist
+			showFolderDoesNotExistDialog();
+
+			return null;
+		}
+	}
+
+	private ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL, CredentialsMapping credentialsMapping, boolean changeLockedTab, boolean useCachedListing) {
 		LOGGER.debug("folderURL="+folderURL);
 
 		synchronized(FOLDER_CHANGE_LOCK) {
@@ -294,6 +382,7 @@ public class LocationChanger {
 			// returned (I've seen this happening). Relying solely on the changeFolderThread field could thus cause
 			// a null value to be returned, which is particularly problematic during startup (would cause an NPE).
 			ChangeFolderThread thread = new ChangeFolderThread(folderURL, credentialsMapping, changeLockedTab);
+			thread.useCachedListing = useCachedListing;
 			thread.start();
 
 			changeFolderThread = thread;
@@ -353,6 +442,20 @@ public class LocationChanger {
     	locationManager.setCurrentFolder(folder, fileToSelect, changeLockedTab);
     }
 
+    /**
+     * Changes current folder using the given folder and children files that were listed before.
+     *
+     * @param folder folder to be made current folder
+     * @param children current folder's files, as they were listed before
+     * @param fileToSelect file to be selected after the folder has been changed (if it exists in the folder), can be null in which case FileTable rules will be used to select current file
+     * @param changeLockedTab - flag that indicates whether to change the presented folder in the currently selected tab although it's locked
+     */
+    private void setCurrentFolder(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect, boolean changeLockedTab) {
+        lastFolderChangeTime = System.currentTimeMillis();
+
+    	locationManager.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
+    }
+
     /**
      * Returns the time at which the last folder change completed successfully.
      *
@@ -483,6 +586,8 @@ public class LocationChanger {
 		private FileURL folderURL;
 		private AbstractFile fileToSelect;
 		private CredentialsMapping credentialsMapping;
+		/** True if the folder's listing retained by LocationListingCache can be displayed, if there is one */
+		private boolean useCachedListing;
 
 		/** True if this thread has been interrupted by the user using #tryKill */
 		private boolean killed;
@@ -498,8 +603,6 @@ public class LocationChanger {
 		/** Lock object used to ensure consistency and thread safeness when killing the thread */
 		private final Object KILL_LOCK = new Object();
 
-		/* TODO branch private ArrayList childrenList; */
-
 
 		public ChangeFolderThread(AbstractFile folder, boolean findWorkableFolder, boolean changeLockedTab) {
 			// Ensure that we work on a raw file instance and not a cached one
@@ -565,6 +668,9 @@ public class LocationChanger {
 		 * <p>The second time this method is called, the deprecated (and unsafe) {@link #stop()} method is called,
 		 * forcing the thread to abort.</p>
 		 *
+		 * <p>If the thread is walking the branch of the folder in branch view, the walk is stopped instead, and the
+		 * files found so far are displayed.</p>
+		 *
 		 * <p>Any subsequent calls to this method will have no effect and return <code>false</code>.</p>
 		 *
 		 * @return true if an attempt was made to stop this thread.
@@ -577,6 +683,12 @@ public class LocationChanger {
 				}
 
 				if(doNotKill) {
+					// The walk of a branch can still be stopped, the files found so far being displayed
+					if(locationManager.cancelBranchWalk()) {
+						LOGGER.debug("Cancelling branch walk");
+						return true;
+					}
+
 					LOGGER.debug("Can't kill thread now, it's too late, returning");
 					return false;
 				}
@@ -662,6 +774,16 @@ public class LocationChanger {
 				}
 			}
 
+			// The retained listing is only displayed once authentication didn't require new credentials, and only if it
+			// was made with the credentials the folder is accessed with
+			if(useCachedListing && !userCancelled && newCredentialsMapping==null) {
+				FolderListing listing = LocationListingCache.get(folderURL);
+				if(listing!=null) {
+					changeFolderToListing(listing);
+					return;
+				}
+			}
+
 			if(!userCancelled) {
 				boolean canonicalPathFollowed = false;
 
@@ -812,15 +934,6 @@ public class LocationChanger {
 						// File tested -> 50% complete
 						folderPanel.setProgressValue(50);
 
-						/* TODO branch 
-						AbstractFile children[] = new AbstractFile[0];
-						if (branchView) {
-							childrenList = new ArrayList();
-							readBranch(folder);
-							children = (AbstractFile[]) childrenList.toArray(children);
-						} else {
-							children = folder.ls(chainedFileFilter);                            
-						}*/ 
 
 						synchronized(KILL_LOCK) {
 							if(killed) {
@@ -922,6 +1035,46 @@ public class LocationChanger {
 			}
 		}
 
+		/**
+		 * Changes the current folder to the given retained listing without resolving or listing the folder, then
+		 * refreshes the folder if it has changed since it was listed.
+		 */
+		private void changeFolderToListing(FolderListing listing) {
+			synchronized(KILL_LOCK) {
+				if(killed) {
+					LOGGER.debug("this thread has been killed, returning");
+					cleanup(false);
+					return;
+				}
+				// From now on, thread cannot be killed (would comprise table integrity)
+				doNotKill = true;
+			}
+
+			folder = listing.getFolder();
+			boolean folderChangedSuccessfully = false;
+			try {
+				mainFrame.setNoEventsMode(true);
+				folderPanel.setProgressValue(75);
+
+				setCurrentFolder(folder, listing.getChildren(), fileToSelect, changeLockedTab);
+				folderChangedSuccessfully = true;
+			}
+			finally {
+				synchronized(KILL_LOCK) {
+					cleanup(folderChangedSuccessfully);
+				}
+			}
+
+			// Now that the folder change is over, make sure the listing is still current
+			if(!folder.exists() || folder.getDate()!=listing.getDate()) {
+				LOGGER.debug("Listing of "+folder.getAbsolutePath()+" is out of date, refreshing");
+				LocationListingCache.invalidate(folder.getURL());
+
+				if(locationManager.getCurrentFolder()==folder)
+					tryRefreshCurrentFolder();
+			}
+		}
+
 		public void cleanup(boolean folderChangedSuccessfully) {
 			// Ensures that this method is called only once
 			synchronized(KILL_LOCK) {
@@ -968,25 +1121,4 @@ public class LocationChanger {
 			return super.toString()+" folderURL="+folderURL+" folder="+folder;
 		}
 	}
-	
-	/* TODO branch         
-	*//**
-	 * Reads all files in the current directory and all its subdirectories.
-	 * @param parent
-	 *//*
-	private void readBranch(AbstractFile parent) {
-		AbstractFile[] children;
-		try {
-			children = parent.ls(chainedFileFilter);
-			for (int i=0; i<children.length; i++) {
-				if (children[i].isDirectory()) {
-					readBranch(children[i]);
-				} else {
-					childrenList.add(children[i]);
-				}
-			}
-		} catch (IOException e) {
-			AppLogger.fine("Caught exception", e);
-		}
-	}*/
 }
@@ -0,0 +1,200 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.core;
+
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.cache.ConcurrentLRUCache;
+import com.mucommander.commons.conf.ConfigurationEvent;
+import com.mucommander.commons.conf.ConfigurationListener;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.Credentials;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreferences;
+
+/**
+ * Retains the listings of the folders displayed by all {@link com.mucommander.ui.main.FolderPanel} instances, so that
+ * going back and forth in history or to a bookmark can display a folder without listing it again. The listing is
+ * displayed immediately and the folder's date is checked in the background: if it has changed, the folder is
+ * listed again.
+ *
+ * <p>The cache is bounded by the total number of files of the retained listings, least recently used listings being
+ * evicted first. Listings also expire after a time-to-live that depends on the folder's protocol, which can be set
+ * with {@link #setTimeToLive(String, long)}: listings of local folders are cheap to recreate and expire quickly,
+ * listings of remote folders are kept longer, and listings of HTTP folders are not retained at all.</p>
+ *
+ * <p>Listings are retained for the login they were made with: a listing is only returned for a URL that has the same
+ * credentials, password included, as the folder that was listed.</p>
+ *
+ * <p>Listings are invalidated when the folder change monitor detects a change, when a file job has modified a
+ * folder, and when the preferences that filter the listed files are changed.</p>
+ */
+public class LocationListingCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocationListingCache.class);
+
+	/** Maximum number of files of all the retained listings */
+	private final static int MAX_LISTED_FILES = 50000;
+
+	/** Time-to-live of listings of local folders, in milliseconds */
+	private final static long LOCAL_TIME_TO_LIVE = 60*1000;
+	/** Time-to-live of listings of folders whose protocol has no specific time-to-live, in milliseconds */
+	private final static long DEFAULT_TIME_TO_LIVE = 5*60*1000;
+
+	/** Retained listings, keyed by their folder's URL and login */
+	private final static ConcurrentLRUCache<String, FolderListing> listings = new ConcurrentLRUCache<String, FolderListing>(MAX_LISTED_FILES,
+			new ConcurrentLRUCache.Weigher<String, FolderListing>() {
+				public int weigh(String key, FolderListing listing) {
+					return listing.getNbChildren()+1;
+				}
+			});
+
+	/** Time-to-live of listings by protocol, 0 for protocols whose listings must not be retained */
+	private final static Map<String, Long> timesToLive = new Hashtable<String, Long>();
+
+	/** Clears the cache when the preferences that filter the listed files are changed */
+	private final static ConfigurationListener filtersListener = new ConfigurationListener() {
+		public void configurationChanged(ConfigurationEvent event) {
+			String var = event.getVariable();
+
+			if(var.equals(MuPreferences.SHOW_HIDDEN_FILES) || var.equals(MuPreferences.SHOW_DS_STORE_FILES) || var.equals(MuPreferences.SHOW_SYSTEM_FOLDERS))
+				listings.clearAll();
+		}
+	};
+
+	static {
+		timesToLive.put(FileProtocols.FILE, LOCAL_TIME_TO_LIVE);
+		// HTTP folders are generated pages which can't be checked for changes
+		timesToLive.put(FileProtocols.HTTP, 0L);
+		timesToLive.put(FileProtocols.HTTPS, 0L);
+
+		MuConfigurations.addPreferencesListener(filtersListener);
+	}
+
+	/**
+	 * Prevents instances of this class from being created.
+	 */
+	private LocationListingCache() {}
+
+	/**
+	 * Sets the time-to-live of the listings of folders of the given protocol, 0 for the listings not to be retained.
+	 *
+	 * @param protocol a file protocol, e.g. {@link FileProtocols#SFTP}
+	 * @param timeToLive the time-to-live of the listings, in milliseconds
+	 */
+	public static void setTimeToLive(String protocol, long timeToLive) {
+		timesToLive.put(protocol, timeToLive);
+	}
+
+	/**
+	 * Returns the time-to-live of the listings of folders of the given protocol, in milliseconds.
+	 *
+	 * @param protocol a file protocol
+	 * @return the time-to-live of the listings, in milliseconds
+	 */
+	public static long getTimeToLive(String protocol) {
+		Long timeToLive = timesToLive.get(protocol);
+
+		return timeToLive==null?DEFAULT_TIME_TO_LIVE:timeToLive;
+	}
+
+	/**
+	 * Retains the listing of the given folder, replacing the previous one.
+	 *
+	 * @param folder the folder that was listed
+	 * @param children the folder's children, as CachedFile instances. The array must not be modified afterwards.
+	 * @param date the date of the folder when its children were listed
+	 */
+	public static void put(AbstractFile folder, AbstractFile children[], long date) {
+		FileURL url = folder.getURL();
+		long timeToLive = getTimeToLive(url.getScheme());
+		if(timeToLive<=0)
+			return;
+
+		listings.add(getKey(url), new FolderListing(folder, children, date), timeToLive);
+	}
+
+	/**
+	 * Returns the listing of the folder with the given URL, <code>null</code> if it hasn't been retained, has
+	 * expired or was made with other credentials than the URL's.
+	 *
+	 * @param url the URL of a folder
+	 * @return the listing of the folder, <code>null</code> if there is none
+	 */
+	public static FolderListing get(FileURL url) {
+		FolderListing listing = listings.get(getKey(url));
+		if(listing==null)
+			return null;
+
+		Credentials credentials = url.getCredentials();
+		Credentials listingCredentials = listing.getFolder().getURL().getCredentials();
+		if(credentials==null?listingCredentials!=null:!credentials.equals(listingCredentials, true))
+			return null;
+
+		return listing;
+	}
+
+	/**
+	 * Discards the listing of the folder with the given URL, if there is one.
+	 *
+	 * @param url the URL of a folder
+	 */
+	public static void invalidate(FileURL url) {
+		listings.remove(getKey(url));
+	}
+
+	/**
+	 * Discards the listings of the folders that match the given filter.
+	 *
+	 * @param filter matches the folders whose listing is out of date
+	 */
+	public static void invalidate(FileFilter filter) {
+		for(FolderListing listing : listings.getValues()) {
+			AbstractFile folder = listing.getFolder();
+			if(filter.match(folder)) {
+				LOGGER.debug("Invalidating listing of "+folder.getAbsolutePath());
+				invalidate(folder.getURL());
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the folder with the given URL: the login is kept so that the listings of different users of
+	 * the same host are retained separately, but the password and the trailing separator the path may or may not have
+	 * are left out.
+	 */
+	private static String getKey(FileURL url) {
+		String key = url.toString(false);
+		if(key.endsWith("/") && !url.getPath().equals("/"))
+			key = key.substring(0, key.length()-1);
+
+		Credentials credentials = url.getCredentials();
+		if(credentials!=null && !credentials.isEmpty())
+			key = credentials.getLogin()+"@"+key;
+
+		return key;
+	}
+}
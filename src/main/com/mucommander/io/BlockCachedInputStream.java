@@ -0,0 +1,320 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Vector;
+
+import com.mucommander.cache.ConcurrentLRUCache;
+import com.mucommander.commons.file.AbstractArchiveEntryFile;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.io.RandomAccessInputStream;
+
+/**
+ * A random access stream on a remote or archived file, which reads the file by blocks of {@link #BLOCK_SIZE} bytes and
+ * retains the blocks it has read in a cache shared by all instances. Only the blocks that are actually read are
+ * fetched from the file: seeking within a file doesn't transfer the bytes that are skipped when the file supports
+ * random access, and reading a file again, e.g. with a different encoding, doesn't transfer anything as long as its
+ * blocks are still cached.
+ *
+ * <p>Blocks are keyed by the file's URL, size and date so that the blocks of a file that has been modified are not
+ * used. When the file is read sequentially, the {@link #READ_AHEAD_BLOCKS} next blocks are fetched along with the
+ * requested one, in a single request.</p>
+ *
+ * <p>The underlying stream is opened when the first block is fetched. Files that do not support random access are
+ * read with a sequential stream, which is skipped forward and reopened to seek backwards.</p>
+ *
+ * <p>Blocks are fetched from the {@link ContentCache} when it holds the file's contents. Conversely, a file whose
+ * blocks have all been read is added to the <code>ContentCache</code> when the stream is closed.</p>
+ */
+public class BlockCachedInputStream extends RandomAccessInputStream {
+
+    /** Size of the blocks files are read by */
+    public final static int BLOCK_SIZE = 64*1024;
+    /** Number of blocks fetched after the requested one when reading sequentially */
+    private final static int READ_AHEAD_BLOCKS = 3;
+    /** Maximum number of bytes retained by the cache */
+    private final static long MAX_CACHED_BYTES = 32*1024*1024;
+
+    /** Blocks of all files, keyed by file key and block index */
+    private final static ConcurrentLRUCache<String, byte[]> blocks = new ConcurrentLRUCache<String, byte[]>(MAX_CACHED_BYTES,
+            new ConcurrentLRUCache.Weigher<String, byte[]>() {
+                public int weigh(String key, byte[] block) {
+                    return block.length;
+                }
+            });
+
+    /** The file being read */
+    private AbstractFile file;
+    /** Identifies this version of the file in the cache */
+    private String fileKey;
+    /** Length of the file */
+    private long length;
+    /** Offset of the next byte to be read */
+    private long offset;
+
+    /** Stream the blocks are fetched from, null until the first block is fetched */
+    private InputStream in;
+    /** Offset of the next byte to be read from the underlying stream */
+    private long inOffset;
+    /** Index of the last block that was read, used to detect sequential reads */
+    private long lastBlockIndex = -1;
+    /** True if the blocks are fetched from the content cache */
+    private boolean contentCached;
+
+    /**
+     * Creates a new stream on the given file, whose size must be known.
+     *
+     * @param file the file to read
+     * @throws IOException if the size of the file is not known
+     */
+    public BlockCachedInputStream(AbstractFile file) throws IOException {
+        this.file = file;
+        this.length = file.getSize();
+        if(length<0)
+            throw new IOException("Unknown size of "+file.getAbsolutePath());
+
+        this.fileKey = file.getURL().toString(false)+"|"+length+"|"+file.getDate();
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is worth reading through a <code>BlockCachedInputStream</code>, that
+     * is if it is a remote file or an archive entry whose size is known. Plain local files are read faster directly.
+     *
+     * @param file a file to read
+     * @return <code>true</code> if the given file is worth reading through a <code>BlockCachedInputStream</code>
+     */
+    public static boolean isCacheable(AbstractFile file) {
+        return (!FileProtocols.FILE.equals(file.getURL().getScheme()) || file.hasAncestor(AbstractArchiveEntryFile.class))
+            && file.getSize()>=0;
+    }
+
+    /**
+     * Returns a stream on the given file: a <code>BlockCachedInputStream</code> if the file is
+     * {@link #isCacheable(AbstractFile) cacheable}, the file's own stream otherwise.
+     *
+     * @param file the file to read
+     * @return a stream on the given file
+     * @throws IOException if the stream could not be opened
+     */
+    public static InputStream getInputStream(AbstractFile file) throws IOException {
+        if(isCacheable(file))
+            return new BlockCachedInputStream(file);
+
+        return file.getInputStream();
+    }
+
+    /**
+     * Returns the block with the given index, fetching it and the blocks that follow it if it's not cached.
+     */
+    private byte[] getBlock(long blockIndex) throws IOException {
+        byte block[] = blocks.get(getBlockKey(blockIndex));
+        if(block==null) {
+            // Only read ahead when reading sequentially, random access should only fetch what is read
+            boolean sequential = blockIndex==lastBlockIndex+1;
+            long nbBlocks = (length+BLOCK_SIZE-1)/BLOCK_SIZE;
+            long lastFetchedIndex = sequential?Math.min(nbBlocks-1, blockIndex+READ_AHEAD_BLOCKS):blockIndex;
+
+            position(blockIndex*BLOCK_SIZE);
+            for(long i=blockIndex; i<=lastFetchedIndex; i++) {
+                byte fetched[] = new byte[(int)Math.min(BLOCK_SIZE, length-i*BLOCK_SIZE)];
+                readFully(in, fetched);
+                inOffset += fetched.length;
+                blocks.add(getBlockKey(i), fetched);
+
+                if(i==blockIndex)
+                    block = fetched;
+            }
+        }
+
+        lastBlockIndex = blockIndex;
+        return block;
+    }
+
+    private String getBlockKey(long blockIndex) {
+        return fileKey+"#"+blockIndex;
+    }
+
+    /**
+     * Positions the underlying stream at the given offset, opening it if needed.
+     */
+    private void position(long pos) throws IOException {
+        if(in!=null && inOffset==pos)
+            return;
+
+        if(in instanceof RandomAccessInputStream) {
+            ((RandomAccessInputStream)in).seek(pos);
+            inOffset = pos;
+            return;
+        }
+
+        // A sequential stream can only move forward
+        if(in==null || pos<inOffset) {
+            closeUnderlyingStream();
+            openUnderlyingStream();
+
+            if(in instanceof RandomAccessInputStream) {
+                ((RandomAccessInputStream)in).seek(pos);
+                inOffset = pos;
+                return;
+            }
+        }
+
+        while(inOffset<pos) {
+            long skipped = in.skip(pos-inOffset);
+            if(skipped<=0) {
+                if(in.read()==-1)
+                    throw new EOFException();
+                skipped = 1;
+            }
+            inOffset += skipped;
+        }
+    }
+
+    private void openUnderlyingStream() throws IOException {
+        in = null;
+
+        AbstractFile cachedFile = ContentCache.getCachedFile(file);
+        if(cachedFile!=null) {
+            try {
+                in = cachedFile.getRandomAccessInputStream();
+                contentCached = true;
+                inOffset = 0;
+                return;
+            }
+            catch(IOException e) {
+                // Read the file itself
+            }
+        }
+
+        if(file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            try { in = file.getRandomAccessInputStream(); }
+            catch(IOException e) {
+                // In that case we simply get an InputStream
+            }
+        }
+
+        if(in==null)
+            in = file.getInputStream();
+        inOffset = 0;
+    }
+
+    private void closeUnderlyingStream() {
+        if(in!=null) {
+            try { in.close(); }
+            catch(IOException e) {
+                // Nothing to do here.
+            }
+            in = null;
+        }
+    }
+
+    /**
+     * Adds the file to the content cache if all its blocks are cached and it isn't in the content cache already.
+     */
+    private void addToContentCache() {
+        if(contentCached || !ContentCache.isCacheable(file))
+            return;
+
+        long nbBlocks = (length+BLOCK_SIZE-1)/BLOCK_SIZE;
+        Vector<InputStream> streams = new Vector<InputStream>();
+        for(long i=0; i<nbBlocks; i++) {
+            byte block[] = blocks.get(getBlockKey(i));
+            if(block==null)
+                return;
+            streams.add(new ByteArrayInputStream(block));
+        }
+
+        try {
+            ContentCache.put(file, new SequenceInputStream(streams.elements()));
+        }
+        catch(IOException e) {
+            // The file will simply not be in the content cache
+        }
+    }
+
+    private static void readFully(InputStream in, byte b[]) throws IOException {
+        int off = 0;
+        while(off<b.length) {
+            int nbRead = in.read(b, off, b.length-off);
+            if(nbRead==-1)
+                throw new EOFException();
+            off += nbRead;
+        }
+    }
+
+
+    ////////////////////////////////////////////
+    // RandomAccessInputStream implementation //
+    ////////////////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        if(offset>=length)
+            return -1;
+
+        byte block[] = getBlock(offset/BLOCK_SIZE);
+        return block[(int)(offset++%BLOCK_SIZE)] & 0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if(len==0)
+            return 0;
+        if(offset>=length)
+            return -1;
+
+        // Return what's left in the current block, callers loop to read more
+        byte block[] = getBlock(offset/BLOCK_SIZE);
+        int blockOffset = (int)(offset%BLOCK_SIZE);
+        int nbRead = Math.min(len, block.length-blockOffset);
+        System.arraycopy(block, blockOffset, b, off, nbRead);
+        offset += nbRead;
+
+        return nbRead;
+    }
+
+    public void seek(long offset) throws IOException {
+        if(offset<0 || offset>length)
+            throw new IOException("Invalid offset: "+offset);
+
+        this.offset = offset;
+    }
+
+    public long getOffset() throws IOException {
+        return offset;
+    }
+
+    public long getLength() throws IOException {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeUnderlyingStream();
+        addToContentCache();
+    }
+}
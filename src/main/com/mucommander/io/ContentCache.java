@@ -0,0 +1,512 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+
+/**
+ * A disk cache of the contents of remote files and archive entries, which lets them be read again without being
+ * transferred. Contents are stored in the {@link #CACHE_FOLDER_NAME} folder of the preferences folder, in files named
+ * after a SHA-1 digest of the file's URL, size and date: a file that has been modified gets a new entry and its stale
+ * entry is eventually evicted.
+ *
+ * <p>The total size of the entries is bounded by the {@link MuPreferences#CONTENT_CACHE_SIZE} preference; the least
+ * recently used entries are deleted when room has to be made for a new one. Files larger than a quarter of that size
+ * are not cached.</p>
+ *
+ * <p>Entries are populated by reading a file through {@link #getInputStream(AbstractFile)}: the contents are written to
+ * a temporary file as they are read, which becomes an entry once the whole file has been read. The number of hits,
+ * misses and evicted bytes are logged as debug messages, which can be seen in the debug console.</p>
+ */
+public class ContentCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ContentCache.class);
+
+    /** Name of the folder the entries are stored in, within the preferences folder */
+    public final static String CACHE_FOLDER_NAME = "content_cache";
+    /** Extension of the files entries are written to before being complete */
+    private final static String TEMP_EXTENSION = ".tmp";
+    /** Files larger than the maximum size of the cache divided by this ratio are not cached */
+    private final static int MAX_ENTRY_RATIO = 4;
+
+    /** Folder the entries are stored in, null if the cache is not available */
+    private static File folder;
+    /** Size of the entries keyed by name, least recently used first. null until the cache is initialized */
+    private static LinkedHashMap<String, Long> entries;
+    /** Total size of the entries */
+    private static long size;
+    /** Maximum total size of the entries, -1 until read from the preferences */
+    private static long maxSize = -1;
+
+    /** Number of requested files that were cached */
+    private static long nbHits;
+    /** Number of requested files that were not cached */
+    private static long nbMisses;
+    /** Number of bytes evicted from the cache so far */
+    private static long evictedBytes;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private ContentCache() {}
+
+    /**
+     * Returns the maximum total size of the cached contents, in bytes. The size is read from the
+     * {@link MuPreferences#CONTENT_CACHE_SIZE} preference unless it has been {@link #setMaxSize(long) set}.
+     *
+     * @return the maximum total size of the cached contents, in bytes
+     */
+    public static synchronized long getMaxSize() {
+        if(maxSize==-1)
+            maxSize = MuConfigurations.getPreferences().getVariable(MuPreference.CONTENT_CACHE_SIZE,
+                    MuPreferences.DEFAULT_CONTENT_CACHE_SIZE)*1024L*1024L;
+
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum total size of the cached contents, evicting entries if the cache currently exceeds it.
+     * <code>0</code> disables the cache.
+     *
+     * @param maxSize the maximum total size of the cached contents, in bytes
+     */
+    public static synchronized void setMaxSize(long maxSize) {
+        ContentCache.maxSize = Math.max(0, maxSize);
+        if(entries!=null)
+            evict(0);
+    }
+
+    /**
+     * Returns <code>true</code> if the contents of the given file can be cached, i.e. if it is a remote file or an
+     * archive entry whose size is known and small enough.
+     *
+     * @param file a file
+     * @return <code>true</code> if the contents of the given file can be cached
+     */
+    public static boolean isCacheable(AbstractFile file) {
+        return BlockCachedInputStream.isCacheable(file) && file.getSize()<=getMaxSize()/MAX_ENTRY_RATIO;
+    }
+
+    /**
+     * Returns a stream on the contents of the given file. If the file is cached, the returned stream reads the cached
+     * contents. Otherwise, the file's own stream is returned and, if the file is {@link #isCacheable(AbstractFile)
+     * cacheable}, the contents it reads are added to the cache once the whole file has been read and the stream
+     * closed.
+     *
+     * @param file the file to read
+     * @return a stream on the contents of the given file
+     * @throws IOException if the stream could not be opened
+     */
+    public static InputStream getInputStream(AbstractFile file) throws IOException {
+        if(!isCacheable(file))
+            return file.getInputStream();
+
+        String name = getEntryName(file);
+        File entry = getEntry(name);
+        if(entry!=null) {
+            try {
+                return new FileInputStream(entry);
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not read cached contents of "+file.getAbsolutePath(), e);
+                remove(name);
+            }
+        }
+
+        InputStream in = file.getInputStream();
+        File tempFile = createTempFile(name);
+        if(tempFile==null)
+            return in;
+
+        return new CachingInputStream(in, tempFile, name, file.getSize());
+    }
+
+    /**
+     * Returns the file that holds the cached contents of the given file, <code>null</code> if the contents of the
+     * file are not cached.
+     *
+     * @param file a file
+     * @return the file that holds the cached contents of the given file, <code>null</code> if not cached
+     */
+    public static AbstractFile getCachedFile(AbstractFile file) {
+        if(!isCacheable(file))
+            return null;
+
+        File entry = getEntry(getEntryName(file));
+        return entry==null?null:FileFactory.getFile(entry.getAbsolutePath());
+    }
+
+    /**
+     * Adds the contents read from the given stream to the cache, as the contents of the given file. The stream is read
+     * until its end but is not closed. Nothing is done if the file is not {@link #isCacheable(AbstractFile) cacheable}
+     * or if the stream doesn't contain as many bytes as the file.
+     *
+     * @param file the file whose contents are given
+     * @param in the contents of the file
+     * @throws IOException if an error occurred while reading the stream or writing the entry
+     */
+    public static void put(AbstractFile file, InputStream in) throws IOException {
+        if(!isCacheable(file))
+            return;
+
+        String name = getEntryName(file);
+        File tempFile = createTempFile(name);
+        if(tempFile==null)
+            return;
+
+        long length = 0;
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            byte buffer[] = new byte[BlockCachedInputStream.BLOCK_SIZE];
+            int nbRead;
+            while((nbRead = in.read(buffer))!=-1) {
+                out.write(buffer, 0, nbRead);
+                length += nbRead;
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        commit(tempFile, name, length, file.getSize());
+    }
+
+    /**
+     * Deletes all the cached contents.
+     */
+    public static synchronized void clear() {
+        if(!init())
+            return;
+
+        evictedBytes += size;
+        for(String name : entries.keySet())
+            new File(folder, name).delete();
+        entries.clear();
+        size = 0;
+
+        logStatistics();
+    }
+
+
+    ////////////////////
+    // Helper methods //
+    ////////////////////
+
+    /**
+     * Lists the existing entries, least recently used first, and deletes the temporary files left over. Returns
+     * <code>false</code> if the cache is not available.
+     */
+    private static boolean init() {
+        if(entries!=null)
+            return folder!=null;
+
+        entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        try {
+            File cacheFolder = new File(PlatformManager.getPreferencesFolder().getChild(CACHE_FOLDER_NAME).getAbsolutePath());
+            if(!cacheFolder.isDirectory() && !cacheFolder.mkdirs())
+                throw new IOException("Could not create "+cacheFolder.getAbsolutePath());
+
+            File files[] = cacheFolder.listFiles();
+            if(files==null)
+                throw new IOException("Could not list "+cacheFolder.getAbsolutePath());
+
+            // Entries are touched when used, their date gives the order in which they were last used
+            Arrays.sort(files, new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    long date1 = f1.lastModified();
+                    long date2 = f2.lastModified();
+                    return date1<date2?-1:date1==date2?0:1;
+                }
+            });
+
+            for(File file : files) {
+                if(file.getName().endsWith(TEMP_EXTENSION))
+                    file.delete();
+                else if(file.isFile()) {
+                    entries.put(file.getName(), file.length());
+                    size += file.length();
+                }
+            }
+
+            folder = cacheFolder;
+            evict(0);
+        }
+        catch(IOException e) {
+            LOGGER.info("Content cache not available", e);
+            entries.clear();
+            size = 0;
+        }
+
+        return folder!=null;
+    }
+
+    /**
+     * Returns the entry with the given name and marks it as the most recently used, <code>null</code> if there is no
+     * such entry.
+     */
+    private static synchronized File getEntry(String name) {
+        if(!init())
+            return null;
+
+        if(entries.get(name)==null) {
+            nbMisses++;
+            logStatistics();
+            return null;
+        }
+
+        File entry = new File(folder, name);
+        entry.setLastModified(System.currentTimeMillis());
+        nbHits++;
+        logStatistics();
+
+        return entry;
+    }
+
+    /**
+     * Removes the entry with the given name, if any.
+     */
+    private static synchronized void remove(String name) {
+        Long length = entries.remove(name);
+        if(length!=null) {
+            size -= length;
+            new File(folder, name).delete();
+        }
+    }
+
+    /**
+     * Creates the temporary file an entry with the given name is written to, <code>null</code> if the cache is not
+     * available or the file could not be created.
+     */
+    private static File createTempFile(String name) {
+        File tempFolder;
+        synchronized(ContentCache.class) {
+            if(!init() || getMaxSize()==0)
+                return null;
+            tempFolder = folder;
+        }
+
+        try {
+            // Two reads of the same file may be populating the cache at the same time
+            return File.createTempFile(name, TEMP_EXTENSION, tempFolder);
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not create temporary file in "+tempFolder.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Turns the given temporary file into the entry with the given name if it holds the expected number of bytes,
+     * deletes it otherwise.
+     */
+    private static synchronized void commit(File tempFile, String name, long length, long expectedLength) {
+        if(length!=expectedLength || length>getMaxSize()/MAX_ENTRY_RATIO) {
+            tempFile.delete();
+            return;
+        }
+
+        remove(name);
+        evict(length);
+
+        if(!tempFile.renameTo(new File(folder, name))) {
+            tempFile.delete();
+            return;
+        }
+
+        entries.put(name, length);
+        size += length;
+        logStatistics();
+    }
+
+    /**
+     * Evicts the least recently used entries until the given number of bytes can be added without exceeding the
+     * maximum size.
+     */
+    private static void evict(long length) {
+        long max = getMaxSize();
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while(size+length>max && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            new File(folder, entry.getKey()).delete();
+            iterator.remove();
+
+            size -= entry.getValue();
+            evictedBytes += entry.getValue();
+        }
+    }
+
+    private static void logStatistics() {
+        LOGGER.debug("Content cache: "+nbHits+" hits, "+nbMisses+" misses, "+evictedBytes+" bytes evicted, "
+                +size+"/"+getMaxSize()+" bytes used");
+    }
+
+    /**
+     * Returns the name of the entry of the given file: the hexadecimal SHA-1 digest of the file's URL, size and date.
+     */
+    private static String getEntryName(AbstractFile file) {
+        String key = file.getURL().toString(false)+"|"+file.getSize()+"|"+file.getDate();
+        try {
+            byte digest[] = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+
+            StringBuilder sb = new StringBuilder(digest.length*2);
+            for(byte b : digest) {
+                sb.append(Character.forDigit((b>>4)&0xF, 16));
+                sb.append(Character.forDigit(b&0xF, 16));
+            }
+            return sb.toString();
+        }
+        catch(NoSuchAlgorithmException e) {
+            // SHA-1 is available on all platforms
+            throw new IllegalStateException(e);
+        }
+        catch(IOException e) {
+            // UTF-8 is available on all platforms
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Copies the bytes read from a file's stream to a temporary file, which is committed as an entry when the stream
+     * is closed if the whole file has been read. Failing to write the temporary file doesn't affect the reads.
+     */
+    private static class CachingInputStream extends FilterInputStream {
+
+        /** File the bytes are copied to */
+        private File tempFile;
+        /** Stream on the temporary file, null once the copy has been abandoned */
+        private OutputStream out;
+        /** Name of the entry the temporary file becomes */
+        private String name;
+        /** Size of the file being read */
+        private long length;
+        /** Number of bytes copied so far */
+        private long nbCopied;
+
+        private CachingInputStream(InputStream in, File tempFile, String name, long length) throws IOException {
+            super(in);
+
+            this.tempFile = tempFile;
+            this.out = new FileOutputStream(tempFile);
+            this.name = name;
+            this.length = length;
+        }
+
+        private void copy(byte b[], int off, int len) {
+            if(out==null)
+                return;
+
+            try {
+                out.write(b, off, len);
+                nbCopied += len;
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not write "+tempFile.getAbsolutePath(), e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if(out!=null) {
+                try { out.close(); }
+                catch(IOException e) {
+                    // Nothing to do here.
+                }
+                out = null;
+                tempFile.delete();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b!=-1)
+                copy(new byte[]{(byte)b}, 0, 1);
+
+            return b;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            int nbRead = super.read(b, off, len);
+            if(nbRead>0)
+                copy(b, off, nbRead);
+
+            return nbRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes are not copied
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                if(out!=null) {
+                    try {
+                        out.close();
+                        out = null;
+                        commit(tempFile, name, nbCopied, length);
+                    }
+                    catch(IOException e) {
+                        abandon();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -49,6 +50,11 @@ import java.io.OutputStream;
  * </ul>
  * </p>
  * <p>
+ * When both files are local, the backup file is synced to the disk before being renamed over the original file,
+ * which replaces it in a single atomic operation on platforms that support it. The copy is only performed if the
+ * rename fails.
+ * </p>
+ * <p>
  * Files that have been saved by this class should be read with {@link BackupInputStream}
  * in order to make sure that an uncorrupt version of them is loaded.
  * </p>
@@ -71,6 +77,8 @@ public class BackupOutputStream extends OutputStream implements BackupConstants
     private AbstractFile     backup;
     /** Whether or not an error occured while writing to the backup file. */
     private boolean          error;
+    /** Stream on the backup file if both files are local, <code>null</code> otherwise. */
+    private FileOutputStream localOut;
 
 
 
@@ -104,7 +112,11 @@ public class BackupOutputStream extends OutputStream implements BackupConstants
      * @exception IOException thrown if any IO error occurs.
      */
     private BackupOutputStream(AbstractFile file, AbstractFile save) throws IOException {
-        out = save.getOutputStream();
+        // Local files are written directly so that they can be synced and renamed.
+        if(file.getUnderlyingFileObject() instanceof File && save.getUnderlyingFileObject() instanceof File)
+            out = localOut = new FileOutputStream((File)save.getUnderlyingFileObject());
+        else
+            out = save.getOutputStream();
         target = file;
         backup = save;
     }
@@ -223,6 +235,10 @@ public class BackupOutputStream extends OutputStream implements BackupConstants
      * @exception IOException thrown if any IO related error occurs.
      */
     private void backup() throws IOException {
+        // Renaming replaces the target file atomically where the platform allows it.
+        if(localOut != null && ((File)backup.getUnderlyingFileObject()).renameTo((File)target.getUnderlyingFileObject()))
+            return;
+
         // Deletes the destination file (AbstractFile.copyTo now fails when the destination exists).
         if(target.exists())
             target.delete();
@@ -253,8 +269,14 @@ public class BackupOutputStream extends OutputStream implements BackupConstants
      */
     public void close(boolean backup) throws IOException {
         // Closes the underlying output stream.
-        out.flush();
-        out.close();
+        try {
+            out.flush();
+
+            // Makes sure the content is on the disk before it replaces the target file.
+            if(backup && localOut != null)
+                localOut.getFD().sync();
+        }
+        finally {out.close();}
 
         if(backup)
             backup();
@@ -18,9 +18,13 @@
 
 package com.mucommander.job;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.FileCollisionRenameDialog;
@@ -38,6 +42,7 @@ import java.io.IOException;
  * @see com.mucommander.job.MoveJob
  */
 public abstract class AbstractCopyJob extends TransferFileJob {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractCopyJob.class);
     
     /** Base destination folder */
     protected AbstractFile baseDestFolder;
@@ -59,6 +64,15 @@ public abstract class AbstractCopyJob extends TransferFileJob {
     /** True when an archive is being optimized */
     protected boolean isOptimizingArchive;
 
+    /** True if this job's progress is to be recorded to a journal */
+    private boolean journalingEnabled;
+
+    /** Journal this job's progress is recorded to, <code>null</code> if there is none */
+    private JobJournal journal;
+
+    /** True if this job has been interrupted by muCommander being quit, in which case its journal is kept */
+    private boolean interruptedByShutdown;
+
     /**
      * Creates a new <code>AbstractCopyJob</code>.
      *
@@ -78,6 +92,108 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         this.defaultFileExistsAction = fileExistsAction;
     }
 
+    /**
+     * Sets whether this job's progress is to be recorded to a {@link JobJournal journal} (disabled by default), which
+     * allows the job to be resumed if muCommander is quit before the job has finished. This method must be called
+     * before the job is started.
+     *
+     * @param journalingEnabled <code>true</code> to record this job's progress to a journal
+     */
+    public void setJournalingEnabled(boolean journalingEnabled) {
+        this.journalingEnabled = journalingEnabled;
+    }
+
+    /**
+     * Has this job resume the job recorded to the given journal, and record its progress to it.
+     *
+     * @param journal the journal of the job to resume
+     */
+    void setJournal(JobJournal journal) {
+        this.journal = journal;
+        this.journalingEnabled = true;
+    }
+
+    /**
+     * Interrupts this job because muCommander is being quit. Unlike a job interrupted any other way, which is
+     * considered stopped by the user, the job's journal is kept so that the job can be resumed.
+     */
+    public void interruptForShutdown() {
+        interruptedByShutdown = true;
+        interrupt();
+    }
+
+    /**
+     * Deletes this job's journal, if it has one: the job won't be resumable anymore.
+     */
+    private void discardJournal() {
+        JobJournal journal = this.journal;
+        if(journal!=null)
+            journal.delete();
+    }
+
+    /**
+     * Returns <code>true</code> if this job resumes a journaled job which had already processed the given file. This
+     * method does not perform any I/O.
+     *
+     * @param file a source file
+     * @return <code>true</code> if the given file has already been processed
+     */
+    protected boolean isJournaledAsProcessed(AbstractFile file) {
+        return journal!=null && journal.isProcessed(file);
+    }
+
+    /**
+     * Returns <code>true</code> if this job resumes a journaled job which had skipped the given file because of a
+     * collision with an existing destination file. This method does not perform any I/O.
+     *
+     * @param file a source file
+     * @return <code>true</code> if the given file has been skipped
+     */
+    protected boolean isJournaledAsSkipped(AbstractFile file) {
+        return journal!=null && journal.isSkipped(file);
+    }
+
+    /**
+     * Records to this job's journal, if it has one, that the job has started writing the given file to the
+     * destination. This method must only be called once collisions with existing destination files have been resolved:
+     * a started file is resumed without asking the user.
+     *
+     * @param file the source file the job has started writing
+     */
+    protected void journalFileStarted(AbstractFile file) {
+        if(journal!=null)
+            journal.fileStarted(file);
+    }
+
+    /**
+     * Records to this job's journal, if it has one, that the given file has been processed entirely.
+     *
+     * @param file the source file the job has processed
+     */
+    protected void journalFileProcessed(AbstractFile file) {
+        if(journal!=null)
+            journal.fileProcessed(file);
+    }
+
+    /**
+     * Records to this job's journal, if it has one, that the given file has been skipped.
+     *
+     * @param file the source file the job has skipped
+     */
+    private void journalFileSkipped(AbstractFile file) {
+        if(journal!=null)
+            journal.fileSkipped(file);
+    }
+
+    /**
+     * Records to this job's journal, if it has one, the number of bytes of the current file transferred so far.
+     */
+    private void checkpointJournal() {
+        AbstractFile currentFile = getCurrentFile();
+        if(journal!=null && currentFile!=null)
+            journal.checkpoint(currentFile, getCurrentFileByteCounter().getByteCount()+getCurrentFileSkippedByteCounter().getByteCount());
+    }
+
     /**
      * Creates a destination file given a destination folder and a new file name.
      * @param destFolder a destination folder
@@ -140,6 +256,16 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                     break;
             }
             
+            // The file was being processed when the journaled job was interrupted: merge folders and resume files
+            // without asking the user, unless the destination is larger than the source
+            if(collision==FileCollisionChecker.DESTINATION_FILE_ALREADY_EXISTS && journal!=null && journal.isStarted(file)) {
+                if(!file.isDirectory()) {
+                    append = destFile.getSize()<=file.getSize();
+                    LOGGER.debug("Resuming "+file+" at offset "+destFile.getSize()+", last checkpoint: "+journal.getOffset(file)+", append="+append);
+                }
+                break;
+            }
+
             // Handle collision, asking the user what to do or using a default action to resolve the collision 
             if(collision != FileCollisionChecker.NO_COLLOSION) {
                 int choice;
@@ -161,6 +287,7 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                 }
                 // Skip file
                 else if (choice== FileCollisionDialog.SKIP_ACTION) {
+                    journalFileSkipped(file);
                     return null;
                 }
                 // Append to file (resume file copy)
@@ -176,8 +303,10 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                 //  Overwrite file if destination is older
                 else if (choice== FileCollisionDialog.OVERWRITE_IF_OLDER_ACTION) {
                     // Overwrite if file is newer (stricly)
-                    if(file.getDate()<=destFile.getDate())
+                    if(file.getDate()<=destFile.getDate()) {
+                        journalFileSkipped(file);
                         return null;
+                    }
                     break;
                 } else if (choice == FileCollisionDialog.RENAME_ACTION) {
                     setPaused(true);
@@ -225,4 +354,80 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         isOptimizingArchive = false;
     }
 
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    protected AbstractFile getBaseDestinationFolder() {
+        return baseDestFolder;
+    }
+
+    /**
+     * Overridden to record to the journal that the source file is started, now that the destination file is about
+     * to be written.
+     */
+    @Override
+    protected void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        journalFileStarted(sourceFile);
+
+        super.copyFile(sourceFile, destFile, append);
+    }
+
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        if(!journalingEnabled)
+            return;
+
+        try {
+            if(journal==null)
+                journal = JobJournal.create(this);
+            else
+                journal.open();
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not create the journal of "+this+", the job won't be resumable", e);
+            journal = null;
+        }
+    }
+
+    @Override
+    protected void jobCompleted() {
+        super.jobCompleted();
+
+        // There is nothing left to resume
+        discardJournal();
+    }
+
+    @Override
+    protected void jobPaused() {
+        super.jobPaused();
+
+        checkpointJournal();
+    }
+
+    /**
+     * Overridden to close the journal, which is kept only if the job was interrupted by muCommander being quit so
+     * that the job can be resumed. The journal of a job stopped by the user, from the progress dialog or from an
+     * error or collision dialog, is discarded.
+     */
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        if(journal==null)
+            return;
+
+        if(getState()==INTERRUPTED && !interruptedByShutdown) {
+            discardJournal();
+        }
+        else {
+            if(getState()==INTERRUPTED)
+                checkpointJournal();
+            journal.close();
+        }
+    }
 }
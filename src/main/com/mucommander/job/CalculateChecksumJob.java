@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.io.ContentCache;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -132,7 +133,7 @@ public class CalculateChecksumJob extends TransferFileJob {
                 digest.reset();
 
                 in = null;
-                in = setCurrentInputStream(file.getInputStream());
+                in = setCurrentInputStream(ContentCache.getInputStream(file));
 
                 // Determine the path relative to the base source folder
                 String relativePath = file.getAbsolutePath();
@@ -200,6 +201,14 @@ public class CalculateChecksumJob extends TransferFileJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Overrides {@link TransferFileJob#isInteractive()} to return <code>true</code>: the user is waiting for the checksums.
+     */
+    @Override
+    public boolean isInteractive() {
+        return true;
+    }
+
     @Override
     protected void jobStarted() {
         super.jobStarted();
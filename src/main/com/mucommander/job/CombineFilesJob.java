@@ -72,7 +72,7 @@ public class CombineFilesJob extends AbstractCopyJob {
         try {
 			InputStream in = file.getInputStream();
 			setCurrentInputStream(in);
-			StreamUtils.copyStream(in, out);
+			TransferBuffers.copyStream(in, out, TransferBuffers.getBufferSize(file, destFile, file.getSize()));
 		} catch (IOException e) {
             LOGGER.debug("Caught exception", e);
             showErrorDialog(errorDialogTitle,
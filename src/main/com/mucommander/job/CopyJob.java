@@ -75,12 +75,23 @@ public class CopyJob extends AbstractCopyJob {
 
 
 
+    /**
+     * Returns the mode in which this job operates: {@link #COPY_MODE} or {@link #DOWNLOAD_MODE}.
+     *
+     * @return the mode in which this job operates
+     */
+    public int getMode() {
+        return mode;
+    }
+
+
     ////////////////////////////////////
     // TransferFileJob implementation //
     ////////////////////////////////////
 
     /**
-     * Copies recursively the given file or folder. 
+     * Copies recursively the given file or folder, unless this job resumes a journaled job that had already copied or
+     * skipped it.
      *
      * @param file the file or folder to move
      * @param recurseParams destination folder where the given file will be copied (null for top level files)
@@ -89,6 +100,22 @@ public class CopyJob extends AbstractCopyJob {
      */
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
+        if(isJournaledAsProcessed(file))
+            return true;
+        if(isJournaledAsSkipped(file))
+            return false;
+
+        boolean copied = copyFileOrFolder(file, recurseParams);
+        if(copied && getState()!=INTERRUPTED)
+            journalFileProcessed(file);
+
+        return copied;
+    }
+
+    /**
+     * Copies recursively the given file or folder.
+     */
+    private boolean copyFileOrFolder(AbstractFile file, Object recurseParams) {
         // Stop if interrupted
         if(getState()==INTERRUPTED)
             return false;
@@ -122,6 +149,8 @@ public class CopyJob extends AbstractCopyJob {
 
         // Copy directory recursively
         if(file.isDirectory()) {
+            journalFileStarted(file);
+
             // Create the folder in the destination folder if it doesn't exist
             if(!(destFile.exists() && destFile.isDirectory())) {
                 // Loop for retry
@@ -25,8 +25,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.AbstractFileFilter;
 import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.core.LocationListingCache;
 import com.mucommander.job.progress.JobProgress;
 import com.mucommander.job.ui.DialogResult;
 import com.mucommander.job.ui.UserInputHelper;
@@ -35,7 +37,6 @@ import com.mucommander.ui.dialog.QuestionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
-import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.notifier.AbstractNotifier;
 import com.mucommander.ui.notifier.NotificationType;
 
@@ -131,8 +132,8 @@ public abstract class FileJob implements Runnable {
     public final static int FINISHED = 4;
 
 
-    /** Current state of this job */
-    private int jobState = NOT_STARTED;
+    /** Current state of this job, volatile so that the job's thread can check for a pause without locking */
+    private volatile int jobState = NOT_STARTED;
 
     /** List of registered FileJobListener stored as weak references */
     private WeakHashMap<FileJobListener, ?> listeners = new WeakHashMap<FileJobListener, Object>();
@@ -223,6 +224,15 @@ public abstract class FileJob implements Runnable {
         this.autoSkipErrors = autoSkipErrors;
     }
 
+    /**
+     * Returns <code>true</code> if this file job automatically skips errors when encountered.
+     *
+     * @return <code>true</code> if this file job automatically skips errors
+     */
+    public boolean isAutoSkipErrors() {
+        return autoSkipErrors;
+    }
+
 	
     /**
      * Sets the given file to be selected in the active table after this job has finished.
@@ -237,13 +247,24 @@ public abstract class FileJob implements Runnable {
 	
 	
     /**
-     * Starts file job in a separate thread.
+     * Starts file job in a separate thread, as soon as the {@link JobScheduler} allows it.
      */
     public void start() {
         // Return if job has already been started
         if(getState()!=NOT_STARTED)
             return;
 
+        JobScheduler.getInstance().submit(this);
+    }
+
+    /**
+     * Starts this job's thread. This method is called by the {@link JobScheduler}, it has no effect if the job was
+     * interrupted while it was queued.
+     */
+    void startThread() {
+        if(getState()!=NOT_STARTED)
+            return;
+
         // Pause auto-refresh during file job as it potentially modifies the current folders contents
         // and would potentially cause folder panel to auto-refresh
         getMainFrame().getLeftPanel().getFolderChangeMonitor().setPaused(true);
@@ -448,8 +469,8 @@ public abstract class FileJob implements Runnable {
                 // Switch to RUNNING state and notify listeners
                 setState(RUNNING);
             }
-            // Pause job if it not paused already
-            else if(paused && getState()!=PAUSED && getState()!=INTERRUPTED && getState()!=FINISHED) {
+            // Pause job if it is running, a job waiting in the JobScheduler's queue cannot be paused
+            else if(paused && getState()==RUNNING) {
                 // Memorize pause time in order to calculate pause time when the job is resumed
                 setPauseStartDate();
                 // Call the jobPaused method to notify of the new job's state
@@ -475,15 +496,17 @@ public abstract class FileJob implements Runnable {
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
         
-        // Lock the pause lock
-        synchronized(pauseLock) {
-            // Loop while job is paused, there shouldn't normally be more than one loop
-            while(getState()==PAUSED) {
-                try {
-                    // Wait for a call to notify()
-                    pauseLock.wait();
-                } catch(InterruptedException e) {
-                    // No more problem, loop one more time
+        // Only lock the pause lock if the job is paused: this method is called for every file
+        if(getState()==PAUSED) {
+            synchronized(pauseLock) {
+                // Loop while job is paused, there shouldn't normally be more than one loop
+                while(getState()==PAUSED) {
+                    try {
+                        // Wait for a call to notify()
+                        pauseLock.wait();
+                    } catch(InterruptedException e) {
+                        // No more problem, loop one more time
+                    }
                 }
             }
         }
@@ -678,6 +701,13 @@ public abstract class FileJob implements Runnable {
     	FolderPanel activePanel = getMainFrame().getActivePanel();
     	FolderPanel inactivePanel = getMainFrame().getInactivePanel();
 
+        // Discard the retained listings of the folders this job has changed, including folders not currently displayed
+        LocationListingCache.invalidate(new AbstractFileFilter() {
+            public boolean accept(AbstractFile folder) {
+                return hasFolderChanged(folder);
+            }
+        });
+
         if(hasFolderChanged(inactivePanel.getCurrentFolder()))
         	inactivePanel.tryRefreshCurrentFolder();
 
@@ -789,7 +819,8 @@ public abstract class FileJob implements Runnable {
      * This method is public as a side-effect of this class implementing <code>Runnable</code>.
      */
     public final void run() {
-        FileTable activeTable = getMainFrame().getActiveTable();
+        // Processed files are unmarked in batches, updating the table once per batch rather than once per file
+        UnmarkQueue unmarkQueue = autoUnmark?new UnmarkQueue(getMainFrame().getActiveTable()):null;
         AbstractFile currentFile;
 
         // Notify that this job has started
@@ -814,10 +845,8 @@ public abstract class FileJob implements Runnable {
 
             // Unmark file in active table if 'auto unmark' is enabled
             // and file was processed successfully
-            if(autoUnmark && success) {
-                // Do not repaint rows individually as it would be too expensive
-                activeTable.setFileMarked(currentFile, false, false);
-            }
+            if(unmarkQueue!=null && success)
+                unmarkQueue.add(currentFile);
 
             // If last file was reached without any user interruption, all files have been processed with or
             // without errors, switch to FINISHED state and notify listeners
@@ -829,6 +858,10 @@ public abstract class FileJob implements Runnable {
             }
         }
 
+        // Unmark the files left in the last batch
+        if(unmarkQueue!=null)
+            unmarkQueue.flush();
+
         // Refresh tables's current folders, based on the job's refresh policy.
         refreshTables();
     }
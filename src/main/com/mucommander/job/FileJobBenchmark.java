@@ -0,0 +1,246 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+
+import com.mucommander.Launcher;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.core.LocationChanger.ChangeFolderThread;
+import com.mucommander.ui.event.TableSelectionListener;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.WindowManager;
+import com.mucommander.ui.main.table.FileTable;
+
+/**
+ * Measures the overhead of {@link FileJob} per processed file: a job that does nothing with its files is run on a
+ * folder containing a large number of empty files, all of them marked, with and without unmarking them as they are
+ * processed. The time it takes to unmark the files one by one, as jobs used to, is measured as well. Results are
+ * printed on the standard output, along with the number of marked files events fired by the table.
+ *
+ * <p>muCommander is launched normally, and quit when the benchmark is done, which saves the configuration: it should
+ * be run against a scratch preferences folder, using the <code>--preferences</code> command line argument. All the
+ * command line arguments are passed to {@link Launcher}.</p>
+ */
+public class FileJobBenchmark {
+
+    /** Number of files the jobs process */
+    private final static int NB_FILES = 20000;
+    /** Number of times each job is run before being measured */
+    private final static int NB_WARMUP_RUNS = 2;
+    /** Number of measured runs of each job */
+    private final static int NB_RUNS = 5;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private FileJobBenchmark() {}
+
+    public static void main(String args[]) throws Exception {
+        PrintStream out = System.out;
+
+        Launcher.main(args);
+
+        File folder = createFolder();
+        try {
+            final MainFrame mainFrame = WindowManager.getCurrentMainFrame();
+            ChangeFolderThread changeFolderThread = mainFrame.getActivePanel().tryChangeCurrentFolder(FileFactory.getFile(folder.getAbsolutePath()));
+            if(changeFolderThread==null) {
+                out.println("Could not change the current folder");
+                return;
+            }
+            changeFolderThread.join();
+            waitForEventThread();
+
+            final FileTable table = mainFrame.getActiveTable();
+            MarkedFilesEventCounter eventCounter = new MarkedFilesEventCounter();
+            table.addTableSelectionListener(eventCounter);
+
+            out.println("Files: "+NB_FILES);
+            for(boolean autoUnmark : new boolean[]{false, true}) {
+                long totalTime = 0;
+                for(int i=0; i<NB_WARMUP_RUNS+NB_RUNS; i++) {
+                    FileSet files = markAll(table);
+                    eventCounter.reset();
+
+                    long time = runJob(mainFrame, files, autoUnmark);
+                    if(i>=NB_WARMUP_RUNS)
+                        totalTime += time;
+                }
+
+                out.println("Job, files "+(autoUnmark?"unmarked in batches":"not unmarked")+": "
+                        +totalTime/NB_RUNS/NB_FILES+"ns per file, "+eventCounter.getCount()+" marked files events");
+            }
+
+            long totalTime = 0;
+            for(int i=0; i<NB_WARMUP_RUNS+NB_RUNS; i++) {
+                final FileSet files = markAll(table);
+                eventCounter.reset();
+
+                long startTime = System.nanoTime();
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    public void run() {
+                        for(AbstractFile file : files)
+                            table.setFileMarked(file, false, false);
+                    }
+                });
+                if(i>=NB_WARMUP_RUNS)
+                    totalTime += System.nanoTime() - startTime;
+            }
+
+            out.println("Files unmarked one by one: "+totalTime/NB_RUNS/NB_FILES+"ns per file, "
+                    +eventCounter.getCount()+" marked files events");
+        }
+        finally {
+            deleteFolder(folder);
+
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    WindowManager.quit();
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a job doing nothing with the given files, and returns the time elapsed until the job has finished and,
+     * if <code>autoUnmark</code> is enabled, until all files have been unmarked.
+     */
+    private static long runJob(MainFrame mainFrame, FileSet files, boolean autoUnmark) throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        FileJobListener listener = new FileJobListener() {
+            public void jobStateChanged(FileJob source, int oldState, int newState) {
+                if(newState==FileJob.FINISHED)
+                    finished.countDown();
+            }
+        };
+
+        FileJob job = new NoOpJob(mainFrame, files);
+        job.setAutoUnmark(autoUnmark);
+        job.addFileJobListener(listener);
+
+        long startTime = System.nanoTime();
+        job.start();
+        finished.await();
+
+        if(autoUnmark) {
+            while(mainFrame.getActiveTable().getFileTableModel().getNbMarkedFiles()>0) {
+                Thread.sleep(1);
+                waitForEventThread();
+            }
+        }
+
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Marks all the files of the given table and returns them.
+     */
+    private static FileSet markAll(final FileTable table) throws Exception {
+        final FileSet files[] = new FileSet[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                table.setRangeMarked(0, table.getRowCount()-1, true);
+                files[0] = table.getFileTableModel().getMarkedFiles();
+            }
+        });
+
+        return files[0];
+    }
+
+    /**
+     * Blocks the calling thread until the events currently in the event queue have been dispatched.
+     */
+    private static void waitForEventThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    private static File createFolder() throws IOException {
+        File folder = File.createTempFile("filejob", "benchmark");
+        if(!folder.delete() || !folder.mkdir())
+            throw new IOException("Could not create "+folder.getAbsolutePath());
+
+        for(int i=0; i<NB_FILES; i++)
+            new File(folder, "file"+i).createNewFile();
+
+        return folder;
+    }
+
+    private static void deleteFolder(File folder) {
+        File files[] = folder.listFiles();
+        if(files!=null) {
+            for(File file : files)
+                file.delete();
+        }
+        folder.delete();
+    }
+
+    /**
+     * A job that does nothing with its files.
+     */
+    private static class NoOpJob extends FileJob {
+
+        NoOpJob(MainFrame mainFrame, FileSet files) {
+            super(mainFrame, files);
+        }
+
+        @Override
+        protected boolean processFile(AbstractFile file, Object recurseParams) {
+            return true;
+        }
+
+        @Override
+        protected boolean hasFolderChanged(AbstractFile folder) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the marked files events fired by a table.
+     */
+    private static class MarkedFilesEventCounter implements TableSelectionListener {
+
+        private int count;
+
+        synchronized void reset() {
+            count = 0;
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        public void selectedFileChanged(FileTable source) {
+        }
+
+        public synchronized void markedFilesChanged(FileTable source) {
+            count++;
+        }
+    }
+}
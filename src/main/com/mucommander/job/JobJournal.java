@@ -0,0 +1,657 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.auth.CredentialsManager;
+import com.mucommander.auth.CredentialsMapping;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.Credentials;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * Records the progress of a {@link CopyJob} or {@link MoveJob} to a file, so that the job can be resumed after
+ * muCommander has been quit or has crashed while the job was running.
+ *
+ * <p>A journal is an append-only UTF-8 text file, located in the {@link #JOURNALS_FOLDER_NAME jobs folder} of the
+ * preferences folder. It starts with a header describing the job (one <code>key value</code> line per parameter, and
+ * two per top-level file: its URL and its relative path), followed by the records written while the job runs:</p>
+ * <ul>
+ *  <li><code>B path</code> when the job starts writing a file or folder to the destination, once collisions with
+ *  existing destination files have been resolved</li>
+ *  <li><code>C path</code> when a file or folder has been processed entirely</li>
+ *  <li><code>S path</code> when a file or folder is skipped because of a collision with an existing destination
+ *  file</li>
+ *  <li><code>O path offset</code> when the job is paused or stopped, with the number of bytes of the current file
+ *  that have been transferred</li>
+ * </ul>
+ *
+ * <p>URLs are journaled with the login of their credentials but never with their password: the credentials are
+ * looked up in the {@link CredentialsManager} when the job is resumed.</p>
+ *
+ * <p>Paths are relative to the job's base source folder. Records are flushed as soon as they are written, but not
+ * synced to the disk: a crash of muCommander loses nothing, a crash of the system may lose the last records, in which
+ * case the corresponding files are processed again when the job is resumed.</p>
+ *
+ * <p>A journal is deleted when its job completes or is stopped by the user. The journals left in the jobs folder
+ * on startup, see {@link #getPendingJournals()}, are those of the jobs that can be resumed.</p>
+ */
+public class JobJournal {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobJournal.class);
+
+    /** Name of the folder, within the preferences folder, where journals are stored */
+    public final static String JOURNALS_FOLDER_NAME = "jobs";
+
+    /** Extension of journal files */
+    private final static String EXTENSION = ".journal";
+    /** First line of a journal file */
+    private final static String MAGIC = "muCommander job journal 1";
+
+    private final static String TYPE_KEY = "type";
+    private final static String TITLE_KEY = "title";
+    private final static String DESTINATION_KEY = "destination";
+    private final static String NAME_KEY = "name";
+    private final static String FILE_EXISTS_ACTION_KEY = "file_exists_action";
+    private final static String INTEGRITY_CHECK_KEY = "integrity_check";
+    private final static String SKIP_ERRORS_KEY = "skip_errors";
+    private final static String BASE_FOLDER_KEY = "base";
+    private final static String FILE_KEY = "file";
+    private final static String FILE_PATH_KEY = "file_path";
+
+    private final static String COPY_TYPE = "copy";
+    private final static String DOWNLOAD_TYPE = "download";
+    private final static String MOVE_TYPE = "move";
+
+    private final static char STARTED_RECORD = 'B';
+    private final static char PROCESSED_RECORD = 'C';
+    private final static char OFFSET_RECORD = 'O';
+    private final static char SKIPPED_RECORD = 'S';
+
+    /** The journal file */
+    private File file;
+    /** Writer the records are appended to, <code>null</code> if the journal is not open */
+    private Writer writer;
+    /** True once the journal has been deleted */
+    private boolean deleted;
+
+    // Job parameters, read from the header
+    private String type;
+    private String title = "";
+    private String destinationURL;
+    private String newName;
+    private int fileExistsAction = FileCollisionDialog.ASK_ACTION;
+    private boolean integrityCheck;
+    private boolean skipErrors;
+    private String baseFolderURL;
+    private List<String> fileURLs = new Vector<String>();
+    /** Paths of the top-level files relative to the base source folder, <code>null</code> elements for unknown paths */
+    private List<String> filePaths = new Vector<String>();
+
+    /** Absolute path of the base source folder, with a trailing separator, which paths are relative to */
+    private String basePath;
+
+    /** Files which were being processed when the journal was read */
+    private Set<String> startedFiles = new HashSet<String>();
+    /** Files which had been processed when the journal was read */
+    private Set<String> processedFiles = new HashSet<String>();
+    /** Files which had been skipped when the journal was read */
+    private Set<String> skippedFiles = new HashSet<String>();
+    /** Last offset checkpointed for the files which were being processed when the journal was read */
+    private Hashtable<String, Long> offsets = new Hashtable<String, Long>();
+
+    private JobJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a journal for the given job and writes its header. The journal is left open for the job's records.
+     *
+     * @param job the job to create a journal for
+     * @return the journal
+     * @throws IOException if the journal could not be created
+     */
+    static JobJournal create(AbstractCopyJob job) throws IOException {
+        File folder = getJournalsFolder();
+        if(!folder.isDirectory() && !folder.mkdirs())
+            throw new IOException("Could not create "+folder.getAbsolutePath());
+
+        File file;
+        long id = System.currentTimeMillis();
+        do {
+            file = new File(folder, (id++)+EXTENSION);
+        } while(!file.createNewFile());
+
+        JobJournal journal = new JobJournal(file);
+        journal.basePath = getBasePath(job.getBaseSourceFolder());
+
+        journal.open();
+        try {
+            journal.write(MAGIC);
+            journal.writeHeader(TYPE_KEY, job instanceof MoveJob?MOVE_TYPE:((CopyJob)job).getMode()==CopyJob.DOWNLOAD_MODE?DOWNLOAD_TYPE:COPY_TYPE);
+            journal.writeHeader(TITLE_KEY, job.getProgressDialog()==null?"":job.getProgressDialog().getTitle());
+            journal.writeHeader(DESTINATION_KEY, getJournaledURL(job.baseDestFolder));
+            if(job.newName!=null)
+                journal.writeHeader(NAME_KEY, job.newName);
+            journal.writeHeader(FILE_EXISTS_ACTION_KEY, String.valueOf(job.defaultFileExistsAction));
+            journal.writeHeader(INTEGRITY_CHECK_KEY, String.valueOf(job.isIntegrityCheckEnabled()));
+            journal.writeHeader(SKIP_ERRORS_KEY, String.valueOf(job.isAutoSkipErrors()));
+            if(job.getBaseSourceFolder()!=null)
+                journal.writeHeader(BASE_FOLDER_KEY, getJournaledURL(job.getBaseSourceFolder()));
+            for(int i=0; i<job.files.size(); i++) {
+                journal.writeHeader(FILE_KEY, getJournaledURL(job.files.elementAt(i)));
+                journal.writeHeader(FILE_PATH_KEY, journal.getRelativePath(job.files.elementAt(i)));
+            }
+            journal.writer.flush();
+        }
+        catch(IOException e) {
+            journal.delete();
+            throw e;
+        }
+
+        return journal;
+    }
+
+    /**
+     * Returns the journals of the jobs that were interrupted by the end of the previous muCommander session, oldest
+     * first. Journals that cannot be read are deleted.
+     *
+     * @return the journals of the jobs that can be resumed, an empty list if there are none
+     */
+    public static List<JobJournal> getPendingJournals() {
+        List<JobJournal> journals = new Vector<JobJournal>();
+        File files[];
+        try {
+            files = getJournalsFolder().listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(EXTENSION);
+                }
+            });
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not locate the jobs folder", e);
+            return journals;
+        }
+
+        if(files==null)
+            return journals;
+
+        // Journals are named after their creation time
+        Arrays.sort(files);
+        for(File file : files) {
+            JobJournal journal = new JobJournal(file);
+            try {
+                journal.read();
+                journals.add(journal);
+            }
+            catch(IOException e) {
+                LOGGER.info("Discarding unreadable job journal "+file.getAbsolutePath(), e);
+                journal.delete();
+            }
+        }
+
+        return journals;
+    }
+
+    /**
+     * Returns the title of the progress dialog of the journaled job.
+     *
+     * @return the title of the progress dialog of the journaled job
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Creates a job that resumes the journaled one, recording its progress to this journal. Top-level files that have
+     * been processed or skipped are left out of the job without being resolved. Returns <code>null</code>, and deletes this
+     * journal, if there is nothing left to resume or if the destination folder cannot be resolved.
+     *
+     * @param progressDialog dialog which will show the progress of the job
+     * @param mainFrame the main frame the job is triggered by
+     * @return a job resuming the journaled one, <code>null</code> if it cannot be resumed
+     */
+    public AbstractCopyJob createJob(ProgressDialog progressDialog, MainFrame mainFrame) {
+        AbstractFile destFolder = resolve(destinationURL);
+        AbstractFile baseFolder = baseFolderURL==null?null:resolve(baseFolderURL);
+        if(destFolder==null) {
+            LOGGER.info("Could not resolve "+destinationURL+", discarding job journal "+file.getAbsolutePath());
+            delete();
+            return null;
+        }
+
+        FileSet files = new FileSet(baseFolder);
+        for(int i=0; i<fileURLs.size(); i++) {
+            // Files which have been processed or skipped are left out without being resolved, using the path journaled
+            // with their URL
+            String path = filePaths.get(i);
+            if(path!=null && (processedFiles.contains(path) || skippedFiles.contains(path)))
+                continue;
+
+            String url = fileURLs.get(i);
+            AbstractFile file = resolve(url);
+            if(file==null)
+                LOGGER.info("Could not resolve "+url+", it won't be resumed");
+            else if(!processedFiles.contains(getRelativePath(file)))
+                files.add(file);
+        }
+
+        if(files.isEmpty()) {
+            delete();
+            return null;
+        }
+
+        AbstractCopyJob job;
+        if(MOVE_TYPE.equals(type))
+            job = new MoveJob(progressDialog, mainFrame, files, destFolder, newName, fileExistsAction, false);
+        else
+            job = new CopyJob(progressDialog, mainFrame, files, destFolder, newName,
+                    DOWNLOAD_TYPE.equals(type)?CopyJob.DOWNLOAD_MODE:CopyJob.COPY_MODE, fileExistsAction);
+
+        job.setAutoSkipErrors(skipErrors);
+        job.setIntegrityCheckEnabled(integrityCheck);
+        // The files are not those of the current folder
+        job.setAutoUnmark(false);
+        job.setJournal(this);
+
+        return job;
+    }
+
+    /**
+     * Opens this journal for appending records, if it isn't already.
+     *
+     * @throws IOException if the journal could not be opened
+     */
+    synchronized void open() throws IOException {
+        if(writer==null && !deleted)
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+    }
+
+    /**
+     * Closes this journal, which is kept for the job to be resumed later.
+     */
+    synchronized void close() {
+        if(writer==null)
+            return;
+
+        try {
+            writer.close();
+        }
+        catch(IOException e) {
+            LOGGER.debug("Error while closing "+file.getAbsolutePath(), e);
+        }
+        writer = null;
+    }
+
+    /**
+     * Closes and deletes this journal, no records are written from then on.
+     */
+    public synchronized void delete() {
+        close();
+        deleted = true;
+
+        if(file.exists() && !file.delete())
+            LOGGER.info("Could not delete job journal "+file.getAbsolutePath());
+    }
+
+    /**
+     * Returns <code>true</code> if the given file had been processed when this journal was read. This method does
+     * not perform any I/O.
+     *
+     * @param file a file of the journaled job
+     * @return <code>true</code> if the given file had been processed when this journal was read
+     */
+    boolean isProcessed(AbstractFile file) {
+        return !processedFiles.isEmpty() && processedFiles.contains(getRelativePath(file));
+    }
+
+    /**
+     * Returns <code>true</code> if the given file had been skipped when this journal was read. This method does not
+     * perform any I/O.
+     *
+     * @param file a file of the journaled job
+     * @return <code>true</code> if the given file had been skipped when this journal was read
+     */
+    boolean isSkipped(AbstractFile file) {
+        return !skippedFiles.isEmpty() && skippedFiles.contains(getRelativePath(file));
+    }
+
+    /**
+     * Returns <code>true</code> if the given file was being processed, but hadn't been processed entirely, when this
+     * journal was read.
+     *
+     * @param file a file of the journaled job
+     * @return <code>true</code> if the given file was being processed when this journal was read
+     */
+    boolean isStarted(AbstractFile file) {
+        return !startedFiles.isEmpty() && startedFiles.contains(getRelativePath(file));
+    }
+
+    /**
+     * Returns the last offset checkpointed for the given file, <code>-1</code> if there is none.
+     *
+     * @param file a file of the journaled job
+     * @return the last offset checkpointed for the given file, <code>-1</code> if there is none
+     */
+    long getOffset(AbstractFile file) {
+        Long offset = offsets.isEmpty()?null:offsets.get(getRelativePath(file));
+        return offset==null?-1:offset;
+    }
+
+    /**
+     * Records that the job has started writing the given file to the destination.
+     *
+     * @param file the file the job has started writing
+     */
+    void fileStarted(AbstractFile file) {
+        writeRecord(STARTED_RECORD, getRelativePath(file));
+    }
+
+    /**
+     * Records that the job has processed the given file entirely.
+     *
+     * @param file the file the job has processed
+     */
+    void fileProcessed(AbstractFile file) {
+        writeRecord(PROCESSED_RECORD, getRelativePath(file));
+    }
+
+    /**
+     * Records that the job has skipped the given file, which is left as it is in the destination.
+     *
+     * @param file the file the job has skipped
+     */
+    void fileSkipped(AbstractFile file) {
+        writeRecord(SKIPPED_RECORD, getRelativePath(file));
+    }
+
+    /**
+     * Records the number of bytes of the given file that have been transferred.
+     *
+     * @param file the file being processed
+     * @param offset the number of bytes of the file that have been transferred
+     */
+    void checkpoint(AbstractFile file, long offset) {
+        writeRecord(OFFSET_RECORD, getRelativePath(file)+" "+offset);
+    }
+
+
+    ////////////////////
+    // Helper methods //
+    ////////////////////
+
+    private static File getJournalsFolder() throws IOException {
+        return new File(PlatformManager.getPreferencesFolder().getChild(JOURNALS_FOLDER_NAME).getAbsolutePath());
+    }
+
+    /**
+     * Returns the URL of the given file as it is journaled: with the login of the file's credentials, if it has any,
+     * but without their password.
+     *
+     * @param file the file to journal
+     * @return the URL of the file, without password
+     */
+    private static String getJournaledURL(AbstractFile file) {
+        FileURL url = file.getURL();
+        Credentials credentials = url.getCredentials();
+        if(credentials==null || credentials.isEmpty())
+            return url.toString(false);
+
+        url = (FileURL)url.clone();
+        url.setCredentials(new Credentials(credentials.getLogin(), ""));
+        return url.toString(true);
+    }
+
+    /**
+     * Resolves a journaled URL. If the URL contains a login, the URL is authenticated with the credentials the
+     * {@link CredentialsManager} knows for that login, if any.
+     *
+     * @param journaledURL a URL as returned by {@link #getJournaledURL(AbstractFile)}
+     * @return the resolved file, <code>null</code> if the URL could not be resolved
+     */
+    private static AbstractFile resolve(String journaledURL) {
+        FileURL url;
+        try {
+            url = FileURL.getFileURL(journaledURL);
+        }
+        catch(MalformedURLException e) {
+            LOGGER.debug("Invalid journaled URL: "+journaledURL, e);
+            return null;
+        }
+
+        Credentials credentials = url.getCredentials();
+        if(credentials!=null && !credentials.isEmpty()) {
+            for(CredentialsMapping mapping : CredentialsManager.getMatchingCredentials(url)) {
+                if(credentials.getLogin().equals(mapping.getCredentials().getLogin())) {
+                    CredentialsManager.authenticate(url, mapping);
+                    break;
+                }
+            }
+        }
+
+        return FileFactory.getFile(url);
+    }
+
+    private static String getBasePath(AbstractFile baseFolder) {
+        return baseFolder==null?"":baseFolder.getAbsolutePath(true);
+    }
+
+    /**
+     * Returns the path of the given file relative to the base source folder, its absolute path if it is not located
+     * in the base source folder.
+     */
+    private String getRelativePath(AbstractFile file) {
+        String path = file.getAbsolutePath();
+        return basePath.length()>0 && path.startsWith(basePath)?path.substring(basePath.length()):path;
+    }
+
+    /**
+     * Reads the header and records of this journal.
+     */
+    private void read() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            if(!MAGIC.equals(reader.readLine()))
+                throw new IOException("Not a job journal");
+
+            String line;
+            while((line = reader.readLine())!=null) {
+                // Records are made of a single character followed by a space
+                if(line.length()>2 && line.charAt(1)==' ')
+                    readRecord(line.charAt(0), unescape(line.substring(2)));
+                else
+                    readHeader(line);
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        if(type==null || destinationURL==null)
+            throw new IOException("Incomplete job journal");
+
+        AbstractFile baseFolder = baseFolderURL==null?null:resolve(baseFolderURL);
+        basePath = getBasePath(baseFolder);
+    }
+
+    private void readHeader(String line) {
+        int separator = line.indexOf(' ');
+        if(separator==-1) {
+            // The last line may have been truncated by a crash
+            LOGGER.debug("Ignoring invalid journal line: "+line);
+            return;
+        }
+
+        String key = line.substring(0, separator);
+        String value = unescape(line.substring(separator+1));
+
+        if(TYPE_KEY.equals(key))
+            type = value;
+        else if(TITLE_KEY.equals(key))
+            title = value;
+        else if(DESTINATION_KEY.equals(key))
+            destinationURL = value;
+        else if(NAME_KEY.equals(key))
+            newName = value;
+        else if(FILE_EXISTS_ACTION_KEY.equals(key)) {
+            try {
+                fileExistsAction = Integer.parseInt(value);
+            }
+            catch(NumberFormatException e) {
+                LOGGER.debug("Ignoring invalid journal line: "+line);
+            }
+        }
+        else if(INTEGRITY_CHECK_KEY.equals(key))
+            integrityCheck = Boolean.valueOf(value);
+        else if(SKIP_ERRORS_KEY.equals(key))
+            skipErrors = Boolean.valueOf(value);
+        else if(BASE_FOLDER_KEY.equals(key))
+            baseFolderURL = value;
+        else if(FILE_KEY.equals(key)) {
+            fileURLs.add(value);
+            filePaths.add(null);
+        }
+        else if(FILE_PATH_KEY.equals(key) && !filePaths.isEmpty())
+            filePaths.set(filePaths.size()-1, value);
+    }
+
+    private void readRecord(char record, String value) {
+        switch(record) {
+            case STARTED_RECORD:
+                startedFiles.add(value);
+                break;
+
+            case PROCESSED_RECORD:
+                startedFiles.remove(value);
+                offsets.remove(value);
+                processedFiles.add(value);
+                break;
+
+            case SKIPPED_RECORD:
+                startedFiles.remove(value);
+                offsets.remove(value);
+                skippedFiles.add(value);
+                break;
+
+            case OFFSET_RECORD:
+                int separator = value.lastIndexOf(' ');
+                try {
+                    offsets.put(value.substring(0, separator), Long.parseLong(value.substring(separator+1)));
+                }
+                catch(RuntimeException e) {
+                    // The last record may have been truncated by a crash
+                    LOGGER.debug("Ignoring invalid offset record: "+value);
+                }
+                break;
+        }
+    }
+
+    private void writeHeader(String key, String value) throws IOException {
+        write(key+" "+escape(value));
+    }
+
+    /**
+     * Appends a record to this journal. Errors are logged but otherwise ignored: they only make the job less
+     * resumable.
+     */
+    private synchronized void writeRecord(char record, String value) {
+        if(writer==null)
+            return;
+
+        try {
+            write(record+" "+escape(value));
+            writer.flush();
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not write to job journal "+file.getAbsolutePath()+", the job won't be resumable", e);
+            delete();
+        }
+    }
+
+    private void write(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    /**
+     * Escapes the line breaks and backslashes of the given value, so that it fits on a single line.
+     */
+    private static String escape(String value) {
+        if(value.indexOf('\\')==-1 && value.indexOf('\n')==-1 && value.indexOf('\r')==-1)
+            return value;
+
+        StringBuilder sb = new StringBuilder(value.length()+8);
+        for(int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            if(c=='\\')
+                sb.append("\\\\");
+            else if(c=='\n')
+                sb.append("\\n");
+            else if(c=='\r')
+                sb.append("\\r");
+            else
+                sb.append(c);
+        }
+
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        if(value.indexOf('\\')==-1)
+            return value;
+
+        StringBuilder sb = new StringBuilder(value.length());
+        for(int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            if(c=='\\' && i<value.length()-1) {
+                c = value.charAt(++i);
+                sb.append(c=='n'?'\n':c=='r'?'\r':c);
+            }
+            else
+                sb.append(c);
+        }
+
+        return sb.toString();
+    }
+}
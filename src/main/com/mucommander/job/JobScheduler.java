@@ -0,0 +1,372 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.job;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+
+/**
+ * Decides when {@link TransferFileJob transfer jobs} are started, and shares a global bandwidth budget between the
+ * running ones.
+ *
+ * <p>Each transfer job uses the devices of its source and destination folders: the volume for local files, the host
+ * for remote files. A job is started only when none of its devices is used by more than
+ * {@link MuPreferences#MAX_JOBS_PER_DEVICE} running jobs, so that several copies to the same disk do not compete for
+ * it, while jobs on different devices run in parallel. Jobs that cannot be started yet are queued, and are started by
+ * order of priority, then in the order they were submitted. A queued job can also be started immediately with
+ * {@link #startNow(FileJob)}. Jobs that are not transfer jobs, and {@link TransferFileJob#isInteractive() interactive}
+ * transfer jobs such as the copies made to open a file, are started immediately.</p>
+ *
+ * <p>When {@link MuPreferences#JOBS_BANDWIDTH_LIMIT} is set, it is shared fairly between the running transfer jobs:
+ * jobs whose own throughput limit is lower than an even share get their limit, and what they leave is shared evenly
+ * between the others.</p>
+ */
+public class JobScheduler implements FileJobListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
+
+    /** Priority of jobs that should only be started after the other queued jobs */
+    public final static int PRIORITY_LOW = 0;
+    /** Priority of jobs by default */
+    public final static int PRIORITY_NORMAL = 1;
+    /** Priority of jobs that should be started before the other queued jobs */
+    public final static int PRIORITY_HIGH = 2;
+
+    /** The only instance of this class */
+    private final static JobScheduler instance = new JobScheduler();
+
+    /** Jobs waiting to be started, in the order they were submitted */
+    private List<FileJob> queuedJobs = new Vector<FileJob>();
+    /** Transfer jobs started by this scheduler that have not finished yet */
+    private List<TransferFileJob> runningJobs = new Vector<TransferFileJob>();
+    /** Devices used by the queued and running jobs */
+    private Map<FileJob, String[]> jobDevices = new Hashtable<FileJob, String[]>();
+    /** Priority of the queued and running jobs */
+    private Map<FileJob, Integer> jobPriorities = new Hashtable<FileJob, Integer>();
+    /** Number of running jobs using each device */
+    private Map<String, Integer> nbJobsPerDevice = new Hashtable<String, Integer>();
+
+    /**
+     * Orders queued jobs by decreasing priority. The sort being stable, jobs with the same priority remain in the
+     * order they were submitted.
+     */
+    private final Comparator<FileJob> PRIORITY_COMPARATOR = new Comparator<FileJob>() {
+        public int compare(FileJob job1, FileJob job2) {
+            return getPriority(job2) - getPriority(job1);
+        }
+    };
+
+    /**
+     * Prevents instances of this class from being created outside of this class.
+     */
+    private JobScheduler() {
+    }
+
+    /**
+     * Returns the instance of <code>JobScheduler</code>.
+     *
+     * @return the instance of <code>JobScheduler</code>
+     */
+    public static JobScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts the given job as soon as the devices it uses are available. This method is called by
+     * {@link FileJob#start()}.
+     *
+     * @param job the job to start
+     */
+    void submit(FileJob job) {
+        if(!isQueueable(job)) {
+            job.startThread();
+            return;
+        }
+
+        synchronized(this) {
+            if(jobDevices.containsKey(job))
+                return;
+
+            jobDevices.put(job, getDevices((TransferFileJob)job));
+            queuedJobs.add(job);
+        }
+
+        job.addFileJobListener(this);
+        schedule();
+    }
+
+    /**
+     * Starts the given queued job without waiting for the devices it uses to be available. This method has no effect
+     * if the job is not queued.
+     *
+     * @param job a queued job
+     */
+    public void startNow(FileJob job) {
+        synchronized(this) {
+            if(!queuedJobs.remove(job))
+                return;
+
+            markRunning(job);
+        }
+
+        LOGGER.debug("Starting "+job+" ahead of the queue");
+        job.startThread();
+        updateBandwidthShares();
+    }
+
+    /**
+     * Returns <code>true</code> if the given job is waiting to be started.
+     *
+     * @param job a job
+     * @return <code>true</code> if the given job is waiting to be started
+     */
+    public synchronized boolean isQueued(FileJob job) {
+        return queuedJobs.contains(job);
+    }
+
+    /**
+     * Returns the position of the given job in the queue, starting at 1 for the next job to be started, or
+     * <code>-1</code> if the job is not queued.
+     *
+     * @param job a job
+     * @return the position of the given job in the queue, <code>-1</code> if it is not queued
+     */
+    public synchronized int getQueuePosition(FileJob job) {
+        int index = getQueuedJobs().indexOf(job);
+        return index==-1?-1:index+1;
+    }
+
+    /**
+     * Returns the jobs waiting to be started, in the order they will be considered for starting.
+     *
+     * @return the jobs waiting to be started
+     */
+    public synchronized List<FileJob> getQueuedJobs() {
+        List<FileJob> jobs = new Vector<FileJob>(queuedJobs);
+        Collections.sort(jobs, PRIORITY_COMPARATOR);
+
+        return jobs;
+    }
+
+    /**
+     * Returns the priority of the given job, {@link #PRIORITY_NORMAL} unless specified otherwise.
+     *
+     * @param job a job
+     * @return the priority of the given job
+     */
+    public int getPriority(FileJob job) {
+        Integer priority = jobPriorities.get(job);
+        return priority==null?PRIORITY_NORMAL:priority;
+    }
+
+    /**
+     * Sets the priority of the given job, which determines the order in which queued jobs are started.
+     *
+     * @param job a job
+     * @param priority one of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} and {@link #PRIORITY_HIGH}
+     */
+    public void setPriority(FileJob job, int priority) {
+        // Other jobs are not queued
+        if(!isQueueable(job))
+            return;
+
+        jobPriorities.put(job, priority);
+        schedule();
+    }
+
+    /**
+     * Returns <code>true</code> if the given job may have to wait for the devices it uses to be available, i.e. if it
+     * is a transfer job that is not {@link TransferFileJob#isInteractive() interactive}.
+     *
+     * @param job a job
+     * @return <code>true</code> if the given job may be queued
+     */
+    public static boolean isQueueable(FileJob job) {
+        return job instanceof TransferFileJob && !((TransferFileJob)job).isInteractive();
+    }
+
+    /**
+     * Shares the global bandwidth budget between the running transfer jobs. This method is called whenever the set of
+     * running jobs or the throughput limit of one of them changes.
+     */
+    public synchronized void updateBandwidthShares() {
+        long budget = MuConfigurations.getPreferences().getVariable(MuPreference.JOBS_BANDWIDTH_LIMIT,
+                MuPreferences.DEFAULT_JOBS_BANDWIDTH_LIMIT);
+
+        if(budget<=0) {
+            for(TransferFileJob job : runningJobs)
+                job.setBandwidthShare(-1);
+            return;
+        }
+
+        // Jobs with the lowest limits first, so that what they do not use goes to the others
+        List<TransferFileJob> jobs = new Vector<TransferFileJob>(runningJobs);
+        Collections.sort(jobs, new Comparator<TransferFileJob>() {
+            public int compare(TransferFileJob job1, TransferFileJob job2) {
+                long limit1 = getLimit(job1);
+                long limit2 = getLimit(job2);
+                return limit1<limit2?-1:limit1==limit2?0:1;
+            }
+        });
+
+        int nbJobs = jobs.size();
+        for(TransferFileJob job : jobs) {
+            long share = Math.max(1, Math.min(budget/nbJobs, getLimit(job)));
+            job.setBandwidthShare(share);
+
+            budget = Math.max(0, budget-share);
+            nbJobs--;
+        }
+    }
+
+
+    ////////////////////
+    // Helper methods //
+    ////////////////////
+
+    /**
+     * Starts the queued jobs whose devices are available.
+     */
+    private void schedule() {
+        List<FileJob> startedJobs = new Vector<FileJob>();
+        synchronized(this) {
+            int maxJobsPerDevice = Math.max(1, MuConfigurations.getPreferences().getVariable(MuPreference.MAX_JOBS_PER_DEVICE,
+                    MuPreferences.DEFAULT_MAX_JOBS_PER_DEVICE));
+
+            for(FileJob job : getQueuedJobs()) {
+                if(canStart(job, maxJobsPerDevice)) {
+                    queuedJobs.remove(job);
+                    markRunning(job);
+                    startedJobs.add(job);
+                }
+            }
+        }
+
+        // Jobs are started outside of the lock, as starting a job notifies its listeners
+        for(FileJob job : startedJobs)
+            job.startThread();
+
+        if(!startedJobs.isEmpty())
+            updateBandwidthShares();
+    }
+
+    private boolean canStart(FileJob job, int maxJobsPerDevice) {
+        for(String device : jobDevices.get(job)) {
+            Integer nbJobs = nbJobsPerDevice.get(device);
+            if(nbJobs!=null && nbJobs>=maxJobsPerDevice)
+                return false;
+        }
+
+        return true;
+    }
+
+    private void markRunning(FileJob job) {
+        runningJobs.add((TransferFileJob)job);
+        for(String device : jobDevices.get(job)) {
+            Integer nbJobs = nbJobsPerDevice.get(device);
+            nbJobsPerDevice.put(device, nbJobs==null?1:nbJobs+1);
+        }
+    }
+
+    private void markFinished(FileJob job) {
+        String devices[] = jobDevices.remove(job);
+        jobPriorities.remove(job);
+        if(devices==null)
+            return;
+
+        if(!queuedJobs.remove(job) && runningJobs.remove(job)) {
+            for(String device : devices) {
+                int nbJobs = nbJobsPerDevice.get(device)-1;
+                if(nbJobs==0)
+                    nbJobsPerDevice.remove(device);
+                else
+                    nbJobsPerDevice.put(device, nbJobs);
+            }
+        }
+    }
+
+    /**
+     * Returns the throughput limit set on the given job, <code>Long.MAX_VALUE</code> if there is none.
+     */
+    private static long getLimit(TransferFileJob job) {
+        long limit = job.getThroughputLimit();
+        return limit<=0?Long.MAX_VALUE:limit;
+    }
+
+    /**
+     * Returns the devices used by the given job: those of its source folder and of its destination folder, if any.
+     */
+    private static String[] getDevices(TransferFileJob job) {
+        List<String> devices = new Vector<String>();
+
+        AbstractFile sourceFolder = job.getBaseSourceFolder();
+        if(sourceFolder!=null)
+            devices.add(getDevice(sourceFolder));
+
+        AbstractFile destFolder = job.getBaseDestinationFolder();
+        if(destFolder!=null && !devices.contains(getDevice(destFolder)))
+            devices.add(getDevice(destFolder));
+
+        return devices.toArray(new String[devices.size()]);
+    }
+
+    /**
+     * Returns the device the given file is located on: its volume if it is a local file, its host otherwise.
+     */
+    static String getDevice(AbstractFile file) {
+        FileURL url = file.getURL();
+        if(FileProtocols.FILE.equals(url.getScheme())) {
+            AbstractFile volume = file.getVolume();
+            if(volume!=null)
+                return volume.getAbsolutePath();
+        }
+
+        return url.getScheme()+"://"+url.getHost();
+    }
+
+
+    ////////////////////////////////////
+    // FileJobListener implementation //
+    ////////////////////////////////////
+
+    public void jobStateChanged(FileJob source, int oldState, int newState) {
+        if(newState==FileJob.FINISHED || newState==FileJob.INTERRUPTED) {
+            synchronized(this) {
+                markFinished(source);
+            }
+
+            schedule();
+            updateBandwidthShares();
+        }
+    }
+}
@@ -71,7 +71,8 @@ public class MoveJob extends AbstractCopyJob {
     ////////////////////////////////////
 
     /**
-     * Moves recursively the given file or folder. 
+     * Moves recursively the given file or folder, unless this job resumes a journaled job that had already moved or
+     * skipped it.
      *
      * @param file the file or folder to move
      * @param recurseParams destination folder where the given file will be moved (null for top level files)
@@ -80,6 +81,23 @@ public class MoveJob extends AbstractCopyJob {
      */
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
+        // Files moved by the journaled job this job resumes no longer exist: skip them without querying them
+        if(isJournaledAsProcessed(file))
+            return true;
+        if(isJournaledAsSkipped(file))
+            return false;
+
+        boolean moved = moveFileOrFolder(file, recurseParams);
+        if(moved && getState()!=INTERRUPTED)
+            journalFileProcessed(file);
+
+        return moved;
+    }
+
+    /**
+     * Moves recursively the given file or folder.
+     */
+    private boolean moveFileOrFolder(AbstractFile file, Object recurseParams) {
         // Stop if interrupted
         if(getState()==INTERRUPTED)
             return false;
@@ -151,6 +169,8 @@ public class MoveJob extends AbstractCopyJob {
 
         // Move the directory and all its children recursively, by copying files to the destination and then deleting them.
         if(file.isDirectory()) {
+            journalFileStarted(file);
+
             // create the destination folder if it doesn't exist
             if(!(destFile.exists() && destFile.isDirectory())) {
                 do {		// Loop for retry
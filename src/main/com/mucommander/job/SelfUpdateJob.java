@@ -165,6 +165,14 @@ public class SelfUpdateJob extends CopyJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Overrides {@link TransferFileJob#isInteractive()} to return <code>true</code>: the user is waiting for muCommander to be updated.
+     */
+    @Override
+    public boolean isInteractive() {
+        return true;
+    }
+
     @Override
     public String getStatusString() {
         if(loadingClasses) {
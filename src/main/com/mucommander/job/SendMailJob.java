@@ -291,6 +291,14 @@ public class SendMailJob extends TransferFileJob {
     // Overridden method //
     ///////////////////////
 
+    /**
+     * Overrides {@link TransferFileJob#isInteractive()} to return <code>true</code>: the user is waiting for the mail to be sent.
+     */
+    @Override
+    public boolean isInteractive() {
+        return true;
+    }
+
     /**
      * This method is called when this job starts, before the first call to {@link #processFile(AbstractFile,Object) processFile()} is made.
      * This method here does nothing but it can be overriden by subclasses to perform some first-time initializations.
@@ -172,7 +172,7 @@ public class SplitFileJob extends AbstractCopyJob {
 			out = destFile.getOutputStream();
 			
 			try {
-				long written = StreamUtils.copyStream(origFileStream, out, BufferPool.getDefaultBufferSize(), partSize);
+				long written = TransferBuffers.copyStream(origFileStream, out, TransferBuffers.getBufferSize(sourceFile, destFile, partSize), partSize);
 				sizeLeft -= written;
 			} catch (FileTransferException e) {
 				if (e.getReason() == FileTransferException.WRITING_DESTINATION) {
@@ -19,6 +19,7 @@
 package com.mucommander.job;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.io.ContentCache;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
@@ -34,6 +36,9 @@ import com.mucommander.ui.main.MainFrame;
  * This job copies a file or a set of files to a temporary folder and makes the temporary file(s) read-only.
  * The temporary files are deleted when the JVM terminates.
  *
+ * <p>Remote files and archive entries are read through the {@link ContentCache}, so that copying a file that was
+ * recently read doesn't transfer it again.</p>
+ *
  * @author Maxence Bernard
  */
 public class TempCopyJob extends CopyJob {
@@ -85,4 +90,22 @@ public class TempCopyJob extends CopyJob {
             return files.getName();
         }
     }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    /**
+     * Overrides {@link TransferFileJob#isInteractive()} to return <code>true</code>: the files are copied to be opened or executed right away.
+     */
+    @Override
+    public boolean isInteractive() {
+        return true;
+    }
+
+    @Override
+    protected InputStream getSourceInputStream(AbstractFile sourceFile) throws IOException {
+        return ContentCache.getInputStream(sourceFile);
+    }
 }
@@ -19,6 +19,8 @@
 package com.mucommander.job;
 
 import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +55,9 @@ public class TempOpenWithJob extends TempCopyJob {
     /** This list is populated with temporary files, as they are created by processFile() */
     private FileSet tempFiles;
 
+    /** Temporary copies of the files opened so far, keyed by the URL of the original file */
+    private final static Map<String, TempCopy> tempCopies = new Hashtable<String, TempCopy>();
+
 
     /**
      * Creates a new <code>TempOpenWithJob</code> that operates on a single file.
@@ -83,12 +88,49 @@ public class TempOpenWithJob extends TempCopyJob {
     }
 
 
+    /**
+     * Returns the temporary copy of the given file made by a previous job, <code>null</code> if there is none or if
+     * either the file or its copy has changed since the copy was made.
+     */
+    private static AbstractFile getTempCopy(AbstractFile file) {
+        String key = getTempCopyKey(file);
+        TempCopy tempCopy = tempCopies.get(key);
+        if(tempCopy==null)
+            return null;
+
+        AbstractFile copy = tempCopy.file;
+        if(file.getDate()!=tempCopy.sourceDate || file.getSize()!=tempCopy.size
+                || !copy.exists() || copy.getDate()!=tempCopy.date || copy.getSize()!=tempCopy.size) {
+            tempCopies.remove(key);
+            return null;
+        }
+
+        return copy;
+    }
+
+    private static String getTempCopyKey(AbstractFile file) {
+        return file.getURL().toString(false);
+    }
+
+
     ////////////////////////
     // Overridden methods //
     ////////////////////////
 
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
+        boolean isFileToOpen = filesToOpen.indexOf(file)!=-1 && !file.isDirectory();
+
+        // Open the copy made the last time the file was opened if it hasn't changed since, instead of copying it again
+        if(isFileToOpen) {
+            AbstractFile tempCopy = getTempCopy(file);
+            if(tempCopy!=null) {
+                LOGGER.debug("Reusing temporary copy "+tempCopy.getAbsolutePath()+" of "+file.getAbsolutePath());
+                tempFiles.add(tempCopy);
+                return true;
+            }
+        }
+
         if(!super.processFile(file, recurseParams))
             return false;
 
@@ -109,6 +151,9 @@ public class TempOpenWithJob extends TempCopyJob {
             }
             
             tempFiles.add(currentDestFile);
+
+            if(isFileToOpen)
+                tempCopies.put(getTempCopyKey(file), new TempCopy(currentDestFile, file));
         }
 
         return true;
@@ -125,4 +170,29 @@ public class TempOpenWithJob extends TempCopyJob {
             LOGGER.debug("Caught exception executing "+command+" "+tempFiles, e);
         }
     }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A temporary copy of a file, along with the dates of the copy and of the original file when the copy was made.
+     */
+    private static class TempCopy {
+        private AbstractFile file;
+        /** Date of the copy once made */
+        private long date;
+        /** Date of the original file when it was copied */
+        private long sourceDate;
+        /** Size of the original file when it was copied */
+        private long size;
+
+        private TempCopy(AbstractFile file, AbstractFile sourceFile) {
+            this.file = file;
+            this.date = file.getDate();
+            this.sourceDate = sourceFile.getDate();
+            this.size = sourceFile.getSize();
+        }
+    }
 }
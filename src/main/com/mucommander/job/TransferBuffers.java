@@ -0,0 +1,378 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.job;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Vector;
+
+import com.mucommander.commons.file.AbstractArchiveEntryFile;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.FileTransferException;
+
+/**
+ * Provides the buffers file jobs transfer data with, and copies streams with them.
+ *
+ * <p>Buffers are pooled rather than allocated for each file, so that copying a large number of small files doesn't
+ * churn the heap. Their size is a power of two between {@link #MIN_BUFFER_SIZE} and {@link #MAX_BUFFER_SIZE}, chosen
+ * for each file by {@link #getBufferSize(AbstractFile, AbstractFile, long)}: small files get small buffers, and large
+ * files get buffers that hold about {@link #TARGET_FILL_TIME} milliseconds worth of data at the throughput observed
+ * so far between the source and destination protocols. A buffer larger than that would not make the transfer faster,
+ * but would make progress and pause less responsive.</p>
+ *
+ * <p>Data written to a local file goes through a pooled direct buffer and the file's channel, instead of the native
+ * buffer the JVM allocates for each large write to a <code>FileOutputStream</code>.</p>
+ *
+ * <p>The number of bytes transferred per read and per write, and the number of bytes allocated per second for
+ * buffers, are returned by {@link #getStatistics()}.</p>
+ */
+public class TransferBuffers {
+
+    /** Size of the smallest buffer */
+    public final static int MIN_BUFFER_SIZE = 8*1024;
+    /** Size of the largest buffer */
+    public final static int MAX_BUFFER_SIZE = 1024*1024;
+    /** Size of the buffers used before any throughput has been observed for a pair of protocols */
+    public final static int DEFAULT_BUFFER_SIZE = 64*1024;
+    /** Time it should take to fill a buffer at the observed throughput, in milliseconds */
+    public final static int TARGET_FILL_TIME = 20;
+
+    /** Maximum number of pooled buffers of each size and kind */
+    private final static int MAX_POOLED_BUFFERS = 4;
+    /** Transfers shorter than this number of bytes are dominated by latency and do not tell the throughput */
+    private final static int MIN_OBSERVED_BYTES = 256*1024;
+    /** Weight of the last observation in the throughput of a pair of protocols */
+    private final static float THROUGHPUT_WEIGHT = 0.3f;
+
+    /** Pooled heap buffers, keyed by size */
+    private final static Map<Integer, Vector<byte[]>> heapBuffers = new Hashtable<Integer, Vector<byte[]>>();
+    /** Pooled direct buffers, keyed by capacity */
+    private final static Map<Integer, Vector<ByteBuffer>> directBuffers = new Hashtable<Integer, Vector<ByteBuffer>>();
+    /** Observed throughput in bytes per second, keyed by pair of protocols */
+    private final static Map<String, Float> throughputs = new Hashtable<String, Float>();
+
+    /** Time at which this class was initialized */
+    private final static long creationTime = System.currentTimeMillis();
+    /** Number of buffers requested so far */
+    private static long nbRequests;
+    /** Number of buffers allocated so far */
+    private static long nbAllocations;
+    /** Number of bytes allocated for buffers so far */
+    private static long allocatedBytes;
+    /** Number of reads performed by copies so far */
+    private static long nbReads;
+    /** Number of writes performed by copies so far */
+    private static long nbWrites;
+    /** Number of bytes copied so far */
+    private static long copiedBytes;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private TransferBuffers() {}
+
+    /**
+     * Returns the size of the buffer to copy the given source file to the given destination with.
+     *
+     * @param source the file being copied
+     * @param dest the file it is copied to
+     * @param length the number of bytes to copy, <code>-1</code> if not known
+     * @return the size of the buffer to copy the file with
+     */
+    public static int getBufferSize(AbstractFile source, AbstractFile dest, long length) {
+        Float throughput = throughputs.get(getProtocolPair(source, dest));
+        long size = throughput==null?DEFAULT_BUFFER_SIZE:(long)(throughput*TARGET_FILL_TIME/1000);
+
+        // A buffer larger than the file would never be filled
+        if(length>=0)
+            size = Math.min(size, length);
+
+        return roundSize(size);
+    }
+
+    /**
+     * Records the time it took to copy the given number of bytes from the given source file to the given destination.
+     * Copies too short to tell the throughput are ignored.
+     *
+     * @param source the file that was copied
+     * @param dest the file it was copied to
+     * @param nbBytes the number of bytes copied
+     * @param nanos the time the copy took, in nanoseconds
+     */
+    public static void recordTransfer(AbstractFile source, AbstractFile dest, long nbBytes, long nanos) {
+        if(nbBytes<MIN_OBSERVED_BYTES || nanos<=0)
+            return;
+
+        String protocolPair = getProtocolPair(source, dest);
+        float observed = nbBytes*1000000000f/nanos;
+        synchronized(throughputs) {
+            Float throughput = throughputs.get(protocolPair);
+            throughputs.put(protocolPair, throughput==null?observed:throughput+(observed-throughput)*THROUGHPUT_WEIGHT);
+        }
+    }
+
+    /**
+     * Returns the throughput observed so far when copying files between the given protocols, in bytes per second.
+     *
+     * @param sourceProtocol protocol of the source files
+     * @param destProtocol protocol of the destination files
+     * @return the observed throughput in bytes per second, <code>-1</code> if none has been observed yet
+     */
+    public static float getThroughput(String sourceProtocol, String destProtocol) {
+        Float throughput = throughputs.get(sourceProtocol+"->"+destProtocol);
+        return throughput==null?-1:throughput;
+    }
+
+    /**
+     * Returns a heap buffer of the given size, rounded up to a supported size. The buffer should be
+     * {@link #releaseByteArray(byte[]) released} once it is not used anymore.
+     *
+     * @param size the minimum size of the buffer
+     * @return a heap buffer of at least the given size
+     */
+    public static byte[] getByteArray(int size) {
+        size = roundSize(size);
+        byte buffer[] = getPooledBuffer(heapBuffers, size);
+        if(buffer==null) {
+            buffer = new byte[size];
+            recordAllocation(size);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Returns the given heap buffer to the pool.
+     *
+     * @param buffer a buffer returned by {@link #getByteArray(int)}
+     */
+    public static void releaseByteArray(byte buffer[]) {
+        releaseBuffer(heapBuffers, buffer.length, buffer);
+    }
+
+    /**
+     * Returns a direct buffer of the given capacity, rounded up to a supported size. The buffer should be
+     * {@link #releaseDirectBuffer(ByteBuffer) released} once it is not used anymore.
+     *
+     * @param size the minimum capacity of the buffer
+     * @return a cleared direct buffer of at least the given capacity
+     */
+    public static ByteBuffer getDirectBuffer(int size) {
+        size = roundSize(size);
+        ByteBuffer buffer = getPooledBuffer(directBuffers, size);
+        if(buffer==null) {
+            buffer = ByteBuffer.allocateDirect(size);
+            recordAllocation(size);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the given direct buffer to the pool.
+     *
+     * @param buffer a buffer returned by {@link #getDirectBuffer(int)}
+     */
+    public static void releaseDirectBuffer(ByteBuffer buffer) {
+        releaseBuffer(directBuffers, buffer.capacity(), buffer);
+    }
+
+    /**
+     * Copies the given input stream to the given output stream until the end of the input stream, using a pooled
+     * buffer of the given size. The streams are not closed.
+     *
+     * @param in the stream to read from
+     * @param out the stream to write to
+     * @param bufferSize the size of the buffer to copy with
+     * @return the number of bytes copied
+     * @throws FileTransferException if an error occurred while reading or writing
+     */
+    public static long copyStream(InputStream in, OutputStream out, int bufferSize) throws FileTransferException {
+        return copyStream(in, out, bufferSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * Copies at most <code>length</code> bytes from the given input stream to the given output stream, using a pooled
+     * buffer of the given size. If the output stream is a <code>FileOutputStream</code>, the data is written to its
+     * channel through a pooled direct buffer. The streams are not closed.
+     *
+     * @param in the stream to read from
+     * @param out the stream to write to
+     * @param bufferSize the size of the buffer to copy with
+     * @param length the maximum number of bytes to copy
+     * @return the number of bytes copied
+     * @throws FileTransferException if an error occurred while reading or writing, reporting the number of bytes
+     * written before the error
+     */
+    public static long copyStream(InputStream in, OutputStream out, int bufferSize, long length) throws FileTransferException {
+        byte buffer[] = getByteArray(bufferSize);
+        bufferSize = buffer.length;
+
+        FileChannel channel = out instanceof FileOutputStream?((FileOutputStream)out).getChannel():null;
+        ByteBuffer directBuffer = channel==null?null:getDirectBuffer(bufferSize);
+
+        long nbCopied = 0;
+        int nbReadCalls = 0;
+        int nbWriteCalls = 0;
+        try {
+            while(nbCopied<length) {
+                int nbRead;
+                try {
+                    nbRead = in.read(buffer, 0, (int)Math.min(bufferSize, length-nbCopied));
+                    nbReadCalls++;
+                }
+                catch(IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE, nbCopied);
+                }
+
+                if(nbRead==-1)
+                    break;
+
+                try {
+                    if(channel==null) {
+                        out.write(buffer, 0, nbRead);
+                        nbWriteCalls++;
+                    }
+                    else {
+                        directBuffer.clear();
+                        directBuffer.put(buffer, 0, nbRead);
+                        directBuffer.flip();
+                        while(directBuffer.hasRemaining()) {
+                            channel.write(directBuffer);
+                            nbWriteCalls++;
+                        }
+                    }
+                }
+                catch(IOException e) {
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION, nbCopied);
+                }
+
+                nbCopied += nbRead;
+            }
+        }
+        finally {
+            releaseByteArray(buffer);
+            if(directBuffer!=null)
+                releaseDirectBuffer(directBuffer);
+
+            synchronized(TransferBuffers.class) {
+                nbReads += nbReadCalls;
+                nbWrites += nbWriteCalls;
+                copiedBytes += nbCopied;
+            }
+        }
+
+        return nbCopied;
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is a plain local file, which can be written with a
+     * <code>FileOutputStream</code>.
+     *
+     * @param file a file
+     * @return <code>true</code> if the given file is a plain local file
+     */
+    public static boolean isPlainLocalFile(AbstractFile file) {
+        return file.getUnderlyingFileObject() instanceof java.io.File && !file.hasAncestor(AbstractArchiveEntryFile.class);
+    }
+
+    /**
+     * Returns a summary of the transfers made so far: bytes per read and per write, number of buffer allocations
+     * and bytes allocated per second for buffers.
+     *
+     * @return a summary of the transfers made so far
+     */
+    public static synchronized String getStatistics() {
+        long elapsedSeconds = Math.max(1, (System.currentTimeMillis()-creationTime)/1000);
+
+        return "Transfer buffers: "+(nbReads==0?0:copiedBytes/nbReads)+" bytes per read, "
+            +(nbWrites==0?0:copiedBytes/nbWrites)+" bytes per write, "
+            +nbAllocations+" allocations for "+nbRequests+" requests, "
+            +allocatedBytes/elapsedSeconds+" bytes allocated per second, throughputs="+throughputs;
+    }
+
+
+    ////////////////////
+    // Helper methods //
+    ////////////////////
+
+    /**
+     * Rounds the given size up to the next power of two between {@link #MIN_BUFFER_SIZE} and {@link #MAX_BUFFER_SIZE}.
+     */
+    private static int roundSize(long size) {
+        int rounded = MIN_BUFFER_SIZE;
+        while(rounded<size && rounded<MAX_BUFFER_SIZE)
+            rounded <<= 1;
+
+        return rounded;
+    }
+
+    private static String getProtocolPair(AbstractFile source, AbstractFile dest) {
+        return source.getURL().getScheme()+"->"+dest.getURL().getScheme();
+    }
+
+    private static <T> T getPooledBuffer(Map<Integer, Vector<T>> pool, int size) {
+        synchronized(TransferBuffers.class) {
+            nbRequests++;
+        }
+
+        Vector<T> buffers = pool.get(size);
+        if(buffers!=null) {
+            synchronized(buffers) {
+                if(!buffers.isEmpty())
+                    return buffers.remove(buffers.size()-1);
+            }
+        }
+
+        return null;
+    }
+
+    private static <T> void releaseBuffer(Map<Integer, Vector<T>> pool, int size, T buffer) {
+        // Buffers of unsupported sizes were not returned by this class
+        if(roundSize(size)!=size)
+            return;
+
+        Vector<T> buffers;
+        synchronized(pool) {
+            buffers = pool.get(size);
+            if(buffers==null) {
+                buffers = new Vector<T>();
+                pool.put(size, buffers);
+            }
+        }
+
+        synchronized(buffers) {
+            if(buffers.size()<MAX_POOLED_BUFFERS)
+                buffers.add(buffer);
+        }
+    }
+
+    private static synchronized void recordAllocation(int size) {
+        nbAllocations++;
+        allocatedBytes += size;
+    }
+}
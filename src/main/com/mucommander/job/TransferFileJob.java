@@ -19,8 +19,10 @@
 
 package com.mucommander.job;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -74,6 +76,9 @@ public abstract class TransferFileJob extends FileJob {
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
 
+    /** Share of the global bandwidth budget allotted by the JobScheduler in bytes per second, -1 if there is none */
+    private long bandwidthShare = -1;
+
     /** Has the file currently being processed been skipped ? */
     private boolean currentFileSkipped;
 
@@ -157,7 +162,7 @@ public abstract class TransferFileJob extends FileJob {
                         currentFileSkippedByteCounter.add(destFileSize);
                     }
                     else {
-                        in = sourceFile.getInputStream();
+                        in = getSourceInputStream(sourceFile);
                         if(integrityCheckEnabled)
                             in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
                     }
@@ -170,7 +175,7 @@ public abstract class TransferFileJob extends FileJob {
                 }
 
                 // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                copyStream(sourceFile, destFile, append, inLength);
             }
             finally {
                 // This block will always be executed, even if an exception
@@ -262,6 +267,62 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
+    /**
+     * Returns the stream the given source file is copied from, when the whole file is copied. This implementation
+     * returns the file's own stream, subclasses may read the file from elsewhere.
+     *
+     * @param sourceFile the file being copied
+     * @return the stream the given source file is copied from
+     * @throws IOException if the stream could not be opened
+     */
+    protected InputStream getSourceInputStream(AbstractFile sourceFile) throws IOException {
+        return sourceFile.getInputStream();
+    }
+
+    /**
+     * Copies the current input stream to the given destination file, with a buffer sized for the source and
+     * destination. Destinations that do not provide an output stream are left to copy the stream themselves.
+     */
+    private void copyStream(AbstractFile sourceFile, AbstractFile destFile, boolean append, long length) throws FileTransferException {
+        boolean localDestination = TransferBuffers.isPlainLocalFile(destFile);
+        if(!localDestination && !destFile.isFileOperationSupported(append?FileOperation.APPEND_FILE:FileOperation.WRITE_FILE)) {
+            destFile.copyStream(tlin, append, length);
+            return;
+        }
+
+        OutputStream out;
+        try {
+            // Local files are written through their channel, see TransferBuffers
+            out = localDestination
+                ?new FileOutputStream((java.io.File)destFile.getUnderlyingFileObject(), append)
+                :append?destFile.getAppendOutputStream():destFile.getOutputStream();
+        }
+        catch(IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
+
+        long startTime = System.nanoTime();
+        long nbCopied;
+        try {
+            nbCopied = TransferBuffers.copyStream(tlin, out, TransferBuffers.getBufferSize(sourceFile, destFile, length));
+        }
+        catch(FileTransferException e) {
+            try { out.close(); }
+            catch(IOException e2) {}
+            throw e;
+        }
+
+        try {
+            out.close();
+        }
+        catch(IOException e) {
+            throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+        }
+
+        TransferBuffers.recordTransfer(sourceFile, destFile, nbCopied, System.nanoTime()-startTime);
+    }
+
     private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
         currentFileByteCounter.reset();
         InputStream in = setCurrentInputStream(file.getInputStream());
@@ -360,7 +421,7 @@ public abstract class TransferFileJob extends FileJob {
      */
     protected synchronized InputStream setCurrentInputStream(InputStream in) {
         if(tlin==null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
+            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), getEffectiveThroughputLimit());
         }
         else {
             tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
@@ -519,8 +580,11 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             if(getState()!=PAUSED && tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+                tlin.setThroughputLimit(getEffectiveThroughputLimit());
         }
+
+        // The share of the other jobs may change
+        JobScheduler.getInstance().updateBandwidthShares();
     }
 
     /**
@@ -532,6 +596,55 @@ public abstract class TransferFileJob extends FileJob {
     public long getThroughputLimit() {
         return throughputLimit;
     }
+
+    /**
+     * Sets the share of the global bandwidth budget this job may use, in bytes per second. This method is called by
+     * the {@link JobScheduler}.
+     *
+     * @param bytesPerSecond share of the global bandwidth budget, -1 if there is no budget
+     */
+    void setBandwidthShare(long bytesPerSecond) {
+        this.bandwidthShare = bytesPerSecond<=0?-1:bytesPerSecond;
+
+        synchronized(this) {
+            if(getState()!=PAUSED && tlin !=null)
+                tlin.setThroughputLimit(getEffectiveThroughputLimit());
+        }
+    }
+
+    /**
+     * Returns the lowest of the throughput limit and the bandwidth share, <code>-1</code> if there is neither.
+     */
+    private long getEffectiveThroughputLimit() {
+        if(bandwidthShare==-1)
+            return throughputLimit;
+        if(throughputLimit==-1)
+            return bandwidthShare;
+
+        return Math.min(throughputLimit, bandwidthShare);
+    }
+
+    /**
+     * Returns the folder this job writes files to, <code>null</code> if it doesn't write files or if the folder is
+     * not known. The {@link JobScheduler} uses it to determine the devices this job uses. This implementation returns
+     * <code>null</code>.
+     *
+     * @return the folder this job writes files to, <code>null</code> if not known
+     */
+    protected AbstractFile getBaseDestinationFolder() {
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if the user is waiting for this job to complete to carry on, e.g. to open the files it
+     * copies. The {@link JobScheduler} starts such jobs immediately instead of queuing them behind other transfers.
+     * This implementation returns <code>false</code>.
+     *
+     * @return <code>true</code> if the user is waiting for this job to complete
+     */
+    public boolean isInteractive() {
+        return false;
+    }
     
 
     ////////////////////////
@@ -555,6 +668,17 @@ public abstract class TransferFileJob extends FileJob {
     }
 
 
+    /**
+     * Overrides {@link FileJob#jobCompleted()} to log the statistics of the transfer buffers.
+     */
+    @Override
+    protected void jobCompleted() {
+        super.jobCompleted();
+
+        LOGGER.debug(TransferBuffers.getStatistics());
+    }
+
+
     /**
      * Overrides {@link FileJob#jobPaused()} to pause any file processing
      * by having the source InputStream's read methods lock.
@@ -581,7 +705,7 @@ public abstract class TransferFileJob extends FileJob {
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
             if(tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+                tlin.setThroughputLimit(getEffectiveThroughputLimit());
         }
     }
 
@@ -0,0 +1,125 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.main.table.FileTable;
+
+/**
+ * Unmarks the files processed by a {@link FileJob} in a {@link FileTable}. Files are accumulated by the job's thread
+ * and unmarked by batches in the event dispatch thread, with at most one batch every {@link #MIN_BATCH_INTERVAL}
+ * milliseconds. Each batch updates the table's marked files, repaints the table and notifies the table's listeners
+ * once, however many files it contains.
+ */
+class UnmarkQueue implements Runnable, ActionListener {
+
+    /** Minimum time between two batches, in milliseconds */
+    final static int MIN_BATCH_INTERVAL = 100;
+
+    /** Table the files are unmarked in */
+    private final FileTable table;
+
+    /** Files waiting for the next batch */
+    private List<AbstractFile> pendingFiles = new Vector<AbstractFile>();
+    /** True if the next batch has been scheduled */
+    private boolean scheduled;
+    /** Time at which the last batch was delivered */
+    private long lastBatchTime;
+
+    /**
+     * Creates a new queue unmarking files in the given table.
+     *
+     * @param table the table to unmark files in
+     */
+    UnmarkQueue(FileTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Adds the given file to the next batch, scheduling the batch if it isn't already.
+     *
+     * @param file the file to unmark
+     */
+    synchronized void add(AbstractFile file) {
+        pendingFiles.add(file);
+
+        if(scheduled)
+            return;
+
+        scheduled = true;
+        long delay = lastBatchTime + MIN_BATCH_INTERVAL - System.currentTimeMillis();
+        if(delay<=0) {
+            SwingUtilities.invokeLater(this);
+        }
+        else {
+            Timer timer = new Timer((int)delay, this);
+            timer.setRepeats(false);
+            timer.start();
+        }
+    }
+
+    /**
+     * Delivers the files waiting for the next batch without waiting for the batch interval to elapse. This method
+     * should be called once the job has processed its files.
+     */
+    synchronized void flush() {
+        if(!pendingFiles.isEmpty())
+            SwingUtilities.invokeLater(this);
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    /**
+     * Unmarks the files waiting for the next batch. This method must be called from the event dispatch thread.
+     */
+    public void run() {
+        List<AbstractFile> files;
+        synchronized(this) {
+            files = pendingFiles;
+            pendingFiles = new Vector<AbstractFile>();
+            scheduled = false;
+            lastBatchTime = System.currentTimeMillis();
+
+            if(files.isEmpty())
+                return;
+        }
+
+        table.setFilesMarked(files, false);
+    }
+
+
+    ///////////////////////////////////
+    // ActionListener implementation //
+    ///////////////////////////////////
+
+    public void actionPerformed(ActionEvent e) {
+        run();
+    }
+}
@@ -19,6 +19,7 @@
 package com.mucommander.job.progress;
 
 import com.mucommander.job.FileJob;
+import com.mucommander.job.JobScheduler;
 import com.mucommander.job.TransferFileJob;
 import com.mucommander.text.DurationFormat;
 import com.mucommander.text.Translator;
@@ -43,6 +44,7 @@ public class JobProgress {
 	private long lastBytesTotal;
 	private String jobStatusString;
 	private long jobPauseStartDate;
+	private boolean queued;
 
 	public JobProgress(FileJob job) {
 		this.job = job;
@@ -73,19 +75,25 @@ public class JobProgress {
 		int jobState = job.getState();
 		jobPauseStartDate = job.getPauseStartDate();
 		if (jobState == FileJob.FINISHED || jobState == FileJob.INTERRUPTED) {
+			queued = false;
 			jobStatusString = Translator.get("progress_dialog.job_finished");
 			// Job just finished, let's loop one more time to ensure that
 			// components (progress bar in particular)
 			// reflect job completion
 			fullUpdate = true;
+		} else if (JobScheduler.getInstance().isQueued(job)) {
+			queued = true;
+			jobStatusString = Translator.get("progress_dialog.queued",
+					Integer.toString(JobScheduler.getInstance().getQueuePosition(job)));
 		} else {
+			queued = false;
 			jobStatusString = job.getStatusString();
 		}
 		if (!fullUpdate) {
 			return false;
 		}
-		// Do not refresh progress information is job is paused, simply sleep
-		if (jobState == FileJob.PAUSED) {
+		// Do not refresh progress information is job is paused or waiting to be started, simply sleep
+		if (jobState == FileJob.PAUSED || jobState == FileJob.NOT_STARTED) {
 			return false;
 		}
 		// Now is updated with current time, or job end date if job has finished
@@ -179,6 +187,14 @@ public class JobProgress {
 		return true;
 	}
 
+	/**
+	 * Returns <code>true</code> if the job is waiting in the {@link JobScheduler}'s queue.
+	 * @return <code>true</code> if the job is waiting to be started
+	 */
+	public boolean isQueued() {
+		return queued;
+	}
+
 	public String getJobStatusString() {
 		return jobStatusString;
 	}
@@ -25,8 +25,8 @@ import javax.swing.*;
 import javax.swing.event.EventListenerList;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A class that monitors jobs progress.
@@ -50,8 +50,8 @@ public class JobProgressMonitor implements FileJobListener {
     /** List of listeners */
 	private EventListenerList listenerList = new EventListenerList();
 	
-	/** A list of monitored jobs. */
-	private List<FileJob> jobs = new ArrayList<FileJob>();
+	/** A list of monitored jobs, which can be read by threads other than the Swing Thread. */
+	private List<FileJob> jobs = new CopyOnWriteArrayList<FileJob>();
 
 	/** An instance of this class */
 	private static final JobProgressMonitor instance = new JobProgressMonitor();
@@ -209,6 +209,20 @@ public class JobProgressMonitor implements FileJobListener {
 	}
 
 	
+	/**
+	 * Returns <code>true</code> if at least one of the monitored jobs is running. This method can be called from any
+	 * thread.
+	 * @return <code>true</code> if at least one of the monitored jobs is running.
+	 */
+	public boolean hasRunningJobs() {
+		for (FileJob job : jobs) {
+			if (job.getState() == FileJob.RUNNING) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns a progress of a job with specified index.
 	 * @param rowIndex an index of a job
@@ -47,6 +47,8 @@ public abstract class AbstractProcess {
     private ProcessOutputMonitor stdoutMonitor;
     /** Stderr monitor. */
     private ProcessOutputMonitor stderrMonitor;
+    /** Thread running the stderr monitor, <code>null</code> if the process uses merged streams. */
+    private Thread               stderrThread;
 
 
 
@@ -94,13 +96,25 @@ public abstract class AbstractProcess {
             new Thread(stdoutMonitor = new ProcessOutputMonitor(getInputStream(), encoding, listener, this), "Process sdtout/stderr monitor").start();
         }
         // Monitors both stdout and stderr.
+        // The stderr thread is known before the stdout monitor starts, as the latter waits for it before notifying
+        // the listener that the process has died.
         else {
         	LOGGER.debug("Starting process stdout and stderr monitors...");
+            stderrThread = new Thread(stderrMonitor = new ProcessOutputMonitor(getErrorStream(), encoding, listener), "Process stderr monitor");
             new Thread(stdoutMonitor = new ProcessOutputMonitor(getInputStream(), encoding, listener, this), "Process stdout monitor").start();
-            new Thread(stderrMonitor = new ProcessOutputMonitor(getErrorStream(), encoding, listener), "Process stderr monitor").start();
+            stderrThread.start();
         }
     }
 
+    /**
+     * Makes the current thread wait for the stderr monitor, if any, to have delivered the process' whole error output.
+     * @throws InterruptedException thrown if the current thread is interrupted while waiting.
+     */
+    final void waitForErrorMonitor() throws InterruptedException {
+        if(stderrThread != null)
+            stderrThread.join();
+    }
+
 
 
     // - Abstract methods ------------------------------------------------------
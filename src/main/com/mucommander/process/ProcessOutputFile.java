@@ -0,0 +1,112 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.process;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process listener that writes the raw output of a process to a temporary file.
+ * <p>
+ * This is meant to be used alongside listeners that only keep part of a process' output, so that the full output can
+ * still be consulted. The file is deleted when the VM exits.
+ * </p>
+ */
+public class ProcessOutputFile implements ProcessListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessOutputFile.class);
+
+    // - Instance fields -------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** File the output is written to. */
+    private File         file;
+    /** Stream used to write to the file, <code>null</code> once closed. */
+    private OutputStream out;
+
+
+
+    // - Initialisation --------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a new temporary file to write process output to.
+     * @throws IOException thrown if the file could not be created.
+     */
+    public ProcessOutputFile() throws IOException {
+        file = File.createTempFile("mucommander-output", ".txt");
+        file.deleteOnExit();
+        out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+    }
+
+    /**
+     * Returns the file the output is written to.
+     * @return the file the output is written to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Flushes and closes the file. Output received afterwards is ignored.
+     */
+    public synchronized void close() {
+        if(out == null)
+            return;
+
+        try {out.close();}
+        catch(IOException e) {
+            LOGGER.debug("IOException thrown while closing "+file, e);
+        }
+        out = null;
+    }
+
+
+
+    // - Listener code ---------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Closes the file. The process' stdout and stderr streams have both been drained by then.
+     */
+    public void processDied(int returnValue) {
+        close();
+    }
+
+    /**
+     * Ignored, the file contains raw output.
+     */
+    public void processOutput(String output) {}
+
+    /**
+     * Writes the specified output to the file.
+     */
+    public synchronized void processOutput(byte[] buffer, int offset, int length) {
+        if(out == null)
+            return;
+
+        try {out.write(buffer, offset, length);}
+        catch(IOException e) {
+            LOGGER.debug("IOException thrown while writing to "+file+", closing", e);
+            close();
+        }
+    }
+}
@@ -20,6 +20,12 @@ package com.mucommander.process;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +37,13 @@ import org.slf4j.LoggerFactory;
  * processes do not stall because their stdout and stderr streams are not emptied.
  * </p>
  * <p>
+ * Raw output is passed to the listener as soon as it is read. Decoded output is accumulated and delivered in
+ * chunks: once the process has been quiet for {@link #QUIET_PERIOD} milliseconds, and at least every
+ * {@link #DELIVERY_INTERVAL} milliseconds while the process keeps writing. This keeps interactive output responsive while sparing listeners
+ * thousands of tiny updates when a process outputs large amounts of text. Characters that span several reads are
+ * decoded properly.
+ * </p>
+ * <p>
  * This implementation is rather hackish, and should not be used directly: it works, but is not
  * meant to support anything but the very specific needs of {@link com.mucommander.process.AbstractProcess}.
  * </p>
@@ -39,6 +52,19 @@ import org.slf4j.LoggerFactory;
 class ProcessOutputMonitor implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ProcessOutputMonitor.class);
 	
+    // - Class fields ----------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** Size of the buffer the stream is read into. */
+    private final static int  BUFFER_SIZE       = 8192;
+    /** Maximum time decoded output is held before being delivered while the process keeps writing, in milliseconds. */
+    private final static long DELIVERY_INTERVAL = 50;
+    /** Time without output after which decoded output is delivered, e.g. when the process waits for input, in milliseconds. */
+    private final static long QUIET_PERIOD      = 10;
+    /** Number of decoded characters past which output is delivered right away. */
+    private final static int  MAX_PENDING_CHARS = 64 * 1024;
+
+
+
     // - Instance fields -------------------------------------------------------
     // -------------------------------------------------------------------------
     /** Stream to read from. */
@@ -90,21 +116,56 @@ class ProcessOutputMonitor implements Runnable {
      * Empties the content of the stream and notifies the listener.
      */
     public void run() {
-        byte[] buffer; // Where to store the stream's output.
-        int    read;   // Number of bytes read in the last read operation.
+        InputStream   in;            // Stream to read from, the field is cleared when monitoring is stopped.
+        ByteBuffer    bytes;         // Bytes read from the stream that have not been decoded yet.
+        CharBuffer    chars;         // Output of the decoder.
+        StringBuilder pending;       // Decoded output that has not been delivered yet.
+        long          lastDelivery;  // Time at which decoded output was last delivered.
+        int           read;          // Number of bytes read in the last read operation.
 
-        buffer = new byte[512];
+        // Monitoring has been stopped before it started.
+        if((in = this.in) == null)
+            return;
+
+        bytes        = ByteBuffer.allocate(BUFFER_SIZE);
+        chars        = CharBuffer.allocate(BUFFER_SIZE);
+        pending      = new StringBuilder();
+        lastDelivery = System.currentTimeMillis();
+
+        CharsetDecoder decoder = getCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
 
         // Reads the content of the stream.
         try {
-            while(monitor && ((read = in.read(buffer, 0, buffer.length)) != -1)) {
+            while(monitor && ((read = in.read(bytes.array(), bytes.position(), bytes.remaining())) != -1)) {
                 if(listener != null) {
-                    listener.processOutput(buffer, 0, read);
-                    if(encoding == null)
-                        listener.processOutput(new String(buffer, 0, read));
-                    else
-                        listener.processOutput(new String(buffer, 0, read, encoding));
+                    listener.processOutput(bytes.array(), bytes.position(), read);
+
+                    // Decodes the new bytes, keeping incomplete characters for the next read.
+                    bytes.position(bytes.position() + read);
+                    bytes.flip();
+                    decode(decoder, bytes, chars, pending, false);
+                    bytes.compact();
+
+                    long now = System.currentTimeMillis();
+                    if(pending.length() >= MAX_PENDING_CHARS || now - lastDelivery >= DELIVERY_INTERVAL || (pending.length() > 0 && isQuiet(in))) {
+                        deliver(pending);
+                        lastDelivery = System.currentTimeMillis();
+                    }
                 }
+                else
+                    bytes.clear();
+            }
+
+            // Decodes and delivers whatever is left.
+            if(monitor && listener != null) {
+                bytes.flip();
+                decode(decoder, bytes, chars, pending, true);
+                while(decoder.flush(chars).isOverflow())
+                    drain(chars, pending);
+                drain(chars, pending);
+                deliver(pending);
             }
         }
         // Ignore this exception: either there's nothing we can do about it anyway,
@@ -117,17 +178,20 @@ class ProcessOutputMonitor implements Runnable {
 
         // Closes the stream.
         try {
-	    if(in != null)
-		in.close();
-	}
+            if(in != null)
+                in.close();
+        }
         catch(IOException e) {
             LOGGER.debug("IOException thrown while closing process stream", e);
         }
 
         // If a process was set, perform 'cleanup' tasks.
         if(process != null) {
-            // Waits for the process to die.
-            try {process.waitFor();}
+            // Waits for the process to die, and for its error output to be delivered.
+            try {
+                process.waitFor();
+                process.waitForErrorMonitor();
+            }
             catch(Exception e) {
                 LOGGER.debug("Caught Exception while waiting for process "+process, e);
             }
@@ -138,6 +202,68 @@ class ProcessOutputMonitor implements Runnable {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the stream has had no data available for {@link #QUIET_PERIOD} milliseconds.
+     */
+    private static boolean isQuiet(InputStream in) throws IOException {
+        if(in.available() > 0)
+            return false;
+
+        try {Thread.sleep(QUIET_PERIOD);}
+        catch(InterruptedException e) {
+            return true;
+        }
+
+        return in.available() == 0;
+    }
+
+    /**
+     * Returns the charset the process output is encoded with, the platform's default one if no encoding was
+     * specified or if the specified encoding is not supported.
+     */
+    private Charset getCharset() {
+        if(encoding != null) {
+            try {return Charset.forName(encoding);}
+            catch(Exception e) {
+                LOGGER.debug("Unsupported process encoding "+encoding+", using default charset", e);
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * Decodes the specified bytes and appends the resulting characters to <code>pending</code>.
+     */
+    private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, StringBuilder pending, boolean endOfInput) {
+        CoderResult result;
+        while((result = decoder.decode(bytes, chars, endOfInput)).isOverflow())
+            drain(chars, pending);
+        drain(chars, pending);
+
+        // Only happens with endOfInput, as malformed input is replaced
+        if(result.isError())
+            bytes.position(bytes.limit());
+    }
+
+    /**
+     * Moves the content of the decoder's output buffer to <code>pending</code>.
+     */
+    private static void drain(CharBuffer chars, StringBuilder pending) {
+        chars.flip();
+        pending.append(chars);
+        chars.clear();
+    }
+
+    /**
+     * Delivers the pending decoded output to the listener, if there is any.
+     */
+    private void deliver(StringBuilder pending) {
+        if(pending.length() > 0) {
+            listener.processOutput(pending.toString());
+            pending.setLength(0);
+        }
+    }
+
     /**
      * Notifies the monitor that it should stop reading from the stream it's been affected to.
      * <p>
@@ -18,6 +18,7 @@
 
 package com.mucommander.shell;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -34,6 +35,8 @@ import com.mucommander.commons.file.FileFactory;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
+import com.mucommander.conf.PersistenceManager;
+import com.mucommander.conf.PersistentStore;
 import com.mucommander.io.backup.BackupInputStream;
 import com.mucommander.io.backup.BackupOutputStream;
 
@@ -67,6 +70,17 @@ public class ShellHistoryManager {
     private static int                                  historyEnd;
     /** Path to the history file. */
     private static AbstractFile                         historyFile;
+    /** Whether changes were made after the history file was last saved. */
+    private static boolean                              saveNeeded;
+    /** Whether the history file is being loaded. */
+    private static boolean                              isLoading;
+    /** Held while the history file is being written, so that writes do not overlap. */
+    private static final Object                         WRITE_LOCK = new Object();
+    /** Saves the history file when changes are made to the history. */
+    private static final PersistentStore                STORE = new PersistentStore() {
+        public String getName() {return "shell history";}
+        public void write() throws Exception {writeHistory(false);}
+    };
 
 
 
@@ -111,10 +125,11 @@ public class ShellHistoryManager {
     /**
      * Completely empties the shell history.
      */
-    public static void clear() {
+    public static synchronized void clear() {
         // Empties history.
         historyStart = 0;
         historyEnd   = 0;
+        setSaveNeeded();
 
         // Notifies listeners.
         for(ShellHistoryListener listener : listeners.keySet())
@@ -131,7 +146,7 @@ public class ShellHistoryManager {
      * Adds the specified command to shell history.
      * @param command command to add to the shell history.
      */
-    public static void add(String command) {
+    public static synchronized void add(String command) {
         // Ignores empty commands.
         if(command.trim().equals(""))
             return;
@@ -165,6 +180,7 @@ public class ShellHistoryManager {
             if(++historyStart == history.length)
                 historyStart = 0;
         }
+        setSaveNeeded();
 
         // Propagates the event.
         triggerEvent(command);
@@ -243,19 +259,69 @@ public class ShellHistoryManager {
      * Writes the shell history to hard drive.
      * @throws IOException if an I/O error occurs.
      */
-    public static void writeHistory() throws IOException {
-        BackupOutputStream out;
+    public static void writeHistory() throws IOException {writeHistory(true);}
 
-        out = null;
-        try {ShellHistoryWriter.write(out = new BackupOutputStream(getHistoryFile()));}
-        finally {
-            if(out != null) {
-                try {out.close();}
-                catch(Exception e) {}
+    /**
+     * Writes the shell history to hard drive.
+     * @param  forceWrite  if <code>false</code>, the history will only be written if it changed since it was last written.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static void writeHistory(boolean forceWrite) throws IOException {
+        synchronized(WRITE_LOCK) {
+            ByteArrayOutputStream buffer;
+
+            // Serializes the history in memory, so that it is not locked while the file is being written.
+            buffer = new ByteArrayOutputStream();
+            synchronized(ShellHistoryManager.class) {
+                if(!(forceWrite || saveNeeded))
+                    return;
+                ShellHistoryWriter.write(buffer);
+                saveNeeded = false;
+            }
+
+            BackupOutputStream out;
+            boolean            written;
+
+            out     = null;
+            written = false;
+            try {
+                buffer.writeTo(out = new BackupOutputStream(getHistoryFile()));
+                written = true;
+            }
+            finally {
+                if(out != null) {
+                    try {out.close();}
+                    catch(Exception e) {}
+                }
+
+                // The history will be written again on the next change or on shutdown.
+                if(!written) {
+                    synchronized(ShellHistoryManager.class) {
+                        saveNeeded = true;
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Returns the {@link PersistentStore} the shell history is saved through.
+     * <p>
+     * Writing the store only writes the history file if the history changed since it was last written.
+     * </p>
+     * @return the {@link PersistentStore} the shell history is saved through.
+     */
+    public static PersistentStore getPersistentStore() {return STORE;}
+
+    /**
+     * Marks the history as needing to be saved, and schedules its saving unless the history file is being loaded.
+     */
+    private static void setSaveNeeded() {
+        saveNeeded = true;
+        if(!isLoading)
+            PersistenceManager.markDirty(STORE);
+    }
+
     /**
      * Loads the shell history.
      * @throws Exception if an error occurs.
@@ -263,9 +329,11 @@ public class ShellHistoryManager {
     public static void loadHistory() throws Exception {
         BackupInputStream in;
 
-        in = null;
+        in        = null;
+        isLoading = true;
         try {ShellHistoryReader.read(in = new BackupInputStream(getHistoryFile()));}
         finally {
+            isLoading = false;
             if(in != null) {
                 try {in.close();}
                 catch(Exception e2) {}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import com.mucommander.commons.io.bom.BOMReader;
+
+/**
+ * Reads and writes compiled dictionaries, the binary form of the dictionary file that {@link Translator} loads on
+ * startup.
+ *
+ * <p>The text dictionary file contains the entries of all languages; compiling it produces one file per language,
+ * named after the language code (<code>EN.dic</code>, <code>pt_BR.dic</code>...), which contains the language's
+ * entries with their keys already lower-cased and their values already unescaped. Loading the current and default
+ * languages therefore only requires reading two small files, without any parsing.</p>
+ *
+ * <p>Each compiled file has the following layout, written with a <code>DataOutputStream</code>:</p>
+ * <ul>
+ *  <li>the {@link #MAGIC magic number} and the {@link #FORMAT_VERSION format version}</li>
+ *  <li>the number of available languages, followed by the available language codes</li>
+ *  <li>the number of entries, followed by each entry's key and value</li>
+ * </ul>
+ *
+ * <p>This class's {@link #main(String[]) main} method is invoked by the build to compile the dictionary file.</p>
+ */
+public class CompiledDictionary {
+
+    /** Magic number compiled dictionaries start with ('MUDC') */
+    final static int MAGIC = 0x4D554443;
+    /** Version of the compiled dictionary format */
+    final static int FORMAT_VERSION = 1;
+    /** Extension of compiled dictionary files */
+    final static String EXTENSION = ".dic";
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private CompiledDictionary() {}
+
+    /**
+     * Returns the path to the compiled dictionary of the given language, within the given folder.
+     *
+     * @param folderPath path to the folder containing the compiled dictionaries
+     * @param language a language code
+     * @return the path to the compiled dictionary of the given language
+     */
+    static String getPath(String folderPath, String language) {
+        return folderPath+"/"+language+EXTENSION;
+    }
+
+    /**
+     * Reads a compiled dictionary from the given stream and returns its entries. The stream is not closed.
+     *
+     * <p>Keys are interned: most of them are also string literals in the code that looks them up, which then share
+     * the same instance.</p>
+     *
+     * @param in the stream to read the compiled dictionary from
+     * @param availableLanguages if not <code>null</code>, the available languages are added to this list
+     * @return the entries of the compiled dictionary
+     * @throws IOException if an I/O error occurred or if the stream doesn't contain a compiled dictionary
+     */
+    static Map<String, String> read(InputStream in, List<String> availableLanguages) throws IOException {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+
+        if(din.readInt()!=MAGIC)
+            throw new IOException("Not a compiled dictionary");
+
+        int version = din.readUnsignedByte();
+        if(version!=FORMAT_VERSION)
+            throw new IOException("Unsupported compiled dictionary version: "+version);
+
+        int nbLanguages = din.readUnsignedShort();
+        for(int i=0; i<nbLanguages; i++) {
+            String language = din.readUTF();
+            if(availableLanguages!=null)
+                availableLanguages.add(language);
+        }
+
+        int nbEntries = din.readInt();
+        Map<String, String> entries = new Hashtable<String, String>(Math.max(16, nbEntries*4/3+1));
+        for(int i=0; i<nbEntries; i++)
+            entries.put(din.readUTF().intern(), din.readUTF());
+
+        return entries;
+    }
+
+    /**
+     * Compiles the given text dictionary file into the given folder, writing one compiled dictionary per language.
+     *
+     * @param dictionaryFile the text dictionary file to compile
+     * @param outputFolder the folder to write the compiled dictionaries to, created if it doesn't exist
+     * @throws IOException if an I/O error occurred or if the dictionary file contains a syntax error
+     */
+    public static void compile(File dictionaryFile, File outputFolder) throws IOException {
+        List<String> availableLanguages = new Vector<String>();
+        Map<String, Map<String, String>> languages = new LinkedHashMap<String, Map<String, String>>();
+
+        BufferedReader br = new BufferedReader(new BOMReader(new FileInputStream(dictionaryFile)));
+        try {
+            String line;
+            int lineNum = 0;
+            while((line = br.readLine())!=null) {
+                lineNum++;
+                String trimmedLine = line.trim();
+                if(trimmedLine.startsWith("#") || trimmedLine.equals(""))
+                    continue;
+
+                int keyEnd = line.indexOf(':');
+                if(keyEnd==-1)
+                    throw new IOException("Syntax error at line "+lineNum+": "+line);
+
+                String key = line.substring(0, keyEnd).trim().toLowerCase();
+                if(key.equals(Translator.AVAILABLE_LANGUAGES_KEY)) {
+                    for(String language : line.substring(keyEnd+1).split(","))
+                        if(!language.trim().equals(""))
+                            availableLanguages.add(language.trim());
+                    continue;
+                }
+
+                int languageEnd = line.indexOf(':', keyEnd+1);
+                if(languageEnd==-1)
+                    throw new IOException("Syntax error at line "+lineNum+": "+line);
+
+                String language = line.substring(keyEnd+1, languageEnd).trim();
+                Map<String, String> entries = languages.get(language);
+                if(entries==null) {
+                    entries = new LinkedHashMap<String, String>();
+                    languages.put(language, entries);
+                }
+
+                try {
+                    entries.put(key, Translator.unescape(line.substring(languageEnd+1)));
+                }
+                catch(RuntimeException e) {
+                    throw new IOException("Syntax error at line "+lineNum+": "+line+" ("+e+")");
+                }
+            }
+        }
+        finally {
+            br.close();
+        }
+
+        if(!availableLanguages.contains(Translator.DEFAULT_LANGUAGE))
+            throw new IOException("Default language "+Translator.DEFAULT_LANGUAGE+" is not declared as available");
+
+        if(!outputFolder.isDirectory() && !outputFolder.mkdirs())
+            throw new IOException("Could not create "+outputFolder.getAbsolutePath());
+
+        // Every available language gets a file, even if it has no entry yet
+        for(String language : availableLanguages) {
+            if(!languages.containsKey(language))
+                languages.put(language, new LinkedHashMap<String, String>());
+        }
+
+        for(Map.Entry<String, Map<String, String>> language : languages.entrySet())
+            write(new File(outputFolder, language.getKey()+EXTENSION), availableLanguages, language.getValue());
+    }
+
+    /**
+     * Writes a compiled dictionary containing the given available languages and entries to the given file.
+     */
+    private static void write(File file, List<String> availableLanguages, Map<String, String> entries) throws IOException {
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            dout.writeInt(MAGIC);
+            dout.writeByte(FORMAT_VERSION);
+
+            dout.writeShort(availableLanguages.size());
+            for(String language : availableLanguages)
+                dout.writeUTF(language);
+
+            dout.writeInt(entries.size());
+            for(Map.Entry<String, String> entry : entries.entrySet()) {
+                try {
+                    dout.writeUTF(entry.getKey());
+                    dout.writeUTF(entry.getValue());
+                }
+                catch(UTFDataFormatException e) {
+                    throw new IOException("Entry "+entry.getKey()+" is too long to be compiled");
+                }
+            }
+        }
+        finally {
+            dout.close();
+        }
+    }
+
+    /**
+     * Compiles a text dictionary file into one compiled dictionary per language.
+     *
+     * @param args the dictionary file to compile, followed by the folder to write the compiled dictionaries to
+     * @throws IOException if an I/O error occurred or if the dictionary file contains a syntax error
+     */
+    public static void main(String args[]) throws IOException {
+        if(args.length<2) {
+            System.out.println("usage: CompiledDictionary dictionaryFile outputFolder");
+            return;
+        }
+
+        compile(new File(args[0]), new File(args[1]));
+    }
+}
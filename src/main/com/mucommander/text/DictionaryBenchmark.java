@@ -0,0 +1,126 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.text;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import com.mucommander.RuntimeConstants;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+
+/**
+ * Compares the time it takes to load the dictionary file with the time it takes to load the
+ * {@link CompiledDictionary compiled dictionaries}, and the amount of heap retained by the loaded entries in both
+ * cases. Results are printed on the standard output.
+ *
+ * <p>The language to load can be passed as the first command line argument; the system's language is used
+ * otherwise.</p>
+ */
+public class DictionaryBenchmark {
+
+    /** Number of times each dictionary is loaded before being measured */
+    private final static int NB_WARMUP_RUNS = 5;
+    /** Number of measured loads of each dictionary */
+    private final static int NB_RUNS = 20;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private DictionaryBenchmark() {}
+
+    public static void main(String args[]) throws IOException {
+        PrintStream out = System.out;
+
+        if(args.length>0)
+            MuConfigurations.getPreferences().setVariable(MuPreference.LANGUAGE, args[0]);
+
+        // The first load determines the current language
+        Translator.loadDictionaryFile(RuntimeConstants.DICTIONARY_FILE);
+        out.println("Language: "+Translator.getLanguage());
+
+        if(!Translator.loadCompiledDictionary(RuntimeConstants.COMPILED_DICTIONARY_PATH)) {
+            out.println("No compiled dictionary found in "+RuntimeConstants.COMPILED_DICTIONARY_PATH);
+            return;
+        }
+
+        out.println("Dictionary file:");
+        benchmark(out, new Loader() {
+            public void load() throws IOException {
+                Translator.loadDictionaryFile(RuntimeConstants.DICTIONARY_FILE);
+            }
+        });
+
+        out.println("Compiled dictionary:");
+        benchmark(out, new Loader() {
+            public void load() throws IOException {
+                Translator.loadCompiledDictionary(RuntimeConstants.COMPILED_DICTIONARY_PATH);
+            }
+        });
+    }
+
+    private static void benchmark(PrintStream out, Loader loader) throws IOException {
+        for(int i=0; i<NB_WARMUP_RUNS; i++)
+            loader.load();
+
+        long totalTime = 0;
+        long minTime = Long.MAX_VALUE;
+        for(int i=0; i<NB_RUNS; i++) {
+            long startTime = System.nanoTime();
+            loader.load();
+            long time = System.nanoTime() - startTime;
+
+            totalTime += time;
+            minTime = Math.min(minTime, time);
+        }
+
+        Translator.unloadDictionary();
+        long usedBefore = getUsedMemory();
+        loader.load();
+        long usedAfter = getUsedMemory();
+
+        out.println("  load time: "+toMicros(totalTime/NB_RUNS)+"us average, "+toMicros(minTime)+"us min");
+        out.println("  retained heap: "+(usedAfter-usedBefore)/1024+"KB");
+    }
+
+    /**
+     * Returns the amount of heap in use once garbage has been collected.
+     */
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i=0; i<4; i++) {
+            System.gc();
+            try { Thread.sleep(50); }
+            catch(InterruptedException e) {}
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos/1000;
+    }
+
+    /**
+     * Loads the dictionary in one of its forms.
+     */
+    private static interface Loader {
+        void load() throws IOException;
+    }
+}
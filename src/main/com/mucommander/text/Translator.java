@@ -22,6 +22,7 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.Arrays;
@@ -67,10 +68,10 @@ public class Translator {
     private static String language;
 
     /** Default language */
-    private final static String DEFAULT_LANGUAGE = "EN";
+    final static String DEFAULT_LANGUAGE = "EN";
 
     /** Key for available languages */
-    private final static String AVAILABLE_LANGUAGES_KEY = "available_languages";
+    final static String AVAILABLE_LANGUAGES_KEY = "available_languages";
 
     /**
      * Prevents instance creation.
@@ -132,12 +133,72 @@ public class Translator {
     }
 
     /**
-     * Loads the default dictionary file.
+     * Loads the default dictionary. The {@link CompiledDictionary compiled dictionaries} produced by the build are
+     * used if they can be found, the default dictionary file otherwise.
      *
      * @throws IOException thrown if an IO error occurs.
      */
     public static void loadDictionaryFile() throws IOException {
-        loadDictionaryFile(com.mucommander.RuntimeConstants.DICTIONARY_FILE);
+        if(!loadCompiledDictionary(com.mucommander.RuntimeConstants.COMPILED_DICTIONARY_PATH))
+            loadDictionaryFile(com.mucommander.RuntimeConstants.DICTIONARY_FILE);
+    }
+
+    /**
+     * Loads the current and default languages from the compiled dictionaries located in the specified folder. Only
+     * the compiled dictionaries of those two languages are read.
+     *
+     * @param folderPath path to the folder containing the compiled dictionaries
+     * @return <code>false</code> if the folder doesn't contain any compiled dictionary
+     * @throws IOException thrown if an IO error occurs.
+     */
+    static boolean loadCompiledDictionary(String folderPath) throws IOException {
+        InputStream in = ResourceLoader.getResourceAsStream(CompiledDictionary.getPath(folderPath, DEFAULT_LANGUAGE));
+        if(in==null) {
+            LOGGER.debug("No compiled dictionary in "+folderPath+", loading dictionary file");
+            return false;
+        }
+
+        List<String> languages = new Vector<String>();
+        Map<String, String> defaultEntries;
+        try {
+            defaultEntries = CompiledDictionary.read(in, languages);
+        }
+        finally {
+            in.close();
+        }
+
+        availableLanguages = languages;
+        LOGGER.debug("Available languages= "+availableLanguages);
+
+        // Determines current language based on available languages and preferred language (if set) or system's language
+        if(Translator.language==null)
+            setCurrentLanguage(availableLanguages);
+
+        Map<String, String> entries;
+        if(language.equalsIgnoreCase(DEFAULT_LANGUAGE)) {
+            entries = defaultEntries;
+            defaultEntries = new Hashtable<String, String>();
+        }
+        else {
+            in = ResourceLoader.getResourceAsStream(CompiledDictionary.getPath(folderPath, language));
+            if(in==null)
+                throw new IOException("No compiled dictionary for language "+language+" in "+folderPath);
+
+            try {
+                entries = CompiledDictionary.read(in, null);
+            }
+            finally {
+                in.close();
+            }
+
+            // Remove the default dictionary entries that will not be used (saves some memory).
+            defaultEntries.keySet().removeAll(entries.keySet());
+        }
+
+        dictionary = entries;
+        defaultDictionary = defaultEntries;
+
+        return true;
     }
 
     /**
@@ -168,7 +229,7 @@ public class Translator {
 
                     // Special key that lists available languages, must
                     // be defined before any other entry
-                    if(Translator.language==null && keyLC.equals(AVAILABLE_LANGUAGES_KEY)) {
+                    if(keyLC.equals(AVAILABLE_LANGUAGES_KEY)) {
                         // Parse comma separated languages
                         st = new StringTokenizer(st.nextToken(), ",\n");
                         while(st.hasMoreTokens())
@@ -177,7 +238,8 @@ public class Translator {
                         LOGGER.debug("Available languages= "+availableLanguages);
 
                         // Determines current language based on available languages and preferred language (if set) or system's language
-                        setCurrentLanguage(availableLanguages);
+                        if(Translator.language==null)
+                            setCurrentLanguage(availableLanguages);
 
                         continue;
                     }
@@ -186,19 +248,7 @@ public class Translator {
 
                     // Delimiter is now line break
                     text = st.nextToken("\n");
-                    text = text.substring(1, text.length());
-
-                    // Replace "\n" strings in the text by \n characters
-                    int pos = 0;
-
-                    while ((pos = text.indexOf("\\n", pos))!=-1)
-                        text = text.substring(0, pos)+"\n"+text.substring(pos+2, text.length());
-
-                    // Replace "\\uxxxx" unicode strings by the designated character
-                    pos = 0;
-
-                    while ((pos = text.indexOf("\\u", pos))!=-1)
-                        text = text.substring(0, pos)+(char)(Integer.parseInt(text.substring(pos+2, pos+6), 16))+text.substring(pos+6, text.length());
+                    text = unescape(text.substring(1, text.length()));
 
                     // Add entry for current language, or for default language if a value for current language wasn't already set
                     if(lang.equalsIgnoreCase(language)) {
@@ -219,6 +269,51 @@ public class Translator {
         br.close();
     }
 
+    /**
+     * Releases the loaded dictionary entries. The current language is kept.
+     */
+    static void unloadDictionary() {
+        dictionary = null;
+        defaultDictionary = null;
+        availableLanguages = null;
+    }
+
+    /**
+     * Replaces the <code>\\n</code> and <code>\\uxxxx</code> escape sequences found in the given dictionary value
+     * by the characters they designate.
+     *
+     * @param text a value from the dictionary file
+     * @return the value with its escape sequences replaced
+     * @throws NumberFormatException if a <code>\\u</code> sequence is not followed by 4 hexadecimal digits
+     * @throws IndexOutOfBoundsException if a <code>\\u</code> sequence is truncated
+     */
+    static String unescape(String text) {
+        int pos = text.indexOf('\\');
+        if(pos==-1)
+            return text;
+
+        int len = text.length();
+        StringBuilder sb = new StringBuilder(len);
+        sb.append(text, 0, pos);
+        while(pos<len) {
+            char c = text.charAt(pos);
+            if(c=='\\' && pos+1<len && text.charAt(pos+1)=='n') {
+                sb.append('\n');
+                pos += 2;
+            }
+            else if(c=='\\' && pos+1<len && text.charAt(pos+1)=='u') {
+                sb.append((char)Integer.parseInt(text.substring(pos+2, pos+6), 16));
+                pos += 6;
+            }
+            else {
+                sb.append(c);
+                pos++;
+            }
+        }
+
+        return sb.toString();
+    }
+
     /**
      * Returns the current language as a language code ("EN", "FR", "pt_BR", ...).
      *
@@ -21,13 +21,20 @@ package com.mucommander.ui.action;
 import com.mucommander.ui.main.MainFrame;
 
 import javax.swing.*;
+import java.awt.event.ActionEvent;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.WeakHashMap;
 
 /**
  * This class manages keyboard associations with {@link MuAction} ids.
  *
+ * <p>Shortcuts are bound to a MainFrame's file tables without instantiating the actions they trigger: the tables'
+ * <code>ActionMap</code> holds a lightweight proxy for each action, which retrieves the MuAction instance from
+ * {@link ActionManager} the first time the shortcut is used. This saves the creation of every action for each new
+ * MainFrame.</p>
+ *
  * @author Maxence Bernard, Arik Hadas
  */
 public class ActionKeymap {
@@ -38,6 +45,8 @@ public class ActionKeymap {
     private static HashMap<String, KeyStroke> customAlternateActionKeymap = new HashMap<String, KeyStroke>();
     /** Maps Keystroke instances onto action id */
     private static AcceleratorMap acceleratorMap = new AcceleratorMap();
+    /** MainFrames whose file tables action shortcuts have been registered to */
+    private static WeakHashMap<MainFrame, Object> registeredMainFrames = new WeakHashMap<MainFrame, Object>();
 
     /******************
      * Public Methods *
@@ -45,6 +54,7 @@ public class ActionKeymap {
     
     /**
      * Register all action shortcuts to the given MainFrame's file tables.
+     * Actions are not instantiated by this method, only when their shortcut is first used.
      * 
      * @param mainFrame - MainFrame instance to which all action shortcuts would be registered.
      */
@@ -56,12 +66,14 @@ public class ActionKeymap {
             actionId = actionIds.next();
             actionDescriptor = ActionProperties.getActionDescriptor(actionId);
 
-            // Instantiate the action only if it is not parameterized: parameterized actions should only be instantiated
+            // Register the action only if it is not parameterized: parameterized actions should only be instantiated
             // when they are needed and with the required parameters.
             if(!actionDescriptor.isParameterized()) {
-                registerAction(mainFrame, ActionManager.getActionInstance(actionId, mainFrame));
+                registerAction(mainFrame, actionId, getAccelerator(actionId), getAlternateAccelerator(actionId));
             }
         }
+
+        registeredMainFrames.put(mainFrame, null);
     }
     
     /**
@@ -233,52 +245,60 @@ public class ActionKeymap {
      *******************/
 
     /**
-     * Register MuAction instance to MainFrame instance.
+     * Register the accelerators of the MuAction with the given id to MainFrame instance, without instantiating the action.
      */
-    private static void registerAction(MainFrame mainFrame, MuAction action) {
-        registerActionAccelerators(action, mainFrame.getLeftPanel().getFileTable(), JComponent.WHEN_FOCUSED);
-        registerActionAccelerators(action, mainFrame.getRightPanel().getFileTable(), JComponent.WHEN_FOCUSED);
+    private static void registerAction(MainFrame mainFrame, String actionId, KeyStroke accelerator, KeyStroke alternateAccelerator) {
+        if(accelerator==null && alternateAccelerator==null)
+            return;
+
+        Action action = new LazyActionProxy(actionId, mainFrame);
+        registerActionAccelerator(actionId, action, accelerator, mainFrame.getLeftPanel().getFileTable(), JComponent.WHEN_FOCUSED);
+        registerActionAccelerator(actionId, action, alternateAccelerator, mainFrame.getLeftPanel().getFileTable(), JComponent.WHEN_FOCUSED);
+        registerActionAccelerator(actionId, action, accelerator, mainFrame.getRightPanel().getFileTable(), JComponent.WHEN_FOCUSED);
+        registerActionAccelerator(actionId, action, alternateAccelerator, mainFrame.getRightPanel().getFileTable(), JComponent.WHEN_FOCUSED);
     }
 
     /**
      * Register accelerator of MuAction to JComponent with a condition that states when the action can be invoked.
      */
     private static void registerActionAccelerator(MuAction action, KeyStroke accelerator, JComponent comp, int condition) {
+    	registerActionAccelerator(action.getDescriptor().getId(), action, accelerator, comp, condition);
+    }
+
+    /**
+     * Register accelerator of the action with the given id to JComponent with a condition that states when the action
+     * can be invoked.
+     */
+    private static void registerActionAccelerator(String actionId, Action action, KeyStroke accelerator, JComponent comp, int condition) {
     	if(accelerator != null) {
     		InputMap inputMap = comp.getInputMap(condition);
     		ActionMap actionMap = comp.getActionMap();
-    		String actionId = action.getDescriptor().getId();
     		inputMap.put(accelerator, actionId);
     		actionMap.put(actionId, action);
     	}
     }
 
     /**
-     * Unregister MuAction instance from MainFrame instance.
+     * Unregister the accelerators of the MuAction with the given id from MainFrame instance.
      */
-    private static void unregisterAction(MainFrame mainFrame, MuAction action) {
-        unregisterActionAccelerators(action, mainFrame.getLeftPanel().getFileTable(), JComponent.WHEN_FOCUSED);
-        unregisterActionAccelerators(action, mainFrame.getRightPanel().getFileTable(), JComponent.WHEN_FOCUSED);
+    private static void unregisterAction(MainFrame mainFrame, String actionId) {
+        unregisterActionAccelerators(actionId, mainFrame.getLeftPanel().getFileTable(), JComponent.WHEN_FOCUSED);
+        unregisterActionAccelerators(actionId, mainFrame.getRightPanel().getFileTable(), JComponent.WHEN_FOCUSED);
     }
-    
-    /**
-     * Unregister MuAction from JComponent.
-     */
-    private static void unregisterActionAccelerators(MuAction action, JComponent comp, int condition) {
-    	unregisterActionAccelerator(action, action.getAccelerator(), comp, condition);
-    	unregisterActionAccelerator(action, action.getAlternateAccelerator(), comp, condition);
-    }
-    
+
     /**
-     * Unregister accelerator of MuAction from JComponent.
+     * Unregister all accelerators bound to the action with the given id from JComponent.
      */
-    private static void unregisterActionAccelerator(MuAction action, KeyStroke accelerator, JComponent comp, int condition) {
-    	if(accelerator != null) {
-    		InputMap inputMap = comp.getInputMap(condition);
-    		ActionMap actionMap = comp.getActionMap();
-    		inputMap.remove(accelerator);
-    		actionMap.remove(action.getDescriptor().getId());
-    	}
+    private static void unregisterActionAccelerators(String actionId, JComponent comp, int condition) {
+        InputMap inputMap = comp.getInputMap(condition);
+        KeyStroke keyStrokes[] = inputMap.keys();
+        if(keyStrokes!=null) {
+            for(KeyStroke keyStroke : keyStrokes) {
+                if(actionId.equals(inputMap.get(keyStroke)))
+                    inputMap.remove(keyStroke);
+            }
+        }
+        comp.getActionMap().remove(actionId);
     }
     
     /**
@@ -309,19 +329,20 @@ public class ActionKeymap {
     		acceleratorMap.putAlternativeAccelerator(alternateAccelerator, actionId);
     	}
     	
-    	// Update each MainFrame's action instance and input map
+    	// Update each MainFrame's action instance
     	for(MuAction action : ActionManager.getActionInstances(actionId)) {
-    		MainFrame mainFrame = action.getMainFrame();
-
-    		// Remove action from MainFrame's action and input maps
-    		unregisterAction(mainFrame, action);
-
     		// Change action's accelerators
     		action.setAccelerator(accelerator);
     		action.setAlternateAccelerator(alternateAccelerator);
+    	}
+
+    	// Update each MainFrame's input and action maps, whether the action has been instantiated or not
+    	for(MainFrame mainFrame : registeredMainFrames.keySet()) {
+    		// Remove action from MainFrame's action and input maps
+    		unregisterAction(mainFrame, actionId);
 
     		// Add updated action to MainFrame's action and input maps
-    		registerAction(mainFrame, action);
+    		registerAction(mainFrame, actionId, accelerator, alternateAccelerator);
     	}
     }
     
@@ -333,4 +354,44 @@ public class ActionKeymap {
     		return second == null;
     	return first.equals(second);
     }
+
+    /**
+     * Action registered in a file table's <code>ActionMap</code> in place of a MuAction, which is only instantiated
+     * (through {@link ActionManager}) when the action's shortcut is used for the first time.
+     */
+    private static class LazyActionProxy extends AbstractAction {
+
+        /** Id of the proxied MuAction */
+        private String actionId;
+        /** MainFrame the proxied MuAction belongs to */
+        private MainFrame mainFrame;
+
+        private LazyActionProxy(String actionId, MainFrame mainFrame) {
+            this.actionId = actionId;
+            this.mainFrame = mainFrame;
+        }
+
+        /**
+         * Returns the proxied MuAction, creating it if it hasn't been instantiated for the MainFrame yet.
+         */
+        private MuAction getAction() {
+            return ActionManager.getActionInstance(actionId, mainFrame);
+        }
+
+        /**
+         * Delegates to the proxied action. This method is called by Swing only when the action's shortcut has been
+         * typed, before the action is performed.
+         */
+        @Override
+        public boolean isEnabled() {
+            MuAction action = getAction();
+            return action!=null && action.isEnabled();
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            MuAction action = getAction();
+            if(action!=null)
+                action.actionPerformed(e);
+        }
+    }
 }
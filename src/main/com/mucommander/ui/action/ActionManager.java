@@ -69,7 +69,21 @@ public class ActionManager {
     /** Pattern to resolve the action ID from action class path */
     private final static Pattern pattern = Pattern.compile(".*\\.(.*)?Action");
 
+    /** Time spent in {@link #registerActions()}, in nanoseconds */
+    private static long registrationTime;
+    /** Number of MuAction instances created so far, for all MainFrames */
+    private static int nbActionInstances;
+    /** Cumulated time spent creating MuAction instances, in nanoseconds */
+    private static long actionInstantiationTime;
+
+    /**
+     * Registers the descriptor and factory of all the actions. MuAction instances are not created by this method:
+     * they are created on demand by {@link #getActionInstance(ActionParameters, MainFrame)}, the first time they are
+     * needed by a MainFrame.
+     */
     public static void registerActions() {
+        long startTime = System.nanoTime();
+
     	registerAction(new AddBookmarkAction.Descriptor(),                  new AddBookmarkAction.Factory());
     	registerAction(new AddTabAction.Descriptor(),						new AddTabAction.Factory());
     	registerAction(new BatchRenameAction.Descriptor(),                  new BatchRenameAction.Factory());
@@ -211,6 +225,7 @@ public class ActionManager {
     	registerAction(new SwapFoldersAction.Descriptor(),       	        new SwapFoldersAction.Factory());
     	registerAction(new SwitchActiveTableAction.Descriptor(),            new SwitchActiveTableAction.Factory());
     	registerAction(new ToggleAutoSizeAction.Descriptor(),               new ToggleAutoSizeAction.Factory());
+    	registerAction(new ToggleBranchViewAction.Descriptor(),             new ToggleBranchViewAction.Factory());
 //    	registerAction(new ToggleColumnAction.Descriptor(),           	    new ToggleColumnAction.Factory());
     	registerAction(new ToggleCommandBarAction.Descriptor(),             new ToggleCommandBarAction.Factory());
     	registerAction(new ToggleDateColumnAction.Descriptor(),             new ToggleDateColumnAction.Factory());
@@ -237,6 +252,9 @@ public class ActionManager {
     					                     new CommandAction.Factory(command));
     		}
     	}
+
+        registrationTime = System.nanoTime() - startTime;
+        LOGGER.debug("registered "+actionFactories.size()+" actions in "+(registrationTime/1000000)+"ms");
     }
 
     /**
@@ -362,6 +380,8 @@ public class ActionManager {
                 properties = buffer;
             }
 
+            long startTime = System.nanoTime();
+
             // Instantiate the MuAction class
             MuAction action = actionFactory.createAction(mainFrame, properties);
             mainFrameActions.put(actionParameters, new ActionAndIdPair(action, actionId));
@@ -403,12 +423,43 @@ public class ActionManager {
                 if(icon!=null)
                     action.setIcon(icon);
             }
-            
+
+            nbActionInstances++;
+            actionInstantiationTime += System.nanoTime() - startTime;
+
             return action;
         }
     }
 
 
+    /**
+     * Returns the time that was spent in {@link #registerActions()}, in nanoseconds.
+     *
+     * @return the time that was spent registering actions, in nanoseconds
+     */
+    public static long getRegistrationTime() {
+        return registrationTime;
+    }
+
+    /**
+     * Returns the number of MuAction instances that have been created so far, for all MainFrames.
+     *
+     * @return the number of MuAction instances that have been created so far
+     */
+    public static int getActionInstanceCount() {
+        return nbActionInstances;
+    }
+
+    /**
+     * Returns the cumulated time spent creating MuAction instances so far, in nanoseconds. This includes the time
+     * spent resolving their label, tooltip, accelerators and icon.
+     *
+     * @return the cumulated time spent creating MuAction instances, in nanoseconds
+     */
+    public static long getActionInstantiationTime() {
+        return actionInstantiationTime;
+    }
+
     /**
      * Returns a Vector of all MuAction instances matching the specified action id.
      *
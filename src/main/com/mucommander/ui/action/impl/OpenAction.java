@@ -111,7 +111,8 @@ public class OpenAction extends MuAction {
         	if (tabs.getCurrentTab().isLocked())
         		tabs.add(resolvedFile);
         	else
-        		destination.tryChangeCurrentFolder(resolvedFile);
+        		// The folder's listing may have been prefetched while it was selected
+        		destination.tryChangeCurrentFolderCached(resolvedFile);
         }
 
         // Opens local files using their native associations.
@@ -145,14 +145,15 @@ public class OpenLocationAction extends ActiveTabAction {
     @Override
     public void performAction() {
         FolderPanel folderPanel = getFolderPanel();
+        // Locations opened by this action (bookmarks, volumes, history) are usually visited again
         if(url!=null) {
-            folderPanel.tryChangeCurrentFolder(url);
+            folderPanel.tryChangeCurrentFolderCached(url);
         }
         else if(file!=null) {
-            folderPanel.tryChangeCurrentFolder(file);
+            folderPanel.tryChangeCurrentFolderCached(file.getURL());
         }
         else if(path!=null) {
-            folderPanel.tryChangeCurrentFolder(path);
+            folderPanel.tryChangeCurrentFolderCached(path);
         }
     }
 
@@ -208,19 +208,6 @@ public class EditCredentialsDialog extends FocusDialog implements ActionListener
     }
 
 
-    /**
-     * Overrides dispose() to write credentials if needed (if at least one item has been changed).
-     */
-    @Override
-    public void dispose() {
-        super.dispose();
-
-        // Write credentials file to disk, only if changes were made
-        try {CredentialsManager.writeCredentials(false);}
-        // We should probably pop an error dialog here...
-        catch(Exception e) {}
-    }
-
 
     ///////////////////////////
     // ActionListener method //
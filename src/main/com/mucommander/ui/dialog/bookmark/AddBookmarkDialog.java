@@ -129,11 +129,8 @@ public class AddBookmarkDialog extends FocusDialog implements ActionListener, Do
             // Starts by disposing the dialog
             dispose();
 
-            // Add bookmark and write bookmarks file to disk
+            // Add bookmark, the bookmarks file is saved in the background
             BookmarkManager.addBookmark(new Bookmark(nameField.getText(), locationField.getText()));
-            try {BookmarkManager.writeBookmarks(false);}
-            // We should probably pop an error dialog here.
-            catch(Exception e2) {}
         }
         else if (source==cancelButton)  {
             dispose();			
@@ -308,7 +308,8 @@ public class EditBookmarksDialog extends FocusDialog implements ActionListener,
 
 
     /**
-     * Overrides dispose() to write bookmarks to disk (if needed).
+     * Overrides dispose() to roll back the current bookmark's modifications if the dialog was cancelled, and to resume
+     * bookmark change events.
      */
     @Override
     public void dispose() {
@@ -322,11 +323,6 @@ public class EditBookmarksDialog extends FocusDialog implements ActionListener,
 
         // Resume bookmark change events
         BookmarkManager.setFireEvents(true);
-
-        // Write bookmarks file to disk, only if changes were made to bookmarks
-        try {BookmarkManager.writeBookmarks(false);}
-        // We should probably pop an error here.
-        catch(Exception e) {}
     }
 
 	
@@ -38,6 +38,7 @@ import java.util.Vector;
 import javax.swing.Box;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
@@ -51,8 +52,10 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
+import com.mucommander.job.AbstractCopyJob;
 import com.mucommander.job.FileJob;
 import com.mucommander.job.FileJobListener;
+import com.mucommander.job.JobScheduler;
 import com.mucommander.job.TransferFileJob;
 import com.mucommander.job.progress.JobProgress;
 import com.mucommander.job.progress.JobProgressListener;
@@ -87,6 +90,7 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
     private JLabel currentSpeedLabel;
     private JCheckBox limitSpeedCheckBox;
     private SizeChooser speedChooser;
+    private JComboBox priorityComboBox;
     private JLabel elapsedTimeLabel;
 
     private SpeedGraph speedGraph;
@@ -104,6 +108,9 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
 
     private boolean firstTimeActivated = true;
 
+    /** True while the job is waiting in the JobScheduler's queue */
+    private boolean queued;
+
     // Button icons
     private final static String RESUME_ICON = "resume.png";
     private final static String PAUSE_ICON = "pause.png";
@@ -199,6 +206,25 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             advancedPanel.add(tempPanel2);
             advancedPanel.addSpace(5);
 
+            // Priority of the job in the JobScheduler's queue, which can be changed while the job is queued
+            if(JobScheduler.isQueueable(job)) {
+                JPanel tempPanel3 = new JPanel(new BorderLayout());
+                tempPanel3.add(new JLabel(Translator.get("progress_dialog.priority")+":"), BorderLayout.WEST);
+
+                // Items are in the order of the JobScheduler.PRIORITY_* constants
+                priorityComboBox = new JComboBox(new String[] {
+                        Translator.get("progress_dialog.priority_low"),
+                        Translator.get("progress_dialog.priority_normal"),
+                        Translator.get("progress_dialog.priority_high")});
+                priorityComboBox.setSelectedIndex(JobScheduler.getInstance().getPriority(job));
+                priorityComboBox.setEnabled(false);
+                priorityComboBox.addItemListener(this);
+
+                tempPanel3.add(priorityComboBox, BorderLayout.EAST);
+                advancedPanel.add(tempPanel3);
+                advancedPanel.addSpace(5);
+            }
+
             this.collapseExpandButton = new CollapseExpandButton(Translator.get("progress_dialog.advanced"), advancedPanel, true);
             collapseExpandButton.setExpandedState(MuConfigurations.getPreferences().getVariable(MuPreference.PROGRESS_DIALOG_EXPANDED,
                                                                                    MuPreferences.DEFAULT_PROGRESS_DIALOG_EXPANDED));
@@ -283,6 +309,32 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         transferFileJob.setThroughputLimit(limitSpeedCheckBox.isSelected()?speedChooser.getValue():-1);
     }
 
+    /**
+     * Turns the pause button into a 'start now' button while the job is waiting in the {@link JobScheduler}'s queue,
+     * and back into a pause button once the job has started.
+     */
+    private void updateQueuedState(boolean queued) {
+        if(queued==this.queued)
+            return;
+
+        this.queued = queued;
+        if(queued) {
+            pauseResumeButton.setText(Translator.get("progress_dialog.start_now"));
+            pauseResumeButton.setIcon(IconManager.getIcon(IconManager.PROGRESS_ICON_SET, RESUME_ICON));
+        }
+        else {
+            pauseResumeButton.setText(Translator.get("pause"));
+            pauseResumeButton.setIcon(IconManager.getIcon(IconManager.PROGRESS_ICON_SET, PAUSE_ICON));
+        }
+
+        // The priority only matters while the job is queued
+        if(priorityComboBox!=null)
+            priorityComboBox.setEnabled(queued);
+
+        // Update buttons mnemonics
+        buttonsChoicePanel.updateMnemonics();
+    }
+
     private void updateCurrentSpeedLabel(String value) {
         currentSpeedLabel.setText(Translator.get("progress_dialog.current_speed")+": "+value);
     }
@@ -399,6 +451,7 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
 
 	public void jobProgress(FileJob source, int idx, boolean fullUpdate) {
 		if (job.equals(source)) {
+			updateQueuedState(source.getJobProgress().isQueued());
 			updateProgressLabel(source.getJobProgress());
 			if (fullUpdate) {
 				updateProgressUI(source.getJobProgress());
@@ -426,8 +479,11 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             transferFileJob.skipCurrentFile();
         }
         else if(source==pauseResumeButton) {
-            // Pause/resume job
-            job.setPaused(job.getState()!=FileJob.PAUSED);
+            // Start the job if it is queued, pause/resume it otherwise
+            if(JobScheduler.getInstance().isQueued(job))
+                JobScheduler.getInstance().startNow(job);
+            else
+                job.setPaused(job.getState()!=FileJob.PAUSED);
         }
 //        else if(source==hideButton) {
 //            mainFrame.setState(Frame.ICONIFIED);
@@ -446,6 +502,9 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             speedChooser.setEnabled(isEnabled);
             updateThroughputLimit();
         }
+        else if(source==priorityComboBox && e.getStateChange()==ItemEvent.SELECTED) {
+            JobScheduler.getInstance().setPriority(job, priorityComboBox.getSelectedIndex());
+        }
     }
 
 
@@ -460,6 +519,20 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
     }
 
 
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    public void cancel() {
+        int jobState = job.getState();
+        if(!(jobState==FileJob.FINISHED || jobState==FileJob.INTERRUPTED))
+            job.interrupt();
+
+        super.cancel();
+    }
+
+
     ///////////////////////////////////////
     // Overridden WindowListener methods // 
     ///////////////////////////////////////
@@ -474,6 +547,16 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         }
     }
 
+    @Override
+    public void windowClosing(WindowEvent e) {
+        super.windowClosing(e);
+
+        // The user closed the dialog
+        int jobState = job.getState();
+        if(!(jobState==FileJob.FINISHED || jobState==FileJob.INTERRUPTED))
+            job.interrupt();
+    }
+
     @Override
     public void windowClosed(WindowEvent e) {
         super.windowClosed(e);
@@ -481,10 +564,15 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         // Stop repaint thread if it isn't already
         stop();
 
-        // Stop job if it isn't already
+        // Stop job if it isn't already. The user did not stop it, the dialog is disposed with its main frame as
+        // muCommander is being quit: the job is left resumable.
         int jobState = job.getState();
-        if(!(jobState==FileJob.FINISHED || jobState==FileJob.INTERRUPTED))
-            job.interrupt();
+        if(!(jobState==FileJob.FINISHED || jobState==FileJob.INTERRUPTED)) {
+            if(job instanceof AbstractCopyJob)
+                ((AbstractCopyJob)job).interruptForShutdown();
+            else
+                job.interrupt();
+        }
 
         // Remember 'advanced panel' expanded state
         if(collapseExpandButton!=null)
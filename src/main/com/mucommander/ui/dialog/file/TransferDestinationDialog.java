@@ -41,6 +41,9 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.file.util.PathUtils;
+import com.mucommander.job.AbstractCopyJob;
+import com.mucommander.job.CopyJob;
+import com.mucommander.job.MoveJob;
 import com.mucommander.job.TransferFileJob;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.DialogToolkit;
@@ -294,6 +297,10 @@ public abstract class TransferDestinationDialog extends JobDialog implements Act
         if(job!=null) {
             job.setAutoSkipErrors(skipErrors);
             job.setIntegrityCheckEnabled(verifyIntegrity);
+            // Record the progress of copies and moves, so that they can be resumed if muCommander is quit before
+            // they are finished
+            if(job instanceof CopyJob || job instanceof MoveJob)
+                ((AbstractCopyJob)job).setJournalingEnabled(true);
             progressDialog.start(job);
         }
     }
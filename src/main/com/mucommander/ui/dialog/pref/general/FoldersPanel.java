@@ -89,6 +89,9 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
     // Follow symlinks when changing directory ?
     private PrefCheckBox followSymlinksCheckBox;
     
+    // List the selected folder before it is opened ?
+    private PrefCheckBox prefetchFoldersCheckBox;
+
     // Always show single tab's header ?
     private PrefCheckBox showTabHeaderCheckBox;
 
@@ -242,6 +245,15 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
                                                                             MuPreferences.DEFAULT_CD_FOLLOWS_SYMLINKS));
         northPanel.add(followSymlinksCheckBox);
 
+        prefetchFoldersCheckBox = new PrefCheckBox(Translator.get("prefs_dialog.prefetch_folders")) {
+			public boolean hasChanged() {
+				return isSelected() != MuConfigurations.getPreferences().getVariable(MuPreference.PREFETCH_FOLDERS, MuPreferences.DEFAULT_PREFETCH_FOLDERS);
+			}
+        };
+        prefetchFoldersCheckBox.setSelected(MuConfigurations.getPreferences().getVariable(MuPreference.PREFETCH_FOLDERS,
+                                                                             MuPreferences.DEFAULT_PREFETCH_FOLDERS));
+        northPanel.add(prefetchFoldersCheckBox);
+
         showTabHeaderCheckBox = new PrefCheckBox(Translator.get("prefs_dialog.show_tab_header")) {
 			public boolean hasChanged() {
 				return isSelected() != MuConfigurations.getPreferences().getVariable(MuPreference.SHOW_TAB_HEADER, MuPreferences.DEFAULT_SHOW_TAB_HEADER); 
@@ -260,6 +272,7 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
         showHiddenFilesCheckBox.addDialogListener(parent);
         compactSizeCheckBox.addDialogListener(parent);
         followSymlinksCheckBox.addDialogListener(parent);
+        prefetchFoldersCheckBox.addDialogListener(parent);
         showTabHeaderCheckBox.addDialogListener(parent);
         if(OsFamily.MAC_OS_X.isCurrent()) {
         	showDSStoreFilesCheckBox.addDialogListener(parent);
@@ -292,6 +305,8 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
     	MuConfigurations.getPreferences().setVariable(MuPreference.DISPLAY_COMPACT_FILE_SIZE, compactSizeCheckBox.isSelected());
 
     	MuConfigurations.getPreferences().setVariable(MuPreference.CD_FOLLOWS_SYMLINKS, followSymlinksCheckBox.isSelected());
+
+    	MuConfigurations.getPreferences().setVariable(MuPreference.PREFETCH_FOLDERS, prefetchFoldersCheckBox.isSelected());
     	
     	MuConfigurations.getPreferences().setVariable(MuPreference.SHOW_TAB_HEADER, showTabHeaderCheckBox.isSelected());
 
@@ -28,6 +28,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.io.PrintStream;
 
 import javax.swing.Box;
@@ -36,13 +37,20 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.process.AbstractProcess;
 import com.mucommander.process.ProcessListener;
+import com.mucommander.process.ProcessOutputFile;
 import com.mucommander.shell.Shell;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.text.Translator;
@@ -61,7 +69,9 @@ import com.mucommander.ui.theme.ThemeManager;
  * Dialog used to execute a user-defined command.
  * <p>
  * Creates and displays a new dialog allowing the user to input a command which will be executed once the action is confirmed.
- * The command output of the user command is displayed in a text area
+ * The command output of the user command is displayed in a text area, which only keeps the last
+ * {@link #MAX_OUTPUT_LINES} lines and {@link #MAX_OUTPUT_CHARS} characters of output. If the
+ * {@link MuPreferences#SAVE_SHELL_OUTPUT} preference is enabled, the full output is also saved to a temporary file.
  * </p>
  * <p>
  * Note that even though this component is affected by themes, it's impossible to edit the current theme while it's being displayed.
@@ -88,6 +98,8 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
     private JTextArea     outputTextArea;
     /** Used to let the user known that the command is still running. */
     private SpinningDial  dial;
+    /** Displays the path to the file the full output is saved in. */
+    private JLabel        outputFileLabel;
 
 
 
@@ -97,6 +109,12 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
     private PrintStream     processInput;
     /** Process currently running, <code>null</code> if none. */
     private AbstractProcess currentProcess;
+    /** File the full output of the current process is saved in, <code>null</code> if none. */
+    private volatile ProcessOutputFile outputFile;
+    /** Output received from the process that has not been added to the shell output area yet. */
+    private StringBuilder   pendingOutput = new StringBuilder();
+    /** Whether the shell output area is due to be updated with the pending output. */
+    private boolean         outputUpdateScheduled;
 
 
 
@@ -104,6 +122,10 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
     // -----------------------------------------------------------------------------------
     /** Minimum dimensions for the dialog. */
     private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(600, 400);
+    /** Maximum number of lines kept in the shell output area. */
+    private final static int MAX_OUTPUT_LINES = 10000;
+    /** Maximum number of characters kept in the shell output area. */
+    private final static int MAX_OUTPUT_CHARS = 1024 * 1024;
 
 
 
@@ -160,6 +182,7 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
         labelPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         labelPanel.add(new JLabel(Translator.get("run_dialog.command_output")+":"));
         labelPanel.add(new JLabel(dial = new SpinningDial()));
+        labelPanel.add(outputFileLabel = new JLabel());
         mainPanel.add(labelPanel);
 
         return mainPanel;
@@ -218,6 +241,7 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
                         processInput.close();
                         currentProcess.destroy();
                     }
+                    closeOutputFile();
                 }
             });
 
@@ -240,19 +264,54 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
             processInput.close();
             processInput = null;
         }
+        closeOutputFile();
         switchToRunState();
     }	
 
     /**
-     * Ignored.
+     * Saves the process' raw output to the output file, if any.
      */
-    public void processOutput(byte[] buffer, int offset, int length) {}
+    public void processOutput(byte[] buffer, int offset, int length) {
+        ProcessOutputFile file = outputFile;
+        if(file != null)
+            file.processOutput(buffer, offset, length);
+    }
 
     /**
      * Notifies the RunDialog that the process has output some text.
+     * <p>
+     * Output is accumulated until the shell output area is updated: a single update is scheduled on the event
+     * dispatch thread at a time, however often the process outputs text.
+     * </p>
      * @param output contains the process' output.
      */
-    public void processOutput(String output) {addToTextArea(output);}
+    public void processOutput(String output) {
+        synchronized(pendingOutput) {
+            pendingOutput.append(output);
+
+            // Output that would be trimmed from the shell output area anyway is discarded right away
+            if(pendingOutput.length() > MAX_OUTPUT_CHARS)
+                pendingOutput.delete(0, pendingOutput.length() - MAX_OUTPUT_CHARS);
+
+            if(outputUpdateScheduled)
+                return;
+            outputUpdateScheduled = true;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                String output;
+                synchronized(pendingOutput) {
+                    output = pendingOutput.toString();
+                    pendingOutput.setLength(0);
+                    outputUpdateScheduled = false;
+                }
+
+                if(output.length() > 0)
+                    addToTextArea(output);
+            }
+        });
+    }
 
 
 
@@ -390,7 +449,23 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
             // Change 'Run' button to 'Stop'
             this.runStopButton.setText(Translator.get("run_dialog.stop"));
 
+            // Saves the full output if requested.
+            closeOutputFile();
+            outputFileLabel.setText("");
+            if(MuConfigurations.getPreferences().getVariable(MuPreference.SAVE_SHELL_OUTPUT, MuPreferences.DEFAULT_SAVE_SHELL_OUTPUT)) {
+                try {
+                    outputFile = new ProcessOutputFile();
+                    outputFileLabel.setText(Translator.get("run_dialog.full_output", outputFile.getFile().getAbsolutePath()));
+                }
+                catch(IOException e) {
+                    LOGGER.debug("Could not create output file", e);
+                }
+            }
+
             // Resets the process output area.
+            synchronized(pendingOutput) {
+                pendingOutput.setLength(0);
+            }
             outputTextArea.setText("");
             outputTextArea.setCaretPosition(0);
             outputTextArea.getCaret().setVisible(true);
@@ -418,8 +493,49 @@ public class RunDialog extends FocusDialog implements ActionListener, ProcessLis
      */
     private void addToTextArea(String s) {
         outputTextArea.append(s);
-        outputTextArea.setCaretPosition(outputTextArea.getText().length());
+        trimTextArea();
+        outputTextArea.setCaretPosition(outputTextArea.getDocument().getLength());
         outputTextArea.getCaret().setVisible(true);
         outputTextArea.repaint();
     }
+
+    /**
+     * Removes the oldest lines of the shell output area, so that it contains no more than {@link #MAX_OUTPUT_LINES}
+     * lines and {@link #MAX_OUTPUT_CHARS} characters.
+     */
+    private void trimTextArea() {
+        Document document = outputTextArea.getDocument();
+        try {
+            int end = 0;
+
+            int excessLines = outputTextArea.getLineCount() - MAX_OUTPUT_LINES;
+            if(excessLines > 0)
+                end = outputTextArea.getLineStartOffset(excessLines);
+
+            // Cuts at the start of a line if possible
+            if(document.getLength() - end > MAX_OUTPUT_CHARS) {
+                end = document.getLength() - MAX_OUTPUT_CHARS;
+                int line = outputTextArea.getLineOfOffset(end);
+                if(line + 1 < outputTextArea.getLineCount())
+                    end = Math.max(end, outputTextArea.getLineStartOffset(line + 1));
+            }
+
+            if(end > 0)
+                document.remove(0, end);
+        }
+        catch(BadLocationException e) {
+            LOGGER.debug("Could not trim shell output", e);
+        }
+    }
+
+    /**
+     * Closes the file the full output of the current process is saved in, if any.
+     */
+    private void closeOutputFile() {
+        ProcessOutputFile file = outputFile;
+        if(file != null) {
+            outputFile = null;
+            file.close();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.dialog.startup;
+
+import java.util.List;
+
+import com.mucommander.job.AbstractCopyJob;
+import com.mucommander.job.JobJournal;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.QuestionDialog;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * Offers to resume the file jobs that were still running when muCommander was last quit, or when it crashed. The jobs
+ * are those whose {@link JobJournal journal} is still present.
+ *
+ * <p>If the user chooses to resume the jobs, each job is resumed in its own progress dialog. If the user chooses
+ * to discard them, their journals are deleted. Otherwise, the user will be asked again the next time muCommander is
+ * started.</p>
+ */
+public class ResumeJobsDialog extends QuestionDialog {
+
+    /** Parent MainFrame instance */
+    private MainFrame mainFrame;
+
+    /** Journals of the jobs to resume */
+    private List<JobJournal> journals;
+
+    private final static int RESUME_ACTION = 0;
+    private final static int DISCARD_ACTION = 1;
+    private final static int LATER_ACTION = 2;
+
+    /**
+     * Creates a new dialog offering to resume the jobs recorded to the given journals.
+     *
+     * @param mainFrame the main frame to resume the jobs in
+     * @param journals the journals of the jobs to resume
+     */
+    public ResumeJobsDialog(MainFrame mainFrame, List<JobJournal> journals) {
+        super(mainFrame, Translator.get("resume_jobs_dialog.title"),
+              Translator.get("resume_jobs_dialog.message", String.valueOf(journals.size())), mainFrame,
+              new String[] {Translator.get("resume_jobs_dialog.resume"), Translator.get("resume_jobs_dialog.discard"), Translator.get("resume_jobs_dialog.later")},
+              new int[] {RESUME_ACTION, DISCARD_ACTION, LATER_ACTION},
+              0);
+
+        this.mainFrame = mainFrame;
+        this.journals = journals;
+    }
+
+    /**
+     * Shows this dialog and performs the action chosen by the user.
+     */
+    public void resumeJobs() {
+        switch(getActionValue()) {
+            case RESUME_ACTION:
+                for(JobJournal journal : journals) {
+                    ProgressDialog progressDialog = new ProgressDialog(mainFrame, journal.getTitle());
+                    AbstractCopyJob job = journal.createJob(progressDialog, mainFrame);
+                    if(job!=null)
+                        progressDialog.start(job);
+                }
+                break;
+
+            case DISCARD_ACTION:
+                for(JobJournal journal : journals)
+                    journal.delete();
+                break;
+
+            // 'Later' or dialog closed: keep the journals
+        }
+    }
+}
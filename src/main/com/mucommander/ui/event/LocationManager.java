@@ -27,10 +27,13 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.core.BranchWalker;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
+import com.mucommander.core.LocationListingCache;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
 import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.table.FileTableModel;
 
 /**
  * @author Maxence Bernard
@@ -52,6 +55,9 @@ public class LocationManager {
 
 	private FolderChangeMonitor folderChangeMonitor;
 
+	/** Walker listing the branch of the current folder, <code>null</code> if no branch is being walked */
+	private volatile BranchWalker branchWalker;
+
     /**
      * Creates a new LocationManager that manages location events listeners and broadcasts for the specified FolderPanel.
      *
@@ -72,16 +78,64 @@ public class LocationManager {
      * @throws IOException 
      * @throws UnsupportedFileOperationException 
      */
-    public void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
+    public void setCurrentFolder(final AbstractFile folder, AbstractFile fileToSelect, final boolean changeLockedTab) {
+    	// The branch view is left when the folder changes
+    	boolean branchView = folderPanel.isBranchView() && currentFolder != null && folder.equals(currentFolder);
+
     	LOGGER.trace("calling ls()");
     	AbstractFile[] children;
+    	boolean listed;
 		try {
-			children = folder.ls(configurableFolderFilter);
+			if (branchView) {
+				// Display the files found so far while the branch is being walked
+				branchWalker = new BranchWalker(configurableFolderFilter, new BranchWalker.Listener() {
+					public void filesFound(AbstractFile[] files) {
+						folderPanel.setCurrentFolder(folder, files, null, changeLockedTab);
+					}
+				});
+				try {
+					children = branchWalker.walk(folder);
+				}
+				finally {
+					branchWalker = null;
+				}
+			}
+			else {
+				children = folder.ls(configurableFolderFilter);
+			}
+			listed = true;
 		} catch (Exception e) {
 			LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
 			children = new AbstractFile[0];
+			listed = false;
 		}
 
+    	setCurrentFolder(folder, children, fileToSelect, changeLockedTab, branchView);
+
+    	// Retain the listing, whose children have been turned into CachedFile instances by the table model
+    	if (listed && !branchView) {
+    		FileTableModel model = folderPanel.getFileTable().getFileTableModel();
+    		LocationListingCache.put(folder, model.getCachedFiles(), model.getCurrentFolder().getDate());
+    	}
+    }
+
+    /**
+     * Set the given {@link AbstractFile} as the folder presented in the {@link FolderPanel}, with the given children
+     * instead of listing the folder's children.
+     * This method saves the given {@link AbstractFile}, and notify the {@link LocationListener}s that
+     * the location was changed to it.
+     * 
+     * @param folder the {@link AbstractFile} that is going to be presented in the {@link FolderPanel}
+     * @param children the children of the given folder
+     * @param fileToSelect the file to select, <code>null</code> for the default selection
+     * @param changeLockedTab whether to change the presented folder in the currently selected tab although it's locked
+     */
+    public void setCurrentFolder(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect, boolean changeLockedTab) {
+    	setCurrentFolder(folder, children, fileToSelect, changeLockedTab, false);
+    }
+
+    private void setCurrentFolder(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect, boolean changeLockedTab, boolean branchView) {
+    	folderPanel.setBranchView(branchView);
     	folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
 
     	this.currentFolder = folder;
@@ -94,6 +148,20 @@ public class LocationManager {
     		folderChangeMonitor = new FolderChangeMonitor(folderPanel);
     }
 
+    /**
+     * Stops the walk of the current folder's branch if one is under way: the files found so far are displayed.
+     *
+     * @return <code>true</code> if a branch was being walked
+     */
+    public boolean cancelBranchWalk() {
+    	BranchWalker walker = branchWalker;
+    	if (walker == null)
+    		return false;
+
+    	walker.cancel();
+    	return true;
+    }
+
     /**
      * Return the folder presented in the {@link FolderPanel}
      * 
@@ -45,6 +45,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.FolderChangeMonitor;
+import com.mucommander.core.FolderPrefetcher;
 import com.mucommander.core.LocalLocationHistory;
 import com.mucommander.core.LocationChanger;
 import com.mucommander.core.LocationChanger.ChangeFolderThread;
@@ -103,6 +104,9 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
 
     private LocationChanger locationChanger;
 
+    /** Lists the folders this panel is likely to display next, retained here as it is a weakly-referenced listener */
+    private FolderPrefetcher folderPrefetcher;
+
     /** Is directory tree visible */
     private boolean treeVisible = false;
 
@@ -112,7 +116,8 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
     /** Array of all the existing pop ups for this panel's FileTable **/
     private QuickList[] fileTablePopups;
 
-    /* TODO branch private boolean branchView; */
+    /** True if the files of the current folder's subfolders are displayed along with its own files */
+    private boolean branchView;
 
     /**
      * Constructor
@@ -178,6 +183,8 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
 		
 		tabs.addActiveTabListener(this);
 
+		folderPrefetcher = new FolderPrefetcher(this);
+
         // create folders tree on a JSplitPane 
         foldersTreePanel = new FoldersTreePanel(this);
         foldersTreePanel.setVisible(false);
@@ -348,6 +355,10 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
     	locationChanger.tryChangeCurrentFolderInternal(folderURL, callback);
     }
 
+    public void tryChangeCurrentFolderInternal(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect, Callback callback) {
+    	locationChanger.tryChangeCurrentFolderInternal(folder, children, fileToSelect, callback);
+    }
+
     public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder) {
     	return locationChanger.tryChangeCurrentFolder(folder, false);
     }
@@ -372,6 +383,18 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
     	return locationChanger.tryChangeCurrentFolder(folderURL, credentialsMapping, false);
     }
 
+    public ChangeFolderThread tryChangeCurrentFolderCached(AbstractFile folder) {
+    	return locationChanger.tryChangeCurrentFolderCached(folder);
+    }
+
+    public ChangeFolderThread tryChangeCurrentFolderCached(FileURL folderURL) {
+    	return locationChanger.tryChangeCurrentFolderCached(folderURL);
+    }
+
+    public ChangeFolderThread tryChangeCurrentFolderCached(String folderPath) {
+    	return locationChanger.tryChangeCurrentFolderCached(folderPath);
+    }
+
     public ChangeFolderThread tryRefreshCurrentFolder() {
     	return locationChanger.tryRefreshCurrentFolder();
     }
@@ -466,6 +489,27 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
         return foldersTreePanel;
     }
 
+    /**
+     * Returns <code>true</code> if this panel displays the files of the current folder and of all its subfolders,
+     * instead of the current folder's files and folders.
+     *
+     * @return <code>true</code> if the branch view is enabled
+     */
+    public boolean isBranchView() {
+        return branchView;
+    }
+
+    /**
+     * Enables/disables the branch view. The change takes effect the next time the current folder is refreshed; the
+     * branch view is disabled when another folder is displayed. Invoked by
+     * {@link com.mucommander.ui.action.impl.ToggleBranchViewAction}.
+     *
+     * @param branchView <code>true</code> to display the files of the current folder and of all its subfolders
+     */
+    public void setBranchView(boolean branchView) {
+        this.branchView = branchView;
+    }
+
     /**
      * Enables/disables a directory tree visibility. Invoked by {@link com.mucommander.ui.action.impl.ToggleTreeAction}.
      */
@@ -25,8 +25,9 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -37,16 +38,9 @@ import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.SwingConstants;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.mucommander.cache.FastLRUCache;
-import com.mucommander.cache.LRUCache;
 import com.mucommander.commons.conf.ConfigurationEvent;
 import com.mucommander.commons.conf.ConfigurationListener;
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.impl.local.LocalFile;
-import com.mucommander.commons.runtime.JavaVersion;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
@@ -82,14 +76,13 @@ import com.mucommander.ui.theme.ThemeManager;
  * selected files and volume info, and display the waiting message when the folder is changing. Quick search info
  * is set by FileTable.QuickSearch.
  *
- * <p>When StatusBar is visible, a Thread runs in the background to periodically update free/total space volume info.
- * This thread stops when the StatusBar is hidden.
+ * <p>When StatusBar is visible, free/total space volume info is retrieved by the {@link VolumeSpaceMonitor} shared by
+ * all StatusBar instances, which refreshes it periodically while the MainFrame is active in the foreground.
  *
  * @author Maxence Bernard
  */
-public class StatusBar extends JPanel implements Runnable, MouseListener, ActivePanelListener, TableSelectionListener, LocationListener, ComponentListener, ThemeListener {
-	private static final Logger LOGGER = LoggerFactory.getLogger(StatusBar.class);
-	
+public class StatusBar extends JPanel implements MouseListener, ActivePanelListener, TableSelectionListener, LocationListener, ComponentListener, ThemeListener, VolumeSpaceListener {
+
     private MainFrame mainFrame;
 
     /** Label that displays info about current selected file(s) */
@@ -101,21 +94,11 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
     /** Label that displays info about current volume (free/total space) */
     private VolumeSpaceLabel volumeSpaceLabel;
 
-    /** Thread which auto updates volume info */
-    private Thread autoUpdateThread;
-
-    /** Number of volume info strings that can be temporarily cached */
-    private final static int VOLUME_INFO_CACHE_CAPACITY = 50;
-
-    /** Number of milliseconds before cached volume info strings expire */
-    private final static int VOLUME_INFO_TIME_TO_LIVE = 60000;
+    /** Path of the volume whose info is displayed */
+    private String volumePath;
 
-    /** Number of milliseconds between each volume info update by auto-update thread */
-    private final static int AUTO_UPDATE_PERIOD = 6000;
-
-    /** Caches volume info strings (free/total space) for a while, since this information is expensive to retrieve
-     * (I/O bound). This map uses folders' volume path as its key. */
-    private static LRUCache<String, Long[]> volumeInfoCache = new FastLRUCache<String, Long[]>(VOLUME_INFO_CACHE_CAPACITY);
+    /** True while the MainFrame is active in the foreground */
+    private boolean frameActive;
 	
     /** Icon that is displayed when folder is changing */
     public final static String WAITING_ICON = "waiting.png";
@@ -192,7 +175,6 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
         add(volumeSpaceLabel);
 
         // Show/hide this status bar based on user preferences
-        // Note: setVisible has to be called even with true for the auto-update thread to be initialized
         setVisible(MuConfigurations.getPreferences().getVariable(MuPreference.STATUS_BAR_VISIBLE, MuPreferences.DEFAULT_STATUS_BAR_VISIBLE));
         
         // Catch location events to update status bar info when folder is changed
@@ -219,6 +201,29 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
         // and update status info
         addComponentListener(this);
 
+        // Volume info is refreshed periodically only while the MainFrame is active in the foreground
+        mainFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowActivated(WindowEvent e) {
+                setFrameActive(true);
+            }
+
+            @Override
+            public void windowDeactivated(WindowEvent e) {
+                setFrameActive(false);
+            }
+
+            @Override
+            public void windowIconified(WindowEvent e) {
+                setFrameActive(false);
+            }
+
+            @Override
+            public void windowClosed(WindowEvent e) {
+                VolumeSpaceMonitor.unwatch(StatusBar.this);
+            }
+        });
+
         // Initialises theme.
         selectedFilesLabel.setFont(ThemeManager.getCurrentFont(Theme.STATUS_BAR_FONT));
         selectedFilesLabel.setForeground(ThemeManager.getCurrentColor(Theme.STATUS_BAR_FOREGROUND_COLOR));
@@ -300,60 +305,25 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
         if(!isVisible())
             return;
 
-        final AbstractFile currentFolder = mainFrame.getActivePanel().getCurrentFolder();
-        // Resolve the current folder's volume and use its path as a key for the volume info cache
-        final String volumePath = currentFolder.exists() ?
+        AbstractFile currentFolder = mainFrame.getActivePanel().getCurrentFolder();
+        // Resolve the current folder's volume and use its path as a key for the volume info
+        volumePath = currentFolder.exists() ?
         		currentFolder.getVolume().getAbsolutePath(true) : "";
 
-        Long cachedVolumeInfo[] = volumeInfoCache.get(volumePath);
-        if(cachedVolumeInfo!=null) {
-            LOGGER.debug("Cache hit!");
-            volumeSpaceLabel.setVolumeSpace(cachedVolumeInfo[0], cachedVolumeInfo[1]);
-        }
-        else {
-            // Retrieves free and total volume space.
-            // Perform volume info retrieval in a separate thread as this method may be called
-            // by the event thread and it can take a while, we want to return as soon as possible
-            new Thread("StatusBar.updateVolumeInfo") {
-                @Override
-                public void run() {
-                    // Free space on current volume, -1 if this information is not available 
-                    long volumeFree;
-                    // Total space on current volume, -1 if this information is not available 
-                    long volumeTotal;
-
-                    // Folder is a local file and Java version is 1.5: call getVolumeInfo() instead of
-                    // separate calls to getFreeSpace() and getTotalSpace() as it is twice as fast.
-                    if(currentFolder instanceof LocalFile && JavaVersion.JAVA_1_5.isCurrentOrLower()) {
-                        try {
-                            long volumeInfo[] = ((LocalFile)currentFolder).getVolumeInfo();
-                            volumeTotal = volumeInfo[0];
-                            volumeFree = volumeInfo[1];
-                        }
-                        catch(IOException e) {
-                            volumeTotal = -1;
-                            volumeFree = -1;
-                        }
-                    }
-                    // Java 1.6 and up or any other file type
-                    else {
-                        try { volumeFree = currentFolder.getFreeSpace(); }
-                        catch(IOException e) { volumeFree = -1; }
-
-                        try { volumeTotal = currentFolder.getTotalSpace(); }
-                        catch(IOException e) { volumeTotal = -1; }
-                    }
-
-// For testing the free space indicator 
-//volumeFree = (long)(volumeTotal * Math.random());
-                    
-                    volumeSpaceLabel.setVolumeSpace(volumeTotal, volumeFree);
-
-                    LOGGER.debug("Adding to cache");
-                    volumeInfoCache.add(volumePath, new Long[]{volumeTotal, volumeFree}, VOLUME_INFO_TIME_TO_LIVE);
-                }
-            }.start();
-        }
+        // Volume info is retrieved in a separate thread as this method may be called by the event thread and it can
+        // take a while, the label is updated once it is available
+        VolumeSpaceMonitor.watch(this, volumePath, currentFolder, frameActive);
+    }
+
+
+    /**
+     * Sets whether the MainFrame is active in the foreground, and updates volume info accordingly.
+     *
+     * @param frameActive true if the MainFrame is active in the foreground
+     */
+    private void setFrameActive(boolean frameActive) {
+        this.frameActive = frameActive;
+        updateVolumeInfo();
     }
 
 
@@ -396,63 +366,33 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
 	
 
     /**
-     * Starts a volume info auto-update thread, only if there isn't already one running.
-     */    
-    private synchronized void startAutoUpdate() {
-        if(autoUpdateThread==null) {
-            // Start volume info auto-update thread
-            autoUpdateThread = new Thread(this, "StatusBar autoUpdateThread");
-            // Set the thread as a daemon thread
-            autoUpdateThread.setDaemon(true);
-            autoUpdateThread.start();
-        }
-    }
-
-    
-    /**
-     * Overrides JComponent.setVisible(boolean) to start/stop volume info auto-update thread.
+     * Overrides JComponent.setVisible(boolean) to start/stop watching volume info.
      */
     @Override
     public void setVisible(boolean visible) {
         if(visible) {
-            // Start auto-update thread
-            startAutoUpdate();
             super.setVisible(true);
             // Update status bar info
             updateStatusInfo();
         }
         else {
-            // Stop auto-update thread
-            this.autoUpdateThread = null;
+            // Stop watching volume info
+            VolumeSpaceMonitor.unwatch(this);
             super.setVisible(false);
         }
     }
     
     
-    //////////////////////
-    // Runnable methods //
-    //////////////////////
+    ////////////////////////////////////////
+    // VolumeSpaceListener implementation //
+    ////////////////////////////////////////
 
-    /**
-     * Periodically updates volume info (free / total space).
-     */
-    public void run() {
-        do {
-            // Sleep for a while
-            try { Thread.sleep(AUTO_UPDATE_PERIOD); }
-            catch (InterruptedException e) {}
-            
-            // Update volume info if:
-            // - status bar is visible
-            // - MainFrame isn't changing folders
-            // - MainFrame is active and in the foreground
-            // Volume info update will potentially hit the LRU cache and not actually update volume info
-            if(isVisible() && !mainFrame.getNoEventsMode() && mainFrame.isForegroundActive())
-                updateVolumeInfo();
-        }
-        while(autoUpdateThread!=null && mainFrame.isVisible());   // Stop when MainFrame is disposed
+    public void volumeSpaceChanged(String volumePath, long totalSpace, long freeSpace) {
+        // Ignore volumes that were displayed before the current one
+        if(volumePath.equals(this.volumePath))
+            volumeSpaceLabel.setVolumeSpace(totalSpace, freeSpace);
     }
-    
+
 
     ////////////////////////////////////////
     // ActivePanelListener implementation //
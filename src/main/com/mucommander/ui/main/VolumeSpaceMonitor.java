@@ -0,0 +1,317 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.ui.main;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.runtime.JavaVersion;
+
+/**
+ * Retrieves the free and total space of volumes on behalf of all {@link StatusBar} instances, and keeps it up to date
+ * while it is displayed.
+ *
+ * <p>Each volume is queried by a single background thread, no matter how many windows display it, and the result is
+ * pushed to every {@link VolumeSpaceListener listener} watching the volume. A volume is refreshed periodically only if
+ * at least one of its listeners is <i>active</i>, i.e. belongs to the window in the foreground: the volumes of inactive
+ * or minimized windows are only queried if they are not known yet, and otherwise receive the updates triggered by
+ * active windows.</p>
+ *
+ * <p>The refresh period of a volume depends on how fast its free space is changing: it shortens when the free space
+ * changes quickly, so that the displayed value remains accurate, and grows while the free space remains the same.</p>
+ */
+class VolumeSpaceMonitor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(VolumeSpaceMonitor.class);
+
+    /** Number of threads volumes are queried by */
+    private final static int NB_THREADS = 2;
+    /** Refresh period of a volume whose free space has not been seen changing yet, in milliseconds */
+    private final static int DEFAULT_PERIOD = 6000;
+    /** Minimum refresh period of a volume, in milliseconds */
+    private final static int MIN_PERIOD = 2000;
+    /** Maximum refresh period of a volume, in milliseconds */
+    private final static int MAX_PERIOD = 60000;
+    /** Number of milliseconds after which the space of a volume that is not refreshed periodically is queried again */
+    private final static int TIME_TO_LIVE = 60000;
+    /** Minimum change of free space the refresh period is adjusted for, in bytes */
+    private final static long MIN_SIGNIFICANT_CHANGE = 1024*1024;
+
+    /** Known volumes, keyed by path */
+    private static Map<String, Volume> volumes = new HashMap<String, Volume>();
+    /** Volume watched by each listener */
+    private static WeakHashMap<VolumeSpaceListener, Volume> watchedVolumes = new WeakHashMap<VolumeSpaceListener, Volume>();
+    /** Threads volumes are queried by, created when first needed */
+    private static ScheduledExecutorService executor;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private VolumeSpaceMonitor() {}
+
+    /**
+     * Makes the given listener watch the volume of the given folder, in place of the volume it was watching before.
+     * The listener is notified right away if the space of the volume is already known, and every time it is updated.
+     *
+     * @param listener the listener to notify
+     * @param volumePath path of the volume to watch
+     * @param folder a folder on the volume, used to query its space
+     * @param active <code>true</code> if the volume must be refreshed periodically for the listener
+     */
+    static synchronized void watch(VolumeSpaceListener listener, String volumePath, AbstractFile folder, boolean active) {
+        Volume volume = volumes.get(volumePath);
+        if(volume==null) {
+            purge();
+            volume = new Volume(volumePath);
+            volumes.put(volumePath, volume);
+        }
+        volume.folder = folder;
+
+        Volume previousVolume = watchedVolumes.put(listener, volume);
+        if(previousVolume!=null && previousVolume!=volume)
+            previousVolume.listeners.remove(listener);
+        volume.listeners.put(listener, active);
+
+        if(volume.isKnown())
+            notifyListener(listener, volume, volume.totalSpace, volume.freeSpace);
+
+        schedule(volume);
+    }
+
+    /**
+     * Stops notifying the given listener.
+     *
+     * @param listener the listener that is not interested in volume space anymore
+     */
+    static synchronized void unwatch(VolumeSpaceListener listener) {
+        Volume volume = watchedVolumes.remove(listener);
+        if(volume!=null) {
+            volume.listeners.remove(listener);
+            schedule(volume);
+        }
+    }
+
+    /**
+     * Schedules the next query of the given volume: at the end of its refresh period if it has an active listener,
+     * right away if its space is not known or too old and it has inactive listeners only. Nothing is scheduled if the
+     * volume has no listener.
+     */
+    private static void schedule(final Volume volume) {
+        // The volume is rescheduled once the query is over
+        if(volume.querying)
+            return;
+
+        if(volume.refresh!=null) {
+            volume.refresh.cancel(false);
+            volume.refresh = null;
+        }
+
+        if(volume.listeners.isEmpty())
+            return;
+
+        long now = System.currentTimeMillis();
+        long delay;
+        if(volume.hasActiveListener())
+            delay = volume.isKnown() ? volume.lastUpdate + volume.period - now : 0;
+        // Volumes without active listeners are only queried if their space is not known or too old
+        else if(!volume.isKnown() || volume.lastUpdate + TIME_TO_LIVE <= now)
+            delay = 0;
+        else
+            return;
+
+        if(executor==null) {
+            executor = Executors.newScheduledThreadPool(NB_THREADS, new ThreadFactory() {
+                private int threadNumber;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Volume space monitor-"+(++threadNumber));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        volume.refresh = executor.schedule(new Runnable() {
+            public void run() {
+                query(volume);
+            }
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queries the space of the given volume, notifies its listeners and schedules its next refresh.
+     */
+    private static void query(Volume volume) {
+        AbstractFile folder;
+        synchronized(VolumeSpaceMonitor.class) {
+            volume.refresh = null;
+            volume.querying = true;
+            folder = volume.folder;
+        }
+
+        long space[] = getVolumeSpace(folder);
+
+        synchronized(VolumeSpaceMonitor.class) {
+            volume.update(space[0], space[1], System.currentTimeMillis());
+            volume.querying = false;
+
+            for(VolumeSpaceListener listener : volume.listeners.keySet())
+                notifyListener(listener, volume, space[0], space[1]);
+
+            schedule(volume);
+        }
+    }
+
+    /**
+     * Returns the total and free space of the volume the given folder is on, <code>-1</code> for values that are not
+     * available.
+     */
+    private static long[] getVolumeSpace(AbstractFile folder) {
+        // Total space on the volume, -1 if this information is not available
+        long volumeTotal;
+        // Free space on the volume, -1 if this information is not available
+        long volumeFree;
+
+        // Folder is a local file and Java version is 1.5: call getVolumeInfo() instead of
+        // separate calls to getFreeSpace() and getTotalSpace() as it is twice as fast.
+        if(folder instanceof LocalFile && JavaVersion.JAVA_1_5.isCurrentOrLower()) {
+            try {
+                long volumeInfo[] = ((LocalFile)folder).getVolumeInfo();
+                volumeTotal = volumeInfo[0];
+                volumeFree = volumeInfo[1];
+            }
+            catch(IOException e) {
+                volumeTotal = -1;
+                volumeFree = -1;
+            }
+        }
+        // Java 1.6 and up or any other file type
+        else {
+            try { volumeFree = folder.getFreeSpace(); }
+            catch(IOException e) { volumeFree = -1; }
+
+            try { volumeTotal = folder.getTotalSpace(); }
+            catch(IOException e) { volumeTotal = -1; }
+        }
+
+        return new long[]{volumeTotal, volumeFree};
+    }
+
+    /**
+     * Notifies the given listener of the space of the given volume, in the event dispatch thread.
+     */
+    private static void notifyListener(final VolumeSpaceListener listener, final Volume volume, final long totalSpace, final long freeSpace) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                listener.volumeSpaceChanged(volume.path, totalSpace, freeSpace);
+            }
+        });
+    }
+
+    /**
+     * Removes the volumes that are not watched anymore and whose space is too old to be used.
+     */
+    private static void purge() {
+        long now = System.currentTimeMillis();
+        Iterator<Volume> iterator = volumes.values().iterator();
+        while(iterator.hasNext()) {
+            Volume volume = iterator.next();
+            if(volume.listeners.isEmpty() && !volume.querying && volume.lastUpdate + TIME_TO_LIVE <= now)
+                iterator.remove();
+        }
+    }
+
+
+    /**
+     * A volume and the listeners watching it.
+     */
+    private static class Volume {
+        /** Path of the volume */
+        private String path;
+        /** Folder on the volume, used to query its space */
+        private AbstractFile folder;
+        /** Listeners watching the volume, mapped to whether they are active */
+        private WeakHashMap<VolumeSpaceListener, Boolean> listeners = new WeakHashMap<VolumeSpaceListener, Boolean>();
+
+        /** Total space of the volume, -1 if not available */
+        private long totalSpace = -1;
+        /** Free space of the volume, -1 if not available */
+        private long freeSpace = -1;
+        /** Time the space of the volume was last retrieved at, 0 if it hasn't been yet */
+        private long lastUpdate;
+        /** Current refresh period, in milliseconds */
+        private long period = DEFAULT_PERIOD;
+
+        /** Pending query, <code>null</code> if there is none */
+        private ScheduledFuture<?> refresh;
+        /** True while the volume is being queried */
+        private boolean querying;
+
+        private Volume(String path) {
+            this.path = path;
+        }
+
+        private boolean isKnown() {
+            return lastUpdate!=0;
+        }
+
+        private boolean hasActiveListener() {
+            return listeners.containsValue(Boolean.TRUE);
+        }
+
+        /**
+         * Records the given space and adjusts the refresh period to the rate at which free space changed since the
+         * last update: the period is the time the free space takes to change by a significant amount at that rate.
+         */
+        private void update(long totalSpace, long freeSpace, long now) {
+            if(isKnown() && freeSpace!=-1 && this.freeSpace!=-1 && now>lastUpdate) {
+                long change = Math.abs(freeSpace - this.freeSpace);
+                if(change==0) {
+                    period = Math.min(period*2, MAX_PERIOD);
+                }
+                else {
+                    long significantChange = Math.max(MIN_SIGNIFICANT_CHANGE, totalSpace/1000);
+                    double timeToChange = (double)(now - lastUpdate) * significantChange / change;
+                    period = (long)Math.max(MIN_PERIOD, Math.min(MAX_PERIOD, timeToChange));
+                }
+
+                LOGGER.trace("Refresh period of "+path+" is now "+period+"ms");
+            }
+
+            this.totalSpace = totalSpace;
+            this.freeSpace = freeSpace;
+            this.lastUpdate = now;
+        }
+    }
+}
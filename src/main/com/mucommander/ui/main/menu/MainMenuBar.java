@@ -124,6 +124,7 @@ import com.mucommander.ui.action.impl.SplitHorizontallyAction;
 import com.mucommander.ui.action.impl.SplitVerticallyAction;
 import com.mucommander.ui.action.impl.SwapFoldersAction;
 import com.mucommander.ui.action.impl.ToggleAutoSizeAction;
+import com.mucommander.ui.action.impl.ToggleBranchViewAction;
 import com.mucommander.ui.action.impl.ToggleCommandBarAction;
 import com.mucommander.ui.action.impl.ToggleHiddenFilesAction;
 import com.mucommander.ui.action.impl.ToggleShowFoldersFirstAction;
@@ -171,7 +172,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
     private JCheckBoxMenuItem toggleShowFoldersFirstItem;
     private JCheckBoxMenuItem toggleShowHiddenFilesItem;
     private JCheckBoxMenuItem toggleTreeItem;
-    /* TODO branch private JCheckBoxMenuItem toggleBranchView; */
+    private JCheckBoxMenuItem toggleBranchViewItem;
 
 
     // Go menu
@@ -295,7 +296,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
         toggleShowFoldersFirstItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, ActionManager.getActionInstance(ToggleShowFoldersFirstAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
         toggleShowHiddenFilesItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, ActionManager.getActionInstance(ToggleHiddenFilesAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
         toggleTreeItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, ActionManager.getActionInstance(ToggleTreeAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
-        /* TODO branch toggleBranchView = MenuToolkit.addCheckBoxMenuItem(viewMenu, ActionManager.getActionInstance(ToggleBranchViewAction.class, mainFrame), menuItemMnemonicHelper); */
+        toggleBranchViewItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, ActionManager.getActionInstance(ToggleBranchViewAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
 
         viewMenu.add(new JSeparator());
         ButtonGroup buttonGroup = new ButtonGroup();
@@ -488,7 +489,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
             toggleShowHiddenFilesItem.setSelected(MuConfigurations.getPreferences().getVariable(MuPreference.SHOW_HIDDEN_FILES, MuPreferences.DEFAULT_SHOW_HIDDEN_FILES));
             toggleTreeItem.setSelected(activeTable.getFolderPanel().isTreeVisible());
             toggleToggleAutoSizeItem.setSelected(mainFrame.isAutoSizeColumnsEnabled());
-            /* TODO branch toggleBranchView.setSelected(activeTable.getFolderPanel().isBranchView()); */ 
+            toggleBranchViewItem.setSelected(activeTable.getFolderPanel().isBranchView());
         }
         else if(source==columnsMenu) {
             // Update the selected and enabled state of each column menu item.
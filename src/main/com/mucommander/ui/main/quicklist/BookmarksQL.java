@@ -51,7 +51,7 @@ public class BookmarksQL extends QuickListWithIcons<Bookmark> implements Bookmar
 
 	@Override
     protected void acceptListItem(Bookmark item) {
-		folderPanel.tryChangeCurrentFolder(item.getLocation()); //change with text validate
+		folderPanel.tryChangeCurrentFolderCached(item.getLocation()); //change with text validate
 	}
 
 	@Override
@@ -0,0 +1,159 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.table;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.util.Hashtable;
+
+/**
+ * Fits the text of {@link FileTable} cells into their column, for {@link FileTableCellRenderer}. Text that is wider
+ * than its column is truncated from the center, equally to the left and right sides, and an ellipsis ('...') is
+ * inserted where characters have been removed. This allows both the start and end of filenames to be visible.
+ *
+ * <p>The number of characters to keep is found with a binary search over the cumulative advances of the text's
+ * characters, as returned by the label's <code>FontMetrics</code>, rather than by laying out the label's text after
+ * each removed character. The fitted text is cached for each cell, along with the column width and font it was
+ * computed for: the cache must be {@link #invalidate() invalidated} when the listing, the column widths or the
+ * font change.</p>
+ */
+class CellTextFitter {
+
+    /** String inserted where characters have been removed */
+    final static String ELLIPSIS = "...";
+
+    /** Maximum number of cells whose fitted text is cached, the cache is cleared when it is reached */
+    private final static int MAX_CACHED_CELLS = 4096;
+
+    /** Number of columns, used to compute the cache keys */
+    private final static int NB_COLUMNS = Column.values().length;
+
+    /** Fitted texts, keyed by cell */
+    private Hashtable<Integer, FittedText> cache = new Hashtable<Integer, FittedText>();
+
+    /**
+     * Returns the text to display in the given cell so that it fits in the given column width, using the given label
+     * to render it. The returned string is the given text instance if the text fits as is.
+     *
+     * @param label the label the cell is rendered with, its font and insets are used to measure the text
+     * @param text the cell's text
+     * @param row the cell's row
+     * @param column the cell's column
+     * @param columnWidth the width of the column, in pixels
+     * @return the text to display in the cell
+     */
+    String fitText(CellLabel label, String text, int row, Column column, int columnWidth) {
+        Font font = label.getFont();
+        Integer key = row*NB_COLUMNS + column.ordinal();
+
+        FittedText fittedText = cache.get(key);
+        if(fittedText!=null && fittedText.columnWidth==columnWidth && fittedText.font.equals(font) && fittedText.text.equals(text))
+            return fittedText.fittedText;
+
+        fittedText = new FittedText(text, columnWidth, font, computeFittedText(label, text, columnWidth));
+        if(cache.size()>=MAX_CACHED_CELLS)
+            cache.clear();
+        cache.put(key, fittedText);
+
+        return fittedText.fittedText;
+    }
+
+    /**
+     * Discards the cached fitted texts. This method should be called when the listing, the column widths or the font
+     * change.
+     */
+    void invalidate() {
+        cache.clear();
+    }
+
+
+    ////////////////////
+    // Helper methods //
+    ////////////////////
+
+    /**
+     * Truncates the given text from the center so that it fits in the given column width.
+     */
+    private static String computeFittedText(CellLabel label, String text, int columnWidth) {
+        Insets insets = label.getInsets();
+        int availableWidth = columnWidth - insets.left - insets.right;
+        FontMetrics fm = label.getFontMetrics(label.getFont());
+
+        int length = text.length();
+        if(length<2 || fm.stringWidth(text)<=availableWidth)
+            return text;
+
+        // advances[i] is the width of the first i characters
+        int advances[] = new int[length+1];
+        for(int i=0; i<length; i++)
+            advances[i+1] = advances[i] + fm.charWidth(text.charAt(i));
+
+        // Find the largest number of characters that fit along with the ellipsis, keeping at least one
+        int ellipsisWidth = fm.stringWidth(ELLIPSIS);
+        int nbKept = 1;
+        int low = 2;
+        int high = length-1;
+        while(low<=high) {
+            int mid = (low+high) >>> 1;
+            int nbLeft = (mid+1)/2;
+            int nbRight = mid/2;
+            if(advances[nbLeft] + ellipsisWidth + advances[length]-advances[length-nbRight] <= availableWidth) {
+                nbKept = mid;
+                low = mid+1;
+            }
+            else {
+                high = mid-1;
+            }
+        }
+
+        // Character advances don't account for kerning, make sure the text does fit
+        String fittedText = truncate(text, nbKept);
+        while(nbKept>1 && fm.stringWidth(fittedText)>availableWidth)
+            fittedText = truncate(text, --nbKept);
+
+        return fittedText;
+    }
+
+    /**
+     * Keeps the given number of characters of the given text, the left side getting the extra character if the
+     * number is odd, and inserts an ellipsis between them.
+     */
+    private static String truncate(String text, int nbKept) {
+        int length = text.length();
+        return text.substring(0, (nbKept+1)/2) + ELLIPSIS + text.substring(length-nbKept/2, length);
+    }
+
+    /**
+     * The fitted text of a cell, and the values it was computed from.
+     */
+    private static class FittedText {
+        private final String text;
+        private final int columnWidth;
+        private final Font font;
+        private final String fittedText;
+
+        private FittedText(String text, int columnWidth, Font font, String fittedText) {
+            this.text = text;
+            this.columnWidth = columnWidth;
+            this.font = font;
+            this.fittedText = fittedText;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.util.Iterator;
+import java.util.List;
 import java.util.WeakHashMap;
 
 import javax.swing.DefaultCellEditor;
@@ -47,6 +48,7 @@ import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -721,6 +723,28 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             setRowMarked(row, marked, repaint);
     }
 
+    /**
+     * Sets the given files as marked/unmarked in the table model, repaints the table and notifies registered
+     * {@link com.mucommander.ui.event.TableSelectionListener} that currently marked files have changed on this
+     * FileTable. Unlike calling {@link #setFileMarked(AbstractFile, boolean, boolean)} for each file, the table is
+     * repainted and listeners are notified only once. Files that are not in the current folder are ignored.
+     *
+     * @param files files to mark/unmark
+     * @param marked true to mark the files, false to unmark them
+     */
+    public void setFilesMarked(List<AbstractFile> files, boolean marked) {
+        for(AbstractFile file : files) {
+            int row = tableModel.getFileRow(file);
+            if(row!=-1 && !isParentFolder(row))
+                tableModel.setRowMarked(row, marked);
+        }
+
+        repaint();
+
+        // Notify registered listeners that currently marked files have changed on this FileTable
+        fireMarkedFilesChangedEvent();
+    }
+
 
     /**
      * Marks or unmarks the current selected file (current row) and advance current row to the next one, 
@@ -1043,6 +1067,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
         // Sort table, doesn't affect marked files
         tableModel.sortRows();
+        cellRenderer.invalidateFittedTexts();
 
         // Restore selected file
         selectFile(selectedFile);
@@ -1203,6 +1228,20 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     }
 
 
+    /**
+     * Overrides JTable's columnMarginChanged() method to discard the texts fitted into the columns, which have been
+     * resized.
+     */
+    @Override
+    public void columnMarginChanged(ChangeEvent e) {
+        // Called by JTable's constructor, before the renderer is created
+        if(cellRenderer!=null)
+            cellRenderer.invalidateFittedTexts();
+
+        super.columnMarginChanged(e);
+    }
+
+
     /**
      * Method overridden to return a custom TableCellRenderer.
      */
@@ -1876,7 +1915,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         public void run() {
             try {
                 // Set the new current folder.
-                tableModel.setCurrentFolder(folder, children);
+                tableModel.setCurrentFolder(folder, children, folderPanel.isBranchView());
 
                 // Update the visibility state of conditional columns
                 FileTableColumnModel columnModel = getFileTableColumnModel();
@@ -1896,6 +1935,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 // Sort the new folder using the current sort criteria, ascending/descending order and
                 // 'show folders first' values.
                 tableModel.sortRows();
+                cellRenderer.invalidateFittedTexts();
 
                 // Computes the index of the new row selection.
                 int rowToSelect;
@@ -69,6 +69,9 @@ public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
     /** Custom JLabel that render specific column cells */
     private CellLabel[] cellLabels = new CellLabel[Column.values().length];
 
+    /** Fits text that is wider than its column */
+    private CellTextFitter textFitter = new CellTextFitter();
+
 
     public FileTableCellRenderer(FileTable table) {
     	this.table = table;
@@ -103,6 +106,15 @@ public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
     }
 
 	
+    /**
+     * Discards the texts fitted into their column. This method must be called when the table's listing or column
+     * widths change.
+     */
+    void invalidateFittedTexts() {
+        textFitter.invalidate();
+    }
+
+
     /**
      * Sets CellLabels' font to the current one.
      */
@@ -208,35 +220,16 @@ public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
             else
                 label.setForeground(ThemeCache.unmatchedForeground);
 
-            // Set the label's text, before calculating it width
-            label.setText(text);
-
             // If label's width is larger than the column width:
             // - truncate the text from the center and equally to the left and right sides, adding an ellipsis ('...')
             // where characters have been removed. This allows both the start and end of filename to be visible.
             // - set a tooltip text that will display the whole text when mouse is over the label
-            if (table.getColumnModel().getColumn(columnIndex).getWidth() < label.getPreferredSize().getWidth()) {
-                String leftText = text.substring(0, text.length()/2);
-                String rightText = text.substring(text.length()/2, text.length());
-
-                while(table.getColumnModel().getColumn(columnIndex).getWidth() < label.getPreferredSize().getWidth()
-                   && leftText.length()>0 && rightText.length()>0) {    // Prevents against going out of bounds
-
-                    if(leftText.length()>rightText.length())
-                        leftText = leftText.substring(0, leftText.length()-1);
-                    else
-                        rightText = rightText.substring(1, rightText.length());
+            String fittedText = textFitter.fitText(label, text, rowIndex, column, table.getColumnModel().getColumn(columnIndex).getWidth());
+            label.setText(fittedText);
 
-                    label.setText(leftText+"..."+rightText);
-                }
-
-                // Set the toop
-                label.setToolTipText(text);
-            }
             // Have to set it to null otherwise the defaultRender sets the tooltip text to the last one
             // specified
-            else
-                label.setToolTipText(null);
+            label.setToolTipText(fittedText==text?null:text);
         }
 
         // Set background color depending on whether the row is selected or not, and whether the table has focus or not
@@ -276,6 +269,7 @@ public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
     public void fontChanged(FontChangedEvent event) {
         if(event.getFontId() == Theme.FILE_TABLE_FONT) {
             setCellLabelsFont(ThemeCache.tableFont);
+            textFitter.invalidate();
         }
     }
 }
@@ -59,6 +59,9 @@ public class FileTableModel extends AbstractTableModel {
     /** Cell values cache */
     private Object cellValuesCache[][];
 
+    /** In branch view, length of the current folder's path that is left out of the displayed names, -1 otherwise */
+    private int branchPathLength = -1;
+
     /** Marked rows array */
     private boolean rowMarked[];
 	
@@ -178,9 +181,22 @@ public class FileTableModel extends AbstractTableModel {
      * @param children the current folder's children
      */
     synchronized void setCurrentFolder(AbstractFile folder, AbstractFile children[]) {
+        setCurrentFolder(folder, children, false);
+    }
+
+    /**
+     * Sets the current folder and its children. In branch view, the children are the files of the current folder and
+     * of all its subfolders, and their path relative to the current folder is displayed in the name column.
+     *
+     * @param folder the current folder
+     * @param children the current folder's children, or all the files of its branch
+     * @param branchView <code>true</code> if the children are the files of the current folder's branch
+     */
+    synchronized void setCurrentFolder(AbstractFile folder, AbstractFile children[], boolean branchView) {
         int nbFiles = children.length;
 
         this.currentFolder = (folder instanceof CachedFile)?folder:new CachedFile(folder, true);
+        this.branchPathLength = branchView?currentFolder.getAbsolutePath(true).length():-1;
 
         this.parent = currentFolder.getParent();    // Note: the returned parent is a CachedFile instance
         if(parent!=null) {
@@ -193,7 +209,8 @@ public class FileTableModel extends AbstractTableModel {
         this.fileArrayIndex = new int[nbFiles];
         AbstractFile file;
         for(int i=0; i<nbFiles; i++) {
-            file = new CachedFile(children[i], true);
+            // Children that were displayed before are already CachedFile instances
+            file = (children[i] instanceof CachedFile)?children[i]:new CachedFile(children[i], true);
 
             // Pre-fetch the attributes that are used by the table renderer and some actions.
             prefetchCachedFileAttributes(file);
@@ -261,7 +278,7 @@ public class FileTableModel extends AbstractTableModel {
         for(int i=parent==null?0:1; i<len; i++) {
             file = getCachedFileAtRow(i);
             int cellIndex = fileArrayIndex[fileIndex]+(parent==null?0:1);
-            cellValuesCache[cellIndex][Column.NAME.ordinal()-1] = file.getName();
+            cellValuesCache[cellIndex][Column.NAME.ordinal()-1] = getDisplayedName(file);
             cellValuesCache[cellIndex][Column.SIZE.ordinal()-1] = file.isDirectory()?DIRECTORY_SIZE_STRING:SizeFormat.format(file.getSize(), sizeFormat);
             cellValuesCache[cellIndex][Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(file.getDate()));
             cellValuesCache[cellIndex][Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
@@ -273,6 +290,28 @@ public class FileTableModel extends AbstractTableModel {
     }
 	
 	
+    /**
+     * Returns the name displayed for the given file: its path relative to the current folder in branch view, its
+     * name otherwise.
+     */
+    private String getDisplayedName(AbstractFile file) {
+        if(branchPathLength==-1)
+            return file.getName();
+
+        String path = file.getAbsolutePath();
+        return path.length()>branchPathLength?path.substring(branchPathLength):file.getName();
+    }
+
+    /**
+     * Returns <code>true</code> if the current folder is displayed in branch view, i.e. if its children are the files
+     * of the current folder and of all its subfolders.
+     *
+     * @return <code>true</code> if the current folder is displayed in branch view
+     */
+    public synchronized boolean isBranchView() {
+        return branchPathLength!=-1;
+    }
+
     /**
      * Returns a CachedFile instance of the file located at the given row index.
      * This method can return the parent folder file ('..') if a parent exists and rowIndex is 0.
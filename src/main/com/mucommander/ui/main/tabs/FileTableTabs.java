@@ -18,12 +18,18 @@
 
 package com.mucommander.ui.main.tabs;
 
+import javax.swing.SwingUtilities;
+
+import com.mucommander.cache.ConcurrentLRUCache;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.ui.event.LocationEvent;
 import com.mucommander.ui.event.LocationListener;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.table.FileTable;
+import com.mucommander.ui.main.table.FileTableModel;
 import com.mucommander.ui.tabs.HideableTabbedPane;
 import com.mucommander.ui.tabs.TabFactory;
 import com.mucommander.ui.tabs.TabUpdater;
@@ -36,6 +42,17 @@ import com.mucommander.utils.Callback;
 */
 public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements LocationListener {
 
+	/** Maximum number of files retained by the listings of all the tabs that are not displayed */
+	private final static int MAX_LISTED_FILES = 50000;
+
+	/** Listings of the tabs that are not displayed, shared by all windows and weighed by their number of files */
+	private final static ConcurrentLRUCache<TabKey, TabListing> listings = new ConcurrentLRUCache<TabKey, TabListing>(MAX_LISTED_FILES,
+			new ConcurrentLRUCache.Weigher<TabKey, TabListing>() {
+				public int weigh(TabKey key, TabListing listing) {
+					return listing.getNbChildren()+1;
+				}
+			});
+
 	/** FolderPanel containing those tabs */
 	private FolderPanel folderPanel;
 
@@ -45,6 +62,9 @@ public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements L
 	/** Factory of instances of FileTableTab */
 	private TabFactory<FileTableTab, FileTableTab> clonedTabsFactory;
 
+	/** The tab whose location is displayed by the folder panel */
+	private FileTableTab displayedTab;
+
 	public FileTableTabs(MainFrame mainFrame, FolderPanel folderPanel, ConfFileTableTab[] initialTabs) {
 		super(new FileTableTabsWithoutHeadersViewerFactory(folderPanel), new FileTableTabsWithHeadersViewerFactory(mainFrame, folderPanel));
 
@@ -70,12 +90,114 @@ public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements L
 
 	@Override
 	protected void show(final int tabIndex) {
-		folderPanel.tryChangeCurrentFolderInternal(getTab(tabIndex).getLocation(), new Callback() {
+		final FileTableTab tab = getTab(tabIndex);
+		AbstractFile currentFolder = folderPanel.getCurrentFolder();
+
+		// The tab is already displayed: this happens when the selection is notified more than once
+		if (tab == displayedTab && currentFolder != null && currentFolder.getURL().equals(tab.getLocation())) {
+			fireActiveTabChanged();
+			return;
+		}
+
+		saveListing();
+		displayedTab = tab;
+		// Tabs are not displayed in branch view
+		folderPanel.setBranchView(false);
+
+		final TabListing listing = listings.get(new TabKey(tab));
+		if (listing == null || !listing.getFolder().getURL().equals(tab.getLocation())) {
+			folderPanel.tryChangeCurrentFolderInternal(tab.getLocation(), new Callback() {
+				public void call() {
+					fireActiveTabChanged();
+				}
+			});
+			return;
+		}
+
+		// Display the folder as it was listed, then make sure it hasn't changed in the meantime
+		folderPanel.tryChangeCurrentFolderInternal(listing.getFolder(), listing.getChildren(), listing.getSelectedFile(), new Callback() {
 			public void call() {
 				fireActiveTabChanged();
+
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						restoreMarkedFiles(listing);
+					}
+				});
+
+				revalidate(listing);
 			}
 		});
-	};
+	}
+
+	/**
+	 * Retains the listing of the displayed tab, so that it can be displayed again without listing its folder.
+	 */
+	private void saveListing() {
+		if (displayedTab == null)
+			return;
+
+		TabKey key = new TabKey(displayedTab);
+		AbstractFile currentFolder = folderPanel.getCurrentFolder();
+		// The tab has been closed, or the panel doesn't display its location (anymore), or not its own files
+		if (currentFolder == null || !currentFolder.getURL().equals(displayedTab.getLocation()) || !isOpen(displayedTab)
+				|| folderPanel.isBranchView()) {
+			listings.remove(key);
+			return;
+		}
+
+		FileTable fileTable = folderPanel.getFileTable();
+		FileTableModel model = fileTable.getFileTableModel();
+		// The date of the current folder is cached when its children are listed
+		listings.add(key, new TabListing(currentFolder, model.getCachedFiles(), model.getCurrentFolder().getDate(),
+				fileTable.getSelectedFile(), model.getMarkedFiles()));
+	}
+
+	/**
+	 * Marks the files that were marked when the given listing was saved, provided that the listing is still displayed.
+	 */
+	private void restoreMarkedFiles(TabListing listing) {
+		if (folderPanel.getCurrentFolder() != listing.getFolder())
+			return;
+
+		FileTable fileTable = folderPanel.getFileTable();
+		FileTableModel model = fileTable.getFileTableModel();
+		FileSet markedFiles = listing.getMarkedFiles();
+		// Marked files of the previous tab are kept if it displayed the same folder
+		if (markedFiles.isEmpty() && model.getNbMarkedFiles() == 0)
+			return;
+
+		int nbRows = model.getRowCount();
+		for (int row = model.getFirstMarkableRow(); row < nbRows; row++)
+			model.setRowMarked(row, markedFiles.contains(model.getFileAtRow(row)));
+
+		fileTable.repaint();
+		fileTable.fireMarkedFilesChangedEvent();
+	}
+
+	/**
+	 * Refreshes the folder of the given listing if it has changed since it was listed, provided that it is still
+	 * displayed. This method is I/O-bound and must not be called from the event dispatch thread.
+	 */
+	private void revalidate(TabListing listing) {
+		AbstractFile folder = listing.getFolder();
+		if (folder.exists() && folder.getDate() == listing.getDate())
+			return;
+
+		if (folderPanel.getCurrentFolder() == folder)
+			folderPanel.tryRefreshCurrentFolder();
+	}
+
+	/**
+	 * Returns <code>true</code> if the given tab is one of the tabs of this pane.
+	 */
+	private boolean isOpen(FileTableTab tab) {
+		for (FileTableTab openTab : getTabs())
+			if (openTab == tab)
+				return true;
+
+		return false;
+	}
 
 	/**
 	 * Return the currently selected tab
@@ -130,7 +252,12 @@ public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements L
 	
 	@Override
 	protected FileTableTab removeTab() {
-		return !getCurrentTab().isLocked() ? super.removeTab() : null;
+		FileTableTab tab = !getCurrentTab().isLocked() ? super.removeTab() : null;
+
+		if (tab != null)
+			listings.remove(new TabKey(tab));
+
+		return tab;
 	}
 	
 	/********************
@@ -198,4 +325,25 @@ public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements L
 	}
 	
 	public void locationChanging(LocationEvent locationEvent) { }
+
+	/**
+	 * Identifies a tab in the listings cache: tabs are compared by location, which changes over time.
+	 */
+	private static class TabKey {
+		private FileTableTab tab;
+
+		private TabKey(FileTableTab tab) {
+			this.tab = tab;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TabKey && ((TabKey)obj).tab == tab;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(tab);
+		}
+	}
 }
@@ -0,0 +1,82 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.ui.main.tabs;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FileSet;
+
+/**
+ * Snapshot of the folder a {@link FileTableTab} displayed when another tab was selected: the folder, its children
+ * as they were listed and the selection within them. It allows the tab to be displayed again without listing the
+ * folder, while the folder is revalidated in the background.
+ */
+class TabListing {
+
+	/** The folder that was displayed, as it was given to the location manager */
+	private AbstractFile folder;
+	/** The folder's children, as CachedFile instances whose attributes have been fetched */
+	private AbstractFile children[];
+	/** Date of the folder when its children were listed */
+	private long date;
+	/** The file that was selected, null if none */
+	private AbstractFile selectedFile;
+	/** The files that were marked */
+	private FileSet markedFiles;
+
+	TabListing(AbstractFile folder, AbstractFile children[], long date, AbstractFile selectedFile, FileSet markedFiles) {
+		this.folder = folder;
+		this.children = children;
+		this.date = date;
+		this.selectedFile = selectedFile;
+		this.markedFiles = markedFiles;
+	}
+
+	AbstractFile getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Returns a copy of the listed children, which the caller may modify.
+	 *
+	 * @return a copy of the listed children
+	 */
+	AbstractFile[] getChildren() {
+		AbstractFile childrenCopy[] = new AbstractFile[children.length];
+		System.arraycopy(children, 0, childrenCopy, 0, children.length);
+
+		return childrenCopy;
+	}
+
+	int getNbChildren() {
+		return children.length;
+	}
+
+	long getDate() {
+		return date;
+	}
+
+	AbstractFile getSelectedFile() {
+		return selectedFile;
+	}
+
+	FileSet getMarkedFiles() {
+		return markedFiles;
+	}
+}
@@ -19,6 +19,7 @@
 
 package com.mucommander.ui.main.tree;
 
+import java.lang.ref.SoftReference;
 import java.util.Arrays;
 
 import javax.swing.Icon;
@@ -36,6 +37,11 @@ import com.mucommander.ui.icon.IconManager;
 
 /**
  * A class that holds cached children of a directory.
+ *
+ * <p>The children of an expanded directory are strongly referenced. When the directory is collapsed, they are only
+ * softly referenced and may be reclaimed by the garbage collector, in which case they will be read again the next
+ * time the directory is expanded. The {@link DirectoryCache} may also drop them explicitly to stay within its
+ * bounds.</p>
  * 
  * @author Mariusz Jakubowski
  * 
@@ -45,8 +51,26 @@ public class CachedDirectory extends ProxyFile {
 	
     private static final ImageIcon NOT_ACCESSIBLE_ICON = IconManager.getIcon(IconManager.FILE_ICON_SET, CustomFileIconProvider.NOT_ACCESSIBLE_FILE);
 
-    /** an array of cached children */
+    /** Time during which cached children are considered valid without checking the directory's date, in ms */
+    private static final long VALIDATION_TTL = 5000;
+
+    /** Estimated number of bytes retained by each cached child, not counting its name */
+    private static final int CHILD_BYTES = 256;
+
+    /** an array of cached children, while this directory is expanded */
     private AbstractFile[] cachedChildren = null;
+
+    /** a soft reference to the cached children, while this directory is collapsed */
+    private SoftReference<AbstractFile[]> softCachedChildren = null;
+
+    /** estimated number of bytes retained by the cached children */
+    private long cachedChildrenBytes;
+
+    /** a flag indicating that this directory is expanded in the tree */
+    private boolean expanded = false;
+
+    /** time at which the cached children were last checked against the directory's date */
+    private long validationTime;
     
     /** a flag indicating that a thread is running, caching children */
     private boolean readingChildren = false;
@@ -59,6 +83,9 @@ public class CachedDirectory extends ProxyFile {
 
     /** a cached icon */
     private Icon cachedIcon;
+
+    /** a flag indicating that the icon is being resolved */
+    private boolean loadingIcon = false;
     
 
     /**
@@ -73,7 +100,8 @@ public class CachedDirectory extends ProxyFile {
 
     /**
      * Checks if this directory is already cached. If it isn't cached then a new
-     * cache thread is started.
+     * cache thread is started. The directory's date is checked against the one
+     * of the cached children at most once every {@link #VALIDATION_TTL} ms.
      * @return true if directory is cached, false otherwise
      */
     public synchronized boolean isCached() {
@@ -81,32 +109,47 @@ public class CachedDirectory extends ProxyFile {
         if (isReadingChildren()) {
             return false;
         }
-        // check if directory contents changed
-        if (lsTimeStamp != file.getDate()) {
+        // check if cached children are still fresh
+        long now = System.currentTimeMillis();
+        boolean hasChildren = get() != null;
+        if (hasChildren && now - validationTime < VALIDATION_TTL) {
+            return true;
+        }
+        // check if directory contents changed, or if children have been reclaimed
+        if (!hasChildren || lsTimeStamp != file.getDate()) {
             setReadingChildren(true);
             // read children in caching thread
-            TreeIOThreadManager.getInstance().addTask(new Runnable() {
-                public void run() {
-                    lsAsync();
+            TreeIOScheduler.getInstance().schedule(new TreeIOTask(this, file,
+                    expanded ? TreeIOScheduler.PRIORITY_EXPANDED : TreeIOScheduler.PRIORITY_VISIBLE) {
+                @Override
+                protected void execute() {
+                    lsAsync(this);
+                }
+
+                @Override
+                protected void cancelled() {
+                    cancelReadingChildren();
                 }
             });
             return false;
         }
+        validationTime = now;
         return true;
     }
 
     /**
      * Gets children of current directory. Files are filtered and then sorted. This
      * method is executed in caching thread.
+     * @param task the task that reads the children, its results are discarded if it gets cancelled
      */
-    private void lsAsync() {
+    private void lsAsync(TreeIOTask task) {
         if (getCachedIcon() == null || getCachedIcon() == NOT_ACCESSIBLE_ICON) {
             setCachedIcon(FileIcons.getFileIcon(getProxiedFile()));
         }
 
         AbstractFile[] children;
         try {
-            children = file.ls(cache.getFilter());
+            children = DirectoryLister.lsDirectories(file, cache.getFilter());
         } catch (Exception e) {
             LOGGER.debug("Caught exception", e);
             children = new AbstractFile[0];
@@ -114,18 +157,19 @@ public class CachedDirectory extends ProxyFile {
         }
 
         Arrays.sort(children, cache.getSort());
-        Icon icons[] = new Icon[children.length];
-        for (int i = 0; i < children.length; i++) {
-            icons[i] = FileIcons.getFileIcon(children[i]);
-        }
-        synchronized (cache) {
-            for (int i = 0; i < children.length; i++) {
-                CachedDirectory cachedChild = cache.getOrAdd(children[i]);
-                cachedChild.setCachedIcon(icons[i]);
-            }
+        // icons of children are resolved when they are displayed
+        long bytes = 0;
+        for (AbstractFile child : children) {
+            bytes += CHILD_BYTES + 2L * child.getName().length();
         }
         
+        if (task.isCancelled()) {
+            cancelReadingChildren();
+            return;
+        }
+
         final AbstractFile[] children2 = children;
+        final long bytes2 = bytes;
         try {
             /*
              * Set cache to new value. This is invoked in swing thread
@@ -133,23 +177,121 @@ public class CachedDirectory extends ProxyFile {
              */
             SwingUtilities.invokeAndWait(new Runnable() {
                 public void run() {
-                    setLsCache(children2, file.getDate());
+                    setLsCache(children2, bytes2, file.getDate());
                 }
             });
         } catch (Exception e) {
             LOGGER.debug("Caught exception", e);
         }
+
+        // may evict other directories, must not be called while holding this directory's lock
+        cache.trim();
     }
 
     /**
      * Sets cache information.
      * @param children array of children of this directory
+     * @param bytes estimated number of bytes retained by the children
      * @param lsTimeStamp timestamp of cache
      */
-    private synchronized void setLsCache(AbstractFile[] children, long lsTimeStamp) {
-        this.lsTimeStamp = lsTimeStamp;
-        this.cachedChildren = children;
-        setReadingChildren(false);
+    private void setLsCache(AbstractFile[] children, long bytes, long lsTimeStamp) {
+        synchronized (this) {
+            this.lsTimeStamp = lsTimeStamp;
+            this.validationTime = System.currentTimeMillis();
+            this.cachedChildrenBytes = bytes;
+            if (expanded) {
+                this.cachedChildren = children;
+                this.softCachedChildren = null;
+            } else {
+                this.cachedChildren = null;
+                this.softCachedChildren = new SoftReference<AbstractFile[]>(children);
+            }
+            this.readingChildren = false;
+        }
+        // listeners may access the cache, this directory's lock must not be held
+        cache.fireChildrenCached(this, false);
+    }
+
+    /**
+     * Clears the flag indicating that children are being read, without changing the cached children.
+     * Listeners are notified in the event dispatch thread.
+     */
+    private void cancelReadingChildren() {
+        synchronized (this) {
+            readingChildren = false;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                cache.fireChildrenCached(CachedDirectory.this, false);
+            }
+        });
+    }
+
+    /**
+     * Drops the cached children of this directory, which will be read again the next time they are requested.
+     * Children are not dropped while they are being read.
+     * @return the dropped children, <code>null</code> if there were none
+     */
+    synchronized AbstractFile[] dropChildren() {
+        if (readingChildren) {
+            return null;
+        }
+        AbstractFile[] children = get();
+        cachedChildren = null;
+        softCachedChildren = null;
+        cachedChildrenBytes = 0;
+        lsTimeStamp = -1;
+        return children;
+    }
+
+    /**
+     * Returns true if the cached children of this directory can be dropped to free memory,
+     * that is if this directory is collapsed and has cached children that aren't being read.
+     */
+    synchronized boolean isEvictable() {
+        return !expanded && !readingChildren && get() != null;
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the cached children of this directory,
+     * 0 if there are none.
+     */
+    synchronized long getCachedChildrenBytes() {
+        return get() != null ? cachedChildrenBytes : 0;
+    }
+
+    /**
+     * Returns true if this directory is expanded in the tree.
+     */
+    public synchronized boolean isExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Sets whether this directory is expanded in the tree. The cached children of a
+     * collapsed directory are only softly referenced, and reading them is cancelled.
+     * @param expanded true if this directory is expanded
+     */
+    public void setExpanded(boolean expanded) {
+        boolean cancelReading;
+        synchronized (this) {
+            AbstractFile[] children = get();
+            this.expanded = expanded;
+            cancelReading = !expanded && readingChildren;
+            if (children != null) {
+                if (expanded) {
+                    cachedChildren = children;
+                    softCachedChildren = null;
+                } else {
+                    cachedChildren = null;
+                    softCachedChildren = new SoftReference<AbstractFile[]>(children);
+                }
+            }
+        }
+        // listeners may access the cache, this directory's lock must not be held
+        if (cancelReading) {
+            TreeIOScheduler.getInstance().cancel(this);
+        }
     }
 
     /**
@@ -171,10 +313,13 @@ public class CachedDirectory extends ProxyFile {
 
     /**
      * Gets cached children.
-     * @return cached children.
+     * @return cached children, null if they haven't been read or have been reclaimed.
      */
     public synchronized AbstractFile[] get() {
-        return cachedChildren;
+        if (cachedChildren != null) {
+            return cachedChildren;
+        }
+        return softCachedChildren == null ? null : softCachedChildren.get();
     }
     
     /**
@@ -185,6 +330,35 @@ public class CachedDirectory extends ProxyFile {
         return cachedIcon;
     }
     
+    /**
+     * Resolves the icon of this folder in a caching thread, unless it has
+     * already been resolved or is being resolved. Listeners are notified
+     * in the event dispatch thread once the icon is available.
+     */
+    public void loadIcon() {
+        synchronized (this) {
+            if (cachedIcon != null || loadingIcon) {
+                return;
+            }
+            loadingIcon = true;
+        }
+        TreeIOScheduler.getInstance().schedule(new TreeIOTask(null, file, TreeIOScheduler.PRIORITY_VISIBLE) {
+            @Override
+            protected void execute() {
+                final Icon icon = FileIcons.getFileIcon(getProxiedFile());
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        setCachedIcon(icon);
+                        synchronized (CachedDirectory.this) {
+                            loadingIcon = false;
+                        }
+                        cache.fireIconLoaded(CachedDirectory.this);
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Sets a cached icon for this folder.
      * @param cachedIcon a cached icon
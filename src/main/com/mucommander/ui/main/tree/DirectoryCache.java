@@ -23,19 +23,42 @@ import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.util.FileComparator;
 
 import javax.swing.event.EventListenerList;
-import java.util.HashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * This class holds cached directories. 
  * It maps AbstractFiles to DirectoryCache instances.
+ *
+ * <p>The cache is bounded both by the number of directories it holds and by the estimated number of bytes retained
+ * by their cached children. When a bound is exceeded, the children of the least recently used collapsed directories
+ * are dropped, along with the whole subtree below them.</p>
  * @author Mariusz Jakubowski
  *
  */
 public class DirectoryCache {
-    
-    /** a map that holds cached folders */
-    private Map<AbstractFile, CachedDirectory> cache;
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryCache.class);
+
+    /** Maximum number of directories held by the cache */
+    private static final int MAX_DIRECTORIES = 20000;
+
+    /** Maximum estimated number of bytes retained by cached children */
+    private static final long MAX_BYTES = Math.min(16*1024*1024, Runtime.getRuntime().maxMemory()/32);
+
+    /** a map that holds cached folders, in access order */
+    private LinkedHashMap<AbstractFile, CachedDirectory> cache;
+
+    /** estimated number of bytes retained by cached children, updated when the cache is trimmed */
+    private long cachedBytes;
+
+    /** number of subtrees evicted since the cache was created */
+    private long nbEvictions;
     
     /** Comparator used to sort folders */
     private FileComparator sort;
@@ -54,7 +77,7 @@ public class DirectoryCache {
      */
     public DirectoryCache(FileFilter filter, FileComparator sort) {
         //this.cache = Collections.synchronizedMap(new HashMap());
-        this.cache = new HashMap<AbstractFile, CachedDirectory>();
+        this.cache = new LinkedHashMap<AbstractFile, CachedDirectory>(16, 0.75f, true);
         this.filter = filter;
         this.sort = sort;
     }
@@ -91,6 +114,19 @@ public class DirectoryCache {
         }
     }
     
+    /**
+     * Fires an iconLoaded event on all listeners.
+     * @param cachedDirectory a directory whose icon has been resolved
+     */
+    public void fireIconLoaded(CachedDirectory cachedDirectory) {
+        Object[] listeners = listenerList.getListenerList();
+        for (int i = listeners.length - 2; i >= 0; i -= 2) {
+            if (listeners[i] == CachedDirectoryListener.class) {
+                ((CachedDirectoryListener) listeners[i + 1]).iconLoaded(cachedDirectory);
+            }
+        }
+    }
+
     public void addCachedDirectoryListener(CachedDirectoryListener l) {
         listenerList.add(CachedDirectoryListener.class, l);
     }
@@ -101,6 +137,7 @@ public class DirectoryCache {
 
     public synchronized void clear() {
         cache.clear();
+        cachedBytes = 0;
     }
 
     public synchronized CachedDirectory get(AbstractFile key) {
@@ -115,16 +152,100 @@ public class DirectoryCache {
      * Deletes entry and all children from the cache.
      */
     public synchronized void removeWithChildren(AbstractFile key) {
-        CachedDirectory cachedDir = cache.get(key);
+        cachedBytes -= remove(key);
+    }
+
+    /**
+     * Deletes entry and all children from the cache.
+     * @return the estimated number of bytes retained by the children of the deleted entries
+     */
+    private long remove(AbstractFile key) {
+        long bytes = 0;
+        CachedDirectory cachedDir = cache.remove(key);
         if (cachedDir != null) {
-            cache.remove(key);
+            bytes += cachedDir.getCachedChildrenBytes();
             AbstractFile[] children = cachedDir.get();
             if (children != null) {
                 for (AbstractFile child : children) {
-                    removeWithChildren(child);
+                    bytes += remove(child);
                 }
             }
         }
+        return bytes;
+    }
+
+    /**
+     * Drops the children of the least recently used collapsed directories, along with their subtrees,
+     * until the cache is within its bounds.
+     */
+    public synchronized void trim() {
+        // Soft references may have been cleared since the last time, start from an exact count
+        cachedBytes = 0;
+        for (CachedDirectory cachedDir : cache.values()) {
+            cachedBytes += cachedDir.getCachedChildrenBytes();
+        }
+
+        if (!isOverBounds()) {
+            return;
+        }
+
+        // Iterating doesn't affect the access order, collect candidates before evicting
+        List<CachedDirectory> candidates = new ArrayList<CachedDirectory>();
+        for (CachedDirectory cachedDir : cache.values()) {
+            if (cachedDir.isEvictable()) {
+                candidates.add(cachedDir);
+            }
+        }
+
+        int nbEvicted = 0;
+        for (CachedDirectory cachedDir : candidates) {
+            if (!isOverBounds()) {
+                break;
+            }
+            // the directory may have been removed along with one of its ancestors
+            if (cache.get(cachedDir.getProxiedFile()) != cachedDir) {
+                continue;
+            }
+            long bytes = cachedDir.getCachedChildrenBytes();
+            AbstractFile[] children = cachedDir.dropChildren();
+            if (children == null) {
+                continue;
+            }
+            cachedBytes -= bytes;
+            for (AbstractFile child : children) {
+                cachedBytes -= remove(child);
+            }
+            nbEvicted++;
+        }
+        nbEvictions += nbEvicted;
+
+        LOGGER.debug("Evicted " + nbEvicted + " subtrees: " + cache.size() + " directories, "
+                + cachedBytes / 1024 + "KB, " + nbEvictions + " evictions total");
+    }
+
+    private boolean isOverBounds() {
+        return cache.size() > MAX_DIRECTORIES || cachedBytes > MAX_BYTES;
+    }
+
+    /**
+     * Returns the number of directories held by the cache.
+     */
+    public synchronized int getDirectoryCount() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by cached children, as of the last time the cache was trimmed.
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Returns the number of subtrees evicted since this cache was created.
+     */
+    public synchronized long getEvictionCount() {
+        return nbEvictions;
     }
     
     /**
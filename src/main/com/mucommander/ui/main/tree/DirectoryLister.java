@@ -0,0 +1,76 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.tree;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * Lists the subdirectories of a directory, for the folders tree.
+ *
+ * <p>Directories that are backed by a <code>java.io.File</code> are listed without creating an
+ * <code>AbstractFile</code> for each of their regular files: entries are tested with <code>java.io.File</code> and
+ * only the subdirectories are turned into <code>AbstractFile</code> instances. This makes a big difference on
+ * directories that contain a large number of files and few subdirectories. Other directories are listed with
+ * {@link AbstractFile#ls(FileFilter)}, protocols usually returning the type of the children along with the
+ * listing.</p>
+ */
+class DirectoryLister {
+
+    /** Accepts directories only */
+    private final static java.io.FileFilter DIRECTORY_FILTER = new java.io.FileFilter() {
+        public boolean accept(File file) {
+            return file.isDirectory();
+        }
+    };
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private DirectoryLister() {}
+
+    /**
+     * Returns the subdirectories of the given directory that are accepted by the given filter.
+     * @param directory the directory to list
+     * @param filter the filter the subdirectories must match, may be <code>null</code>
+     * @return the subdirectories of the given directory
+     * @throws IOException if the directory could not be listed
+     */
+    static AbstractFile[] lsDirectories(AbstractFile directory, FileFilter filter) throws IOException {
+        Object underlyingFile = directory.getUnderlyingFileObject();
+        if (!(underlyingFile instanceof File) || directory.isArchive()) {
+            return directory.ls(filter);
+        }
+
+        File[] subdirectories = ((File) underlyingFile).listFiles(DIRECTORY_FILTER);
+        if (subdirectories == null) {
+            throw new IOException("Cannot list " + directory.getAbsolutePath());
+        }
+
+        AbstractFile[] children = new AbstractFile[subdirectories.length];
+        for (int i = 0; i < subdirectories.length; i++) {
+            children[i] = directory.getChild(subdirectories[i].getName());
+        }
+
+        return filter == null ? children : filter.filter(children);
+    }
+}
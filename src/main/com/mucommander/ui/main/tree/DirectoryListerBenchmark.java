@@ -0,0 +1,123 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.tree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.filter.AttributeFileFilter;
+import com.mucommander.commons.file.filter.AttributeFileFilter.FileAttribute;
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * Compares the time it takes to list the subdirectories of a wide directory with
+ * {@link AbstractFile#ls(FileFilter)} and with {@link DirectoryLister}. Results are printed on the standard output.
+ *
+ * <p>The directory to list can be passed as the first command line argument. Otherwise, a temporary directory
+ * containing {@link #NB_FILES} files and {@link #NB_DIRECTORIES} subdirectories is created and listed.</p>
+ */
+public class DirectoryListerBenchmark {
+
+    /** Number of files in the temporary directory */
+    private final static int NB_FILES = 100000;
+    /** Number of subdirectories in the temporary directory */
+    private final static int NB_DIRECTORIES = 10;
+    /** Number of measured listings with each method */
+    private final static int NB_RUNS = 5;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private DirectoryListerBenchmark() {}
+
+    public static void main(String args[]) throws IOException {
+        PrintStream out = System.out;
+
+        File tempFolder = null;
+        String path;
+        if (args.length > 0) {
+            path = args[0];
+        } else {
+            tempFolder = createWideFolder();
+            path = tempFolder.getAbsolutePath();
+        }
+
+        try {
+            AbstractFile folder = FileFactory.getFile(path);
+            if (folder == null || !folder.isDirectory()) {
+                out.println("Not a directory: " + path);
+                return;
+            }
+
+            FileFilter filter = new AttributeFileFilter(FileAttribute.DIRECTORY);
+            out.println("Listing " + path);
+
+            long time = Long.MAX_VALUE;
+            int nbDirectories = 0;
+            for (int i = 0; i < NB_RUNS; i++) {
+                long startTime = System.nanoTime();
+                nbDirectories = folder.ls(filter).length;
+                time = Math.min(time, System.nanoTime() - startTime);
+            }
+            out.println("  ls(filter): " + nbDirectories + " directories in " + time / 1000000 + "ms");
+
+            time = Long.MAX_VALUE;
+            for (int i = 0; i < NB_RUNS; i++) {
+                long startTime = System.nanoTime();
+                nbDirectories = DirectoryLister.lsDirectories(folder, filter).length;
+                time = Math.min(time, System.nanoTime() - startTime);
+            }
+            out.println("  DirectoryLister: " + nbDirectories + " directories in " + time / 1000000 + "ms");
+        } finally {
+            if (tempFolder != null) {
+                delete(tempFolder);
+            }
+        }
+    }
+
+    private static File createWideFolder() throws IOException {
+        File folder = File.createTempFile("wide", "");
+        if (!folder.delete() || !folder.mkdir()) {
+            throw new IOException("Cannot create " + folder.getAbsolutePath());
+        }
+
+        System.out.println("Creating " + NB_FILES + " files in " + folder.getAbsolutePath() + "...");
+        for (int i = 0; i < NB_DIRECTORIES; i++) {
+            new File(folder, "directory" + i).mkdir();
+        }
+        for (int i = 0; i < NB_FILES; i++) {
+            new File(folder, "file" + i).createNewFile();
+        }
+
+        return folder;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
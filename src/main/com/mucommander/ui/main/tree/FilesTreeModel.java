@@ -21,16 +21,21 @@ package com.mucommander.ui.main.tree;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.util.FileComparator;
+import com.mucommander.ui.icon.CustomFileIconProvider;
 import com.mucommander.ui.icon.FileIcons;
+import com.mucommander.ui.icon.IconManager;
 import com.mucommander.ui.icon.SpinningDial;
 
 import javax.swing.*;
 import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 import java.util.Arrays;
+import java.util.Enumeration;
 
 /**
  * A tree model for files.
@@ -39,7 +44,7 @@ import java.util.Arrays;
  * @author Mariusz Jakubowski
  * 
  */
-public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
+public class FilesTreeModel implements TreeModel, CachedDirectoryListener, TreeExpansionListener {
 
     private DirectoryCache cache;
     
@@ -55,6 +60,9 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
     /** number of caching children at the time, used to control spinning icon */
     private int cachingNum = 0;
 
+    /** icon used until the icon of a directory has been resolved */
+    private static final Icon DEFAULT_FOLDER_ICON = IconManager.getIcon(IconManager.FILE_ICON_SET, CustomFileIconProvider.FOLDER_ICON_NAME);
+
     /** icon used to show that a children of a directory are being cached */
     private SpinningDial spinningIcon = new SpinningDial(16, 16, false);
 
@@ -74,6 +82,8 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
     public void setRoot(AbstractFile newRoot) {
         final CachedDirectory cachedRoot = new CachedDirectory(newRoot, cache);
         cachedRoot.setCachedIcon(FileIcons.getFileIcon(newRoot));
+        // the tree expands its root without notifying expansion listeners
+        cachedRoot.setExpanded(true);
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
                 root = cachedRoot.getProxiedFile();
@@ -158,6 +168,25 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
         }
     }
 
+    /**
+     * Notifies all listeners that the node at the end of the given path has changed,
+     * but not its children.
+     * @param source the node where the tree model has changed
+     * @param path the path to the changed node
+     */
+    void fireTreeNodeChanged(Object source, TreePath path) {
+        Object[] listeners = listenerList.getListenerList();
+        TreeModelEvent e = null;
+        for (int i = listeners.length - 2; i >= 0; i -= 2) {
+            if (listeners[i] == TreeModelListener.class) {
+                if (e == null) {
+                    e = new TreeModelEvent(source, path);
+                }
+                ((TreeModelListener) listeners[i + 1]).treeNodesChanged(e);
+            }
+        }
+    }
+
     /**
      * Builds the parents of node up to and including the root node,
      * where the original node is the last element in the returned array.
@@ -225,9 +254,11 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
         AbstractFile folder = (AbstractFile) path.getLastPathComponent();
         CachedDirectory cached = cache.get(folder);
         Icon cachedIcon = cached.getCachedIcon();        
+        boolean expanded = cached.isExpanded();
         cache.removeWithChildren(folder);
         cached = cache.getOrAdd(folder);
         cached.setCachedIcon(cachedIcon);
+        cached.setExpanded(expanded);
         fireTreeStructureChanged(this, path);
     }
 
@@ -247,21 +278,55 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
         fireTreeStructureChanged(this, path);
     }
     
+    public void iconLoaded(AbstractFile file) {
+        AbstractFile[] path = getPathToRoot(file);
+        if (path != null) {
+            fireTreeNodeChanged(this, new TreePath(path));
+        }
+    }
+
+    // - TreeExpansionListener code --------------------------------------------
+    // -------------------------------------------------------------------------
+
+    public void treeExpanded(TreeExpansionEvent event) {
+        TreePath path = event.getPath();
+        cache.getOrAdd((AbstractFile) path.getLastPathComponent()).setExpanded(true);
+
+        // JTree shows the descendants that were expanded before this directory was collapsed expanded again, without
+        // firing events for them: their cached directories may have been evicted in the meantime
+        if (event.getSource() instanceof JTree) {
+            Enumeration<TreePath> descendants = ((JTree) event.getSource()).getExpandedDescendants(path);
+            while (descendants != null && descendants.hasMoreElements()) {
+                TreePath descendant = descendants.nextElement();
+                if (!descendant.equals(path)) {
+                    cache.getOrAdd((AbstractFile) descendant.getLastPathComponent()).setExpanded(true);
+                }
+            }
+        }
+    }
+
+    public void treeCollapsed(TreeExpansionEvent event) {
+        cache.getOrAdd((AbstractFile) event.getPath().getLastPathComponent()).setExpanded(false);
+    }
+
     /**
      * Returns an icon of this directory or spinning icon if this directory is
-     * being cached.
+     * being cached. A default folder icon is returned while the icon is being resolved.
      * @return an icon of this directory or spinning icon if this directory is
      *         being cached.
      */
     public Icon getCurrentIcon(AbstractFile file) {
-        CachedDirectory cached = cache.get(file);
-        if (cached != null) {
-            if (cached.isReadingChildren()) {
-                return spinningIcon;
-            }
-            return cached.getCachedIcon();
+        CachedDirectory cached = cache.getOrAdd(file);
+        if (cached.isReadingChildren()) {
+            return spinningIcon;
+        }
+        Icon icon = cached.getCachedIcon();
+        if (icon == null) {
+            // icons are only resolved for the directories that are displayed
+            cached.loadIcon();
+            return DEFAULT_FOLDER_ICON;
         }
-        return spinningIcon;
+        return icon;
     }
 
 
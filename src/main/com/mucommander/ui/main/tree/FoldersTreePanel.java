@@ -89,10 +89,6 @@ public class FoldersTreePanel extends JPanel implements TreeSelectionListener,
     /** A timer that fires a directory change */
     private ChangeTimer changeTimer = new ChangeTimer();
 
-    static {
-        TreeIOThreadManager.getInstance().start();
-    }
-
    
     /**
      * Creates a panel with directory tree attached to a specified folder panel.
@@ -120,6 +116,8 @@ public class FoldersTreePanel extends JPanel implements TreeSelectionListener,
                 TreeSelectionModel.SINGLE_TREE_SELECTION);
         tree.setExpandsSelectedPaths(true);
         tree.getModel().addTreeModelListener(this);
+        // lets the cache know which directories can be evicted
+        tree.addTreeExpansionListener(model);
 
         JScrollPane sp = new JScrollPane(tree);
         // JScrollPane usually comes with a tiny border, remove it
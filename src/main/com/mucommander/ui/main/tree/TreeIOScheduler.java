@@ -0,0 +1,422 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the i/o operations of the folders tree on a small pool of threads.
+ *
+ * <p>Pending tasks are executed by order of priority, then in the order they were scheduled. At most
+ * {@link #MAX_TASKS_PER_HOST} tasks are executed concurrently for a given host, so that an unreachable server can
+ * only block a few threads while tasks on other hosts keep being executed. Threads whose task has been running for
+ * more than {@link #BLOCK_THRESHOLD} ms are considered blocked and are not counted in the pool: additional threads
+ * are started to replace them, up to {@link #MAX_THREADS}.</p>
+ *
+ * <p>Scheduling a task with the same key as a pending or running task has no effect, other than raising the
+ * priority of the pending task. Pending tasks can be cancelled, running tasks are notified that they have been
+ * cancelled and are expected to discard their results. A running task is kept until it is done even if it has been
+ * cancelled: a task scheduled with the same key in the meantime is executed after it, not alongside it.</p>
+ *
+ * <p>While tasks are pending, a watchdog thread wakes up whenever a running task becomes blocked to replace its
+ * thread, so that pending tasks do not depend on new tasks being scheduled to get a thread.</p>
+ */
+public class TreeIOScheduler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TreeIOScheduler.class);
+
+    /** priority of tasks for directories that are expanded in the tree */
+    public final static int PRIORITY_EXPANDED = 0;
+
+    /** priority of tasks for directories that are visible in the tree */
+    public final static int PRIORITY_VISIBLE = 1;
+
+    /** priority of tasks that read directories the user may not need */
+    public final static int PRIORITY_PREFETCH = 2;
+
+    /** number of threads that execute tasks, not counting blocked ones */
+    private final static int POOL_SIZE = 3;
+
+    /** maximum number of threads, including blocked ones */
+    private final static int MAX_THREADS = 8;
+
+    /** maximum number of tasks executed concurrently for the same host */
+    private final static int MAX_TASKS_PER_HOST = 2;
+
+    /** a time after a running task is considered blocked [ms] */
+    private final static long BLOCK_THRESHOLD = 5000;
+
+    private final static TreeIOScheduler instance = new TreeIOScheduler();
+
+    /** pending tasks, one queue per priority */
+    private final List<LinkedList<TreeIOTask>> queues = new ArrayList<LinkedList<TreeIOTask>>();
+
+    /** pending and running tasks, by key */
+    private final Map<Object, TreeIOTask> tasks = new HashMap<Object, TreeIOTask>();
+
+    /** number of running tasks, by host */
+    private final Map<String, Integer> runningTasks = new HashMap<String, Integer>();
+
+    /** threads that execute tasks */
+    private final List<Worker> workers = new ArrayList<Worker>();
+
+    /** number of threads waiting for a task */
+    private int nbIdleWorkers;
+
+    /** number of threads created so far, used to name them */
+    private int nbCreatedWorkers;
+
+    /** a thread that replaces blocked threads while tasks are pending, null if it isn't running */
+    private Thread watchdog;
+
+    /** a flag indicating that the scheduler has been shut down */
+    private boolean shutdown;
+
+
+    private TreeIOScheduler() {
+        for (int i = PRIORITY_EXPANDED; i <= PRIORITY_PREFETCH; i++) {
+            queues.add(new LinkedList<TreeIOTask>());
+        }
+    }
+
+    public static TreeIOScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedules a task for execution. If a task with the same key is already pending or running, the given
+     * task is discarded and the existing one is returned; the priority of a pending task is raised to that
+     * of the given task if it is higher. If the running task has been cancelled, the given task is executed
+     * once it is done.
+     * @param task a task to execute
+     * @return the scheduled task, which is not necessarily the given one
+     */
+    public synchronized TreeIOTask schedule(TreeIOTask task) {
+        TreeIOTask existing = tasks.get(task.getKey());
+        if (existing != null && existing.isCancelled() && !shutdown) {
+            // the existing task is running but its results will be discarded
+            if (existing.next == null) {
+                existing.next = task;
+            } else if (task.priority < existing.next.priority) {
+                existing.next.priority = task.priority;
+            }
+            return existing.next;
+        }
+        if (existing != null) {
+            if (task.priority < existing.priority && queues.get(existing.priority).remove(existing)) {
+                existing.priority = task.priority;
+                queues.get(existing.priority).add(existing);
+            }
+            return existing;
+        }
+
+        if (shutdown) {
+            task.setCancelled();
+            return task;
+        }
+
+        tasks.put(task.getKey(), task);
+        queues.get(task.priority).add(task);
+
+        if (nbIdleWorkers > 0) {
+            notifyAll();
+        } else {
+            startWorkerIfNeeded();
+            startWatchdogIfNeeded();
+        }
+        return task;
+    }
+
+    /**
+     * Cancels the task with the given key, if any. A pending task is removed from the queue and its
+     * {@link TreeIOTask#cancelled()} method is invoked; a running task is only flagged as cancelled and is
+     * kept until it is done.
+     * @param key key of the task to cancel
+     * @return true if a task was cancelled
+     */
+    public boolean cancel(Object key) {
+        TreeIOTask pendingTask;
+        synchronized (this) {
+            TreeIOTask task = tasks.get(key);
+            if (task == null) {
+                return false;
+            }
+            if (task.next != null) {
+                // the running task is already cancelled, the task to be executed after it is pending
+                pendingTask = task.next;
+                task.next = null;
+            } else if (queues.get(task.priority).remove(task)) {
+                tasks.remove(key);
+                pendingTask = task;
+            } else if (task.isCancelled()) {
+                return false;
+            } else {
+                pendingTask = null;
+            }
+            task.setCancelled();
+            if (pendingTask != null) {
+                pendingTask.setCancelled();
+            }
+        }
+        // the task may access the tree, this scheduler's lock must not be held
+        if (pendingTask != null) {
+            pendingTask.cancelled();
+        }
+        return true;
+    }
+
+    /**
+     * Cancels all pending tasks and stops the threads once their current task, if any, is finished.
+     */
+    public void shutdown() {
+        List<TreeIOTask> pendingTasks = new ArrayList<TreeIOTask>();
+        synchronized (this) {
+            shutdown = true;
+            for (LinkedList<TreeIOTask> queue : queues) {
+                pendingTasks.addAll(queue);
+                queue.clear();
+            }
+            for (TreeIOTask task : tasks.values()) {
+                task.setCancelled();
+                if (task.next != null) {
+                    task.next.setCancelled();
+                    pendingTasks.add(task.next);
+                    task.next = null;
+                }
+            }
+            tasks.clear();
+            notifyAll();
+        }
+        for (TreeIOTask task : pendingTasks) {
+            task.cancelled();
+        }
+    }
+
+    /**
+     * Starts a new thread if there are less than {@link #POOL_SIZE} threads that aren't blocked.
+     * Must be called with this scheduler's lock held.
+     */
+    private void startWorkerIfNeeded() {
+        long now = System.currentTimeMillis();
+        int nbActiveWorkers = 0;
+        for (Worker worker : workers) {
+            if (!worker.isBlocked(now)) {
+                nbActiveWorkers++;
+            }
+        }
+        if (nbActiveWorkers < POOL_SIZE && workers.size() < MAX_THREADS) {
+            Worker worker = new Worker("TreeIO-" + (++nbCreatedWorkers));
+            workers.add(worker);
+            worker.start();
+            if (workers.size() > POOL_SIZE) {
+                LOGGER.debug("Started " + worker.getName() + ", " + (workers.size() - nbActiveWorkers) + " threads blocked");
+            }
+        }
+    }
+
+    /**
+     * Starts the watchdog thread if it isn't running. Must be called with this scheduler's lock held.
+     */
+    private void startWatchdogIfNeeded() {
+        if (watchdog == null && !shutdown) {
+            watchdog = new Watchdog();
+            watchdog.start();
+        }
+    }
+
+    /**
+     * Removes and returns the pending task with the highest priority whose host can accept another task,
+     * null if there is none. Must be called with this scheduler's lock held.
+     * @param remove false to return the task without removing it
+     */
+    private TreeIOTask pollTask(boolean remove) {
+        for (LinkedList<TreeIOTask> queue : queues) {
+            Iterator<TreeIOTask> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                TreeIOTask task = iterator.next();
+                Integer nbRunning = runningTasks.get(task.getHost());
+                if (nbRunning == null || nbRunning < MAX_TASKS_PER_HOST) {
+                    if (remove) {
+                        iterator.remove();
+                        runningTasks.put(task.getHost(), nbRunning == null ? 1 : nbRunning + 1);
+                    }
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the time before the next running task is considered blocked, {@link #BLOCK_THRESHOLD} if no running
+     * task can become blocked. Must be called with this scheduler's lock held.
+     */
+    private long getTimeBeforeBlock() {
+        long now = System.currentTimeMillis();
+        long time = BLOCK_THRESHOLD;
+        for (Worker worker : workers) {
+            long startTime = worker.taskStartTime;
+            if (startTime != 0 && !worker.isBlocked(now)) {
+                time = Math.min(time, startTime + BLOCK_THRESHOLD - now + 1);
+            }
+        }
+        return Math.max(time, 1);
+    }
+
+    /**
+     * Returns true if there are pending tasks. Must be called with this scheduler's lock held.
+     */
+    private boolean hasPendingTasks() {
+        for (LinkedList<TreeIOTask> queue : queues) {
+            if (!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a task the given thread can execute.
+     * @return the task to execute, null if the thread should stop
+     */
+    private synchronized TreeIOTask take(Worker worker) {
+        while (!shutdown) {
+            TreeIOTask task = pollTask(true);
+            if (task != null) {
+                // the remaining tasks may need another thread if the others are blocked
+                if (nbIdleWorkers == 0 && pollTask(false) != null) {
+                    startWorkerIfNeeded();
+                }
+                return task;
+            }
+            // threads started to replace blocked ones are not kept
+            if (workers.size() > POOL_SIZE) {
+                break;
+            }
+            nbIdleWorkers++;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                nbIdleWorkers--;
+            }
+        }
+        workers.remove(worker);
+        return null;
+    }
+
+    /**
+     * Releases the resources held by a task once it has been executed.
+     */
+    private synchronized void done(TreeIOTask task) {
+        int nbRunning = runningTasks.get(task.getHost()) - 1;
+        if (nbRunning == 0) {
+            runningTasks.remove(task.getHost());
+        } else {
+            runningTasks.put(task.getHost(), nbRunning);
+        }
+        if (tasks.get(task.getKey()) == task) {
+            tasks.remove(task.getKey());
+            // a task scheduled while this one was running cancelled
+            TreeIOTask next = task.next;
+            if (next != null && !shutdown) {
+                task.next = null;
+                tasks.put(next.getKey(), next);
+                queues.get(next.priority).add(next);
+            }
+        }
+        // tasks for the host may have been waiting
+        notifyAll();
+    }
+
+    /**
+     * A thread that starts threads to replace the blocked ones, as long as there are pending tasks which could be
+     * executed but no idle thread to execute them. It wakes up when a running task becomes blocked.
+     */
+    private class Watchdog extends Thread {
+
+        Watchdog() {
+            super("TreeIO-watchdog");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            synchronized (TreeIOScheduler.this) {
+                try {
+                    while (!shutdown && hasPendingTasks()) {
+                        if (nbIdleWorkers == 0 && pollTask(false) != null) {
+                            startWorkerIfNeeded();
+                        }
+                        TreeIOScheduler.this.wait(getTimeBeforeBlock());
+                    }
+                } catch (InterruptedException e) {
+                    // stop watching, the next scheduled task restarts the watchdog
+                } finally {
+                    watchdog = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A thread that executes tasks.
+     */
+    private class Worker extends Thread {
+
+        /** a time when the current task was started, 0 if the thread is idle */
+        private volatile long taskStartTime;
+
+        Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        boolean isBlocked(long now) {
+            long startTime = taskStartTime;
+            return startTime != 0 && now - startTime > BLOCK_THRESHOLD;
+        }
+
+        @Override
+        public void run() {
+            TreeIOTask task;
+            while ((task = take(this)) != null) {
+                taskStartTime = System.currentTimeMillis();
+                try {
+                    if (!task.isCancelled()) {
+                        task.execute();
+                    }
+                } catch (Exception e) {
+                    LOGGER.debug("Caught exception", e);
+                } finally {
+                    taskStartTime = 0;
+                    done(task);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.tree;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * An i/o operation performed on behalf of the folders tree, executed by the {@link TreeIOScheduler}.
+ *
+ * <p>A task is identified by a key: the scheduler never holds more than one task per key, so that repeated requests
+ * for the same directory result in a single operation. Tasks are also grouped by the host of the file they operate
+ * on, which limits the number of tasks that a slow or unreachable host can tie up.</p>
+ */
+public abstract class TreeIOTask {
+
+    /** key identifying the task */
+    private final Object key;
+
+    /** scheme and host of the file the task operates on */
+    private final String host;
+
+    /** priority of the task, one of the <code>TreeIOScheduler.PRIORITY_*</code> constants */
+    int priority;
+
+    /** a flag indicating that the task has been cancelled */
+    private volatile boolean cancelled;
+
+    /** a task with the same key, scheduled while this task was running cancelled, executed once this task is done */
+    TreeIOTask next;
+
+    /**
+     * Creates a new task.
+     * @param key key identifying the task, null if the task is only identified by itself
+     * @param file the file the task operates on
+     * @param priority priority of the task, one of the <code>TreeIOScheduler.PRIORITY_*</code> constants
+     */
+    public TreeIOTask(Object key, AbstractFile file, int priority) {
+        FileURL url = file.getURL();
+        this.key = key == null ? this : key;
+        this.host = url.getScheme() + "://" + url.getHost();
+        this.priority = priority;
+    }
+
+    /**
+     * Performs the i/o operation. This method is executed by one of the scheduler's threads and should check
+     * {@link #isCancelled()} before publishing its results.
+     */
+    protected abstract void execute();
+
+    /**
+     * Invoked when the task is cancelled before it has been started. This implementation does nothing.
+     */
+    protected void cancelled() {
+    }
+
+    /**
+     * Returns true if the task has been cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setCancelled() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns the key identifying this task.
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the scheme and host of the file this task operates on.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the priority of this task.
+     */
+    public int getPriority() {
+        return priority;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.viewer.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * A cache of decoded images shared by all image viewers, bounded by the amount of memory used by the cached pixels
+ * rather than by a number of entries.
+ *
+ * <p>Images are keyed by the file's URL, size and date, and the subsampling factor they were decoded with, so that
+ * a file that has been modified since it was cached is never returned. When the cache exceeds its memory budget,
+ * the least recently used images are evicted first.</p>
+ */
+class ImageCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageCache.class);
+
+    /** Maximum number of bytes of pixel data the cache may hold */
+    private final static long MAX_BYTES = Math.min(96*1024*1024, Runtime.getRuntime().maxMemory()/8);
+
+    /** Cached images, in access order */
+    private final static LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+    /** Number of bytes of pixel data currently held by the cache */
+    private static long currentBytes;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private ImageCache() {}
+
+    /**
+     * Returns the image decoded from the given file with the given subsampling factor, <code>null</code> if it
+     * isn't in the cache.
+     *
+     * @param file the image file
+     * @param subsampling the subsampling factor the image was decoded with
+     * @return the cached image, <code>null</code> if there is none
+     */
+    static synchronized BufferedImage get(AbstractFile file, int subsampling) {
+        return images.get(getKey(file, subsampling));
+    }
+
+    /**
+     * Adds an image decoded from the given file with the given subsampling factor to the cache, evicting the least
+     * recently used images if needed. Images that are larger than the whole cache budget are not cached.
+     *
+     * @param file the image file
+     * @param subsampling the subsampling factor the image was decoded with
+     * @param image the decoded image
+     */
+    static synchronized void put(AbstractFile file, int subsampling, BufferedImage image) {
+        long imageBytes = getSizeInBytes(image);
+        if(imageBytes>MAX_BYTES)
+            return;
+
+        BufferedImage previous = images.put(getKey(file, subsampling), image);
+        if(previous!=null)
+            currentBytes -= getSizeInBytes(previous);
+        currentBytes += imageBytes;
+
+        Iterator<Map.Entry<String, BufferedImage>> iterator = images.entrySet().iterator();
+        while(currentBytes>MAX_BYTES && iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> eldest = iterator.next();
+            currentBytes -= getSizeInBytes(eldest.getValue());
+            iterator.remove();
+            LOGGER.trace("evicted "+eldest.getKey());
+        }
+    }
+
+    /**
+     * Returns the key under which images decoded from the given file with the given subsampling factor are stored.
+     */
+    private static String getKey(AbstractFile file, int subsampling) {
+        return file.getURL().toString(false)+"|"+file.getSize()+"|"+file.getDate()+"|"+subsampling;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by the given image's pixels.
+     */
+    private static long getSizeInBytes(BufferedImage image) {
+        return (long)image.getWidth()*image.getHeight()*4;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.viewer.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.io.BlockCachedInputStream;
+
+/**
+ * <code>ImageDecoder</code> decodes an image file through <code>ImageIO</code>, reading only as many source pixels
+ * as needed for the requested resolution.
+ *
+ * <p>A decoder holds the file's input stream open from the time it is created until {@link #close()} is called,
+ * so that several resolutions of the same image (e.g. a coarse preview followed by the screen-sized image) can be
+ * decoded without fetching the file a second time. The source dimensions are available as soon as the decoder is
+ * created, without decoding any pixel.</p>
+ *
+ * <p>Decoding is meant to be performed outside of the event dispatch thread; it can be aborted from any thread
+ * using {@link #abort()}.</p>
+ */
+class ImageDecoder {
+
+    /** The file's input stream */
+    private InputStream in;
+    /** The ImageIO stream wrapping the file's input stream */
+    private ImageInputStream iis;
+    /** The reader that decodes the image */
+    private ImageReader reader;
+
+    /** Width of the source image, in pixels */
+    private int width;
+    /** Height of the source image, in pixels */
+    private int height;
+
+    /** Becomes true when the decoding has been aborted */
+    private volatile boolean aborted;
+
+    /**
+     * Creates a new <code>ImageDecoder</code> for the given file and reads the image's header.
+     *
+     * @param file the image file to decode
+     * @throws IOException if the file could not be read or if its format is not supported by ImageIO
+     */
+    ImageDecoder(AbstractFile file) throws IOException {
+        in = BlockCachedInputStream.getInputStream(file);
+        try {
+            iis = ImageIO.createImageInputStream(in);
+            if(iis==null)
+                throw new IOException("Cannot create image input stream for "+file.getAbsolutePath());
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if(!readers.hasNext())
+                throw new IOException("No image reader for "+file.getAbsolutePath());
+
+            reader = readers.next();
+            reader.setInput(iis, true, true);
+
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+        }
+        catch(IOException e) {
+            close();
+            throw e;
+        }
+        catch(RuntimeException e) {
+            // Some readers throw unchecked exceptions on corrupt headers
+            close();
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the width of the source image, in pixels.
+     *
+     * @return the width of the source image, in pixels
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the source image, in pixels.
+     *
+     * @return the height of the source image, in pixels
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Decodes the image, keeping only one pixel out of <code>subsampling</code> in each direction. A subsampling
+     * value of <code>1</code> decodes the image at full resolution.
+     *
+     * @param subsampling the number of source pixels per decoded pixel, in each direction
+     * @return the decoded image
+     * @throws IOException if an I/O error occurred, or if decoding was aborted
+     */
+    BufferedImage decode(int subsampling) throws IOException {
+        if(aborted)
+            throw new IOException("Decoding aborted");
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        if(subsampling>1)
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+        BufferedImage image;
+        try {
+            image = reader.read(0, param);
+        }
+        catch(RuntimeException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        // ImageReader#abort() makes read() return whatever has been decoded so far
+        if(aborted)
+            throw new IOException("Decoding aborted");
+
+        return image;
+    }
+
+    /**
+     * Aborts the decoding currently in progress, if any. Subsequent calls to {@link #decode(int)} will fail.
+     * This method can be called from any thread.
+     */
+    void abort() {
+        aborted = true;
+        ImageReader reader = this.reader;
+        if(reader!=null)
+            reader.abort();
+    }
+
+    /**
+     * Releases the resources held by this decoder and closes the underlying stream.
+     */
+    void close() {
+        if(reader!=null) {
+            reader.dispose();
+            reader = null;
+        }
+
+        if(iis!=null) {
+            try { iis.close(); }
+            catch(IOException e) {}
+            iis = null;
+        }
+
+        if(in!=null) {
+            try { in.close(); }
+            catch(IOException e) {}
+            in = null;
+        }
+    }
+
+    /**
+     * Returns the smallest power-of-two subsampling factor for which an image of the given dimensions fits in the
+     * given bounds.
+     *
+     * @param width the source image width
+     * @param height the source image height
+     * @param maxWidth the maximum width of the decoded image
+     * @param maxHeight the maximum height of the decoded image
+     * @return the subsampling factor to use
+     */
+    static int getSubsamplingToFit(int width, int height, int maxWidth, int maxHeight) {
+        int subsampling = 1;
+        while(width/subsampling>maxWidth || height/subsampling>maxHeight)
+            subsampling *= 2;
+
+        return subsampling;
+    }
+}
@@ -23,12 +23,15 @@ import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.MediaTracker;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,8 +41,13 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.io.BlockCachedInputStream;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.helper.MenuToolkit;
 import com.mucommander.ui.helper.MnemonicHelper;
@@ -55,12 +63,39 @@ import com.mucommander.ui.viewer.FileViewer;
 /**
  * A simple image viewer, capable of displaying <code>PNG</code>, <code>GIF</code> and <code>JPEG</code> images. 
  *
+ * <p>Images are decoded with <code>ImageIO</code> at the resolution they are displayed at, by subsampling the source
+ * pixels, so that the memory used by the viewer depends on the screen size rather than on the image size.
+ * Large images are first decoded as a coarse preview which is displayed right away, while the screen-sized image is
+ * decoded in the background. Zooming is performed outside of the event dispatch thread, and decoded images are kept in
+ * an {@link ImageCache} shared by all viewers.</p>
+ *
+ * <p>Images that <code>ImageIO</code> cannot decode are loaded using the AWT <code>Toolkit</code>, as they used to.</p>
+ *
  * @author Maxence Bernard, Arik Hadas
  */
 class ImageViewer extends FileViewer implements ActionListener {
-    private Image image;
-    private Image scaledImage;
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageViewer.class);
+
+    /** Images with more pixels than this are first decoded as a preview */
+    private final static long PREVIEW_THRESHOLD = 4*1024*1024;
+    /** Subsampling factor of the preview, relative to the subsampling of the screen-sized image */
+    private final static int PREVIEW_SUBSAMPLING_RATIO = 4;
+
+    /** The image file currently displayed */
+    private AbstractFile file;
+    /** Width of the source image, in pixels */
+    private int imageWidth;
+    /** Height of the source image, in pixels */
+    private int imageHeight;
+    /** The image being displayed, possibly at a lower resolution than the zoom factor calls for */
+    private volatile Image scaledImage;
     private double zoomFactor;
+
+    /** Image loaded with the AWT Toolkit when ImageIO is not used, null otherwise */
+    private Image toolkitImage;
+
+    /** Background thread decoding the image for the current zoom factor, null if there is none */
+    private DecodingThread decodingThread;
 	
     /** Menu bar */
     // Menus //
@@ -98,44 +133,102 @@ class ImageViewer extends FileViewer implements ActionListener {
     	return menuBar;
     }
 
+    /**
+     * Loads the given image file so that it fits the screen. This method is called outside of the event dispatch
+     * thread and returns as soon as something can be displayed: for large images, the screen-sized image keeps being
+     * decoded in the background after this method has returned.
+     */
     private synchronized void loadImage(AbstractFile file) throws IOException {
         FileFrame frame = getFrame();
         frame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
-		
+
+        try {
+            this.file = file;
+            this.scaledImage = null;
+            this.toolkitImage = null;
+
+            Dimension d = Toolkit.getDefaultToolkit().getScreenSize();
+
+            ImageDecoder decoder;
+            try {
+                decoder = new ImageDecoder(file);
+            }
+            catch(IOException e) {
+                LOGGER.debug("ImageIO could not read "+file.getAbsolutePath()+", using Toolkit instead", e);
+                loadToolkitImage(file, d);
+                return;
+            }
+
+            imageWidth = decoder.getWidth();
+            imageHeight = decoder.getHeight();
+
+            int subsampling = ImageDecoder.getSubsamplingToFit(imageWidth, imageHeight, d.width, d.height);
+            this.zoomFactor = 1.0/subsampling;
+
+            BufferedImage cachedImage = ImageCache.get(file, subsampling);
+            if(cachedImage!=null) {
+                decoder.close();
+                this.scaledImage = cachedImage;
+            }
+            else if((long)imageWidth*imageHeight>PREVIEW_THRESHOLD) {
+                // Display a coarse preview first and decode the screen-sized image in the background
+                try {
+                    this.scaledImage = decoder.decode(subsampling*PREVIEW_SUBSAMPLING_RATIO);
+                }
+                catch(IOException e) {
+                    decoder.close();
+                    throw e;
+                }
+                startDecoding(decoder, subsampling, zoomFactor);
+            }
+            else {
+                try {
+                    BufferedImage image = decoder.decode(subsampling);
+                    ImageCache.put(file, subsampling, image);
+                    this.scaledImage = image;
+                }
+                finally {
+                    decoder.close();
+                }
+            }
+
+            checkZoom();
+        }
+        finally {
+            frame.setCursor(Cursor.getDefaultCursor());
+        }
+    }
+
+    /**
+     * Loads the given file using the AWT Toolkit, for images that ImageIO cannot decode.
+     */
+    private void loadToolkitImage(AbstractFile file, Dimension d) throws IOException {
         int read;
         byte buffer[] = new byte[1024];
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        InputStream in = file.getInputStream();
-        while ((read=in.read(buffer, 0, buffer.length))!=-1)
-            bout.write(buffer, 0, read);
+        InputStream in = BlockCachedInputStream.getInputStream(file);
+        try {
+            while ((read=in.read(buffer, 0, buffer.length))!=-1)
+                bout.write(buffer, 0, read);
+        }
+        finally {
+            in.close();
+        }
 
         byte imageBytes[] = bout.toByteArray();
         bout.close();
-        in.close();
 
-        this.scaledImage = null;
-        this.image = imageViewerImpl.getToolkit().createImage(imageBytes);
+        this.toolkitImage = imageViewerImpl.getToolkit().createImage(imageBytes);
+        waitForImage(toolkitImage);
 
-        waitForImage(image);
+        imageWidth = toolkitImage.getWidth(null);
+        imageHeight = toolkitImage.getHeight(null);
+        this.zoomFactor = 1.0/ImageDecoder.getSubsamplingToFit(imageWidth, imageHeight, d.width, d.height);
 
-        int width = image.getWidth(null);
-        int height = image.getHeight(null);
-        this.zoomFactor = 1.0;
-        Dimension d = Toolkit.getDefaultToolkit().getScreenSize();
+        // The image is scaled when painted
+        this.scaledImage = toolkitImage;
 
-        while(width>d.width || height>d.height) {
-            width = width/2;
-            height = height/2;
-            zoomFactor = zoomFactor/2;
-        }
-		
-        if(zoomFactor==1.0)
-            this.scaledImage = image;
-        else
-            zoom(zoomFactor);
-			
         checkZoom();
-        frame.setCursor(Cursor.getDefaultCursor());
     }
 
 	
@@ -150,15 +243,77 @@ class ImageViewer extends FileViewer implements ActionListener {
     }
 	
 	
+    /**
+     * Changes the zoom factor. The image currently displayed is stretched to the new size right away, and the image
+     * matching the new zoom factor is decoded in the background, if needed.
+     */
     private synchronized void zoom(double factor) {
-        FileFrame frame = getFrame();
+        this.zoomFactor = factor;
+
+        // Toolkit images are scaled on the fly when painted
+        if(toolkitImage!=null)
+            return;
+
+        // Decode one pixel out of 'subsampling', and scale the result up when zooming in beyond 100%
+        int subsampling = Math.max(1, (int)Math.round(1/factor));
+        BufferedImage cachedImage = ImageCache.get(file, subsampling);
+        if(cachedImage!=null && factor<=1.0) {
+            cancelDecoding();
+            this.scaledImage = cachedImage;
+            return;
+        }
 
-        frame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+        startDecoding(null, subsampling, factor);
+    }
+
+    /**
+     * Starts decoding the current image in the background for the given zoom factor, cancelling the decoding that
+     * was previously in progress, if any.
+     *
+     * @param decoder an open decoder to use, null to open a new one
+     * @param subsampling the subsampling factor to decode the image with
+     * @param factor the zoom factor the decoded image is to be displayed at
+     */
+    private void startDecoding(ImageDecoder decoder, int subsampling, double factor) {
+        cancelDecoding();
+
+        decodingThread = new DecodingThread(file, decoder, subsampling, factor);
+        decodingThread.start();
+    }
 
-        this.scaledImage = image.getScaledInstance((int)(image.getWidth(null)*factor), (int)(image.getHeight(null)*factor), Image.SCALE_DEFAULT);
-        waitForImage(scaledImage);
+    /**
+     * Cancels the background decoding currently in progress, if any.
+     */
+    private synchronized void cancelDecoding() {
+        if(decodingThread!=null) {
+            decodingThread.cancel();
+            decodingThread = null;
+        }
+    }
+
+    /**
+     * Called by a {@link DecodingThread} when it has finished decoding an image, to display it.
+     */
+    private synchronized void decodingFinished(DecodingThread thread, Image image) {
+        // Ignore results of cancelled decodings
+        if(thread!=decodingThread)
+            return;
 
-        frame.setCursor(Cursor.getDefaultCursor());
+        decodingThread = null;
+        this.scaledImage = image;
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                imageViewerImpl.repaint();
+            }
+        });
+    }
+
+    /**
+     * Returns the dimensions of the image at the current zoom factor.
+     */
+    private Dimension getZoomedSize() {
+        return new Dimension(Math.max(1, (int)(imageWidth*zoomFactor)), Math.max(1, (int)(imageHeight*zoomFactor)));
     }
 
     private void updateFrame() {
@@ -174,11 +329,11 @@ class ImageViewer extends FileViewer implements ActionListener {
     private void checkZoom() {
         Dimension d = Toolkit.getDefaultToolkit().getScreenSize();
 		
-        zoomInItem.setEnabled(zoomFactor<1.0 || (2*zoomFactor*image.getWidth(null) < d.width
-                                                 && 2*zoomFactor*image.getHeight(null) < d.height));
+        zoomInItem.setEnabled(zoomFactor<1.0 || (2*zoomFactor*imageWidth < d.width
+                                                 && 2*zoomFactor*imageHeight < d.height));
 
-        zoomOutItem.setEnabled(zoomFactor>1.0 || (zoomFactor/2*image.getWidth(null)>160
-                                                  && zoomFactor/2*image.getHeight(null)>120));
+        zoomOutItem.setEnabled(zoomFactor>1.0 || (zoomFactor/2*imageWidth>160
+                                                  && zoomFactor/2*imageHeight>120));
     }
 
     ///////////////////////////////
@@ -196,7 +351,7 @@ class ImageViewer extends FileViewer implements ActionListener {
 
     @Override
     public String getTitle() {
-        return super.getTitle()+" - "+image.getWidth(null)+"x"+image.getHeight(null)+" - "+((int)(zoomFactor*100))+"%";
+        return super.getTitle()+" - "+imageWidth+"x"+imageHeight+" - "+((int)(zoomFactor*100))+"%";
     }
 
     public void actionPerformed(ActionEvent e) {
@@ -209,13 +364,11 @@ class ImageViewer extends FileViewer implements ActionListener {
         //		else {
 
         if(source==zoomInItem && zoomInItem.isEnabled()) {
-            zoomFactor = zoomFactor*2;
-            zoom(zoomFactor);
+            zoom(zoomFactor*2);
             updateFrame();
         }
         else if(source==zoomOutItem && zoomOutItem.isEnabled()) {
-            zoomFactor = zoomFactor/2;
-            zoom(zoomFactor);
+            zoom(zoomFactor/2);
             updateFrame();
         }
         else {
@@ -226,6 +379,87 @@ class ImageViewer extends FileViewer implements ActionListener {
         checkZoom();
         //		}
     }
+
+    /**
+     * Decodes the image for a given zoom factor in the background, and hands it to the viewer when done.
+     */
+    private class DecodingThread extends Thread {
+
+        private AbstractFile file;
+        private ImageDecoder decoder;
+        private int subsampling;
+        private double factor;
+
+        private volatile boolean cancelled;
+
+        private DecodingThread(AbstractFile file, ImageDecoder decoder, int subsampling, double factor) {
+            super("ImageViewer.DecodingThread");
+            setDaemon(true);
+            // Leave the CPU to the event dispatch thread
+            setPriority(Thread.MIN_PRIORITY);
+
+            this.file = file;
+            this.decoder = decoder;
+            this.subsampling = subsampling;
+            this.factor = factor;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            // The decoder is created by this thread if none was given, so it may not be there yet
+            ImageDecoder decoder = this.decoder;
+            if(decoder!=null)
+                decoder.abort();
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedImage image = ImageCache.get(file, subsampling);
+                if(image==null) {
+                    if(decoder==null)
+                        decoder = new ImageDecoder(file);
+
+                    if(cancelled)
+                        return;
+
+                    image = decoder.decode(subsampling);
+                    ImageCache.put(file, subsampling, image);
+                }
+
+                if(cancelled)
+                    return;
+
+                decodingFinished(this, scale(image));
+            }
+            catch(IOException e) {
+                if(!cancelled)
+                    LOGGER.debug("Could not decode image "+file.getAbsolutePath(), e);
+            }
+            finally {
+                if(decoder!=null)
+                    decoder.close();
+            }
+        }
+
+        /**
+         * Scales the decoded image up to the zoom factor, if the zoom factor is higher than the decoded resolution.
+         */
+        private Image scale(BufferedImage image) {
+            int width = (int)(imageWidth*factor);
+            int height = (int)(imageHeight*factor);
+            if(width<=image.getWidth() && height<=image.getHeight())
+                return image;
+
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+            g.dispose();
+
+            return scaled;
+        }
+    }
     
     private class ImageViewerImpl extends JPanel implements ThemeListener {
 
@@ -248,16 +482,29 @@ class ImageViewer extends FileViewer implements ActionListener {
             g.setColor(backgroundColor);
             g.fillRect(0, 0, width, height);
 
-            if(scaledImage!=null) {
-                int imageWidth = scaledImage.getWidth(null);
-                int imageHeight = scaledImage.getHeight(null);
-                g.drawImage(scaledImage, Math.max(0, (width-imageWidth)/2), Math.max(0, (height-imageHeight)/2), null);
+            Image image = scaledImage;
+            if(image!=null) {
+                // The image may be a preview, or may not have been decoded yet for the current zoom factor:
+                // stretch it to the size it is to be displayed at
+                Dimension size = getZoomedSize();
+                Graphics2D g2d = (Graphics2D)g;
+                if(image.getWidth(null)!=size.width)
+                    g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2d.drawImage(image, Math.max(0, (width-size.width)/2), Math.max(0, (height-size.height)/2), size.width, size.height, null);
             }
         }
         
         @Override
         public synchronized Dimension getPreferredSize() {
-            return new Dimension(scaledImage.getWidth(null), scaledImage.getHeight(null));
+            return getZoomedSize();
+        }
+
+        @Override
+        public void removeNotify() {
+            super.removeNotify();
+
+            // The viewer has been closed, stop decoding
+            cancelDecoding();
         }
     	
     	//////////////////////////////////
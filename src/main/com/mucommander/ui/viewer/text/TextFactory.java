@@ -20,6 +20,7 @@ package com.mucommander.ui.viewer.text;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.io.BlockCachedInputStream;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.viewer.*;
 
@@ -62,7 +63,8 @@ public class TextFactory implements ViewerFactory, EditorFactory {
         // Warn the user if the file looks like a binary file
         InputStream in = null;
         try {
-            in = file.getInputStream();
+            // The blocks read here are reused by the viewer if the file is remote
+            in = BlockCachedInputStream.getInputStream(file);
             if(BinaryDetector.guessBinary(in))
             	return false;
         }
@@ -24,7 +24,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 import javax.swing.AbstractAction;
 import javax.swing.JComponent;
@@ -32,6 +36,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentListener;
 
 import com.mucommander.commons.file.AbstractFile;
@@ -41,6 +46,8 @@ import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.bom.BOMInputStream;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuSnapshot;
+import com.mucommander.io.BlockCachedInputStream;
+import com.mucommander.text.SizeFormat;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.DialogOwner;
 import com.mucommander.ui.dialog.InformationDialog;
@@ -54,12 +61,18 @@ import com.mucommander.ui.viewer.FileViewer;
 /**
  * A simple text viewer. Most of the implementation is located in {@link TextEditorImpl}.
  *
+ * <p>Only the first {@link #CHUNK_SIZE} bytes of large remote files are loaded when they are viewed, the rest being
+ * loaded chunk by chunk on demand through the block cache, in a separate thread.</p>
+ *
  * @author Maxence Bernard, Arik Hadas
  */
 public class TextViewer extends FileViewer implements EncodingListener {
 
 	public final static String CUSTOM_FULL_SCREEN_EVENT = "CUSTOM_FULL_SCREEN_EVENT";
 
+	/** Number of bytes of a large remote file loaded at once */
+	private final static int CHUNK_SIZE = 16*BlockCachedInputStream.BLOCK_SIZE;
+
 	private TextEditorImpl textEditorImpl;
 
 	private static boolean fullScreen = MuConfigurations.getSnapshot().getBooleanVariable(MuSnapshot.TEXT_FILE_PRESENTER_FULL_SCREEN);
@@ -80,8 +93,18 @@ public class TextViewer extends FileViewer implements EncodingListener {
     private JMenuItem findPreviousItem;
     private JMenuItem toggleLineWrapItem;
     private JMenuItem toggleLineNumbersItem;
+    private JMenuItem loadMoreItem;
     
     private String encoding;
+
+    /** Remote file whose contents are only partially loaded, <code>null</code> if the whole file is loaded */
+    private AbstractFile partialFile;
+    /** Number of bytes of the partially loaded file decoded so far */
+    private long loadedBytes;
+    /** Decodes the partially loaded file, keeping its state between chunks */
+    private CharsetDecoder decoder;
+    /** True if the last chunk ended with a carriage return, which may be followed by a line feed */
+    private boolean pendingCR;
     
     TextViewer() {
     	this(new TextEditorImpl(false));
@@ -138,13 +161,32 @@ public class TextViewer extends FileViewer implements EncodingListener {
 	}
 
     void startEditing(AbstractFile file, DocumentListener documentListener) throws IOException {
+        // Only the head of large remote files that are only viewed is loaded, the rest is loaded on demand
+        if(documentListener==null && BlockCachedInputStream.isCacheable(file) && file.getSize()>CHUNK_SIZE) {
+            InputStream in = new BlockCachedInputStream(file);
+            String encoding;
+            try {
+                encoding = EncodingDetector.detectEncoding(in);
+            }
+            finally {
+                in.close();
+            }
+
+            loadHead(file, encoding);
+            return;
+        }
+
         // Auto-detect encoding
 
         // Get a RandomAccessInputStream on the file if possible, if not get a simple InputStream
         InputStream in = null;
 
         try {
-            if(file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            // Remote files that are only viewed are read through the block cache, which keeps the bytes read to
+            // detect the encoding and those read again when the encoding is changed
+            if(documentListener==null && BlockCachedInputStream.isCacheable(file))
+                in = new BlockCachedInputStream(file);
+            else if(file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
                 try { in = file.getRandomAccessInputStream(); }
                 catch(IOException e) {
                     // In that case we simply get an InputStream
@@ -200,6 +242,155 @@ public class TextViewer extends FileViewer implements EncodingListener {
             textEditorImpl.addDocumentListener(documentListener);
     }
     
+    /**
+     * Loads the first chunk of the given file into the text area, using the given encoding.
+     */
+    private void loadHead(AbstractFile file, String encoding) throws IOException {
+        // If the given encoding is invalid (null or not supported), default to "UTF-8"
+        this.encoding = encoding==null || !Charset.isSupported(encoding) ? "UTF-8" : encoding;
+
+        decoder = Charset.forName(this.encoding).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        partialFile = file;
+        loadedBytes = 0;
+        pendingCR = false;
+
+        textEditorImpl.getTextArea().setText("");
+        loadNextChunk();
+
+        // Move cursor to the top
+        textEditorImpl.getTextArea().setCaretPosition(0);
+    }
+
+    /**
+     * Appends the next chunk of the partially loaded file to the text area.
+     */
+    private void loadNextChunk() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        long length = readChunk(partialFile, loadedBytes, bytes);
+        appendChunk(bytes, length);
+    }
+
+    /**
+     * Reads the next chunk of the partially loaded file in a separate thread, so that the viewer remains responsive
+     * while it is transferred, and appends it to the text area from the event dispatch thread. The 'load more' item
+     * is disabled until then.
+     */
+    private void loadNextChunkInBackground() {
+        final AbstractFile file = partialFile;
+        final long offset = loadedBytes;
+        loadMoreItem.setEnabled(false);
+
+        new Thread("TextViewer chunk loader") {
+            @Override
+            public void run() {
+                final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+                long length;
+                try {
+                    length = readChunk(file, offset, bytes);
+                }
+                catch(IOException e) {
+                    length = -1;
+                }
+
+                final long fileLength = length;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        loadMoreItem.setEnabled(true);
+
+                        if(fileLength==-1) {
+                            InformationDialog.showErrorDialog(getFrame(), Translator.get("read_error"), Translator.get("file_editor.cannot_read_file", file.getName()));
+                            return;
+                        }
+
+                        // Discard the chunk if the file has been reloaded in the meantime
+                        if(partialFile==file && loadedBytes==offset)
+                            appendChunk(bytes, fileLength);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    /**
+     * Reads the chunk of the given file that starts at the given offset into the given buffer, which is flipped
+     * for reading.
+     *
+     * @return the length of the file
+     */
+    private static long readChunk(AbstractFile file, long offset, ByteBuffer bytes) throws IOException {
+        long length;
+        BlockCachedInputStream in = new BlockCachedInputStream(file);
+        try {
+            length = in.getLength();
+            in.seek(offset);
+
+            int nbRead;
+            while(bytes.hasRemaining() && (nbRead = in.read(bytes.array(), bytes.position(), bytes.remaining()))!=-1)
+                bytes.position(bytes.position()+nbRead);
+        }
+        finally {
+            in.close();
+        }
+        bytes.flip();
+
+        return length;
+    }
+
+    /**
+     * Decodes the given chunk of the partially loaded file and appends it to the text area. Bytes of a character that
+     * spans the end of the chunk are left for the next chunk.
+     */
+    private void appendChunk(ByteBuffer bytes, long length) {
+        boolean endOfFile = loadedBytes+bytes.limit()>=length;
+        StringBuilder text = new StringBuilder();
+        CharBuffer chars = CharBuffer.allocate(8192);
+        while(decoder.decode(bytes, chars, endOfFile).isOverflow())
+            drain(chars, text);
+        if(endOfFile) {
+            while(decoder.flush(chars).isOverflow())
+                drain(chars, text);
+        }
+        drain(chars, text);
+
+        // Filter out the byte-order mark (see ticket #245)
+        if(loadedBytes==0 && text.length()>0 && text.charAt(0)=='\uFEFF')
+            text.deleteCharAt(0);
+        loadedBytes += bytes.position();
+
+        // Line separators are converted to line feeds, as JTextArea#read does
+        if(pendingCR && text.length()>0 && text.charAt(0)=='\n')
+            text.deleteCharAt(0);
+        pendingCR = text.length()>0 && text.charAt(text.length()-1)=='\r';
+        textEditorImpl.getTextArea().append(text.toString().replace("\r\n", "\n").replace('\r', '\n'));
+
+        if(endOfFile) {
+            partialFile = null;
+            decoder = null;
+        }
+
+        updateLoadMoreItem(length);
+    }
+
+    private static void drain(CharBuffer chars, StringBuilder text) {
+        chars.flip();
+        text.append(chars);
+        chars.clear();
+    }
+
+    /**
+     * Shows the 'load more' item along with the amount of the file loaded so far while the file is partially loaded,
+     * hides it otherwise.
+     */
+    private void updateLoadMoreItem(long length) {
+        loadMoreItem.setVisible(partialFile!=null);
+        if(partialFile!=null)
+            loadMoreItem.setText(Translator.get("text_viewer.load_more",
+                    SizeFormat.format(loadedBytes, SizeFormat.DIGITS_MEDIUM|SizeFormat.UNIT_SHORT|SizeFormat.ROUND_TO_KB),
+                    SizeFormat.format(length, SizeFormat.DIGITS_MEDIUM|SizeFormat.UNIT_SHORT|SizeFormat.ROUND_TO_KB)));
+    }
+
     @Override
     public JMenuBar getMenuBar() {
     	JMenuBar menuBar = super.getMenuBar();
@@ -250,6 +441,10 @@ public class TextViewer extends FileViewer implements EncodingListener {
     	toggleLineWrapItem.setSelected(textEditorImpl.isWrap());
     	toggleLineNumbersItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, Translator.get("text_viewer.line_numbers"), menuItemMnemonicHelper, null, this);
     	toggleLineNumbersItem.setSelected(getRowHeader().getView() != null);
+
+    	// Only visible while a large remote file is partially loaded
+    	loadMoreItem = MenuToolkit.addMenuItem(viewMenu, Translator.get("text_viewer.load_more", "", ""), menuItemMnemonicHelper, null, this);
+    	loadMoreItem.setVisible(false);
     }
     
     ///////////////////////////////
@@ -282,6 +477,10 @@ public class TextViewer extends FileViewer implements EncodingListener {
         	setLineWrap(toggleLineWrapItem.isSelected());
         else if(source == toggleLineNumbersItem)
         	showLineNumbers(toggleLineNumbersItem.isSelected());
+        else if(source == loadMoreItem && partialFile != null) {
+        	if(loadMoreItem.isEnabled())
+        		loadNextChunkInBackground();
+        }
         else
         	super.actionPerformed(e);
     }
@@ -292,9 +491,15 @@ public class TextViewer extends FileViewer implements EncodingListener {
 
     public void encodingChanged(Object source, String oldEncoding, String newEncoding) {
     	try {
+    		// Reload the head of a partially loaded file using the new encoding
+    		if(partialFile != null) {
+    			loadHead(partialFile, newEncoding);
+    			return;
+    		}
+
     		// Reload the file using the new encoding
     		// Note: loadDocument closes the InputStream
-    		loadDocument(getCurrentFile().getInputStream(), newEncoding, null);
+    		loadDocument(BlockCachedInputStream.getInputStream(getCurrentFile()), newEncoding, null);
     	}
     	catch(IOException ex) {
     		InformationDialog.showErrorDialog(getFrame(), Translator.get("read_error"), Translator.get("file_editor.cannot_read_file", getCurrentFile().getName()));
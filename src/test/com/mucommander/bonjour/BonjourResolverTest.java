@@ -0,0 +1,194 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.bonjour;
+
+import com.mucommander.commons.file.FileURL;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Runs tests on {@link BonjourResolver}, using an in-process stand-in for the network.
+ */
+public class BonjourResolverTest {
+
+    /** Type of the services advertised by the stand-in */
+    private final static String TYPE = "_ftp._tcp.local.";
+
+    /**
+     * Tests that services are resolved by a bounded number of threads, at a limited rate.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrencyAndRate() throws Exception {
+        LocalResponder responder = new LocalResponder(20, 20);
+        Results results = new Results();
+        BonjourResolver resolver = new BonjourResolver(responder, results, 2, 10, 60000, 1000);
+
+        long startTime = System.currentTimeMillis();
+        for(int i=0; i<20; i++)
+            resolver.resolve(TYPE, "service"+i);
+        results.waitFor(20);
+
+        assert System.currentTimeMillis()-startTime >= 19*10;
+        assert responder.getMaxConcurrentQueries() <= 2;
+        assert responder.getNbQueries() == 20;
+        assert resolver.getResolvedCount() == 20;
+        assert resolver.getAverageLatency() >= 10;
+
+        resolver.shutdown();
+    }
+
+    /**
+     * Tests that requests for a service being resolved are ignored, and that resolved services are answered from the
+     * cache until they expire or are invalidated.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCache() throws Exception {
+        LocalResponder responder = new LocalResponder(1, 50);
+        Results results = new Results();
+        BonjourResolver resolver = new BonjourResolver(responder, results, 2, 0, 300, 1000);
+
+        for(int i=0; i<10; i++)
+            resolver.resolve(TYPE, "service0");
+        results.waitFor(1);
+        assert responder.getNbQueries() == 1;
+
+        // Cached
+        resolver.resolve(TYPE, "service0");
+        assert results.size() == 2;
+        assert resolver.getCacheHitCount() == 1;
+
+        // Invalidated
+        resolver.invalidate(TYPE, "service0");
+        resolver.resolve(TYPE, "service0");
+        results.waitFor(3);
+        assert responder.getNbQueries() == 2;
+
+        // Expired
+        Thread.sleep(400);
+        resolver.resolve(TYPE, "service0");
+        results.waitFor(4);
+        assert responder.getNbQueries() == 3;
+
+        resolver.shutdown();
+    }
+
+    /**
+     * Tests that services the stand-in doesn't advertise are counted as failures, and not reported.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testFailure() throws Exception {
+        LocalResponder responder = new LocalResponder(1, 0);
+        Results results = new Results();
+        BonjourResolver resolver = new BonjourResolver(responder, results, 2, 0, 60000, 1000);
+
+        resolver.resolve(TYPE, "unknown");
+        resolver.resolve(TYPE, "service0");
+        results.waitFor(1);
+        while(resolver.getFailedCount()==0)
+            Thread.sleep(10);
+
+        assert results.size() == 1;
+        assert resolver.getResolvedCount() == 1;
+
+        resolver.shutdown();
+    }
+
+
+    /**
+     * An in-process stand-in for the services advertised on the network, which answers queries after a delay.
+     */
+    private static class LocalResponder implements BonjourResolver.Source {
+        private final Map<String, BonjourService> services = new HashMap<String, BonjourService>();
+        private final long latency;
+        private int nbQueries;
+        private int nbConcurrentQueries;
+        private int maxConcurrentQueries;
+
+        private LocalResponder(int nbServices, long latency) throws MalformedURLException {
+            for(int i=0; i<nbServices; i++) {
+                String name = "service"+i;
+                services.put(name, new BonjourService(name, FileURL.getFileURL("ftp://192.168.0."+(i%256)+"/"), name+"."+TYPE));
+            }
+            this.latency = latency;
+        }
+
+        public BonjourService resolve(String type, String name, int timeout) {
+            synchronized(this) {
+                nbQueries++;
+                maxConcurrentQueries = Math.max(maxConcurrentQueries, ++nbConcurrentQueries);
+            }
+
+            try {
+                Thread.sleep(latency);
+            }
+            catch(InterruptedException e) {
+                // Resolver shut down
+            }
+
+            synchronized(this) {
+                nbConcurrentQueries--;
+            }
+
+            return services.get(name);
+        }
+
+        private synchronized int getNbQueries() {
+            return nbQueries;
+        }
+
+        private synchronized int getMaxConcurrentQueries() {
+            return maxConcurrentQueries;
+        }
+    }
+
+    /**
+     * Collects resolved services.
+     */
+    private static class Results implements BonjourResolver.Callback {
+        private final List<BonjourService> services = new Vector<BonjourService>();
+
+        public synchronized void serviceResolved(String type, String name, BonjourService service) {
+            services.add(service);
+            notifyAll();
+        }
+
+        private synchronized int size() {
+            return services.size();
+        }
+
+        private synchronized void waitFor(int nbServices) throws InterruptedException {
+            long timeout = System.currentTimeMillis() + 10000;
+            while(services.size()<nbServices && System.currentTimeMillis()<timeout)
+                wait(100);
+
+            assert services.size() >= nbServices;
+        }
+    }
+}
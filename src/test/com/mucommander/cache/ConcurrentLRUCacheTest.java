@@ -0,0 +1,199 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.cache;
+
+import org.testng.annotations.Test;
+
+/**
+ * Runs tests on {@link ConcurrentLRUCache}.
+ */
+public class ConcurrentLRUCacheTest {
+
+    /**
+     * Tests that the least recently used items are evicted once capacity is reached.
+     */
+    @Test
+    public void testEviction() {
+        // A single segment makes the eviction order exact
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>(3, null, 1);
+        cache.add("orange", "ORANGE");
+        cache.add("apple", "APPLE");
+        cache.add("apricot", "APRICOT");
+
+        assert "ORANGE".equals(cache.get("orange"));
+        cache.add("banana", "BANANA");
+
+        assert cache.size() == 3;
+        assert cache.get("apple") == null;
+        assert "ORANGE".equals(cache.get("orange"));
+        assert "BANANA".equals(cache.get("banana"));
+        assert cache.getEvictionCount() == 1;
+        assert cache.getHitCount() == 3;
+        assert cache.getMissCount() == 1;
+
+        cache.testCorruption();
+    }
+
+    /**
+     * Tests that items are evicted according to their weight.
+     */
+    @Test
+    public void testWeight() {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>(10, new ConcurrentLRUCache.Weigher<String, String>() {
+            public int weigh(String key, String value) {
+                return value.length();
+            }
+        }, 1);
+
+        cache.add("a", "aaaa");
+        cache.add("b", "bbbb");
+        assert cache.getWeight() == 8;
+
+        cache.add("c", "cccc");
+        assert cache.get("a") == null;
+        assert cache.getWeight() == 8;
+
+        // Items heavier than the cache are not cached, and replace the previous value
+        cache.add("b", "bbbbbbbbbbbb");
+        assert cache.get("b") == null;
+        assert cache.getWeight() == 4;
+
+        cache.testCorruption();
+    }
+
+    /**
+     * Tests that the capacity is a bound on the whole cache rather than on each segment: an item heavier than a
+     * segment's share of the capacity is cached, and makes room by evicting items of other segments.
+     */
+    @Test
+    public void testItemHeavierThanSegment() {
+        // 16 segments with a share of 100 each
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<Integer, String>(1600, new ConcurrentLRUCache.Weigher<Integer, String>() {
+            public int weigh(Integer key, String value) {
+                return value.length();
+            }
+        }, 16);
+
+        for(int i=0; i<100; i++)
+            cache.add(i, "0123456789");
+        assert cache.getWeight() == 1000;
+
+        StringBuilder heavy = new StringBuilder();
+        for(int i=0; i<1000; i++)
+            heavy.append('x');
+        cache.add(-1, heavy.toString());
+
+        assert heavy.toString().equals(cache.get(-1));
+        assert cache.getWeight() <= 1600;
+        assert cache.getEvictionCount() >= 40;
+        cache.testCorruption();
+
+        // The heavy item remains cached as other items are added
+        for(int i=100; i<150; i++)
+            cache.add(i, "0123456789");
+        assert cache.getWeight() <= 1600;
+        cache.testCorruption();
+
+        // Items heavier than the whole cache are still not cached
+        for(int i=0; i<700; i++)
+            heavy.append('x');
+        cache.add(-1, heavy.toString());
+        assert cache.get(-1) == null;
+        cache.testCorruption();
+    }
+
+    /**
+     * Tests that expired items are not returned, and are removed by the sweeper.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testExpiration() throws InterruptedException {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>(100);
+        for(int i=0; i<50; i++)
+            cache.add(i, i, i%2==0?-1:50);
+
+        Thread.sleep(100);
+        assert cache.get(1) == null;
+        assert cache.get(2) == 2;
+
+        // The sweeper runs every second
+        Thread.sleep(1500);
+        assert cache.size() == 25;
+        assert cache.getExpirationCount() == 25;
+
+        cache.testCorruption();
+    }
+
+    /**
+     * Tests that load time is accounted for and that loaded values are cached.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testLoader() throws Exception {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<Integer, String>(100);
+        ConcurrentLRUCache.Loader<Integer, String> loader = new ConcurrentLRUCache.Loader<Integer, String>() {
+            public String load(Integer key) throws Exception {
+                Thread.sleep(10);
+                return key.toString();
+            }
+        };
+
+        assert "1".equals(cache.get(1, loader, -1));
+        assert "1".equals(cache.get(1, loader, -1));
+        assert cache.getLoadCount() == 1;
+        assert cache.getTotalLoadTime() >= 10000000;
+    }
+
+    /**
+     * Accesses the cache from several threads at once and tests it for corruption.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>(1000);
+        Thread threads[] = new Thread[8];
+        for(int i=0; i<threads.length; i++) {
+            final int seed = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    java.util.Random random = new java.util.Random(seed);
+                    for(int j=0; j<100000; j++) {
+                        int key = random.nextInt(5000);
+                        if(random.nextBoolean())
+                            cache.add(key, key, random.nextBoolean()?-1:random.nextInt(10));
+                        else
+                            cache.get(key);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for(Thread thread : threads)
+            thread.join();
+
+        assert cache.size() <= 1000;
+        cache.testCorruption();
+    }
+}
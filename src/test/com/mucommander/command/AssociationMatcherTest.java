@@ -0,0 +1,149 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.command;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.filter.AndFileFilter;
+import com.mucommander.commons.file.filter.AttributeFileFilter;
+import com.mucommander.commons.file.filter.AttributeFileFilter.FileAttribute;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.filter.RegexpFilenameFilter;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Runs tests on {@link AssociationMatcher}.
+ */
+public class AssociationMatcherTest {
+    // - Constants -------------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** Names of the files matched against the associations. */
+    private static final String[] NAMES = {"a.pdf", "A.PDF", "x.jpg", "x.JPEG", "README", "readme.txt", "a.TXT",
+                                           "aa", "x.tar.gz", ".pdf", "a.", "x.y", "f.Pdf"};
+
+
+
+    // - Helper methods --------------------------------------------------------
+    // -------------------------------------------------------------------------
+    private static FileFilter mask(String regexp, boolean isCaseSensitive) {return new RegexpFilenameFilter(regexp, isCaseSensitive);}
+
+    private static FileFilter and(FileFilter... filters) {
+        AndFileFilter filter;
+
+        filter = new AndFileFilter();
+        for(FileFilter current : filters)
+            filter.addFileFilter(current);
+        return filter;
+    }
+
+    private static AbstractFile getFile(String name) {
+        return FileFactory.getFile(System.getProperty("java.io.tmpdir") + File.separator + name);
+    }
+
+    /**
+     * Makes sure the matcher returns the command of the first association that accepts each file, which is what
+     * evaluating the associations in order returns.
+     */
+    private static void assertSameCommands(List<CommandAssociation> associations) {
+        AssociationMatcher matcher;
+
+        matcher = new AssociationMatcher(associations);
+        // Matches each name twice: the second time, the extension's candidates come from the cache.
+        for(int i = 0; i < 2; i++) {
+            for(String name : NAMES) {
+                AbstractFile file;
+                Command      expected;
+
+                file     = getFile(name);
+                expected = null;
+                for(CommandAssociation association : associations) {
+                    if(association.accept(file)) {
+                        expected = association.getCommand();
+                        break;
+                    }
+                }
+
+                assert expected == matcher.getCommand(file) : name;
+            }
+        }
+    }
+
+    private static CommandAssociation association(String alias, FileFilter filter) {
+        return new CommandAssociation(new Command(alias, alias, CommandType.NORMAL_COMMAND, null), filter);
+    }
+
+
+
+    // - Tests -----------------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Tests extension masks, which are indexed by extension.
+     */
+    @Test
+    public void testExtensionMasks() {
+        List<CommandAssociation> associations;
+
+        associations = new Vector<CommandAssociation>();
+        associations.add(association("pdf", mask(".*\\.pdf", false)));
+        associations.add(association("images", mask(".*\\.(jpg|JPEG)", true)));
+        associations.add(association("text", mask(".*\\.txt", true)));
+        associations.add(association("archives", mask(".*\\.(?:gz|tar)", false)));
+        associations.add(association("pdf2", mask(".*\\.pdf", true)));
+        assertSameCommands(associations);
+    }
+
+    /**
+     * Tests filename masks that are combined into a single expression, interleaved with extension masks.
+     */
+    @Test
+    public void testCombinedMasks() {
+        List<CommandAssociation> associations;
+
+        associations = new Vector<CommandAssociation>();
+        associations.add(association("readme", mask("read.*", false)));
+        associations.add(association("pdf", mask(".*\\.pdf", false)));
+        associations.add(association("noext", mask("[^.]+", true)));
+        associations.add(association("backref", mask("(a)\\1.*", true)));
+        associations.add(association("quoted", mask("\\Qx.y", true)));
+        assertSameCommands(associations);
+    }
+
+    /**
+     * Tests associations whose attribute filters reject files after their mask matched.
+     */
+    @Test
+    public void testAttributeFilters() {
+        List<CommandAssociation> associations;
+        FileFilter               directory;
+
+        directory = new AttributeFileFilter(FileAttribute.DIRECTORY);
+
+        associations = new Vector<CommandAssociation>();
+        associations.add(association("pdfdir", and(mask(".*\\.pdf", false), directory)));
+        associations.add(association("dir", directory));
+        associations.add(association("readme", and(mask("read.*", false), directory)));
+        associations.add(association("pdf", mask(".*\\.pdf", false)));
+        associations.add(association("any", mask(".*", true)));
+        assertSameCommands(associations);
+    }
+}